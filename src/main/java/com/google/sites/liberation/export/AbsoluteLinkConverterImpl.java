@@ -30,21 +30,71 @@ import java.net.URL;
  */
 final class AbsoluteLinkConverterImpl implements AbsoluteLinkConverter {
 
+  private static final String LINK_PREFIX = "href=";
+
   @Override
   public void convertLinks(BasePageEntry<?> entry, EntryStore entryStore,
       URL siteUrl, boolean isRevision) {
-    convertLinks(entry, entryStore, siteUrl, isRevision, "href=\"", "\"");
-    convertLinks(entry, entryStore, siteUrl, isRevision, "href='", "'");
-  }
-  
-  private void convertLinks(BasePageEntry<?> entry, EntryStore entryStore, 
-      URL siteUrl, boolean isRevision, String prefix, String suffix) {
     String content = getXhtmlContent(entry);
     String url = siteUrl.toExternalForm();
-    String siteRoot = getSiteRoot(entry, entryStore);
+    String siteRoot = entryStore.getPathToRoot(entry.getId());
     if (isRevision) {
       siteRoot += "../";
     }
+    String converted = convertLinks(content, url, siteRoot);
+    if (converted == null) {
+      converted = convertLinks(content, url, siteRoot, "href=\"", "\"");
+      converted = convertLinks(converted, url, siteRoot, "href='", "'");
+    }
+    setContent(entry, converted);
+  }
+
+  /**
+   * Converts the links quoted either way in one pass over the content, or
+   * returns {@code null} if a link is unterminated, or contains a link quoted
+   * the other way, in which case the two quote styles must be converted one
+   * after the other to give the same result as before.
+   */
+  private String convertLinks(String content, String url, String siteRoot) {
+    StringBuilder builder = null;
+    int copied = 0;
+    int index = content.indexOf(LINK_PREFIX);
+    while (index != -1) {
+      int startIndex = index + LINK_PREFIX.length() + 1;
+      if (startIndex <= content.length()
+          && content.startsWith(url, startIndex)) {
+        char quote = content.charAt(startIndex - 1);
+        if (quote == '"' || quote == '\'') {
+          int endIndex = content.indexOf(quote, startIndex + 1);
+          int linkIndex = startIndex + url.length() + 1;
+          if (endIndex < linkIndex) {
+            return null;
+          }
+          String other = LINK_PREFIX + (quote == '"' ? '\'' : '"') + url;
+          int otherIndex = content.indexOf(other, index + 1);
+          if (otherIndex != -1 && otherIndex < endIndex) {
+            return null;
+          }
+          if (builder == null) {
+            builder = new StringBuilder(content.length() + 256);
+          }
+          builder.append(content, copied, startIndex).append(siteRoot)
+              .append(content, linkIndex, endIndex).append("/index.html");
+          copied = endIndex;
+          index = content.indexOf(LINK_PREFIX, endIndex);
+          continue;
+        }
+      }
+      index = content.indexOf(LINK_PREFIX, index + 1);
+    }
+    if (builder == null) {
+      return content;
+    }
+    return builder.append(content, copied, content.length()).toString();
+  }
+  
+  private String convertLinks(String content, String url, String siteRoot,
+      String prefix, String suffix) {
     int index = content.indexOf(prefix + url);
     while (index != -1) {
       int startIndex = index + prefix.length();
@@ -55,14 +105,6 @@ final class AbsoluteLinkConverterImpl implements AbsoluteLinkConverter {
       content = beforeLink + siteRoot + link + "/index.html" + afterLink;
       index = content.indexOf(prefix + url);
     }
-    setContent(entry, content);
-  }
-  
-  private String getSiteRoot(BasePageEntry<?> entry, EntryStore entryStore) {
-    BasePageEntry<?> parent = entryStore.getParent(entry.getId());
-    if (parent == null) {
-      return "../";
-    }
-    return getSiteRoot(parent, entryStore) + "../";
+    return content;
   }
 }
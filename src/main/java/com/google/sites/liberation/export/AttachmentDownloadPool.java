@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.sites.liberation.util.DaemonThreadFactory;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads attachments on a bounded pool of threads, allowing at most a
+ * given number of concurrent downloads from any single host.
+ *
+ * <p>Downloads from a host which already has as many downloads running as it
+ * is allowed wait in a queue of their own, and are only handed to the pool
+ * when one of that host's downloads finishes, so that they never hold up
+ * downloads from other hosts by occupying the pool's threads.</p>
+ *
+ * <p>A pool is meant to be used for a single export: attachments are queued
+ * with {@link #download}, and {@link #awaitCompletion} waits for all of them
+ * to finish and releases the threads.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class AttachmentDownloadPool {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      AttachmentDownloadPool.class.getCanonicalName());
+
+  private final AttachmentDownloader attachmentDownloader;
+  private final ExecutorService executor;
+  private final int downloadsPerHost;
+  private final Map<String, Integer> hostDownloads;
+  private final Map<String, Queue<Runnable>> hostQueues;
+  private int pending;
+
+  /**
+   * Receives the outcome of a single download.
+   */
+  interface Callback {
+    
+    /**
+     * Called once the given attachment has been downloaded, with the number
+     * of bytes written (or -1 if the download failed) and the time the 
+     * download took.
+     */
+    void downloaded(AttachmentEntry attachment, long bytes, long elapsedMillis);
+  }
+
+  /**
+   * Creates a new AttachmentDownloadPool which downloads at most
+   * {@code downloads} attachments at once, and at most
+   * {@code downloadsPerHost} from the same host.
+   */
+  AttachmentDownloadPool(AttachmentDownloader attachmentDownloader,
+      int downloads, int downloadsPerHost) {
+    this.attachmentDownloader = checkNotNull(attachmentDownloader);
+    checkArgument(downloads > 0);
+    checkArgument(downloadsPerHost > 0);
+    this.executor = Executors.newFixedThreadPool(downloads,
+        new DaemonThreadFactory("attachment-downloader"));
+    this.downloadsPerHost = downloadsPerHost;
+    this.hostDownloads = Maps.newHashMap();
+    this.hostQueues = Maps.newHashMap();
+  }
+
+  /**
+   * Queues the given attachment to be downloaded to the given file. The given
+   * callback is called once the download has finished, whether or not it
+   * succeeded.
+   */
+  void download(final AttachmentEntry attachment, final File file,
+      final SitesService sitesService, final Callback callback) {
+    checkNotNull(attachment);
+    checkNotNull(file);
+    checkNotNull(callback);
+    final String host = getHost(attachment);
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        long bytes = -1;
+        long startTime = System.currentTimeMillis();
+        try {
+          bytes = attachmentDownloader.download(attachment, file, 
+              sitesService);
+        } catch (RuntimeException e) {
+          LOGGER.log(Level.WARNING, "Error downloading attachment: "
+              + attachment.getTitle().getPlainText(), e);
+        } finally {
+          try {
+            callback.downloaded(attachment, bytes, 
+                System.currentTimeMillis() - startTime);
+          } finally {
+            finished(host);
+          }
+        }
+      }
+    };
+    synchronized (this) {
+      pending++;
+      Integer downloads = hostDownloads.get(host);
+      if (downloads == null) {
+        downloads = 0;
+      }
+      if (downloads < downloadsPerHost) {
+        hostDownloads.put(host, downloads + 1);
+        executor.execute(task);
+      } else {
+        Queue<Runnable> queue = hostQueues.get(host);
+        if (queue == null) {
+          queue = Lists.newLinkedList();
+          hostQueues.put(host, queue);
+        }
+        queue.add(task);
+      }
+    }
+  }
+
+  /**
+   * Waits for every queued download to finish, then releases the threads of
+   * this pool. If interrupted, the downloads still queued are abandoned.
+   */
+  void awaitCompletion() {
+    try {
+      synchronized (this) {
+        while (pending > 0) {
+          wait();
+        }
+      }
+      executor.shutdown();
+    } catch (InterruptedException e) {
+      LOGGER.log(Level.WARNING, "Interrupted while downloading attachments.");
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Hands the next download queued for the given host to the pool, now that
+   * one of its downloads has finished.
+   */
+  private synchronized void finished(String host) {
+    pending--;
+    Queue<Runnable> queue = hostQueues.get(host);
+    Runnable next = (queue == null) ? null : queue.poll();
+    if (next != null && !executor.isShutdown()) {
+      executor.execute(next);
+    } else {
+      hostDownloads.put(host, hostDownloads.get(host) - 1);
+    }
+    if (pending == 0) {
+      notifyAll();
+    }
+  }
+
+  private String getHost(AttachmentEntry attachment) {
+    try {
+      String uri = ((OutOfLineContent) attachment.getContent()).getUri();
+      return new URL(uri).getHost();
+    } catch (MalformedURLException e) {
+      return "";
+    } catch (ClassCastException e) {
+      return "";
+    } catch (NullPointerException e) {
+      return "";
+    }
+  }
+}
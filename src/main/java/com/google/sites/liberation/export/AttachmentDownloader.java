@@ -32,7 +32,9 @@ interface AttachmentDownloader {
   
   /**
    * Downloads the given attachment to the given file name, using the given
-   * SitesService.
+   * SitesService, and returns the number of bytes written, or -1 if the 
+   * download failed.
    */
-  void download(AttachmentEntry attachment, File file, SitesService sitesService);
+  long download(AttachmentEntry attachment, File file, 
+      SitesService sitesService);
 }
@@ -18,18 +18,20 @@ package com.google.sites.liberation.export;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.gdata.client.Service.GDataRequest;
 import com.google.gdata.client.sites.SitesService;
-import com.google.gdata.data.MediaContent;
 import com.google.gdata.data.OutOfLineContent;
-import com.google.gdata.data.media.MediaSource;
 import com.google.gdata.data.sites.AttachmentEntry;
 import com.google.gdata.util.ServiceException;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +39,16 @@ import java.util.logging.Logger;
  * Implements {@link AttachmentDownloader} to download an attachment
  * to a specified file.
  * 
+ * <p>The attachment is streamed into a temporary file next to the target
+ * with {@link FileChannel#transferFrom}, and only renamed into place once it
+ * has been written completely, so that a failed download never leaves a
+ * truncated file behind. While the download is in progress a ".part" sidecar
+ * records how much has been written, updated every {@value #SAVE_INTERVAL} 
+ * bytes and when the transfer fails; if the download is interrupted, the next
+ * export resumes it with an HTTP Range request, unless the attachment has 
+ * changed or the server does not support ranges, in which case it starts
+ * over.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class AttachmentDownloaderImpl implements AttachmentDownloader {
@@ -44,27 +56,36 @@ final class AttachmentDownloaderImpl implements AttachmentDownloader {
   private static final Logger LOGGER = Logger.getLogger(
       AttachmentDownloaderImpl.class.getCanonicalName());
   
+  /** Number of bytes requested from the channel per transfer. */
+  private static final long TRANSFER_SIZE = 1024 * 1024;
+  
+  /** Number of bytes written between updates of the ".part" sidecar. */
+  static final long SAVE_INTERVAL = 16 * TRANSFER_SIZE;
+  
   /**
    * Downloads the given attachment to the given file name.
    */
   @Override
-  public void download(AttachmentEntry attachment, File file, 
+  public long download(AttachmentEntry attachment, File file, 
       SitesService sitesService) {
     checkNotNull(attachment);
     checkNotNull(file);
-    MediaContent mediaContent = new MediaContent();
-    mediaContent.setUri(((OutOfLineContent) attachment.getContent()).getUri());
+    String uri = ((OutOfLineContent) attachment.getContent()).getUri();
+    File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+    File partFile = new File(file.getParentFile(), file.getName() + ".part");
+    PartialDownload partial = new PartialDownload(partFile, attachment);
+    long offset = partial.getResumableBytes(tempFile);
     try {
-      MediaSource mediaSource = sitesService.getMedia(mediaContent);
-      InputStream inStream = mediaSource.getInputStream();
-      OutputStream outStream = new FileOutputStream(file);
-      byte[] buf = new byte[4*1024];
-      int bytesRead;
-      while((bytesRead = inStream.read(buf)) != -1) {
-        outStream.write(buf, 0, bytesRead);
+      try {
+        return download(uri, tempFile, file, partial, offset, sitesService);
+      } catch (ServiceException e) {
+        if (offset == 0) {
+          throw e;
+        }
+        LOGGER.log(Level.INFO, "Unable to resume download, starting over: " 
+            + attachment.getTitle().getPlainText(), e);
+        return download(uri, tempFile, file, partial, 0, sitesService);
       }
-      inStream.close();
-      outStream.close();
     } catch (IOException e) {
       LOGGER.log(Level.WARNING, "Error downloading attachment: " 
           + attachment.getTitle().getPlainText(), e);
@@ -72,5 +93,93 @@ final class AttachmentDownloaderImpl implements AttachmentDownloader {
       LOGGER.log(Level.WARNING, "Error downloading attachment: " 
           + attachment.getTitle().getPlainText(), e);
     }
+    if (!partFile.exists()) {
+      tempFile.delete();
+    }
+    return -1;
+  }
+  
+  /**
+   * Downloads the attachment at the given uri into {@code tempFile}, starting 
+   * at byte {@code offset} if the server allows it, and moves it to 
+   * {@code file} once complete. Returns the number of bytes downloaded.
+   */
+  private long download(String uri, File tempFile, File file, 
+      PartialDownload partial, long offset, SitesService sitesService) 
+      throws IOException, ServiceException {
+    GDataRequest request = sitesService.createRequest(
+        GDataRequest.RequestType.QUERY, new URL(uri), null);
+    ReadableByteChannel in = null;
+    FileChannel out = null;
+    try {
+      if (offset > 0) {
+        request.setHeader("Range", "bytes=" + offset + "-");
+      }
+      request.execute();
+      String contentRange = request.getResponseHeader("Content-Range");
+      if (contentRange == null 
+          || !contentRange.startsWith("bytes " + offset + "-")) {
+        offset = 0;
+      }
+      partial.save(offset);
+      in = Channels.newChannel(request.getResponseStream());
+      out = new RandomAccessFile(tempFile, "rw").getChannel();
+      out.truncate(offset);
+      long position = offset;
+      long saved = offset;
+      long transferred;
+      try {
+        while ((transferred = 
+            out.transferFrom(in, position, TRANSFER_SIZE)) > 0) {
+          position += transferred;
+          if (position - saved >= SAVE_INTERVAL) {
+            partial.save(position);
+            saved = position;
+          }
+        }
+      } catch (IOException e) {
+        if (position > saved) {
+          try {
+            partial.save(position);
+          } catch (IOException saveException) {
+            LOGGER.log(Level.WARNING, "Unable to record partial download.", 
+                saveException);
+          }
+        }
+        throw e;
+      }
+      out.close();
+      out = null;
+      if (!moveFile(tempFile, file)) {
+        throw new IOException("Unable to rename " + tempFile + " to " + file);
+      }
+      partial.delete();
+      return position - offset;
+    } finally {
+      close(in);
+      close(out);
+      request.end();
+    }
+  }
+  
+  /**
+   * Renames {@code from} to {@code to}, replacing {@code to} if it already 
+   * exists.
+   */
+  private boolean moveFile(File from, File to) {
+    if (from.renameTo(to)) {
+      return true;
+    }
+    return to.delete() && from.renameTo(to);
+  }
+  
+  private void close(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Failed closing stream.", e);
+      }
+    }
   }
 }
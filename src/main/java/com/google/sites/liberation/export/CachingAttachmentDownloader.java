@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.sites.liberation.util.HashUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decorates an {@link AttachmentDownloader} to keep a copy of every 
+ * attachment it downloads in the feed cache directory, or, in replay mode, 
+ * to copy the attachments kept there without going to the server at all.
+ * 
+ * <p>Each attachment is kept in the {@value #DIRECTORY} directory of the 
+ * cache, in a file named for a hash of its URL and revision. In replay mode,
+ * an attachment that isn't in the cache fails to download.</p>
+ * 
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class CachingAttachmentDownloader implements AttachmentDownloader {
+  
+  private static final Logger LOGGER = Logger.getLogger(
+      CachingAttachmentDownloader.class.getCanonicalName());
+  
+  /** Name of the directory in the cache in which attachments are kept. */
+  static final String DIRECTORY = "attachments";
+  
+  private final AttachmentDownloader attachmentDownloader;
+  private final File cacheDirectory;
+  private final boolean replay;
+  
+  @Inject
+  CachingAttachmentDownloader(AttachmentDownloaderImpl attachmentDownloader,
+      @Named(SiteExporterModule.FEED_CACHE) String cacheDirectory,
+      @Named(SiteExporterModule.FEED_REPLAY) boolean replay) {
+    this((AttachmentDownloader) attachmentDownloader, 
+        new File(cacheDirectory, DIRECTORY), replay);
+  }
+  
+  /**
+   * Creates a new CachingAttachmentDownloader which keeps the attachments 
+   * downloaded by the given AttachmentDownloader in the given directory, or
+   * only copies those already kept there if {@code replay} is {@code true}.
+   */
+  CachingAttachmentDownloader(AttachmentDownloader attachmentDownloader, 
+      File cacheDirectory, boolean replay) {
+    this.attachmentDownloader = checkNotNull(attachmentDownloader);
+    this.cacheDirectory = checkNotNull(cacheDirectory);
+    this.replay = replay;
+  }
+  
+  @Override
+  public long download(AttachmentEntry attachment, File file, 
+      SitesService sitesService) {
+    checkNotNull(attachment);
+    checkNotNull(file);
+    String key = ((OutOfLineContent) attachment.getContent()).getUri();
+    if (attachment.getRevision() != null) {
+      key += " " + attachment.getRevision().getValue();
+    }
+    File cachedFile = new File(cacheDirectory, HashUtils.sha1(key));
+    if (replay) {
+      if (!cachedFile.isFile()) {
+        LOGGER.log(Level.WARNING, "Attachment not in cache: " 
+            + attachment.getTitle().getPlainText());
+        return -1;
+      }
+      try {
+        return copy(cachedFile, file);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Error copying cached attachment: " 
+            + cachedFile, e);
+        return -1;
+      }
+    }
+    long bytes = attachmentDownloader.download(attachment, file, 
+        sitesService);
+    if (bytes >= 0) {
+      File tempFile = new File(cacheDirectory, cachedFile.getName() + ".tmp");
+      try {
+        cacheDirectory.mkdirs();
+        copy(file, tempFile);
+        cachedFile.delete();
+        if (!tempFile.renameTo(cachedFile)) {
+          throw new IOException("Unable to rename " + tempFile + " to " 
+              + cachedFile);
+        }
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Error caching attachment: " + file, e);
+        tempFile.delete();
+      }
+    }
+    return bytes;
+  }
+  
+  /**
+   * Copies {@code from} to {@code to}, replacing it if it already exists, and
+   * returns the number of bytes copied.
+   */
+  private static long copy(File from, File to) throws IOException {
+    FileChannel in = new FileInputStream(from).getChannel();
+    try {
+      FileChannel out = new FileOutputStream(to).getChannel();
+      try {
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+          position += in.transferTo(position, size - position, out);
+        }
+        return size;
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
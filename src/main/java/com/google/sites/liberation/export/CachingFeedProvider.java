@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.ContentFeed;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.base.Nullable;
+import com.google.gdata.util.common.xml.XmlWriter;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.sites.liberation.util.HashUtils;
+import com.google.sites.liberation.util.ProgressListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decorates a {@link FeedProvider} to keep a copy of every feed it returns in
+ * a local cache directory, or, in replay mode, to return the copies kept there
+ * without going to the server at all.
+ *
+ * <p>Each feed is kept in a directory named for a hash of its URL, as Atom
+ * feed documents of up to {@value #ENTRIES_PER_PAGE} entries each, named for
+ * the start index of their first entry. A feed is only moved into place once
+ * it has been read to the end, so that a cached feed is always complete.</p>
+ *
+ * <p>The whole feed is always cached, so that a replay does not depend on the
+ * {@code updatedMin} time given by the export, which comes from the state of
+ * the export directory. When {@code updatedMin} is given, the whole feed is
+ * read from the server and only the entries updated since then are
+ * returned. In replay mode, asking for a feed that isn't in the cache throws
+ * an {@link IllegalStateException} rather than returning an incomplete 
+ * export.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class CachingFeedProvider implements FeedProvider {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      CachingFeedProvider.class.getCanonicalName());
+
+  /** Maximum number of entries kept in each cached Atom document. */
+  static final int ENTRIES_PER_PAGE = 100;
+
+  private static final String PARTIAL = ".partial";
+
+  private final FeedProvider feedProvider;
+  private final File cacheDirectory;
+  private final boolean replay;
+
+  @Inject
+  CachingFeedProvider(FeedProviderImpl feedProvider,
+      @Named(SiteExporterModule.FEED_CACHE) String cacheDirectory,
+      @Named(SiteExporterModule.FEED_REPLAY) boolean replay) {
+    this((FeedProvider) feedProvider, new File(cacheDirectory), replay);
+  }
+
+  /**
+   * Creates a new CachingFeedProvider which keeps the feeds returned by the
+   * given FeedProvider in the given directory, or only returns those already
+   * kept there if {@code replay} is {@code true}.
+   */
+  CachingFeedProvider(FeedProvider feedProvider, File cacheDirectory,
+      boolean replay) {
+    this.feedProvider = checkNotNull(feedProvider);
+    this.cacheDirectory = checkNotNull(cacheDirectory);
+    this.replay = replay;
+  }
+
+  @Override
+  public Iterable<BaseContentEntry<?>> getEntries(URL feedUrl,
+      SitesService sitesService) {
+    return getEntries(feedUrl, sitesService, null, null);
+  }
+
+  @Override
+  public Iterable<BaseContentEntry<?>> getEntries(URL feedUrl,
+      SitesService sitesService, @Nullable ProgressListener progressListener) {
+    return getEntries(feedUrl, sitesService, null, progressListener);
+  }
+
+  @Override
+  public Iterable<BaseContentEntry<?>> getEntries(final URL feedUrl,
+      final SitesService sitesService, @Nullable final DateTime updatedMin,
+      @Nullable final ProgressListener progressListener) {
+    checkNotNull(feedUrl, "feedUrl");
+    checkNotNull(sitesService, "sitesService");
+    final File directory = new File(cacheDirectory,
+        HashUtils.sha1(feedUrl.toString()));
+    Iterable<BaseContentEntry<?>> entries;
+    if (replay) {
+      if (!directory.isDirectory()) {
+        throw new IllegalStateException("Feed not in cache: " + feedUrl);
+      }
+      entries = new Iterable<BaseContentEntry<?>>() {
+        @Override
+        public Iterator<BaseContentEntry<?>> iterator() {
+          return new CachedFeedIterator(directory, sitesService);
+        }
+      };
+    } else {
+      entries = new Iterable<BaseContentEntry<?>>() {
+        @Override
+        public Iterator<BaseContentEntry<?>> iterator() {
+          Iterator<BaseContentEntry<?>> itr = feedProvider.getEntries(
+              feedUrl, sitesService, progressListener).iterator();
+          return new RecordingFeedIterator(itr, directory, sitesService);
+        }
+      };
+    }
+    if (updatedMin == null) {
+      return entries;
+    }
+    return Iterables.filter(entries, new UpdatedSince(updatedMin));
+  }
+
+  /**
+   * Matches the entries updated at or after a given time, as the server does
+   * for a feed requested with {@code updated-min}.
+   */
+  private static class UpdatedSince 
+      implements Predicate<BaseContentEntry<?>> {
+
+    final DateTime updatedMin;
+
+    UpdatedSince(DateTime updatedMin) {
+      this.updatedMin = updatedMin;
+    }
+
+    @Override
+    public boolean apply(BaseContentEntry<?> entry) {
+      return entry == null || entry.getUpdated() == null
+          || entry.getUpdated().compareTo(updatedMin) >= 0;
+    }
+  }
+
+  /**
+   * Iterates through the entries of a feed kept in the given directory, 
+   * throwing an {@link IllegalStateException} if they can't be read.
+   */
+  private static class CachedFeedIterator
+      extends AbstractIterator<BaseContentEntry<?>> {
+
+    final File directory;
+    final SitesService sitesService;
+    Iterator<BaseContentEntry<?>> currentItr;
+    int index;
+
+    CachedFeedIterator(File directory, SitesService sitesService) {
+      this.directory = directory;
+      this.sitesService = sitesService;
+      currentItr = Iterators.emptyIterator();
+      index = 1;
+    }
+
+    @Override
+    protected BaseContentEntry<?> computeNext() {
+      if (!currentItr.hasNext()) {
+        File file = new File(directory, index + ".xml");
+        if (!file.isFile()) {
+          return endOfData();
+        }
+        List<BaseContentEntry<?>> entries;
+        try {
+          entries = readPage(file, sitesService);
+        } catch (IOException e) {
+          throw new IllegalStateException(
+              "Error reading cached feed: " + file, e);
+        } catch (ServiceException e) {
+          throw new IllegalStateException(
+              "Error parsing cached feed: " + file, e);
+        }
+        if (entries.isEmpty()) {
+          return endOfData();
+        }
+        index += entries.size();
+        currentItr = entries.iterator();
+      }
+      return currentItr.next();
+    }
+  }
+
+  /**
+   * Iterates through the given entries, writing each page of them to a
+   * partial copy of the given directory before returning it, and moving the
+   * copy into place once the last entry has been returned. Null entries, for
+   * those that could not be parsed, are returned but not written.
+   */
+  private class RecordingFeedIterator
+      extends AbstractIterator<BaseContentEntry<?>> {
+
+    final Iterator<BaseContentEntry<?>> entries;
+    final File directory;
+    final File partial;
+    final SitesService sitesService;
+    Iterator<BaseContentEntry<?>> currentItr;
+    int index;
+    boolean failed;
+
+    RecordingFeedIterator(Iterator<BaseContentEntry<?>> entries,
+        File directory, SitesService sitesService) {
+      this.entries = entries;
+      this.directory = directory;
+      this.sitesService = sitesService;
+      partial = new File(cacheDirectory, directory.getName() + PARTIAL);
+      deleteDirectory(partial);
+      failed = !partial.mkdirs();
+      if (failed) {
+        LOGGER.log(Level.WARNING, "Unable to create directory: " + partial);
+      }
+      currentItr = Iterators.emptyIterator();
+      index = 1;
+    }
+
+    @Override
+    protected BaseContentEntry<?> computeNext() {
+      if (!currentItr.hasNext()) {
+        List<BaseContentEntry<?>> page = Lists.newArrayList();
+        List<BaseContentEntry<?>> recorded = Lists.newArrayList();
+        while (recorded.size() < ENTRIES_PER_PAGE && entries.hasNext()) {
+          BaseContentEntry<?> entry = entries.next();
+          page.add(entry);
+          if (entry != null) {
+            recorded.add(entry);
+          }
+        }
+        if (page.isEmpty()) {
+          finish();
+          return endOfData();
+        }
+        if (!failed && !recorded.isEmpty()) {
+          File file = new File(partial, index + ".xml");
+          try {
+            writePage(recorded, file, sitesService);
+          } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error writing cached feed: " + file, e);
+            failed = true;
+          }
+        }
+        index += recorded.size();
+        currentItr = page.iterator();
+      }
+      return currentItr.next();
+    }
+
+    /**
+     * Replaces any previously cached copy of the feed with the one just
+     * written, unless writing it failed.
+     */
+    private void finish() {
+      if (failed) {
+        deleteDirectory(partial);
+        return;
+      }
+      deleteDirectory(directory);
+      if (!partial.renameTo(directory)) {
+        LOGGER.log(Level.WARNING, "Unable to move cached feed to: "
+            + directory);
+      }
+    }
+  }
+
+  /**
+   * Writes the given entries to the given file as an Atom feed document.
+   */
+  private static void writePage(List<BaseContentEntry<?>> entries, File file,
+      SitesService sitesService) throws IOException {
+    ContentFeed feed = new ContentFeed();
+    feed.getEntries().addAll(entries);
+    Writer out = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(file), "UTF-8"));
+    try {
+      XmlWriter xmlWriter = new XmlWriter(out, "UTF-8");
+      feed.generateAtom(xmlWriter, sitesService.getExtensionProfile());
+      xmlWriter.flush();
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns the entries in the Atom feed document in the given file.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<BaseContentEntry<?>> readPage(File file,
+      SitesService sitesService) throws IOException, ServiceException {
+    ContentFeed feed = new ContentFeed();
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      feed.parseAtom(sitesService.getExtensionProfile(), in);
+    } finally {
+      in.close();
+    }
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : feed.getEntries()) {
+      BaseContentEntry<?> adaptedEntry =
+          (BaseContentEntry<?>) entry.getAdaptedEntry();
+      if (adaptedEntry == null) {
+        entries.add(entry);
+      } else {
+        entries.add(adaptedEntry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Deletes the given directory and the files in it, if it exists.
+   */
+  private static void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+import static com.google.sites.liberation.util.EntryUtils.getParentId;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Works out which pages have to be exported again, and which attachments
+ * downloaded again, after some entries of a site have changed since a
+ * previous export.
+ *
+ * <p>A changed page is exported along with its parent and siblings, whose
+ * subpage links may show it, and its children, whose ancestor links show its
+ * title. If its title has changed, its whole subtree is exported again, since
+ * every page beneath it shows its title. If the page has been moved or 
+ * renamed, its whole subtree is exported again, attachments included, as are
+ * its old parent and siblings, and the folder it was exported to before is
+ * to be removed. If a top level page is added, moved, renamed or retitled,
+ * every page is exported again, since every page's side bar lists the top
+ * level pages. Any other changed entry causes the page it belongs to to be
+ * exported again.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class ChangeSet {
+
+  private final ExportManifest previous;
+  private final EntryStore entryStore;
+  private final Set<String> pageIds;
+  private final Set<String> changedPageIds;
+  private final Set<String> attachmentIds;
+  private final Set<String> movedPaths;
+  private boolean allPagesAdded;
+
+  /**
+   * Creates a new empty ChangeSet against the given manifest of the previous
+   * export. The given entry store must already contain every current entry.
+   */
+  ChangeSet(ExportManifest previous, EntryStore entryStore) {
+    this.previous = checkNotNull(previous);
+    this.entryStore = checkNotNull(entryStore);
+    pageIds = Sets.newHashSet();
+    changedPageIds = Sets.newHashSet();
+    attachmentIds = Sets.newHashSet();
+    movedPaths = Sets.newHashSet();
+  }
+
+  /**
+   * Adds the given entry, which is new or has changed since the previous
+   * export.
+   */
+  void addChangedEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    if (isPage(entry)) {
+      BasePageEntry<?> page = (BasePageEntry<?>) entry;
+      ExportManifest.Record old = previous.getRecord(page.getId());
+      addPage(page);
+      changedPageIds.add(page.getId());
+      addParentAndSiblings(page);
+      for (BaseContentEntry<?> child : entryStore.getChildren(page.getId())) {
+        if (isPage(child)) {
+          addPage((BasePageEntry<?>) child);
+        }
+      }
+      if (old != null && hasMoved(old, page)) {
+        addMovedPage(page);
+        addOldParentAndSiblings(old);
+        String oldPath = getPreviousPath(old);
+        if (oldPath != null) {
+          movedPaths.add(oldPath);
+        }
+      } else if (old != null 
+          && !Objects.equal(old.getTitle(), getTitle(page))) {
+        addSubtree(page);
+      }
+      if (isSideBarChanged(old, page)) {
+        addAllPages();
+      }
+    } else {
+      if (getType(entry) == ATTACHMENT) {
+        attachmentIds.add(entry.getId());
+      }
+      BasePageEntry<?> parent = entryStore.getParent(entry.getId());
+      if (parent != null) {
+        addPage(parent);
+      }
+    }
+  }
+
+  /**
+   * Returns the ids of the pages that have to be exported again.
+   */
+  Set<String> getPageIds() {
+    return pageIds;
+  }
+
+  /**
+   * Returns the ids of the pages that have themselves changed or moved, and 
+   * so need their revisions exported again.
+   */
+  Set<String> getChangedPageIds() {
+    return changedPageIds;
+  }
+
+  /**
+   * Returns the ids of the attachments that have to be downloaded again.
+   */
+  Set<String> getAttachmentIds() {
+    return attachmentIds;
+  }
+
+  /**
+   * Returns the paths, relative to the root folder, of the folders that pages
+   * which have since moved or been renamed were exported to before.
+   */
+  Set<String> getMovedPaths() {
+    return movedPaths;
+  }
+
+  private void addPage(BasePageEntry<?> page) {
+    pageIds.add(page.getId());
+  }
+
+  private void addParentAndSiblings(BasePageEntry<?> page) {
+    BasePageEntry<?> parent = entryStore.getParent(page.getId());
+    if (parent == null) {
+      for (BasePageEntry<?> sibling : entryStore.getTopLevelEntries()) {
+        addPage(sibling);
+      }
+    } else {
+      addPage(parent);
+      for (BaseContentEntry<?> sibling :
+          entryStore.getChildren(parent.getId())) {
+        if (isPage(sibling)) {
+          addPage((BasePageEntry<?>) sibling);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the page the given entry, as of the previous export, belonged to and
+   * that page's current subpages. Nothing is added if the entry was a top
+   * level page, since then every page is added anyway.
+   */
+  private void addOldParentAndSiblings(ExportManifest.Record old) {
+    String parentId = old.getParentId();
+    if (parentId != null) {
+      BaseContentEntry<?> parent = entryStore.getEntry(parentId);
+      if (parent != null && isPage(parent)) {
+        addPage((BasePageEntry<?>) parent);
+        for (BaseContentEntry<?> sibling : entryStore.getChildren(parentId)) {
+          if (isPage(sibling)) {
+            addPage((BasePageEntry<?>) sibling);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds every page in the entry store.
+   */
+  private void addAllPages() {
+    if (!allPagesAdded) {
+      allPagesAdded = true;
+      for (BasePageEntry<?> page : entryStore.getTopLevelEntries()) {
+        addSubtree(page);
+      }
+    }
+  }
+
+  /**
+   * Adds the given page and every page beneath it.
+   */
+  private void addSubtree(BasePageEntry<?> page) {
+    addPage(page);
+    for (BaseContentEntry<?> child : entryStore.getChildren(page.getId())) {
+      if (isPage(child)) {
+        addSubtree((BasePageEntry<?>) child);
+      }
+    }
+  }
+
+  /**
+   * Adds the given page, which now lives at a different path, and everything
+   * beneath it.
+   */
+  private void addMovedPage(BasePageEntry<?> page) {
+    addPage(page);
+    changedPageIds.add(page.getId());
+    Collection<BaseContentEntry<?>> children =
+        entryStore.getChildren(page.getId());
+    for (BaseContentEntry<?> child : children) {
+      if (isPage(child)) {
+        addMovedPage((BasePageEntry<?>) child);
+      } else if (getType(child) == ATTACHMENT) {
+        attachmentIds.add(child.getId());
+      }
+    }
+  }
+
+  /**
+   * Returns whether the side bar, which lists the top level pages by title,
+   * has changed because the given page was added, moved or retitled.
+   */
+  private boolean isSideBarChanged(ExportManifest.Record old, 
+      BasePageEntry<?> page) {
+    boolean wasTopLevel = old != null && old.getPageName() != null
+        && old.getParentId() == null;
+    boolean isTopLevel = getParentId(page) == null;
+    if (!wasTopLevel && !isTopLevel) {
+      return false;
+    }
+    return wasTopLevel != isTopLevel || hasMoved(old, page)
+        || !Objects.equal(old.getTitle(), getTitle(page));
+  }
+
+  /**
+   * Returns the path the given page was exported to before, made up of the
+   * page names of its ancestors and itself as of the previous export, or
+   * {@code null} if it wasn't a page or one of its ancestors is missing.
+   */
+  private String getPreviousPath(ExportManifest.Record old) {
+    String path = null;
+    Set<String> seen = Sets.newHashSet();
+    ExportManifest.Record record = old;
+    while (record != null && seen.add(record.getId())) {
+      String pageName = record.getPageName();
+      if (pageName == null) {
+        return null;
+      }
+      path = (path == null) ? pageName : pageName + '/' + path;
+      String parentId = record.getParentId();
+      if (parentId == null) {
+        return path;
+      }
+      record = previous.getRecord(parentId);
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the given page has a different parent or page name than
+   * it had in the previous export, or wasn't a page then.
+   */
+  private boolean hasMoved(ExportManifest.Record old, BasePageEntry<?> page) {
+    if (old.getPageName() == null) {
+      return true;
+    }
+    return !Objects.equal(old.getParentId(), getParentId(page))
+        || !old.getPageName().equals(getPageName(page));
+  }
+
+  private String getTitle(BaseContentEntry<?> entry) {
+    return (entry.getTitle() == null) ? null
+        : entry.getTitle().getPlainText();
+  }
+
+  private String getPageName(BasePageEntry<?> page) {
+    return (page.getPageName() == null) ? null
+        : page.getPageName().getValue();
+  }
+}
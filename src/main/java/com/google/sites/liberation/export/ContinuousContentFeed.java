@@ -21,18 +21,27 @@ import static com.google.gdata.util.common.base.Preconditions.checkArgument;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.gdata.client.Query;
 import com.google.gdata.client.sites.ContentQuery;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.base.Nullable;
 import com.google.gdata.util.common.base.Pair;
 import com.google.sites.liberation.util.EntryProvider;
+import com.google.sites.liberation.util.ProgressListener;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +54,21 @@ import java.util.logging.Logger;
  * <p>This class can produce unexpected results if used on a feed other than the
  * content feed for a Google Site.</p>
  * 
+ * <p>If an {@code ExecutorService} is provided, each iterator keeps several
+ * consecutive windows of the feed in flight at once and hands the entries 
+ * back in feed order, so that the round trip latency of one request overlaps
+ * with the consumption of the previous ones. The first window is fetched on
+ * the consuming thread, and more are only put in flight, twice as many each
+ * time, once a full window has come back, so that a feed which fits in one
+ * window costs no more requests than that window. A window that comes back
+ * short ends the feed.</p>
+ * 
+ * <p>The size of each window is chosen by a {@link PageSizeController}, which
+ * is told how long every window took and whether it had to be split up.</p>
+ * 
+ * <p>If an {@code updatedMin} time is given, only the entries updated since 
+ * then are returned.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
@@ -55,7 +79,11 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
   private final EntryProvider entryProvider;
   private final URL feedUrl;
   private final SitesService sitesService;
-  private final int resultsPerRequest;
+  private final DateTime updatedMin;
+  private final PageSizeController pageSize;
+  private final ExecutorService executor;
+  private final int windowsInFlight;
+  private final ProgressListener progressListener;
   
   /**
    * Creates a new instance of {@code ContinuousContentFeed} for the given
@@ -66,11 +94,45 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
    */
   ContinuousContentFeed(URL feedUrl, EntryProvider entryProvider,
       SitesService sitesService, int resultsPerRequest) {
+    this(feedUrl, entryProvider, sitesService, resultsPerRequest, null, 1);
+  }
+  
+  /**
+   * Creates a new instance of {@code ContinuousContentFeed} which fetches up 
+   * to {@code windowsInFlight} windows of {@code resultsPerRequest} entries
+   * ahead of the consumer, using the given executor.
+   */
+  ContinuousContentFeed(URL feedUrl, EntryProvider entryProvider,
+      SitesService sitesService, int resultsPerRequest, 
+      @Nullable ExecutorService executor, int windowsInFlight) {
+    this(feedUrl, entryProvider, sitesService, null,
+        PageSizeController.fixed(resultsPerRequest), executor, windowsInFlight,
+        null);
+  }
+  
+  /**
+   * Creates a new instance of {@code ContinuousContentFeed} which fetches up 
+   * to {@code windowsInFlight} windows ahead of the consumer, using the given 
+   * executor, with window sizes chosen by {@code pageSize}. If 
+   * {@code executor} is {@code null}, every window is fetched on the consuming
+   * thread, when it is needed. If {@code updatedMin} is not {@code null}, 
+   * only entries updated since then are returned. If {@code progressListener}
+   * is not {@code null}, it is told whenever the page size changes.
+   */
+  ContinuousContentFeed(URL feedUrl, EntryProvider entryProvider,
+      SitesService sitesService, @Nullable DateTime updatedMin,
+      PageSizeController pageSize, 
+      @Nullable ExecutorService executor, int windowsInFlight,
+      @Nullable ProgressListener progressListener) {
     this.entryProvider = checkNotNull(entryProvider);
     this.feedUrl = checkNotNull(feedUrl);
     this.sitesService = checkNotNull(sitesService);
-    checkArgument(resultsPerRequest > 0);
-    this.resultsPerRequest = resultsPerRequest;
+    this.updatedMin = updatedMin;
+    this.pageSize = checkNotNull(pageSize);
+    checkArgument(windowsInFlight > 0);
+    this.executor = executor;
+    this.windowsInFlight = windowsInFlight;
+    this.progressListener = progressListener;
   }
   
   /**
@@ -96,6 +158,12 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
 
     Iterator<BaseContentEntry<?>> currentItr;
     int index;
+    int reportedSize;
+    int windowLimit;
+    boolean done;
+    final LinkedList<Future<Pair<Iterator<BaseContentEntry<?>>, Integer>>> 
+        windows;
+    final LinkedList<Integer> windowSizes;
 
     /**
      * Constructs a new iterator for this {@code ContinuousContentFeed}.
@@ -103,6 +171,10 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
     FeedIterator() {
       currentItr = Iterators.emptyIterator();
       index = 1;
+      reportedSize = pageSize.getPageSize();
+      windowLimit = 1;
+      windows = Lists.newLinkedList();
+      windowSizes = Lists.newLinkedList();
     }
 
     /**
@@ -112,17 +184,120 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
     @Override
     public BaseContentEntry<?> computeNext() {
       if (!currentItr.hasNext()) {
-        Pair<Iterator<BaseContentEntry<?>>, Integer> pair = 
-            getEntries(index, resultsPerRequest);
-        currentItr = pair.getFirst();
-        index += pair.getSecond();
+        currentItr = nextWindow();
         if (!currentItr.hasNext()) {
+          cancelWindows();
           return endOfData();
         }
       }
       return currentItr.next();
     }
     
+    /**
+     * Returns the entries in the next window of the feed. If this feed has an
+     * executor and a full window has come back, the following windows are 
+     * scheduled before waiting on the current one.
+     */
+    private Iterator<BaseContentEntry<?>> nextWindow() {
+      if (done) {
+        return Iterators.emptyIterator();
+      }
+      if (executor == null || windowLimit == 1) {
+        int num = nextPageSize();
+        Pair<Iterator<BaseContentEntry<?>>, Integer> pair = 
+            getWindow(index, num);
+        index += pair.getSecond();
+        recordWindow(pair.getSecond(), num);
+        return pair.getFirst();
+      }
+      while (windows.size() < windowLimit) {
+        final int start = index;
+        final int num = nextPageSize();
+        windows.add(executor.submit(
+            new Callable<Pair<Iterator<BaseContentEntry<?>>, Integer>>() {
+              @Override
+              public Pair<Iterator<BaseContentEntry<?>>, Integer> call() {
+                return getWindow(start, num);
+              }
+            }));
+        windowSizes.add(num);
+        index += num;
+      }
+      try {
+        Pair<Iterator<BaseContentEntry<?>>, Integer> pair = 
+            windows.removeFirst().get();
+        recordWindow(pair.getSecond(), windowSizes.removeFirst());
+        return pair.getFirst();
+      } catch (InterruptedException e) {
+        LOGGER.log(Level.WARNING, "Interrupted while retrieving entries.", e);
+        Thread.currentThread().interrupt();
+        return Iterators.emptyIterator();
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+    
+    /**
+     * Records that a window of {@code num} entries returned {@code returned}
+     * of them. A full window doubles the number of windows kept in flight, 
+     * and a short one means the end of the feed has been reached.
+     */
+    private void recordWindow(int returned, int num) {
+      if (returned >= num) {
+        windowLimit = Math.min(windowLimit * 2, windowsInFlight);
+      } else {
+        done = true;
+      }
+    }
+    
+    /**
+     * Returns the number of entries to request in the next window, reporting
+     * any change in the page size to the progress listener. This is only ever
+     * called on the consuming thread.
+     */
+    private int nextPageSize() {
+      int size = pageSize.getPageSize();
+      if (size != reportedSize && progressListener != null) {
+        progressListener.setStatus("Requesting " + size 
+            + " entries per query.");
+      }
+      reportedSize = size;
+      return size;
+    }
+    
+    /**
+     * Cancels any windows that are still in flight once the end of the feed 
+     * has been reached.
+     */
+    private void cancelWindows() {
+      for (Future<?> window : windows) {
+        window.cancel(true);
+      }
+      windows.clear();
+      windowSizes.clear();
+    }
+    
+    /**
+     * Returns the same as {@link #getEntries}, and reports how long the 
+     * window took, or that it failed, to the page size controller.
+     */
+    private Pair<Iterator<BaseContentEntry<?>>, Integer>
+        getWindow(int start, int num) {
+      long startTime = System.currentTimeMillis();
+      try {
+        Pair<Iterator<BaseContentEntry<?>>, Integer> pair = 
+            requestEntries(start, num);
+        pageSize.recordSuccess(num, System.currentTimeMillis() - startTime);
+        return pair;
+      } catch (IOException e) {
+        pageSize.recordFailure();
+        return catchException(e, start, num);
+      } catch (ServiceException e) {
+        pageSize.recordFailure();
+        return catchException(e, start, num);
+      }
+    }
+    
     /**
      * Returns an iterator containing the valid entries with indices between
      * {@code start} and {@code start}+{@code num}-1 and the number of entries
@@ -130,19 +305,8 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
      */
     private Pair<Iterator<BaseContentEntry<?>>, Integer>
         getEntries(int start, int num) {
-      Query query = new ContentQuery(feedUrl);
       try {
-        int numReturned = 0;
-        Iterator<BaseContentEntry<?>> itr = Iterators.emptyIterator();
-        List<BaseContentEntry<?>> entries;
-        do {
-          query.setStartIndex(start + numReturned);
-          query.setMaxResults(num - numReturned);
-          entries = entryProvider.getEntries(query, sitesService);
-          numReturned += entries.size();
-          itr = Iterators.concat(itr, entries.iterator());
-        } while (numReturned < num && entries.size() > 0);
-        return Pair.of(itr, numReturned);
+        return requestEntries(start, num);
       } catch (IOException e) {
         return catchException(e, start, num);
       } catch (ServiceException e) {
@@ -150,6 +314,31 @@ final class ContinuousContentFeed implements Iterable<BaseContentEntry<?>> {
       }
     }
     
+    /**
+     * Requests the entries with indices between {@code start} and 
+     * {@code start}+{@code num}-1, making more than one request if the server
+     * returns fewer entries than were asked for.
+     */
+    private Pair<Iterator<BaseContentEntry<?>>, Integer>
+        requestEntries(int start, int num) 
+        throws IOException, ServiceException {
+      Query query = new ContentQuery(feedUrl);
+      if (updatedMin != null) {
+        query.setUpdatedMin(updatedMin);
+      }
+      int numReturned = 0;
+      Iterator<BaseContentEntry<?>> itr = Iterators.emptyIterator();
+      List<BaseContentEntry<?>> entries;
+      do {
+        query.setStartIndex(start + numReturned);
+        query.setMaxResults(num - numReturned);
+        entries = entryProvider.getEntries(query, sitesService);
+        numReturned += entries.size();
+        itr = Iterators.concat(itr, entries.iterator());
+      } while (numReturned < num && entries.size() > 0);
+      return Pair.of(itr, numReturned);
+    }
+    
     private Pair<Iterator<BaseContentEntry<?>>, Integer> 
         catchException(Exception e, int start, int num) {
       String message = "Error retrieving response from query.";
@@ -0,0 +1,619 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.ContentEntry;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.base.Nullable;
+import com.google.gdata.util.common.xml.XmlWriter;
+import com.google.sites.liberation.util.EntryType;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An implementation of {@link EntryStore} for sites too large to keep in
+ * memory.
+ *
+ * <p>Only an index of each entry's id, parent, type, title and page name is
+ * kept in memory. The entries themselves are appended to a segment file as
+ * Atom, and parsed back from it when they are retrieved, with the most
+ * recently retrieved entries cached. The segment file is deleted when the
+ * store is closed, unless the store is given an index file, in which case
+ * the segment file is kept and the index written to the index file, so that
+ * the entries can be read back by a later store. Only the copy of each entry
+ * last added or replaced is kept that way, not copies passed to
+ * {@link #updateEntry}, and the segment file is compacted on close once
+ * most of it is taken up by other copies.</p>
+ *
+ * <p>The index and cache are guarded by the store's lock, but entries are
+ * read from the segment file and parsed outside it, so that the threads
+ * exporting pages don't wait on each other's reads.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class DiskEntryStore implements EntryStore, Closeable {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      DiskEntryStore.class.getCanonicalName());
+
+  /** Number of parsed entries to keep in memory. */
+  private static final int CACHE_SIZE = 64;
+
+  private final File file;
+  private final File indexFile;
+  private final FileChannel channel;
+  private final ExtensionProfile extensionProfile;
+  private final Map<String, IndexEntry> index;
+  private final Set<String> topLevelIds;
+  private final Multimap<String, String> children;
+  private final Map<String, BaseContentEntry<?>> cache;
+  private final PathIndex pathIndex;
+  private long length;
+
+  /**
+   * The in-memory record of a stored entry. The saved offset and length are
+   * those of the copy to keep once the store is closed.
+   */
+  private static final class IndexEntry {
+    final long offset;
+    final int length;
+    final long savedOffset;
+    final int savedLength;
+    final String parentId;
+    final EntryType type;
+    final boolean page;
+    final String title;
+    final String pageName;
+
+    IndexEntry(long offset, int length, long savedOffset, int savedLength,
+        BaseContentEntry<?> entry) {
+      this(offset, length, savedOffset, savedLength,
+          EntryUtils.getParentId(entry), getType(entry), isPage(entry),
+          (entry.getTitle() == null) ? null
+              : entry.getTitle().getPlainText(),
+          (isPage(entry) && ((BasePageEntry<?>) entry).getPageName() != null)
+              ? ((BasePageEntry<?>) entry).getPageName().getValue() : null);
+    }
+
+    IndexEntry(long offset, int length, long savedOffset, int savedLength,
+        String parentId, EntryType type, boolean page, String title,
+        String pageName) {
+      this.offset = offset;
+      this.length = length;
+      this.savedOffset = savedOffset;
+      this.savedLength = savedLength;
+      this.parentId = parentId;
+      this.type = type;
+      this.page = page;
+      this.title = title;
+      this.pageName = pageName;
+    }
+  }
+
+  /**
+   * Creates a new DiskEntryStore which keeps entries in the given file,
+   * using the given extension profile to write and parse them. The file is
+   * deleted when the store is closed.
+   */
+  DiskEntryStore(File file, ExtensionProfile extensionProfile)
+      throws IOException {
+    this(file, null, extensionProfile);
+  }
+
+  /**
+   * Creates a new DiskEntryStore which keeps entries in the given file,
+   * using the given extension profile to write and parse them. If an index
+   * file is given, the store starts with the entries it lists, if it exists,
+   * and writes its index there when it is closed rather than deleting the
+   * entries.
+   */
+  DiskEntryStore(File file, @Nullable File indexFile,
+      ExtensionProfile extensionProfile) throws IOException {
+    this.file = checkNotNull(file);
+    this.indexFile = indexFile;
+    this.extensionProfile = checkNotNull(extensionProfile);
+    channel = new RandomAccessFile(file, "rw").getChannel();
+    index = Maps.newLinkedHashMap();
+    topLevelIds = Sets.newLinkedHashSet();
+    children = LinkedListMultimap.create();
+    pathIndex = new PathIndex();
+    cache = new LinkedHashMap<String, BaseContentEntry<?>>(
+        CACHE_SIZE, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String, BaseContentEntry<?>> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+    if (indexFile != null && indexFile.isFile()) {
+      try {
+        readIndex();
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      length = channel.size();
+    } else {
+      channel.truncate(0);
+    }
+  }
+
+  @Override
+  public synchronized void addEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    String id = entry.getId();
+    if (id != null && index.get(id) == null) {
+      long offset = length;
+      int written;
+      try {
+        written = write(entry);
+      } catch (IOException e) {
+        LOGGER.log(Level.SEVERE, "Unable to store entry: " + id, e);
+        return;
+      }
+      IndexEntry indexEntry = 
+          new IndexEntry(offset, written, offset, written, entry);
+      index.put(id, indexEntry);
+      link(id, indexEntry);
+    } else {
+      LOGGER.log(Level.WARNING,
+          "All entries should have a unique non-null id!");
+    }
+  }
+
+  /**
+   * Appends the given entry to the segment file again, and reads it from
+   * there from now on. The space taken by the old copy isn't reclaimed until
+   * the store is closed, and the old copy is the one kept then.
+   */
+  @Override
+  public synchronized void updateEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    String id = entry.getId();
+    IndexEntry oldEntry = (id == null) ? null : index.get(id);
+    if (oldEntry == null) {
+      LOGGER.log(Level.WARNING, "Only stored entries can be updated!");
+      return;
+    }
+    long offset = length;
+    int written;
+    try {
+      written = write(entry);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Unable to store entry: " + id, e);
+      return;
+    }
+    index.put(id, new IndexEntry(offset, written, oldEntry.savedOffset,
+        oldEntry.savedLength, entry));
+    cache.put(id, entry);
+  }
+
+  /**
+   * Stores the given entry in place of the stored entry with the same id,
+   * which may have had a different parent or page name, or adds it if there
+   * is none. Unlike an updated entry, the given entry is the copy kept once
+   * the store is closed.
+   */
+  synchronized void replaceEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    String id = entry.getId();
+    IndexEntry oldEntry = (id == null) ? null : index.get(id);
+    if (oldEntry == null) {
+      addEntry(entry);
+      return;
+    }
+    long offset = length;
+    int written;
+    try {
+      written = write(entry);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Unable to store entry: " + id, e);
+      return;
+    }
+    IndexEntry indexEntry = 
+        new IndexEntry(offset, written, offset, written, entry);
+    index.put(id, indexEntry);
+    if (Objects.equal(oldEntry.parentId, indexEntry.parentId)) {
+      if (indexEntry.page) {
+        pathIndex.addPage(id, indexEntry.parentId, indexEntry.pageName);
+      }
+    } else {
+      if (oldEntry.parentId == null) {
+        topLevelIds.remove(id);
+      } else {
+        children.remove(oldEntry.parentId, id);
+      }
+      link(id, indexEntry);
+    }
+    cache.put(id, entry);
+  }
+
+  @Override
+  public Collection<BaseContentEntry<?>> getChildren(String id) {
+    checkNotNull(id);
+    List<String> childIds;
+    synchronized (this) {
+      childIds = Lists.newArrayList(children.get(id));
+    }
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    for (String childId : childIds) {
+      BaseContentEntry<?> child = getEntry(childId);
+      if (child != null) {
+        entries.add(child);
+      }
+    }
+    return entries;
+  }
+
+  @Override
+  public BaseContentEntry<?> getEntry(String id) {
+    checkNotNull(id);
+    IndexEntry indexEntry;
+    synchronized (this) {
+      BaseContentEntry<?> entry = cache.get(id);
+      if (entry != null) {
+        return entry;
+      }
+      indexEntry = index.get(id);
+    }
+    if (indexEntry == null) {
+      return null;
+    }
+    BaseContentEntry<?> entry;
+    try {
+      entry = read(indexEntry);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Unable to read entry: " + id, e);
+      return null;
+    } catch (ServiceException e) {
+      LOGGER.log(Level.SEVERE, "Unable to parse entry: " + id, e);
+      return null;
+    }
+    synchronized (this) {
+      // Another thread may have read the same entry in the meantime, in
+      // which case every caller should get the same copy.
+      BaseContentEntry<?> cached = cache.get(id);
+      if (cached != null) {
+        return cached;
+      }
+      cache.put(id, entry);
+    }
+    return entry;
+  }
+
+  @Override
+  public BasePageEntry<?> getParent(String id) {
+    checkNotNull(id);
+    String parentId;
+    synchronized (this) {
+      IndexEntry indexEntry = index.get(id);
+      if (indexEntry == null || indexEntry.parentId == null) {
+        return null;
+      }
+      parentId = indexEntry.parentId;
+    }
+    return (BasePageEntry<?>) getEntry(parentId);
+  }
+
+  @Override
+  public Collection<BasePageEntry<?>> getTopLevelEntries() {
+    List<String> ids;
+    synchronized (this) {
+      ids = Lists.newArrayList(topLevelIds);
+    }
+    List<BasePageEntry<?>> entries = Lists.newArrayList();
+    for (String id : ids) {
+      BasePageEntry<?> entry = (BasePageEntry<?>) getEntry(id);
+      if (entry != null) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  @Override
+  public List<BasePageEntry<?>> getAncestors(String id) {
+    checkNotNull(id);
+    List<BasePageEntry<?>> ancestors = Lists.newArrayList();
+    for (String ancestorId : pathIndex.getAncestorIds(id)) {
+      BasePageEntry<?> ancestor = (BasePageEntry<?>) getEntry(ancestorId);
+      if (ancestor != null) {
+        ancestors.add(ancestor);
+      }
+    }
+    return ancestors;
+  }
+
+  @Override
+  public int getDepth(String id) {
+    checkNotNull(id);
+    return pathIndex.getDepth(id);
+  }
+
+  @Override
+  public String getPath(String id) {
+    checkNotNull(id);
+    return pathIndex.getPath(id);
+  }
+
+  @Override
+  public String getPathToRoot(String id) {
+    checkNotNull(id);
+    return pathIndex.getPathToRoot(id);
+  }
+
+  /**
+   * Returns the title of the entry with the given id without reading the
+   * entry itself, or {@code null} if there is no such entry.
+   */
+  synchronized String getTitle(String id) {
+    IndexEntry indexEntry = index.get(checkNotNull(id));
+    return (indexEntry == null) ? null : indexEntry.title;
+  }
+
+  /**
+   * Returns the page name of the entry with the given id without reading the
+   * entry itself, or {@code null} if there is no such page.
+   */
+  synchronized String getPageName(String id) {
+    IndexEntry indexEntry = index.get(checkNotNull(id));
+    return (indexEntry == null) ? null : indexEntry.pageName;
+  }
+
+  /**
+   * Returns the type of the entry with the given id without reading the
+   * entry itself, or {@code null} if there is no such entry.
+   */
+  synchronized EntryType getEntryType(String id) {
+    IndexEntry indexEntry = index.get(checkNotNull(id));
+    return (indexEntry == null) ? null : indexEntry.type;
+  }
+
+  /**
+   * Closes and deletes the segment file, or if the store has an index file,
+   * compacts the segment file if need be and writes the index.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    cache.clear();
+    if (indexFile == null) {
+      channel.close();
+      file.delete();
+      return;
+    }
+    long saved = 0;
+    for (IndexEntry indexEntry : index.values()) {
+      saved += indexEntry.savedLength;
+    }
+    try {
+      if (saved * 2 < length) {
+        compact();
+      }
+    } finally {
+      channel.close();
+    }
+    writeIndex();
+  }
+
+  /**
+   * Adds the entry with the given id to the parent, top level and path
+   * indexes.
+   */
+  private void link(String id, IndexEntry indexEntry) {
+    if (indexEntry.page) {
+      pathIndex.addPage(id, indexEntry.parentId, indexEntry.pageName);
+    }
+    if (indexEntry.parentId == null) {
+      if (indexEntry.page) {
+        topLevelIds.add(id);
+      } else {
+        LOGGER.log(Level.WARNING, "All non-page entries must have a parent!");
+      }
+    } else {
+      children.put(indexEntry.parentId, id);
+    }
+  }
+
+  /**
+   * Copies the saved copy of each entry to a new segment file, which then
+   * replaces the old one. The old index file is removed first, so that the
+   * old index is never read with the new segment file.
+   */
+  private void compact() throws IOException {
+    File compacted = new File(file.getPath() + ".tmp");
+    FileChannel out = new RandomAccessFile(compacted, "rw").getChannel();
+    try {
+      out.truncate(0);
+      long position = 0;
+      for (Map.Entry<String, IndexEntry> mapEntry : index.entrySet()) {
+        IndexEntry old = mapEntry.getValue();
+        long copied = 0;
+        while (copied < old.savedLength) {
+          copied += channel.transferTo(old.savedOffset + copied,
+              old.savedLength - copied, out);
+        }
+        mapEntry.setValue(new IndexEntry(position, old.savedLength, position,
+            old.savedLength, old.parentId, old.type, old.page, old.title,
+            old.pageName));
+        position += old.savedLength;
+      }
+    } finally {
+      out.close();
+    }
+    channel.close();
+    if (indexFile.exists() && !indexFile.delete()) {
+      throw new IOException("Unable to delete: " + indexFile);
+    }
+    rename(compacted, file);
+  }
+
+  /**
+   * Reads the index written by a previous store on the same segment file.
+   */
+  private void readIndex() throws IOException {
+    long size = channel.size();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(indexFile)));
+    try {
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String id = in.readUTF();
+        long offset = in.readLong();
+        int entryLength = in.readInt();
+        String parentId = readString(in);
+        EntryType type;
+        try {
+          type = EntryType.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Invalid entry type in: " + indexFile);
+        }
+        boolean page = in.readBoolean();
+        String title = readString(in);
+        String pageName = readString(in);
+        if (offset < 0 || entryLength < 0 || offset + entryLength > size) {
+          throw new IOException("Index doesn't match segment file: " 
+              + indexFile);
+        }
+        IndexEntry indexEntry = new IndexEntry(offset, entryLength, offset,
+            entryLength, parentId, type, page, title, pageName);
+        index.put(id, indexEntry);
+        link(id, indexEntry);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the index of the saved copy of each entry next to the index file,
+   * and then replaces the index file with it.
+   */
+  private void writeIndex() throws IOException {
+    File temp = new File(indexFile.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(temp)));
+    try {
+      out.writeInt(index.size());
+      for (Map.Entry<String, IndexEntry> mapEntry : index.entrySet()) {
+        IndexEntry indexEntry = mapEntry.getValue();
+        out.writeUTF(mapEntry.getKey());
+        out.writeLong(indexEntry.savedOffset);
+        out.writeInt(indexEntry.savedLength);
+        writeString(out, indexEntry.parentId);
+        out.writeUTF(indexEntry.type.name());
+        out.writeBoolean(indexEntry.page);
+        writeString(out, indexEntry.title);
+        writeString(out, indexEntry.pageName);
+      }
+    } finally {
+      out.close();
+    }
+    rename(temp, indexFile);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeString(DataOutputStream out, String value)
+      throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static void rename(File from, File to) throws IOException {
+    if (!from.renameTo(to)) {
+      if (!to.delete() || !from.renameTo(to)) {
+        throw new IOException("Unable to rename " + from + " to " + to);
+      }
+    }
+  }
+
+  /**
+   * Appends the given entry to the segment file, and returns the number of
+   * bytes written.
+   */
+  private int write(BaseContentEntry<?> entry) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(bytes, "UTF-8");
+    XmlWriter xmlWriter = new XmlWriter(writer);
+    entry.generateAtom(xmlWriter, extensionProfile);
+    xmlWriter.flush();
+    writer.flush();
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    long offset = length;
+    while (buffer.hasRemaining()) {
+      length += channel.write(buffer, length);
+    }
+    return (int) (length - offset);
+  }
+
+  private BaseContentEntry<?> read(IndexEntry indexEntry)
+      throws IOException, ServiceException {
+    ByteBuffer buffer = ByteBuffer.allocate(indexEntry.length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, indexEntry.offset + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of entry store.");
+      }
+    }
+    ContentEntry entry = new ContentEntry();
+    entry.parseAtom(extensionProfile,
+        new ByteArrayInputStream(buffer.array()));
+    BaseContentEntry<?> adaptedEntry =
+        (BaseContentEntry<?>) entry.getAdaptedEntry();
+    return (adaptedEntry == null) ? entry : adaptedEntry;
+  }
+}
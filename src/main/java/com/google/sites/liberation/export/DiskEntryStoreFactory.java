@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.ExtensionProfile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides new DiskEntryStore's, each backed by its own temporary file.
+ * 
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class DiskEntryStoreFactory implements EntryStoreFactory {
+
+  private final ExtensionProfile extensionProfile;
+  
+  DiskEntryStoreFactory() {
+    extensionProfile = 
+        new SitesService("google-sites-liberation").getExtensionProfile();
+  }
+  
+  /**
+   * Returns a new DiskEntryStore.
+   */
+  public EntryStore newEntryStore() {
+    try {
+      File file = File.createTempFile("entries", ".segment");
+      file.deleteOnExit();
+      return new DiskEntryStore(file, extensionProfile);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to create entry store file.", e);
+    }
+  }
+}
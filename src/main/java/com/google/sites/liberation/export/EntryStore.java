@@ -20,6 +20,7 @@ import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Defines a data structure that can be used to store the
@@ -35,6 +36,13 @@ interface EntryStore {
    */
   void addEntry(BaseContentEntry<?> entry);
   
+  /**
+   * Replaces the stored entry with the same id as the given entry, such as
+   * once its content has been changed. The entry's parent and page name must
+   * be the same as those of the stored entry.
+   */
+  void updateEntry(BaseContentEntry<?> entry);
+  
   /**
    * Retrieves the entry with the given {@code id} or {@code null} if there is
    * no such entry.
@@ -58,4 +66,30 @@ interface EntryStore {
    * store.
    */
   Collection<BasePageEntry<?>> getTopLevelEntries();
+  
+  /**
+   * Returns the ancestors of the page with the given {@code id}, starting 
+   * with its top level ancestor and ending with its parent.
+   */
+  List<BasePageEntry<?>> getAncestors(String id);
+  
+  /**
+   * Returns the number of ancestors of the page with the given {@code id}.
+   */
+  int getDepth(String id);
+  
+  /**
+   * Returns the path of the page with the given {@code id} relative to the
+   * root of the site, made up of the page names of its ancestors and itself
+   * separated by '/', or {@code null} if the page or any of its ancestors is
+   * missing.
+   */
+  String getPath(String id);
+  
+  /**
+   * Returns the relative path from the folder of the page with the given 
+   * {@code id} to the root folder of the site, such as "../../" for a child
+   * of a top level page.
+   */
+  String getPathToRoot(String id);
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Records every entry of a site as of a given export, so that a later export
+ * only has to fetch and re-render what has changed since.
+ *
+ * <p>Only what is needed to tell whether an entry has changed, and whether
+ * a page has moved, is kept for each entry: its id, updated time, revision,
+ * parent, page name and title. The entries themselves are kept in the entry
+ * store of the export. The manifest is kept in the root directory of the
+ * export as a properties file, along with the time at which the entries were
+ * fetched.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class ExportManifest {
+
+  /** Name of the manifest file in the root directory of an export. */
+  static final String FILE_NAME = ".export-manifest";
+
+  private static final String FETCHED = "fetched";
+  private static final String ENTRIES = "entries";
+
+  private final DateTime fetched;
+  private final Map<String, Record> records;
+
+  /**
+   * What the manifest keeps of an entry.
+   */
+  static final class Record {
+    private final String id;
+    private final Long updated;
+    private final Integer revision;
+    private final String parentId;
+    private final String pageName;
+    private final String title;
+
+    Record(String id, Long updated, Integer revision, String parentId,
+        String pageName, String title) {
+      this.id = checkNotNull(id);
+      this.updated = updated;
+      this.revision = revision;
+      this.parentId = parentId;
+      this.pageName = pageName;
+      this.title = title;
+    }
+
+    String getId() {
+      return id;
+    }
+
+    String getParentId() {
+      return parentId;
+    }
+
+    /**
+     * Returns the entry's page name, or {@code null} if it isn't a page.
+     */
+    String getPageName() {
+      return pageName;
+    }
+
+    String getTitle() {
+      return title;
+    }
+  }
+
+  /**
+   * Creates a new empty ExportManifest for entries fetched at the given time.
+   */
+  ExportManifest(DateTime fetched) {
+    this.fetched = checkNotNull(fetched);
+    this.records = Maps.newLinkedHashMap();
+  }
+
+  /**
+   * Reads the manifest stored in the given file.
+   *
+   * @throws IOException if the file can't be read or isn't a valid manifest
+   */
+  static ExportManifest read(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    String fetched = properties.getProperty(FETCHED);
+    String count = properties.getProperty(ENTRIES);
+    if (fetched == null || count == null) {
+      throw new IOException("Invalid manifest: " + file);
+    }
+    try {
+      ExportManifest manifest = 
+          new ExportManifest(DateTime.parseDateTime(fetched));
+      int entries = Integer.parseInt(count);
+      for (int i = 0; i < entries; i++) {
+        String prefix = i + ".";
+        String id = properties.getProperty(prefix + "id");
+        if (id == null) {
+          throw new IOException("Invalid manifest: " + file);
+        }
+        String updated = properties.getProperty(prefix + "updated");
+        String revision = properties.getProperty(prefix + "revision");
+        manifest.addRecord(new Record(id, 
+            (updated == null) ? null : Long.valueOf(updated),
+            (revision == null) ? null : Integer.valueOf(revision),
+            properties.getProperty(prefix + "parent"),
+            properties.getProperty(prefix + "pageName"),
+            properties.getProperty(prefix + "title")));
+      }
+      return manifest;
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid manifest: " + file);
+    }
+  }
+
+  /**
+   * Returns the time at which the entries in this manifest were fetched.
+   */
+  DateTime getFetched() {
+    return fetched;
+  }
+
+  /**
+   * Returns the records of all of the entries in this manifest.
+   */
+  Collection<Record> getRecords() {
+    return records.values();
+  }
+
+  /**
+   * Returns the record of the entry with the given id, or {@code null} if
+   * there is none.
+   */
+  Record getRecord(String id) {
+    return records.get(id);
+  }
+
+  /**
+   * Adds the record of the given entry to this manifest, replacing any
+   * record with the same id. Entries without an id are ignored.
+   */
+  void addEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    if (entry.getId() != null) {
+      String pageName = null;
+      if (isPage(entry)) {
+        BasePageEntry<?> page = (BasePageEntry<?>) entry;
+        pageName = (page.getPageName() == null) ? null
+            : page.getPageName().getValue();
+      }
+      addRecord(new Record(entry.getId(), getUpdated(entry),
+          getRevision(entry), EntryUtils.getParentId(entry), pageName,
+          (entry.getTitle() == null) ? null 
+              : entry.getTitle().getPlainText()));
+    }
+  }
+
+  /**
+   * Adds the given record to this manifest, replacing any record with the
+   * same id.
+   */
+  void addRecord(Record record) {
+    records.put(checkNotNull(record).getId(), record);
+  }
+
+  /**
+   * Returns whether the given entry is new or has a different updated time or
+   * revision than the entry with the same id in this manifest.
+   */
+  boolean isChanged(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    Record previous = records.get(entry.getId());
+    if (previous == null) {
+      return true;
+    }
+    return !Objects.equal(previous.updated, getUpdated(entry))
+        || !Objects.equal(previous.revision, getRevision(entry));
+  }
+
+  /**
+   * Writes this manifest to the given file.
+   */
+  void write(File file) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(FETCHED, fetched.toString());
+    properties.setProperty(ENTRIES, Integer.toString(records.size()));
+    int i = 0;
+    for (Record record : records.values()) {
+      String prefix = i + ".";
+      properties.setProperty(prefix + "id", record.id);
+      setProperty(properties, prefix + "updated", record.updated);
+      setProperty(properties, prefix + "revision", record.revision);
+      setProperty(properties, prefix + "parent", record.parentId);
+      setProperty(properties, prefix + "pageName", record.pageName);
+      setProperty(properties, prefix + "title", record.title);
+      i++;
+    }
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void setProperty(Properties properties, String key, 
+      Object value) {
+    if (value != null) {
+      properties.setProperty(key, value.toString());
+    }
+  }
+
+  private static Long getUpdated(BaseContentEntry<?> entry) {
+    return (entry.getUpdated() == null) ? null
+        : entry.getUpdated().getValue();
+  }
+
+  private static Integer getRevision(BaseContentEntry<?> entry) {
+    return (entry.getRevision() == null) ? null
+        : entry.getRevision().getValue();
+  }
+}
@@ -17,8 +17,10 @@
 package com.google.sites.liberation.export;
 
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.inject.ImplementedBy;
+import com.google.sites.liberation.util.ProgressListener;
 
 import java.net.URL;
 
@@ -37,4 +39,22 @@ public interface FeedProvider {
    */
   Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
       SitesService sitesService);
+  
+  /**
+   * Returns an Iterable of the entries at the given feed URL, using the given
+   * SitesService, and reports changes to the number of entries requested per 
+   * query to the given ProgressListener.
+   */
+  Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
+      SitesService sitesService, ProgressListener progressListener);
+  
+  /**
+   * Returns an Iterable of the entries at the given feed URL that have been
+   * updated since {@code updatedMin}, using the given SitesService, and 
+   * reports changes to the number of entries requested per query to the given
+   * ProgressListener.
+   */
+  Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
+      SitesService sitesService, DateTime updatedMin,
+      ProgressListener progressListener);
 }
@@ -19,33 +19,80 @@ package com.google.sites.liberation.export;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.sites.liberation.util.DaemonThreadFactory;
 import com.google.sites.liberation.util.EntryProvider;
+import com.google.sites.liberation.util.ProgressListener;
 
 import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides an Iterable of BaseContentEntry's, for a given feed URL and 
  * SitesService. 
  * 
+ * <p>Windows of a feed after the first are fetched ahead of the consumer on
+ * a pool of {@code feedThreads} threads, which is shared by every feed this
+ * provider returns. {@link SiteExporterModule} binds a single instance, so
+ * that the site feed and the revision feeds share one pool. Idle threads in
+ * the pool exit after a few seconds.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class FeedProviderImpl implements FeedProvider {
 
   private static final int RESULTS_PER_REQUEST = 20;
+  private static final int MIN_RESULTS_PER_REQUEST = 5;
+  private static final int MAX_RESULTS_PER_REQUEST = 200;
+  private static final int WINDOWS_IN_FLIGHT = 4;
+  private static final long KEEP_ALIVE_SECONDS = 10;
   
   private final EntryProvider entryProvider;
+  private final ExecutorService executor;
   
+  /**
+   * Creates a new FeedProviderImpl which fetches feeds with the given 
+   * EntryProvider, using up to {@code feedThreads} threads to fetch windows
+   * ahead of the consumers.
+   */
   @Inject
-  FeedProviderImpl(EntryProvider entryProvider) {
+  FeedProviderImpl(EntryProvider entryProvider,
+      @Named(SiteExporterModule.FEED_THREADS) int feedThreads) {
     this.entryProvider = checkNotNull(entryProvider);
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(feedThreads, 
+        feedThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, 
+        new LinkedBlockingQueue<Runnable>(), 
+        new DaemonThreadFactory("feed-fetcher"));
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
   }
   
   @Override
   public Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
       SitesService sitesService) {
+    return getEntries(feedUrl, sitesService, null);
+  }
+  
+  @Override
+  public Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
+      SitesService sitesService, @Nullable ProgressListener progressListener) {
+    return getEntries(feedUrl, sitesService, null, progressListener);
+  }
+  
+  @Override
+  public Iterable<BaseContentEntry<?>> getEntries(URL feedUrl, 
+      SitesService sitesService, @Nullable DateTime updatedMin, 
+      @Nullable ProgressListener progressListener) {
+    PageSizeController pageSize = new PageSizeController(RESULTS_PER_REQUEST,
+        MIN_RESULTS_PER_REQUEST, MAX_RESULTS_PER_REQUEST);
     return new ContinuousContentFeed(feedUrl, entryProvider, sitesService,
-        RESULTS_PER_REQUEST);
+        updatedMin, pageSize, executor, WINDOWS_IN_FLIGHT, progressListener);
   }
 }
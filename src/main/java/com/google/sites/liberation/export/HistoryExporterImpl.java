@@ -17,7 +17,7 @@
 package com.google.sites.liberation.export;
 
 import com.google.gdata.data.sites.BaseContentEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
@@ -50,42 +50,38 @@ final class HistoryExporterImpl implements HistoryExporter {
   @Override
   public void exportHistory(List<BaseContentEntry<?>> revisions, Appendable out)
       throws IOException {
-    XmlElement history = new XmlElement("table");
-    history.setAttribute("width", "100%");
-    XmlElement header = new XmlElement("tr");
-    header.setAttribute("align", "left");
-    header.addElement(new XmlElement("th").addText("Version"));
-    header.addElement(new XmlElement("th").addText("Last Edited"));
-    header.addElement(new XmlElement("th").addText("Edited By"));
-    history.addElement(header);
+    XmlWriter writer = new XmlWriter(out);
+    writer.startElement("html");
+    writer.startElement("head").startElement("title");
+    writer.addText("Version history for " + 
+        revisions.get(0).getTitle().getPlainText());
+    writer.endElement().endElement();
+    writer.startElement("body");
+    writer.startElement("table").setAttribute("width", "100%");
+    writer.startElement("tr").setAttribute("align", "left");
+    writer.startElement("th").addText("Version").endElement();
+    writer.startElement("th").addText("Last Edited").endElement();
+    writer.startElement("th").addText("Edited By").endElement();
+    writer.endElement();
     int maxRevision = getMaxRevision(revisions);
     for (BaseContentEntry<?> revision : revisions) {
       int number = revision.getRevision().getValue();
-      XmlElement row = new XmlElement("tr");
+      writer.startElement("tr");
       String href = (number == maxRevision) ? "index.html" : 
           "_revisions/" + number + ".html";
-      XmlElement link = new XmlElement("a").addText("Version " + number)
-          .setAttribute("href", href);
-      row.addElement(new XmlElement("td").addElement(link));
+      writer.startElement("td").startElement("a").setAttribute("href", href)
+          .addText("Version " + number).endElement().endElement();
       DateTime jodaTime = new DateTime(revision.getUpdated().getValue());
-      XmlElement updated = new XmlElement("td").addText(
-          jodaTime.toString(formatter));
-      row.addElement(updated);
-      XmlElement author = new XmlElement("a");
+      writer.startElement("td").addText(jodaTime.toString(formatter))
+          .endElement();
       String name = revision.getAuthors().get(0).getName();
       String email = revision.getAuthors().get(0).getEmail();
-      row.addElement(new XmlElement("td").addElement(author.addText(name)
-          .setAttribute("href", "mailto:" + email)));
-      history.addElement(row);
+      writer.startElement("td").startElement("a")
+          .setAttribute("href", "mailto:" + email).addText(name)
+          .endElement().endElement();
+      writer.endElement();
     }
-    XmlElement html = new XmlElement("html");
-    XmlElement head = new XmlElement("head");
-    XmlElement title = new XmlElement("title");
-    title.addText("Version history for " + 
-        revisions.get(0).getTitle().getPlainText());
-    html.addElement(head.addElement(title));
-    html.addElement(new XmlElement("body").addElement(history));
-    html.appendTo(out);
+    writer.endElement().endElement().endElement();
   }
   
   private int getMaxRevision(List<BaseContentEntry<?>> revisions) {
@@ -25,9 +25,11 @@ import com.google.sites.liberation.util.EntryUtils;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -46,6 +48,7 @@ final class InMemoryEntryStore implements EntryStore {
   private final Map<String, BaseContentEntry<?>> entries;
   private final Set<BasePageEntry<?>> topLevelEntries;
   private final Multimap<String, BaseContentEntry<?>> children;
+  private final PathIndex pathIndex;
   
   /**
    * Creates a new InMemoryEntryStore which provides constant time storage 
@@ -55,6 +58,7 @@ final class InMemoryEntryStore implements EntryStore {
     entries = Maps.newHashMap();
     topLevelEntries = Sets.newHashSet();
     children = HashMultimap.create();
+    pathIndex = new PathIndex();
   }
 
   @Override
@@ -64,6 +68,11 @@ final class InMemoryEntryStore implements EntryStore {
     if (id != null && entries.get(id) == null) {
       entries.put(id, entry);
       String parentId = EntryUtils.getParentId(entry);
+      if (isPage(entry)) {
+        BasePageEntry<?> page = (BasePageEntry<?>) entry;
+        pathIndex.addPage(id, parentId, (page.getPageName() == null) ? null 
+            : page.getPageName().getValue());
+      }
       if (parentId == null) {
         if (isPage(entry)) {
           topLevelEntries.add((BasePageEntry<?>) entry);
@@ -78,6 +87,27 @@ final class InMemoryEntryStore implements EntryStore {
     }
   }
   
+  @Override
+  public void updateEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    String id = entry.getId();
+    BaseContentEntry<?> oldEntry = (id == null) ? null : entries.get(id);
+    if (oldEntry == null) {
+      LOGGER.log(Level.WARNING, "Only stored entries can be updated!");
+    } else if (oldEntry != entry) {
+      entries.put(id, entry);
+      String parentId = EntryUtils.getParentId(entry);
+      if (parentId == null) {
+        if (topLevelEntries.remove(oldEntry)) {
+          topLevelEntries.add((BasePageEntry<?>) entry);
+        }
+      } else {
+        children.remove(parentId, oldEntry);
+        children.put(parentId, entry);
+      }
+    }
+  }
+
   @Override
   public Collection<BaseContentEntry<?>> getChildren(String id) {
     checkNotNull(id);
@@ -105,4 +135,32 @@ final class InMemoryEntryStore implements EntryStore {
   public Collection<BasePageEntry<?>> getTopLevelEntries() {
     return topLevelEntries;
   }
+
+  @Override
+  public List<BasePageEntry<?>> getAncestors(String id) {
+    checkNotNull(id);
+    List<BasePageEntry<?>> ancestors = Lists.newArrayList();
+    for (String ancestorId : pathIndex.getAncestorIds(id)) {
+      ancestors.add((BasePageEntry<?>) entries.get(ancestorId));
+    }
+    return ancestors;
+  }
+
+  @Override
+  public int getDepth(String id) {
+    checkNotNull(id);
+    return pathIndex.getDepth(id);
+  }
+
+  @Override
+  public String getPath(String id) {
+    checkNotNull(id);
+    return pathIndex.getPath(id);
+  }
+
+  @Override
+  public String getPathToRoot(String id) {
+    checkNotNull(id);
+    return pathIndex.getPathToRoot(id);
+  }
 }
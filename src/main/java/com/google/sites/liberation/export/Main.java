@@ -27,6 +27,7 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
 import java.io.File;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,12 +63,50 @@ public class Main {
   @Option(name="-h", usage="host")
   private String host = "sites.google.com";
   
+  @Option(name="-dt", usage="number of attachments to download at once")
+  private Integer downloads = null;
+  
+  @Option(name="-dh", usage="number of attachments to download at once from "
+      + "a single host")
+  private Integer downloadsPerHost = null;
+  
+  @Option(name="-pt", usage="number of pages to export at once")
+  private Integer exportThreads = null;
+  
+  @Option(name="-rt", usage="number of page histories to export at once, "
+      + "when exporting revisions")
+  private Integer revisionThreads = null;
+  
+  @Option(name="-ft", usage="number of threads fetching feed results ahead "
+      + "of time")
+  private Integer feedThreads = null;
+  
+  @Option(name="-i", usage="only export what has changed since the previous "
+      + "export to the same directory, keeping site data on disk there")
+  private boolean incremental = false;
+  
+  @Option(name="-s", usage="keep site data on disk rather than in memory, for "
+      + "sites too large to fit in memory")
+  private boolean entriesOnDisk = false;
+  
+  @Option(name="-c", usage="directory in which to keep a copy of every feed "
+      + "and attachment read from the server")
+  private File feedCache = null;
+  
+  @Option(name="-o", usage="read feeds and attachments only from the "
+      + "directory given by -c, without going to the server")
+  private boolean replay = false;
+  
   private void doMain(String[] args) {
     CmdLineParser parser = new CmdLineParser(this);
-    Injector injector = Guice.createInjector(new SiteExporterModule());
-    SiteExporter siteExporter = injector.getInstance(SiteExporter.class);
     try {
       parser.parseArgument(args);
+      if (replay && feedCache == null) {
+        throw new CmdLineException("Feed cache directory not specified!");
+      }
+      Injector injector = Guice.createInjector(
+          new SiteExporterModule(getSettings()));
+      SiteExporter siteExporter = injector.getInstance(SiteExporter.class);
       if (webspace == null) {
         throw new CmdLineException("Webspace of site not specified!");
       }
@@ -90,6 +129,44 @@ public class Main {
     }
   }
   
+  /**
+   * Returns the export settings that were given on the command line.
+   */
+  private Properties getSettings() {
+    Properties settings = new Properties();
+    if (downloads != null) {
+      settings.setProperty(SiteExporterModule.DOWNLOADS, downloads.toString());
+    }
+    if (downloadsPerHost != null) {
+      settings.setProperty(SiteExporterModule.DOWNLOADS_PER_HOST, 
+          downloadsPerHost.toString());
+    }
+    if (exportThreads != null) {
+      settings.setProperty(SiteExporterModule.EXPORT_THREADS, 
+          exportThreads.toString());
+    }
+    if (revisionThreads != null) {
+      settings.setProperty(SiteExporterModule.REVISION_THREADS, 
+          revisionThreads.toString());
+    }
+    if (feedThreads != null) {
+      settings.setProperty(SiteExporterModule.FEED_THREADS, 
+          feedThreads.toString());
+    }
+    settings.setProperty(SiteExporterModule.INCREMENTAL, 
+        Boolean.toString(incremental));
+    if (entriesOnDisk) {
+      settings.setProperty(SiteExporterModule.ENTRY_STORE, "disk");
+    }
+    if (feedCache != null) {
+      settings.setProperty(SiteExporterModule.FEED_CACHE, 
+          feedCache.getPath());
+    }
+    settings.setProperty(SiteExporterModule.FEED_REPLAY, 
+        Boolean.toString(replay));
+    return settings;
+  }
+  
   /**
    * Exports a Site.
    */
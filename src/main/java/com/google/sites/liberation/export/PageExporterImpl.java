@@ -23,7 +23,6 @@ import static com.google.sites.liberation.util.EntryType.LIST_PAGE;
 import static com.google.sites.liberation.util.EntryType.getType;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import com.google.gdata.data.sites.AnnouncementEntry;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
@@ -41,13 +40,13 @@ import com.google.sites.liberation.renderers.ListRenderer;
 import com.google.sites.liberation.renderers.SubpageLinksRenderer;
 import com.google.sites.liberation.renderers.TitleRenderer;
 import com.google.sites.liberation.util.EntryUtils;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Implements {@link PageExporter} to export a single page in a 
@@ -71,6 +70,8 @@ final class PageExporterImpl implements PageExporter {
   private ListRenderer listRenderer;
   private SubpageLinksRenderer subpageLinksRenderer;
   private TitleRenderer titleRenderer;
+  private WeakReference<EntryStore> sideBarStore;
+  private SideBarCache sideBarCache;
   
   @Inject
   PageExporterImpl(
@@ -100,27 +101,6 @@ final class PageExporterImpl implements PageExporter {
     checkNotNull(entry, "entry");
     checkNotNull(entryStore, "entryStore");
     checkNotNull(out, "out");
-    XmlElement html = new XmlElement("html");
-    XmlElement head = new XmlElement("head");
-    XmlElement title = new XmlElement("title");
-    title.addText(entry.getTitle().getPlainText());
-    html.addElement(head.addElement(title));
-    XmlElement body = new XmlElement("body");
-    XmlElement table = new XmlElement("table").setAttribute("width", "100%");
-    XmlElement row = new XmlElement("tr").setAttribute("valign", "top");
-    XmlElement sideBar = getSideBar(entry, entryStore);
-    row.addElement(new XmlElement("td").addElement(sideBar).setAttribute(
-        "width", "150px"));
-    row.addElement(new XmlElement("td").addXml("&#160;"));
-    XmlElement mainDiv = new XmlElement("div");
-    mainDiv.setAttribute("class", "hentry " + getType(entry).toString());
-    mainDiv.setAttribute("id", entry.getId());
-    if (entryStore.getParent(entry.getId()) != null) {
-      List<BasePageEntry<?>> ancestors = getAncestors(entry, entryStore);
-      mainDiv.addElement(ancestorLinksRenderer.renderAncestorLinks(ancestors));      
-    }
-    mainDiv.addElement(titleRenderer.renderTitle(entry));
-    mainDiv.addElement(contentRenderer.renderContent(entry, revisionsExported));
     List<AnnouncementEntry> announcements = Lists.newArrayList();
     List<BaseContentEntry<?>> attachments = Lists.newArrayList();
     List<CommentEntry> comments = Lists.newArrayList();
@@ -157,73 +137,69 @@ final class PageExporterImpl implements PageExporter {
     Collections.sort(comments, updatedComparator);
     Collections.sort(listItems, updatedComparator);
     Collections.sort(subpages, titleComparator);
+    XmlWriter writer = new XmlWriter(out);
+    writer.startElement("html");
+    writer.startElement("head").startElement("title");
+    writer.addText(entry.getTitle().getPlainText());
+    writer.endElement().endElement();
+    writer.startElement("body");
+    writer.startElement("table").setAttribute("width", "100%");
+    writer.startElement("tr").setAttribute("valign", "top");
+    writer.startElement("td").setAttribute("width", "150px");
+    writeSideBar(entry, entryStore, writer);
+    writer.endElement();
+    writer.startElement("td").addXml("&#160;").endElement();
+    writer.startElement("td");
+    writer.startElement("div");
+    writer.setAttribute("class", "hentry " + getType(entry).toString());
+    writer.setAttribute("id", entry.getId());
+    if (entryStore.getDepth(entry.getId()) > 0) {
+      List<BasePageEntry<?>> ancestors = entryStore.getAncestors(entry.getId());
+      ancestorLinksRenderer.renderAncestorLinks(ancestors, writer);
+    }
+    titleRenderer.renderTitle(entry, writer);
+    contentRenderer.renderContent(entry, writer, revisionsExported);
     if (getType(entry) == ANNOUNCEMENTS_PAGE) {
-      mainDiv.addElement(announcementsRenderer
-          .renderAnnouncements(announcements));
+      announcementsRenderer.renderAnnouncements(announcements, writer);
     } else if (getType(entry) == FILE_CABINET_PAGE) {
-      mainDiv.addElement(fileCabinetRenderer.renderFileCabinet(attachments));
+      fileCabinetRenderer.renderFileCabinet(attachments, writer);
     } else if (getType(entry) == LIST_PAGE) {
       // TODO(gk5885): remove extra cast for
       // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-      mainDiv.addElement(listRenderer.renderList(
-          (ListPageEntry) (BaseContentEntry) entry, listItems));
+      listRenderer.renderList((ListPageEntry) (BaseContentEntry) entry, 
+          listItems, writer);
     }
     if (!subpages.isEmpty()) {
-      mainDiv.addElement(new XmlElement("hr"));
-      mainDiv.addElement(subpageLinksRenderer.renderSubpageLinks(subpages));
+      writer.emptyElement("hr");
+      subpageLinksRenderer.renderSubpageLinks(subpages, writer);
     }
     if (!attachments.isEmpty() && getType(entry) != FILE_CABINET_PAGE) {
-      mainDiv.addElement(new XmlElement("hr"));
-      mainDiv.addElement(attachmentsRenderer.renderAttachments(attachments));
+      writer.emptyElement("hr");
+      attachmentsRenderer.renderAttachments(attachments, writer);
     }
     if (!comments.isEmpty()) {
-      mainDiv.addElement(new XmlElement("hr"));
-      mainDiv.addElement(commentsRenderer.renderComments(comments));
+      writer.emptyElement("hr");
+      commentsRenderer.renderComments(comments, writer);
     }
-    row.addElement(new XmlElement("td").addElement(mainDiv));
-    html.addElement(body.addElement(table.addElement(row)));
-    html.appendTo(out);
+    writer.endElement().endElement();
+    writer.endElement().endElement().endElement().endElement();
   }
   
-  private XmlElement getSideBar(BasePageEntry<?> entry, EntryStore entryStore) {
-    XmlElement table = new XmlElement("table");
-    table.addElement(new XmlElement("tr").addElement(new XmlElement("th")
-        .addText("Navigation").setAttribute("align", "left")));
-    Set<BasePageEntry<?>> pages = Sets.newTreeSet(titleComparator);
-    pages.addAll(entryStore.getTopLevelEntries());
-    String pathToRoot = getPathToRoot(entry, entryStore);
-    for (BasePageEntry<?> page : pages) {
-      String text = page.getTitle().getPlainText();
-      if (page.equals(entry)) {
-        table.addElement(new XmlElement("tr").addElement(new XmlElement("td")
-            .addElement(new XmlElement("small").addText(text))));
-      } else {
-        String href = pathToRoot + page.getPageName().getValue() + "/index.html";
-        XmlElement link = new XmlElement("a").addText(text)
-            .setAttribute("href", href);
-        table.addElement(new XmlElement("tr").addElement(new XmlElement("td")
-            .addElement(new XmlElement("small").addElement(link))));
+  /**
+   * Writes the side bar for the given entry, from a cache which is rebuilt
+   * whenever a different entry store is given.
+   */
+  private void writeSideBar(BasePageEntry<?> entry, EntryStore entryStore,
+      XmlWriter writer) throws IOException {
+    SideBarCache cache;
+    synchronized (this) {
+      if (sideBarStore == null || sideBarStore.get() != entryStore) {
+        sideBarStore = new WeakReference<EntryStore>(entryStore);
+        sideBarCache = new SideBarCache(entryStore);
       }
+      cache = sideBarCache;
     }
-    return table;
-  }
-  
-  private String getPathToRoot(BasePageEntry<?> entry, EntryStore entryStore) {
-    BasePageEntry<?> parent = entryStore.getParent(entry.getId());
-    if (parent == null) {
-      return "../";
-    }
-    return getPathToRoot(parent, entryStore) + "../";
-  }
-  
-  private List<BasePageEntry<?>> getAncestors(BasePageEntry<?> entry,
-      EntryStore entryStore) {
-    BasePageEntry<?> parent = entryStore.getParent(entry.getId());
-    if (parent == null) {
-      return Lists.newLinkedList();
-    }
-    List<BasePageEntry<?>> ancestors = getAncestors(parent, entryStore);
-    ancestors.add(parent);
-    return ancestors;
+    cache.writeSideBar(entry.getId(), entryStore.getPathToRoot(entry.getId()),
+        writer);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Chooses the number of entries to request per query of a content feed.
+ *
+ * <p>The page size grows by half while requests succeed and come back faster
+ * than {@link #TARGET_MILLIS}, and is halved whenever a request fails or its
+ * latency per entry spikes above twice the running average. All methods are
+ * safe to call from multiple threads.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class PageSizeController {
+
+  /** Requests slower than this never cause the page size to grow. */
+  static final long TARGET_MILLIS = 5000;
+
+  private static final double SPIKE_FACTOR = 2.0;
+  private static final double SMOOTHING = 0.25;
+
+  private final int minSize;
+  private final int maxSize;
+  private int pageSize;
+  private double averageMillisPerEntry;
+
+  /**
+   * Creates a new PageSizeController starting at {@code initialSize} and
+   * staying between {@code minSize} and {@code maxSize} inclusive.
+   */
+  PageSizeController(int initialSize, int minSize, int maxSize) {
+    checkArgument(minSize > 0);
+    checkArgument(minSize <= initialSize && initialSize <= maxSize);
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.pageSize = initialSize;
+    this.averageMillisPerEntry = -1;
+  }
+
+  /**
+   * Returns a new PageSizeController that always returns the given size.
+   */
+  static PageSizeController fixed(int size) {
+    return new PageSizeController(size, size, size);
+  }
+
+  /**
+   * Returns the number of entries that should be requested by the next query.
+   */
+  synchronized int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Records that a request for {@code numRequested} entries succeeded in
+   * {@code elapsedMillis} milliseconds.
+   */
+  synchronized void recordSuccess(int numRequested, long elapsedMillis) {
+    checkArgument(numRequested > 0);
+    double millisPerEntry = ((double) elapsedMillis) / numRequested;
+    if (averageMillisPerEntry < 0) {
+      averageMillisPerEntry = millisPerEntry;
+    } else if (millisPerEntry > SPIKE_FACTOR * averageMillisPerEntry) {
+      shrink();
+    } else if (elapsedMillis < TARGET_MILLIS) {
+      pageSize = Math.min(maxSize, pageSize + Math.max(1, pageSize / 2));
+    }
+    averageMillisPerEntry = SMOOTHING * millisPerEntry
+        + (1 - SMOOTHING) * averageMillisPerEntry;
+  }
+
+  /**
+   * Records that a request failed and had to be split up.
+   */
+  synchronized void recordFailure() {
+    shrink();
+  }
+
+  private void shrink() {
+    pageSize = Math.max(minSize, pageSize / 2);
+  }
+}
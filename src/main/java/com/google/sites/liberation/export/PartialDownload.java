@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.gdata.data.sites.AttachmentEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The ".part" sidecar of an attachment download that has not finished yet.
+ *
+ * <p>The sidecar records how many bytes of the attachment have been written,
+ * along with the etag and updated time of the attachment entry, so that a
+ * later export can resume the download as long as the attachment has not
+ * changed in the meantime.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class PartialDownload {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      PartialDownload.class.getCanonicalName());
+
+  private static final String BYTES = "bytes";
+  private static final String ETAG = "etag";
+  private static final String UPDATED = "updated";
+
+  private final File file;
+  private final String etag;
+  private final String updated;
+
+  /**
+   * Creates a new PartialDownload for the given attachment, whose state is
+   * kept in the given sidecar file.
+   */
+  PartialDownload(File file, AttachmentEntry attachment) {
+    this.file = checkNotNull(file);
+    checkNotNull(attachment);
+    this.etag = (attachment.getEtag() == null) ? "" : attachment.getEtag();
+    this.updated = (attachment.getUpdated() == null) ? ""
+        : attachment.getUpdated().toString();
+  }
+
+  /**
+   * Returns the number of bytes at the start of {@code data} that can be
+   * kept when resuming the download, or 0 if there is no record of a previous
+   * download or the attachment has changed since it was made.
+   */
+  long getResumableBytes(File data) {
+    if (!file.isFile() || !data.isFile()) {
+      return 0;
+    }
+    Properties properties = new Properties();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      properties.load(in);
+      if (!etag.equals(properties.getProperty(ETAG))
+          || !updated.equals(properties.getProperty(UPDATED))) {
+        return 0;
+      }
+      long bytes = Long.parseLong(properties.getProperty(BYTES, "0"));
+      return Math.max(0, Math.min(bytes, data.length()));
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read: " + file, e);
+      return 0;
+    } catch (NumberFormatException e) {
+      LOGGER.log(Level.WARNING, "Invalid partial download: " + file, e);
+      return 0;
+    } finally {
+      close(in);
+    }
+  }
+
+  /**
+   * Records that the first {@code bytes} bytes of the attachment have been
+   * written.
+   */
+  void save(long bytes) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(BYTES, Long.toString(bytes));
+    properties.setProperty(ETAG, etag);
+    properties.setProperty(UPDATED, updated);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Deletes the sidecar once the download has completed.
+   */
+  void delete() {
+    file.delete();
+  }
+
+  private void close(InputStream in) {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Failed closing file: " + file, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gdata.util.common.base.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of where each page of a site sits in the page hierarchy, for
+ * use by an {@link EntryStore}.
+ *
+ * <p>The ancestors, path and path to root of each page are worked out the
+ * first time they are asked for and remembered, so that rendering a deep
+ * site does not walk the same chains of parents over and over. Adding a new
+ * page can only change what was remembered if the page was missing when it
+ * was worked out, so everything remembered is only forgotten when a page is
+ * added that was asked for or was an ancestor while missing, or that was
+ * already there with a different parent or page name. All methods are safe 
+ * to call from multiple threads.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class PathIndex {
+
+  private final Map<String, String> parentIds;
+  private final Map<String, String> pageNames;
+  private final Map<String, List<String>> ancestorIds;
+  private final Map<String, String> paths;
+  private final Map<String, String> pathsToRoot;
+  private final Set<String> missingIds;
+
+  /**
+   * Creates a new empty PathIndex.
+   */
+  PathIndex() {
+    parentIds = Maps.newHashMap();
+    pageNames = Maps.newHashMap();
+    ancestorIds = Maps.newHashMap();
+    paths = Maps.newHashMap();
+    pathsToRoot = Maps.newHashMap();
+    missingIds = Sets.newHashSet();
+  }
+
+  /**
+   * Adds the page with the given id, parent id and page name.
+   */
+  synchronized void addPage(String id, @Nullable String parentId,
+      @Nullable String pageName) {
+    checkNotNull(id);
+    boolean changed;
+    if (parentIds.containsKey(id)) {
+      changed = !Objects.equal(parentIds.get(id), parentId)
+          || !Objects.equal(pageNames.get(id), pageName);
+    } else {
+      changed = missingIds.contains(id);
+    }
+    parentIds.put(id, parentId);
+    pageNames.put(id, pageName);
+    if (changed) {
+      ancestorIds.clear();
+      paths.clear();
+      pathsToRoot.clear();
+      missingIds.clear();
+    }
+  }
+
+  /**
+   * Returns the ids of the ancestors of the page with the given id, starting
+   * with the top level page and ending with its parent. If one of the
+   * ancestors is missing, only the ancestors below it are returned.
+   */
+  synchronized List<String> getAncestorIds(String id) {
+    List<String> ancestors = ancestorIds.get(id);
+    if (ancestors == null) {
+      String parentId = parentIds.get(id);
+      if (!parentIds.containsKey(id)) {
+        missingIds.add(id);
+      }
+      if (parentId != null && !parentIds.containsKey(parentId)) {
+        missingIds.add(parentId);
+      }
+      if (parentId == null || !parentIds.containsKey(parentId)) {
+        ancestors = ImmutableList.of();
+      } else {
+        ancestors = ImmutableList.<String>builder()
+            .addAll(getAncestorIds(parentId)).add(parentId).build();
+      }
+      ancestorIds.put(id, ancestors);
+    }
+    return ancestors;
+  }
+
+  /**
+   * Returns the number of ancestors of the page with the given id.
+   */
+  synchronized int getDepth(String id) {
+    return getAncestorIds(id).size();
+  }
+
+  /**
+   * Returns the page names of the given page and its ancestors, from the top
+   * level down, separated by '/', or {@code null} if any of them is missing.
+   */
+  synchronized String getPath(String id) {
+    if (paths.containsKey(id)) {
+      return paths.get(id);
+    }
+    String path = null;
+    String pageName = pageNames.get(id);
+    if (!pageNames.containsKey(id)) {
+      missingIds.add(id);
+    } else if (pageName != null) {
+      String parentId = parentIds.get(id);
+      if (parentId == null) {
+        path = pageName;
+      } else if (parentIds.containsKey(parentId)) {
+        String parentPath = getPath(parentId);
+        if (parentPath != null) {
+          path = parentPath + '/' + pageName;
+        }
+      } else {
+        missingIds.add(parentId);
+      }
+    }
+    paths.put(id, path);
+    return path;
+  }
+
+  /**
+   * Returns the relative path from the folder of the page with the given id
+   * to the root folder of the site: "../" once for the page itself and once
+   * for each of its ancestors.
+   */
+  synchronized String getPathToRoot(String id) {
+    String pathToRoot = pathsToRoot.get(id);
+    if (pathToRoot == null) {
+      int depth = getDepth(id);
+      StringBuilder builder = new StringBuilder(3 * (depth + 1));
+      for (int i = 0; i <= depth; i++) {
+        builder.append("../");
+      }
+      pathToRoot = builder.toString();
+      pathsToRoot.put(id, pathToRoot);
+    }
+    return pathToRoot;
+  }
+}
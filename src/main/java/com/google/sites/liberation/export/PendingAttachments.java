@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Keeps track of the attachments in an entry store whose parent page's path
+ * isn't known yet, as entries are added to the store while a feed is being
+ * read. This lets each attachment be downloaded as soon as the folder it
+ * belongs in is known, rather than once the whole feed has been read.
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class PendingAttachments {
+
+  private final EntryStore entryStore;
+  private final Multimap<String, String> waitingAttachmentIds;
+  private final Multimap<String, String> waitingPageIds;
+
+  /**
+   * Creates a new PendingAttachments for the given entry store.
+   */
+  PendingAttachments(EntryStore entryStore) {
+    this.entryStore = checkNotNull(entryStore);
+    waitingAttachmentIds = LinkedListMultimap.create();
+    waitingPageIds = LinkedListMultimap.create();
+  }
+
+  /**
+   * Records the given entry, which must already have been added to the entry
+   * store, and returns the attachments whose parent page's path has become
+   * known as a result, including the entry itself if it is such an
+   * attachment.
+   */
+  List<AttachmentEntry> addEntry(BaseContentEntry<?> entry) {
+    checkNotNull(entry);
+    List<AttachmentEntry> ready = Lists.newArrayList();
+    String parentId = EntryUtils.getParentId(entry);
+    if (getType(entry) == ATTACHMENT) {
+      if (parentId != null && entryStore.getPath(parentId) != null) {
+        // TODO(gk5885): remove extra cast for
+        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+        ready.add((AttachmentEntry) (BaseContentEntry) entry);
+      } else {
+        waitingAttachmentIds.put(parentId, entry.getId());
+      }
+    } else if (isPage(entry)) {
+      if (entryStore.getPath(entry.getId()) != null) {
+        resolve(entry.getId(), ready);
+      } else if (parentId != null) {
+        waitingPageIds.put(parentId, entry.getId());
+      }
+    }
+    return ready;
+  }
+
+  /**
+   * Returns the ids of the attachments whose parent page's path is still not
+   * known.
+   */
+  Collection<String> getWaitingIds() {
+    return waitingAttachmentIds.values();
+  }
+
+  /**
+   * Adds the attachments waiting on the page with the given id, whose path
+   * has just become known, to {@code ready}, along with those waiting on any
+   * of its descendants whose path has become known with it.
+   */
+  private void resolve(String pageId, List<AttachmentEntry> ready) {
+    LinkedList<String> resolved = Lists.newLinkedList();
+    resolved.add(pageId);
+    while (!resolved.isEmpty()) {
+      String id = resolved.removeFirst();
+      for (String attachmentId : waitingAttachmentIds.removeAll(id)) {
+        BaseContentEntry<?> attachment = entryStore.getEntry(attachmentId);
+        if (attachment != null) {
+          // TODO(gk5885): remove extra cast for
+          // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+          ready.add((AttachmentEntry) (BaseContentEntry) attachment);
+        }
+      }
+      for (String childId : waitingPageIds.removeAll(id)) {
+        if (entryStore.getPath(childId) != null) {
+          resolved.add(childId);
+        }
+      }
+    }
+  }
+}
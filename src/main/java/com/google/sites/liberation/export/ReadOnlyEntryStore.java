@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read-only view of a fully populated {@link EntryStore}, which can be
+ * shared by the threads exporting pages.
+ *
+ * <p>Adding or updating an entry through the view throws an
+ * {@code UnsupportedOperationException}, and the collections it returns can't
+ * be modified. Reading from several threads at once is safe as long as
+ * nothing is added to the underlying store once the view has been handed to
+ * them, and none of them modifies the entries it reads, since the same entry
+ * objects are handed to every thread: neither {@link InMemoryEntryStore} nor
+ * {@link DiskEntryStore} changes its entries on a read, and both remember
+ * paths in a synchronized {@link PathIndex}.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class ReadOnlyEntryStore implements EntryStore {
+
+  private final EntryStore entryStore;
+
+  /**
+   * Creates a new read-only view of the given entry store.
+   */
+  ReadOnlyEntryStore(EntryStore entryStore) {
+    this.entryStore = checkNotNull(entryStore);
+  }
+
+  /**
+   * Returns the entry store this is a view of.
+   */
+  EntryStore getEntryStore() {
+    return entryStore;
+  }
+
+  /**
+   * Always throws an {@code UnsupportedOperationException}.
+   */
+  @Override
+  public void addEntry(BaseContentEntry<?> entry) {
+    throw new UnsupportedOperationException("Entry store is read-only.");
+  }
+
+  /**
+   * Always throws an {@code UnsupportedOperationException}.
+   */
+  @Override
+  public void updateEntry(BaseContentEntry<?> entry) {
+    throw new UnsupportedOperationException("Entry store is read-only.");
+  }
+
+  @Override
+  public BaseContentEntry<?> getEntry(String id) {
+    return entryStore.getEntry(id);
+  }
+
+  @Override
+  public BasePageEntry<?> getParent(String id) {
+    return entryStore.getParent(id);
+  }
+
+  @Override
+  public Collection<BaseContentEntry<?>> getChildren(String id) {
+    return Collections.unmodifiableCollection(entryStore.getChildren(id));
+  }
+
+  @Override
+  public Collection<BasePageEntry<?>> getTopLevelEntries() {
+    return Collections.unmodifiableCollection(
+        entryStore.getTopLevelEntries());
+  }
+
+  @Override
+  public List<BasePageEntry<?>> getAncestors(String id) {
+    return Collections.unmodifiableList(entryStore.getAncestors(id));
+  }
+
+  @Override
+  public int getDepth(String id) {
+    return entryStore.getDepth(id);
+  }
+
+  @Override
+  public String getPath(String id) {
+    return entryStore.getPath(id);
+  }
+
+  @Override
+  public String getPathToRoot(String id) {
+    return entryStore.getPathToRoot(id);
+  }
+}
@@ -28,7 +28,7 @@ import com.google.inject.Inject;
 import com.google.sites.liberation.renderers.ListRenderer;
 import com.google.sites.liberation.renderers.RevisionRenderer;
 import com.google.sites.liberation.renderers.TitleRenderer;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import java.io.IOException;
 import java.util.List;
@@ -56,26 +56,25 @@ final class RevisionExporterImpl implements RevisionExporter {
   @Override
   public void exportRevision(BasePageEntry<?> revision, Appendable out) 
         throws IOException {
-    XmlElement html = new XmlElement("html");
-    XmlElement head = new XmlElement("head");
-    XmlElement title = new XmlElement("title");
-    title.addText(revision.getTitle().getPlainText() + " (Version " 
+    XmlWriter writer = new XmlWriter(out);
+    writer.startElement("html");
+    writer.startElement("head").startElement("title");
+    writer.addText(revision.getTitle().getPlainText() + " (Version " 
         + revision.getRevision().getValue() + ")");
-    html.addElement(head.addElement(title));
-    XmlElement body = new XmlElement("body");
-    XmlElement mainDiv = new XmlElement("div");
-    mainDiv.setAttribute("class", "hentry " + getType(revision).toString());
-    mainDiv.setAttribute("id", revision.getId());
-    mainDiv.addElement(titleRenderer.renderTitle(revision));
-    mainDiv.addElement(revisionRenderer.renderRevision(revision));
+    writer.endElement().endElement();
+    writer.startElement("body");
+    writer.startElement("div");
+    writer.setAttribute("class", "hentry " + getType(revision).toString());
+    writer.setAttribute("id", revision.getId());
+    titleRenderer.renderTitle(revision, writer);
+    revisionRenderer.renderRevision(revision, writer);
     if (getType(revision) == LIST_PAGE) {
       List<ListItemEntry> items = Lists.newArrayList();
       // TODO(gk5885): remove extra cast for
       // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-      mainDiv.addElement(listRenderer.renderList((ListPageEntry) (BasePageEntry) revision,
-          items));
+      listRenderer.renderList((ListPageEntry) (BasePageEntry) revision,
+          items, writer);
     }
-    html.addElement(body.addElement(mainDiv));
-    html.appendTo(out);
+    writer.endElement().endElement().endElement();
   }
 }
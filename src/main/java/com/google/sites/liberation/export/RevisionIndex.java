@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.Person;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.HashUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Records the revisions of a page that have been exported to its revisions
+ * directory, so that a later export only has to fetch and render the newer
+ * ones.
+ *
+ * <p>For each revision, the index keeps what the history page shows. For
+ * each revision written to a file, it also keeps the file's size, last
+ * modified time and a hash of its contents, so that files which have since
+ * been changed or truncated are exported again. A file is only hashed again
+ * if its size is unchanged but its modified time is not, so that checking
+ * the files of an unchanged history doesn't read them. The index is kept as
+ * a properties file in the revisions directory.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class RevisionIndex {
+
+  /** Name of the index file in a revisions directory. */
+  static final String FILE_NAME = ".revisions";
+
+  private static final String REVISIONS = "revisions";
+
+  private final List<BaseContentEntry<?>> revisions;
+  private final Map<Integer, Long> sizes;
+  private final Map<Integer, Long> modifiedTimes;
+  private final Map<Integer, String> hashes;
+
+  /**
+   * Creates a new empty RevisionIndex.
+   */
+  RevisionIndex() {
+    revisions = Lists.newArrayList();
+    sizes = Maps.newHashMap();
+    modifiedTimes = Maps.newHashMap();
+    hashes = Maps.newHashMap();
+  }
+
+  /**
+   * Reads the index stored in the given file.
+   *
+   * @throws IOException if the file can't be read or isn't a valid index
+   */
+  static RevisionIndex read(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    RevisionIndex index = new RevisionIndex();
+    String numbers = properties.getProperty(REVISIONS);
+    if (numbers == null) {
+      throw new IOException("Revision index has no revisions: " + file);
+    }
+    try {
+      for (String number : numbers.split(",")) {
+        if (number.length() > 0) {
+          index.readRevision(Integer.parseInt(number), properties);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid revision index: " + file);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the revisions in this index, in the order in which they were
+   * given.
+   */
+  List<BaseContentEntry<?>> getRevisions() {
+    return Collections.unmodifiableList(revisions);
+  }
+
+  /**
+   * Replaces the revisions in this index with the given ones. Only their
+   * numbers, titles, updated times and first authors are kept.
+   */
+  void setRevisions(List<BaseContentEntry<?>> revisions) {
+    this.revisions.clear();
+    for (BaseContentEntry<?> revision : revisions) {
+      this.revisions.add(copyOf(revision));
+    }
+  }
+
+  /**
+   * Records that the revision with the given number has been written to the
+   * given file, as it is now.
+   */
+  void setFile(int number, File file) throws IOException {
+    sizes.put(number, file.length());
+    modifiedTimes.put(number, file.lastModified());
+    hashes.put(number, HashUtils.sha1(file));
+  }
+
+  /**
+   * Returns whether the given file is the one recorded for the revision with
+   * the given number, with the same size and contents. The contents are only
+   * hashed if the file's modified time is not the recorded one, in which case
+   * the new time is recorded if the contents match.
+   */
+  boolean isVerified(int number, File file) {
+    Long size = sizes.get(number);
+    if (size == null || file.length() != size) {
+      return false;
+    }
+    long modified = file.lastModified();
+    Long recordedModified = modifiedTimes.get(number);
+    if (recordedModified != null && modified == recordedModified) {
+      return true;
+    }
+    try {
+      if (!HashUtils.sha1(file).equals(hashes.get(number))) {
+        return false;
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    modifiedTimes.put(number, modified);
+    return true;
+  }
+
+  /**
+   * Writes this index to the given file.
+   */
+  void write(File file) throws IOException {
+    Properties properties = new Properties();
+    StringBuilder numbers = new StringBuilder();
+    for (BaseContentEntry<?> revision : revisions) {
+      int number = revision.getRevision().getValue();
+      if (numbers.length() > 0) {
+        numbers.append(',');
+      }
+      numbers.append(number);
+      String prefix = number + ".";
+      if (revision.getUpdated() != null) {
+        properties.setProperty(prefix + "updated",
+            revision.getUpdated().toString());
+      }
+      if (revision.getTitle() != null) {
+        properties.setProperty(prefix + "title",
+            revision.getTitle().getPlainText());
+      }
+      if (!revision.getAuthors().isEmpty()) {
+        Person author = revision.getAuthors().get(0);
+        if (author.getName() != null) {
+          properties.setProperty(prefix + "author", author.getName());
+        }
+        if (author.getEmail() != null) {
+          properties.setProperty(prefix + "email", author.getEmail());
+        }
+      }
+      if (sizes.containsKey(number)) {
+        properties.setProperty(prefix + "size", sizes.get(number).toString());
+        properties.setProperty(prefix + "sha1", hashes.get(number));
+        if (modifiedTimes.containsKey(number)) {
+          properties.setProperty(prefix + "modified", 
+              modifiedTimes.get(number).toString());
+        }
+      }
+    }
+    properties.setProperty(REVISIONS, numbers.toString());
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void readRevision(int number, Properties properties) {
+    String prefix = number + ".";
+    WebPageEntry revision = new WebPageEntry();
+    revision.setRevision(new Revision(number));
+    String updated = properties.getProperty(prefix + "updated");
+    if (updated != null) {
+      revision.setUpdated(DateTime.parseDateTime(updated));
+    }
+    String title = properties.getProperty(prefix + "title");
+    if (title != null) {
+      revision.setTitle(new PlainTextConstruct(title));
+    }
+    String author = properties.getProperty(prefix + "author");
+    String email = properties.getProperty(prefix + "email");
+    if (author != null || email != null) {
+      revision.getAuthors().add(new Person(author, null, email));
+    }
+    revisions.add(revision);
+    String size = properties.getProperty(prefix + "size");
+    String hash = properties.getProperty(prefix + "sha1");
+    if (size != null && hash != null) {
+      sizes.put(number, Long.parseLong(size));
+      hashes.put(number, hash);
+      String modified = properties.getProperty(prefix + "modified");
+      if (modified != null) {
+        modifiedTimes.put(number, Long.parseLong(modified));
+      }
+    }
+  }
+
+  private static BaseContentEntry<?> copyOf(BaseContentEntry<?> revision) {
+    WebPageEntry copy = new WebPageEntry();
+    copy.setRevision(new Revision(revision.getRevision().getValue()));
+    copy.setUpdated(revision.getUpdated());
+    if (revision.getTitle() != null) {
+      copy.setTitle(new PlainTextConstruct(
+          revision.getTitle().getPlainText()));
+    }
+    if (!revision.getAuthors().isEmpty()) {
+      Person author = revision.getAuthors().get(0);
+      copy.getAuthors().add(
+          new Person(author.getName(), null, author.getEmail()));
+    }
+    return copy;
+  }
+}
@@ -30,6 +30,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -37,6 +39,11 @@ import java.util.logging.Logger;
 /**
  * Exports the history and all of the revisions of a page. 
  * 
+ * <p>Revisions never change once made, so a {@link RevisionIndex} of the
+ * revisions already exported is kept with them. Only revisions newer than
+ * the last one whose file, and every earlier one's, is still as it was
+ * written are fetched and rendered again.</p>
+ * 
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class RevisionsExporterImpl implements RevisionsExporter {
@@ -70,6 +77,26 @@ final class RevisionsExporterImpl implements RevisionsExporter {
     checkNotNull(directory, "directory");
     checkNotNull(sitesService, "sitesService");
     File revisionsDirectory = new File(directory, "_revisions");
+    File historyFile = new File(directory, "history.html");
+    File indexFile = new File(revisionsDirectory, RevisionIndex.FILE_NAME);
+    RevisionIndex index = readIndex(indexFile);
+    int current = page.getRevision().getValue();
+    BaseContentEntry<?> lastExported = 
+        getLastExported(index, revisionsDirectory, current);
+    int exported = (lastExported == null) ? 0 
+        : lastExported.getRevision().getValue();
+    List<BaseContentEntry<?>> revisions = Lists.newArrayList();
+    for (BaseContentEntry<?> revision : index.getRevisions()) {
+      if (revision.getRevision().getValue() <= exported) {
+        revisions.add(revision);
+      }
+    }
+    if (exported == current) {
+      if (!historyFile.isFile()) {
+        exportHistory(revisions, historyFile);
+      }
+      return;
+    }
     revisionsDirectory.mkdir();
     URL feedUrl;
     try {
@@ -78,47 +105,154 @@ final class RevisionsExporterImpl implements RevisionsExporter {
       LOGGER.log(Level.WARNING, "Invalid revisions URL!", e);
       return;
     }
-    List<BaseContentEntry<?>> revisions = Lists.newLinkedList();
-    for (BaseContentEntry<?> entry : 
-        feedProvider.getEntries(feedUrl, sitesService)) {
-      entry.setId(page.getId());
-      revisions.add(entry);
+    Iterable<BaseContentEntry<?>> entries = (lastExported == null)
+        ? feedProvider.getEntries(feedUrl, sitesService)
+        : feedProvider.getEntries(feedUrl, sitesService, 
+            lastExported.getUpdated(), null);
+    List<BaseContentEntry<?>> newRevisions = Lists.newLinkedList();
+    for (BaseContentEntry<?> entry : entries) {
+      if (entry.getRevision().getValue() > exported) {
+        entry.setId(page.getId());
+        newRevisions.add(entry);
+      }
     }
-    for (BaseContentEntry<?> revision : revisions) {
-      if (revision.getRevision().getValue() != page.getRevision().getValue()) {
+    for (BaseContentEntry<?> revision : newRevisions) {
+      int number = revision.getRevision().getValue();
+      if (number != current) {
         if (isPage(revision)) {
           linkConverter.convertLinks((BasePageEntry<?>) revision, entryStore, 
               siteUrl, true);
-          exportRevision((BasePageEntry<?>) revision, revisionsDirectory);
+          File file = new File(revisionsDirectory, number + ".html");
+          if (exportRevision((BasePageEntry<?>) revision, file)) {
+            try {
+              index.setFile(number, file);
+            } catch (IOException e) {
+              LOGGER.log(Level.WARNING, "Failed reading file: " + file, e);
+            }
+          }
         }
       }
-    }    
-    File file = new File(directory, "history.html");
+    }
+    if (revisions.isEmpty()) {
+      revisions = newRevisions;
+    } else {
+      revisions = merge(revisions, newRevisions);
+    }
+    exportHistory(revisions, historyFile);
+    index.setRevisions(revisions);
+    try {
+      index.write(indexFile);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Failed writing to file: " + indexFile, e);
+    }
+  }
+  
+  /**
+   * Returns the index in the given file, or an empty index if there is none
+   * or it can't be read.
+   */
+  private RevisionIndex readIndex(File indexFile) {
+    if (indexFile.isFile()) {
+      try {
+        return RevisionIndex.read(indexFile);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to read revision index: " 
+            + indexFile, e);
+      }
+    }
+    return new RevisionIndex();
+  }
+  
+  /**
+   * Returns the newest revision in the given index that was exported along
+   * with every earlier revision in the index, or {@code null} if there is
+   * none. The newest revision in the index was the page itself when the 
+   * index was written, so it has no file and only counts if it still is.
+   */
+  private BaseContentEntry<?> getLastExported(RevisionIndex index,
+      File revisionsDirectory, int current) {
+    List<BaseContentEntry<?>> revisions = 
+        Lists.newArrayList(index.getRevisions());
+    Collections.sort(revisions, new Comparator<BaseContentEntry<?>>() {
+      @Override
+      public int compare(BaseContentEntry<?> e1, BaseContentEntry<?> e2) {
+        return e1.getRevision().getValue() - e2.getRevision().getValue();
+      }
+    });
+    BaseContentEntry<?> lastExported = null;
+    for (int i = 0; i < revisions.size(); i++) {
+      BaseContentEntry<?> revision = revisions.get(i);
+      int number = revision.getRevision().getValue();
+      boolean exported = (i == revisions.size() - 1) ? number == current
+          : index.isVerified(number, 
+              new File(revisionsDirectory, number + ".html"));
+      if (!exported) {
+        break;
+      }
+      lastExported = revision;
+    }
+    return lastExported;
+  }
+  
+  /**
+   * Merges the given newly fetched revisions into the given previously 
+   * exported ones, keeping the order of the latter, or newest first if it
+   * can't be told.
+   */
+  private List<BaseContentEntry<?>> merge(
+      List<BaseContentEntry<?>> exported, 
+      List<BaseContentEntry<?>> newRevisions) {
+    int first = exported.get(0).getRevision().getValue();
+    int last = exported.get(exported.size() - 1).getRevision().getValue();
+    List<BaseContentEntry<?>> merged = Lists.newArrayList();
+    if (first < last) {
+      merged.addAll(exported);
+      merged.addAll(newRevisions);
+    } else {
+      merged.addAll(newRevisions);
+      merged.addAll(exported);
+    }
+    final int sign = (first < last) ? 1 : -1;
+    Collections.sort(merged, new Comparator<BaseContentEntry<?>>() {
+      @Override
+      public int compare(BaseContentEntry<?> e1, BaseContentEntry<?> e2) {
+        return sign * (e1.getRevision().getValue() 
+            - e2.getRevision().getValue());
+      }
+    });
+    return merged;
+  }
+  
+  private void exportHistory(List<BaseContentEntry<?>> revisions, 
+      File historyFile) {
     Appendable out = null;
     try {
-      out = appendableFactory.getAppendable(file);
+      out = appendableFactory.getAppendable(historyFile);
       historyExporter.exportHistory(revisions, out);
     } catch(IOException e) {
-      LOGGER.log(Level.WARNING, "Failed writing to file: " + file, e);
+      LOGGER.log(Level.WARNING, "Failed writing to file: " + historyFile, e);
     } finally {
       if (out instanceof Closeable) {
         try {
           ((Closeable) out).close();
         } catch (IOException e) {
-          LOGGER.log(Level.SEVERE, "Failed closing file: " + file, e);
+          LOGGER.log(Level.SEVERE, "Failed closing file: " + historyFile, e);
         }
       }
     }
   }
   
-  private void exportRevision(BasePageEntry<?> revision, 
-      File revisionsDirectory) {
-    int number = revision.getRevision().getValue();
-    File file = new File(revisionsDirectory, number + ".html");
+  /**
+   * Exports the given revision to the given file, and returns whether it was
+   * written successfully.
+   */
+  private boolean exportRevision(BasePageEntry<?> revision, File file) {
     Appendable out = null;
+    boolean written = false;
     try {
       out = appendableFactory.getAppendable(file);
       revisionExporter.exportRevision(revision, out);
+      written = true;
     } catch(IOException e) {
       LOGGER.log(Level.WARNING, "Failed writing to file: " + file, e);
     } finally {
@@ -127,8 +261,10 @@ final class RevisionsExporterImpl implements RevisionsExporter {
           ((Closeable) out).close();
         } catch (IOException e) {
           LOGGER.log(Level.SEVERE, "Failed closing file: " + file, e);
+          written = false;
         }
       }
     }
+    return written;
   }
 }
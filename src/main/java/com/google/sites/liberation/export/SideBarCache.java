@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders the navigation side bar listing the top level pages of a site.
+ *
+ * <p>The top level pages are sorted once, when the cache is created. The rows
+ * of the side bar only depend on the relative path to the site root, so they
+ * are serialized once for each such path, and the row of the page being
+ * exported is spliced in in place of its link. The given entry store's top
+ * level pages should not change while the cache is in use. Side bars may be
+ * written from several threads at once.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class SideBarCache {
+
+  private final List<String> ids;
+  private final List<String> titles;
+  private final List<String> pageNames;
+  private final Map<String, Integer> indices;
+  private final List<String> currentRows;
+  private final Map<String, Fragment> fragments;
+
+  /**
+   * The serialized rows of the side bar for one relative path to the site
+   * root, with the offset at which each page's row starts.
+   */
+  private static final class Fragment {
+    final String xml;
+    final int[] offsets;
+
+    Fragment(String xml, int[] offsets) {
+      this.xml = xml;
+      this.offsets = offsets;
+    }
+  }
+
+  /**
+   * Creates a new SideBarCache for the top level pages in the given entry
+   * store.
+   */
+  SideBarCache(EntryStore entryStore) {
+    checkNotNull(entryStore);
+    Set<BasePageEntry<?>> pages = Sets.newTreeSet(
+        EntryUtils.getTitleComparator());
+    pages.addAll(entryStore.getTopLevelEntries());
+    ids = Lists.newArrayListWithExpectedSize(pages.size());
+    titles = Lists.newArrayListWithExpectedSize(pages.size());
+    pageNames = Lists.newArrayListWithExpectedSize(pages.size());
+    indices = Maps.newHashMap();
+    currentRows = Lists.newArrayListWithExpectedSize(pages.size());
+    fragments = Maps.newHashMap();
+    for (BasePageEntry<?> page : pages) {
+      String text = page.getTitle().getPlainText();
+      indices.put(page.getId(), ids.size());
+      ids.add(page.getId());
+      titles.add(text);
+      pageNames.add(page.getPageName() == null ? null
+          : page.getPageName().getValue());
+      currentRows.add(new XmlElement("tr").addElement(new XmlElement("td")
+          .addElement(new XmlElement("small").addText(text))).toString());
+    }
+  }
+
+  /**
+   * Writes the side bar for the page with the given id, whose relative path
+   * to the site root is {@code pathToRoot}.
+   */
+  void writeSideBar(String id, String pathToRoot, XmlWriter out)
+      throws IOException {
+    checkNotNull(id);
+    checkNotNull(pathToRoot);
+    Fragment fragment = getFragment(pathToRoot);
+    out.startElement("table");
+    Integer index = indices.get(id);
+    if (index == null) {
+      out.addXml(fragment.xml);
+    } else {
+      String xml = fragment.xml;
+      out.addXml(xml, 0, fragment.offsets[index]);
+      out.addXml(currentRows.get(index));
+      out.addXml(xml, fragment.offsets[index + 1], xml.length());
+    }
+    out.endElement();
+  }
+
+  private synchronized Fragment getFragment(String pathToRoot) {
+    Fragment fragment = fragments.get(pathToRoot);
+    if (fragment == null) {
+      fragment = newFragment(pathToRoot);
+      fragments.put(pathToRoot, fragment);
+    }
+    return fragment;
+  }
+
+  private Fragment newFragment(String pathToRoot) {
+    StringBuilder builder = new StringBuilder();
+    builder.append(new XmlElement("tr").addElement(new XmlElement("th")
+        .addText("Navigation").setAttribute("align", "left")));
+    int[] offsets = new int[ids.size() + 1];
+    for (int i = 0; i < ids.size(); i++) {
+      offsets[i] = builder.length();
+      String href = pathToRoot + pageNames.get(i) + "/index.html";
+      XmlElement link = new XmlElement("a").addText(titles.get(i))
+          .setAttribute("href", href);
+      builder.append(new XmlElement("tr").addElement(new XmlElement("td")
+          .addElement(new XmlElement("small").addElement(link))));
+    }
+    offsets[ids.size()] = builder.length();
+    return new Fragment(builder.toString(), offsets);
+  }
+}
@@ -16,27 +16,40 @@
 
 package com.google.sites.liberation.export;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
 import static com.google.sites.liberation.util.EntryType.getType;
 import static com.google.sites.liberation.util.EntryType.isPage;
-import static com.google.sites.liberation.util.EntryUtils.getParentId;
+import static com.google.sites.liberation.util.EntryUtils.getXhtmlContent;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.AttachmentEntry;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.sites.liberation.util.DaemonThreadFactory;
 import com.google.sites.liberation.util.ProgressListener;
+import com.google.sites.liberation.util.SynchronizedProgressListener;
 import com.google.sites.liberation.util.UrlUtils;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,12 +57,46 @@ import java.util.logging.Logger;
  * Implements {@link SiteExporter} to export an entire Site
  * to a given root folder.
  *
+ * <p>In incremental mode, an {@link ExportManifest} of every entry is kept in
+ * the root folder, along with a {@link DiskEntryStore} of the entries 
+ * themselves, whatever entry store is otherwise used. If both are found, 
+ * only the entries updated since the manifest was written are fetched, and
+ * only the pages and attachments they affect are exported again. The folders
+ * of pages which have moved are removed. Entries deleted from the site are
+ * not noticed by an incremental export.</p>
+ *
+ * <p>When every entry is fetched, each attachment is queued for download 
+ * while the feed is still being read, as soon as the path of its parent page
+ * is known. Pages need all of their children and the top level pages of the 
+ * site, so once every entry has been fetched they are exported on a pool of 
+ * threads, which share a {@link ReadOnlyEntryStore} view of the entries, while
+ * the attachments are still downloading. The links in every page are 
+ * converted before the pool starts, since a page may be rendered from the
+ * content of others. Page histories are handed on to a
+ * bounded pool of their own, so that fetching them doesn't hold up the 
+ * remaining pages.</p>
+ *
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class SiteExporterImpl implements SiteExporter {
 
   private static final Logger LOGGER = Logger.getLogger(
       SiteExporterImpl.class.getCanonicalName());
+  
+  /** 
+   * How long before the previous fetch to look for updates, to allow for 
+   * the local clock being ahead of the server's.
+   */
+  private static final long UPDATED_MIN_SLACK_MILLIS = 60 * 60 * 1000;
+  
+  /** 
+   * How many page histories may wait for each revision export thread before
+   * the page export threads export them themselves.
+   */
+  private static final int REVISION_QUEUE_SIZE_PER_THREAD = 4;
+
+  /** Name of the entry store file in the root folder of an export. */
+  static final String ENTRIES_FILE_NAME = ".export-entries";
 
   private final AbsoluteLinkConverter linkConverter;
   private final AppendableFactory appendableFactory;
@@ -58,9 +105,19 @@ final class SiteExporterImpl implements SiteExporter {
   private final FeedProvider feedProvider;
   private final PageExporter pageExporter;
   private final RevisionsExporter revisionsExporter;
+  private final int downloads;
+  private final int downloadsPerHost;
+  private final int exportThreads;
+  private final int revisionThreads;
+  private final boolean incremental;
 
   /**
-   * Creates a new SiteExporter with the given dependencies.
+   * Creates a new SiteExporter with the given dependencies, which downloads
+   * at most {@code downloads} attachments at once and at most 
+   * {@code downloadsPerHost} from the same host, which exports
+   * {@code exportThreads} pages and {@code revisionThreads} page histories at
+   * once, and which only exports what has changed since the previous export
+   * if {@code incremental} is true.
    */
   @Inject
   SiteExporterImpl(AbsoluteLinkConverter linkConverter,
@@ -69,7 +126,12 @@ final class SiteExporterImpl implements SiteExporter {
       EntryStoreFactory entryStoreFactory,
       FeedProvider feedProvider,
       PageExporter pageExporter,
-      RevisionsExporter revisionsExporter) {
+      RevisionsExporter revisionsExporter,
+      @Named(SiteExporterModule.DOWNLOADS) int downloads,
+      @Named(SiteExporterModule.DOWNLOADS_PER_HOST) int downloadsPerHost,
+      @Named(SiteExporterModule.EXPORT_THREADS) int exportThreads,
+      @Named(SiteExporterModule.REVISION_THREADS) int revisionThreads,
+      @Named(SiteExporterModule.INCREMENTAL) boolean incremental) {
     this.linkConverter = checkNotNull(linkConverter);
     this.appendableFactory = checkNotNull(appendableFactory);
     this.attachmentDownloader = checkNotNull(attachmentDownloader);
@@ -77,78 +139,435 @@ final class SiteExporterImpl implements SiteExporter {
     this.feedProvider = checkNotNull(feedProvider);
     this.pageExporter = checkNotNull(pageExporter);
     this.revisionsExporter = checkNotNull(revisionsExporter);
+    this.downloads = downloads;
+    this.downloadsPerHost = downloadsPerHost;
+    checkArgument(exportThreads > 0);
+    this.exportThreads = exportThreads;
+    checkArgument(revisionThreads >= 0);
+    this.revisionThreads = revisionThreads;
+    this.incremental = incremental;
   }
 
   @Override
   public void exportSite(String host, @Nullable String domain, String webspace,
       boolean exportRevisions, SitesService sitesService, File rootDirectory, 
-      ProgressListener progressListener) {
+      ProgressListener listener) {
     checkNotNull(host, "host");
     checkNotNull(webspace, "webspace");
     checkNotNull(sitesService, "sitesService");
     checkNotNull(rootDirectory, "rootDirectory");
-    checkNotNull(progressListener, "progressListener");
-    Set<BasePageEntry<?>> pages = Sets.newHashSet();
-    Set<AttachmentEntry> attachments = Sets.newHashSet();
-    EntryStore entryStore = entryStoreFactory.newEntryStore();
+    checkNotNull(listener, "progressListener");
+    SynchronizedProgressListener progressListener = 
+        new SynchronizedProgressListener(listener);
+    Set<String> pageIds = Sets.newHashSet();
+    Set<String> attachmentIds = Sets.newHashSet();
     URL feedUrl = UrlUtils.getFeedUrl(host, domain, webspace);
     URL siteUrl = UrlUtils.getSiteUrl(host, domain, webspace);
 
-    progressListener.setStatus("Retrieving site data (this may take a few minutes).");
-    Iterable<BaseContentEntry<?>> entries =
-        feedProvider.getEntries(feedUrl, sitesService);
+    ExportManifest previous = null;
+    ExportManifest manifest = null;
+    EntryStore entryStore;
+    DiskEntryStore savedEntryStore = null;
+    if (incremental) {
+      previous = readManifest(rootDirectory);
+      if (previous != null) {
+        savedEntryStore = openEntryStore(rootDirectory, true, sitesService);
+        if (savedEntryStore == null) {
+          previous = null;
+        }
+      }
+      if (savedEntryStore == null) {
+        savedEntryStore = openEntryStore(rootDirectory, false, sitesService);
+      }
+      entryStore = savedEntryStore;
+      manifest = new ExportManifest(DateTime.now());
+    } else {
+      entryStore = entryStoreFactory.newEntryStore();
+    }
+    Iterable<BaseContentEntry<?>> entries;
+    if (previous == null) {
+      progressListener.setStatus(
+          "Retrieving site data (this may take a few minutes).");
+      entries = feedProvider.getEntries(feedUrl, sitesService, 
+          progressListener);
+    } else {
+      progressListener.setStatus("Retrieving changes since the last export.");
+      DateTime updatedMin = new DateTime(previous.getFetched().getValue() 
+          - UPDATED_MIN_SLACK_MILLIS, 0);
+      entries = feedProvider.getEntries(feedUrl, sitesService, updatedMin,
+          progressListener);
+      for (ExportManifest.Record record : previous.getRecords()) {
+        manifest.addRecord(record);
+      }
+    }
+    AttachmentDownloadPool downloadPool = new AttachmentDownloadPool(
+        attachmentDownloader, downloads, downloadsPerHost);
+    PendingAttachments pendingAttachments = (previous == null) 
+        ? new PendingAttachments(entryStore) : null;
+    List<BaseContentEntry<?>> changedEntries = Lists.newLinkedList();
     int num = 1;
     for (BaseContentEntry<?> entry : entries) {
       if (entry != null) {
         if (num % 20 == 0) {
           progressListener.setStatus("Retrieved " + num + " entries.");
         }
-        entryStore.addEntry(entry);
-        if (isPage(entry)) {
-          pages.add((BasePageEntry<?>) entry);
-        } else if (getType(entry) == ATTACHMENT) {
-          // TODO(gk5885): remove extra cast for
-          // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-          attachments.add((AttachmentEntry) (BaseContentEntry) entry);
+        if (previous == null) {
+          if (addEntry(entry, entryStore, pageIds, attachmentIds)) {
+            for (AttachmentEntry attachment 
+                : pendingAttachments.addEntry(entry)) {
+              downloadAttachment(attachment, rootDirectory, entryStore,
+                  sitesService, downloadPool, progressListener);
+            }
+          }
+        } else if (previous.isChanged(entry)) {
+          changedEntries.add(entry);
+        }
+        if (manifest != null) {
+          manifest.addEntry(entry);
         }
         num++;
       } else {
         LOGGER.log(Level.WARNING, "Error parsing entries!");
       }
     }
+    
+    Set<String> convertedPageIds = pageIds;
+    Set<String> changedPageIds = pageIds;
+    Collection<String> waitingAttachmentIds;
+    if (previous == null) {
+      waitingAttachmentIds = pendingAttachments.getWaitingIds();
+    } else {
+      for (BaseContentEntry<?> entry : changedEntries) {
+        savedEntryStore.replaceEntry(entry);
+      }
+      ChangeSet changeSet = new ChangeSet(previous, entryStore);
+      for (BaseContentEntry<?> entry : changedEntries) {
+        changeSet.addChangedEntry(entry);
+      }
+      pageIds = changeSet.getPageIds();
+      changedPageIds = changeSet.getChangedPageIds();
+      attachmentIds = changeSet.getAttachmentIds();
+      waitingAttachmentIds = attachmentIds;
+      convertedPageIds = getRenderedPageIds(pageIds, entryStore);
+      for (String path : changeSet.getMovedPaths()) {
+        delete(new File(rootDirectory, path));
+      }
+    }
+    if (manifest != null && !manifest.getRecords().isEmpty()) {
+      writeManifest(manifest, rootDirectory);
+    }
 
-    int totalEntries = pages.size() + attachments.size();
+    int totalEntries = pageIds.size() + attachmentIds.size();
     if (totalEntries > 0) {
-      int currentEntries = 0;
-      for (BasePageEntry<?> page : pages) {
-        progressListener.setStatus("Exporting page: "
-            + page.getTitle().getPlainText() + '.');
-        linkConverter.convertLinks(page, entryStore, siteUrl, false);
-        File relativePath = getPath(page, entryStore);
-        if (relativePath != null) {
-          File directory = new File(rootDirectory, relativePath.getPath());
-          directory.mkdirs();
-          exportPage(page, directory, entryStore, exportRevisions);
-          if (exportRevisions) {
-            revisionsExporter.exportRevisions(page, entryStore, directory,
-                sitesService, siteUrl);
-          }
+      progressListener.setTotal(totalEntries);
+      for (String id : waitingAttachmentIds) {
+        // TODO(gk5885): remove extra cast for
+        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+        AttachmentEntry attachment = 
+            (AttachmentEntry) (BaseContentEntry) entryStore.getEntry(id);
+        if (attachment == null) {
+          progressListener.completeOne();
+        } else {
+          downloadAttachment(attachment, rootDirectory, entryStore, 
+              sitesService, downloadPool, progressListener);
         }
-        progressListener.setProgress(((double) ++currentEntries) / totalEntries);
       }
-      for (AttachmentEntry attachment : attachments) {
-        progressListener.setStatus("Downloading attachment: "
-            + attachment.getTitle().getPlainText() + '.');
-        downloadAttachment(attachment, rootDirectory, entryStore, sitesService);
-        progressListener.setProgress(((double) ++currentEntries) / totalEntries);
+      convertLinks(convertedPageIds, entryStore, siteUrl);
+      exportPages(pageIds, changedPageIds, new ReadOnlyEntryStore(entryStore),
+          rootDirectory, siteUrl, exportRevisions, sitesService, 
+          progressListener);
+      if (!attachmentIds.isEmpty()) {
+        progressListener.setStatus("Waiting for attachment downloads.");
+      }
+    }
+    downloadPool.awaitCompletion();
+    // The entry store is saved before the manifest is replaced, so that the
+    // manifest never lists entries which the saved store doesn't have.
+    boolean closed = closeEntryStore(entryStore);
+    if (totalEntries > 0) {
+      if (manifest != null && closed) {
+        commitManifest(rootDirectory);
       }
       progressListener.setStatus("Export complete.");
+    } else if (previous != null) {
+      if (closed) {
+        commitManifest(rootDirectory);
+      }
+      progressListener.setStatus("No changes since the last export.");
     } else {
       progressListener.setStatus("No data returned. You may have provided "
           + "invalid Site information or credentials.");
     }
   }
 
+  /**
+   * Adds the given entry to the entry store, and its id to the given set of 
+   * page or attachment ids according to its type. Only the ids are kept, so 
+   * that the entries themselves need not stay in memory if the entry store 
+   * keeps them elsewhere. Returns false if the id was already in one of the
+   * sets.
+   */
+  private boolean addEntry(BaseContentEntry<?> entry, EntryStore entryStore,
+      Set<String> pageIds, Set<String> attachmentIds) {
+    entryStore.addEntry(entry);
+    if (isPage(entry)) {
+      return pageIds.add(entry.getId());
+    } else if (getType(entry) == ATTACHMENT) {
+      return attachmentIds.add(entry.getId());
+    }
+    return true;
+  }
+  
+  /**
+   * Deletes the given file, or the given folder and everything in it.
+   */
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      LOGGER.log(Level.WARNING, "Unable to delete: " + file);
+    }
+  }
+  
+  /**
+   * Returns the manifest of the previous export to the given directory, or 
+   * {@code null} if there is none or it can't be read.
+   */
+  private ExportManifest readManifest(File rootDirectory) {
+    File file = new File(rootDirectory, ExportManifest.FILE_NAME);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return ExportManifest.read(file);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read manifest: " + file, e);
+    }
+    return null;
+  }
+
+  /**
+   * Opens the entry store kept in the given directory. If {@code reopen} is
+   * true, the store starts with the entries saved by the previous export, 
+   * or {@code null} is returned if they can't be read. Otherwise the store
+   * starts empty.
+   */
+  private DiskEntryStore openEntryStore(File rootDirectory, boolean reopen,
+      SitesService sitesService) {
+    rootDirectory.mkdirs();
+    File file = new File(rootDirectory, ENTRIES_FILE_NAME);
+    File indexFile = new File(rootDirectory, ENTRIES_FILE_NAME + ".index");
+    if (reopen && !indexFile.isFile()) {
+      LOGGER.log(Level.WARNING, "No saved entries: " + indexFile);
+      return null;
+    }
+    if (!reopen && indexFile.exists() && !indexFile.delete()) {
+      LOGGER.log(Level.WARNING, "Unable to delete: " + indexFile);
+    }
+    try {
+      return new DiskEntryStore(file, indexFile, 
+          sitesService.getExtensionProfile());
+    } catch (IOException e) {
+      if (reopen) {
+        LOGGER.log(Level.WARNING, "Unable to read saved entries: " + file, e);
+        return null;
+      }
+      throw new RuntimeException("Unable to create entry store file.", e);
+    }
+  }
+
+  /**
+   * Returns the ids of the given pages and their subpages, whose content may
+   * be shown by the given pages, such as the announcements on an 
+   * announcements page.
+   */
+  private Set<String> getRenderedPageIds(Set<String> pageIds,
+      EntryStore entryStore) {
+    Set<String> renderedPageIds = Sets.newHashSet(pageIds);
+    for (String id : pageIds) {
+      for (BaseContentEntry<?> child : entryStore.getChildren(id)) {
+        if (isPage(child)) {
+          renderedPageIds.add(child.getId());
+        }
+      }
+    }
+    return renderedPageIds;
+  }
+
+  /**
+   * Closes the given entry store if need be, and returns whether it was
+   * closed without error.
+   */
+  private boolean closeEntryStore(EntryStore entryStore) {
+    if (entryStore instanceof Closeable) {
+      try {
+        ((Closeable) entryStore).close();
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Failed closing entry store.", e);
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Writes the given manifest next to the manifest in the given directory.
+   * It only replaces that manifest once {@link #commitManifest} is called,
+   * so that an export which doesn't finish is done again in full next time.
+   */
+  private void writeManifest(ExportManifest manifest, File rootDirectory) {
+    rootDirectory.mkdirs();
+    File file = new File(rootDirectory, ExportManifest.FILE_NAME + ".tmp");
+    try {
+      manifest.write(file);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to write manifest: " + file, e);
+      file.delete();
+    }
+  }
+  
+  private void commitManifest(File rootDirectory) {
+    File from = new File(rootDirectory, ExportManifest.FILE_NAME + ".tmp");
+    File to = new File(rootDirectory, ExportManifest.FILE_NAME);
+    if (from.isFile() && !from.renameTo(to)) {
+      if (!to.delete() || !from.renameTo(to)) {
+        LOGGER.log(Level.WARNING, "Unable to rename " + from + " to " + to);
+      }
+    }
+  }
+
+  /**
+   * Converts the links in each of the pages with the given ids, one page at a
+   * time, before any page is exported. Pages are rendered from the content
+   * of other pages as well as their own, such as the announcements on an
+   * announcements page, so the threads exporting pages must only ever see 
+   * converted content. A page whose content changes is stored again, so that
+   * the converted content isn't lost if the entry store drops the page from
+   * memory.
+   */
+  private void convertLinks(Set<String> pageIds, EntryStore entryStore,
+      URL siteUrl) {
+    for (String id : pageIds) {
+      BasePageEntry<?> page = (BasePageEntry<?>) entryStore.getEntry(id);
+      if (page != null) {
+        String content = getXhtmlContent(page);
+        linkConverter.convertLinks(page, entryStore, siteUrl, false);
+        if (!content.equals(getXhtmlContent(page))) {
+          entryStore.updateEntry(page);
+        }
+      }
+    }
+  }
+
+  /**
+   * Exports the pages with the given ids on a pool of {@code exportThreads}
+   * threads, and waits for all of them to finish. Revisions are only
+   * exported for the pages in {@code changedPageIds}, on a separate pool of
+   * {@code revisionThreads} threads. Each page only counts as complete once
+   * its revisions have been exported. The given entry store must not change
+   * while the pages are exported.
+   */
+  private void exportPages(Set<String> pageIds, 
+      final Set<String> changedPageIds, final EntryStore entryStore, 
+      final File rootDirectory, final URL siteUrl, 
+      final boolean exportRevisions, final SitesService sitesService,
+      final SynchronizedProgressListener progressListener) {
+    ExecutorService executor = Executors.newFixedThreadPool(exportThreads,
+        new DaemonThreadFactory("page-exporter"));
+    final ExecutorService revisionExecutor = (revisionThreads == 0) ? null
+        : new ThreadPoolExecutor(revisionThreads, revisionThreads, 0, 
+            TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+                REVISION_QUEUE_SIZE_PER_THREAD * revisionThreads),
+            new DaemonThreadFactory("revision-exporter"), 
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    for (final String id : pageIds) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          Runnable revisionsTask = null;
+          try {
+            revisionsTask = exportPage(id, changedPageIds.contains(id), 
+                entryStore, rootDirectory, siteUrl, exportRevisions, 
+                sitesService, progressListener);
+          } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Error exporting page: " + id, e);
+          }
+          if (revisionsTask == null) {
+            progressListener.completeOne();
+          } else if (revisionExecutor == null) {
+            revisionsTask.run();
+          } else {
+            revisionExecutor.execute(revisionsTask);
+          }
+        }
+      });
+    }
+    awaitTermination(executor, "pages");
+    if (revisionExecutor != null) {
+      progressListener.setStatus("Waiting for revisions to be exported.");
+      awaitTermination(revisionExecutor, "revisions");
+    }
+  }
+  
+  /**
+   * Exports the page with the given id, whose links must already have been
+   * converted. If {@code changed} and {@code exportRevisions} are both true,
+   * returns a task which exports its revisions and then completes the page,
+   * otherwise returns {@code null}.
+   */
+  private Runnable exportPage(final String id, boolean changed, 
+      final EntryStore entryStore, File rootDirectory, final URL siteUrl, 
+      boolean exportRevisions, final SitesService sitesService, 
+      final SynchronizedProgressListener progressListener) {
+    final BasePageEntry<?> page = (BasePageEntry<?>) entryStore.getEntry(id);
+    if (page != null) {
+      progressListener.setStatus("Exporting page: "
+          + page.getTitle().getPlainText() + '.');
+      String relativePath = entryStore.getPath(id);
+      if (relativePath != null) {
+        final File directory = new File(rootDirectory, relativePath);
+        directory.mkdirs();
+        exportPage(page, directory, entryStore, exportRevisions);
+        if (exportRevisions && changed) {
+          return new Runnable() {
+            @Override
+            public void run() {
+              try {
+                revisionsExporter.exportRevisions(page, entryStore, directory,
+                    sitesService, siteUrl);
+              } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, 
+                    "Error exporting revisions of page: " + id, e);
+              } finally {
+                progressListener.completeOne();
+              }
+            }
+          };
+        }
+      }
+    }
+    return null;
+  }
+  
+  /**
+   * Shuts down the given executor and waits for the tasks it was given, 
+   * which export the given kind of things, to finish.
+   */
+  private void awaitTermination(ExecutorService executor, String things) {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      LOGGER.log(Level.WARNING, "Interrupted while exporting " + things + ".");
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
   private void exportPage(BasePageEntry<?> page, File directory,
       EntryStore entryStore, boolean revisionsExported) {
     File file = new File(directory, "index.html");
@@ -169,33 +588,53 @@ final class SiteExporterImpl implements SiteExporter {
     }
   }
 
+  /**
+   * Queues the given attachment on the download pool. The progress listener
+   * is told once the download has finished, or straight away if the 
+   * attachment has nowhere to go.
+   */
   private void downloadAttachment(AttachmentEntry attachment,
-      File rootDirectory, EntryStore entryStore, SitesService sitesService) {
+      File rootDirectory, EntryStore entryStore, SitesService sitesService,
+      AttachmentDownloadPool downloadPool,
+      final SynchronizedProgressListener progressListener) {
     BasePageEntry<?> parent = entryStore.getParent(attachment.getId());
     if (parent != null) {
-      File relativePath = getPath(parent, entryStore);
+      String relativePath = entryStore.getPath(parent.getId());
       if (relativePath != null) {
-        File folder = new File(rootDirectory, relativePath.getPath());
+        File folder = new File(rootDirectory, relativePath);
         folder.mkdirs();
         File file = new File(folder, attachment.getTitle().getPlainText());
-        attachmentDownloader.download(attachment, file, sitesService);
+        downloadPool.download(attachment, file, sitesService, 
+            new AttachmentDownloadPool.Callback() {
+              @Override
+              public void downloaded(AttachmentEntry attachment, long bytes, 
+                  long elapsedMillis) {
+                reportDownload(attachment, bytes, elapsedMillis, 
+                    progressListener);
+                progressListener.completeOne();
+              }
+            });
+        return;
       }
     }
+    progressListener.completeOne();
   }
 
   /**
-   * Returns the site-relative folder path corresponding to the given page, or
-   * {@code null} if any of the page's ancestors are missing.
+   * Reports the size of the given downloaded attachment and the rate at which
+   * it was downloaded to the given progress listener.
    */
-  private File getPath(BasePageEntry<?> entry, EntryStore entryStore) {
-    String parentId = getParentId(entry);
-    if (parentId == null) {
-      return new File(entry.getPageName().getValue());
-    }
-    BasePageEntry<?> parent = (BasePageEntry<?>) entryStore.getEntry(parentId);
-    if (parent == null) {
-      return null;
+  private void reportDownload(AttachmentEntry attachment, long bytes,
+      long elapsedMillis, ProgressListener progressListener) {
+    String title = attachment.getTitle().getPlainText();
+    if (bytes < 0) {
+      progressListener.setStatus("Failed downloading attachment: " 
+          + title + '.');
+    } else {
+      long kilobytesPerSecond = 
+          (bytes * 1000 / 1024) / Math.max(1, elapsedMillis);
+      progressListener.setStatus("Downloaded attachment: " + title + " (" 
+          + bytes + " bytes, " + kilobytesPerSecond + " KB/s).");
     }
-    return new File(getPath(parent, entryStore), entry.getPageName().getValue());
   }
 }
@@ -16,16 +16,113 @@
 
 package com.google.sites.liberation.export;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.inject.AbstractModule;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+
+import java.util.Properties;
 
 /**
  * GUICE module defining default bindings.
+ * 
+ * <p>Export settings are bound as named constants. Any of the defaults can be
+ * overridden by passing properties with the same names to the constructor.
+ * </p>
  */
 public class SiteExporterModule extends AbstractModule {
 
+  /** Maximum number of attachments downloaded at once. */
+  public static final String DOWNLOADS = "export.downloads";
+  
+  /** Maximum number of attachments downloaded at once from a single host. */
+  public static final String DOWNLOADS_PER_HOST = "export.downloadsPerHost";
+  
+  /** Number of pages exported at once, by default one per processor. */
+  public static final String EXPORT_THREADS = "export.exportThreads";
+  
+  /** 
+   * Number of page histories exported at once, or 0 to export each page's 
+   * history on the thread that exported the page.
+   */
+  public static final String REVISION_THREADS = "export.revisionThreads";
+  
+  /** 
+   * Number of threads fetching feed windows ahead of the threads reading the
+   * feeds, shared by the site feed and every revision feed.
+   */
+  public static final String FEED_THREADS = "export.feedThreads";
+  
+  /** 
+   * Whether to only export what has changed since the previous export. The
+   * entries are then kept on disk in the export directory, whatever the
+   * entry store.
+   */
+  public static final String INCREMENTAL = "export.incremental";
+  
+  /** 
+   * Where to keep the entries of the site during an export, either "memory"
+   * or "disk". 
+   */
+  public static final String ENTRY_STORE = "export.entryStore";
+  
+  /** 
+   * Directory in which to keep a copy of every feed and attachment read, or
+   * empty to not keep one. 
+   */
+  public static final String FEED_CACHE = "export.feedCache";
+  
+  /** 
+   * Whether to read feeds and attachments only from the feed cache, without
+   * going to the server. 
+   */
+  public static final String FEED_REPLAY = "export.feedReplay";
+  
+  private final Properties properties;
+  
+  /**
+   * Creates a new SiteExporterModule using the default export settings.
+   */
+  public SiteExporterModule() {
+    this(new Properties());
+  }
+  
+  /**
+   * Creates a new SiteExporterModule using the given export settings in place
+   * of the defaults.
+   */
+  public SiteExporterModule(Properties settings) {
+    checkNotNull(settings);
+    properties = new Properties();
+    properties.setProperty(DOWNLOADS, "8");
+    properties.setProperty(DOWNLOADS_PER_HOST, "4");
+    properties.setProperty(EXPORT_THREADS, 
+        Integer.toString(Runtime.getRuntime().availableProcessors()));
+    properties.setProperty(REVISION_THREADS, "4");
+    properties.setProperty(FEED_THREADS, "4");
+    properties.setProperty(INCREMENTAL, "false");
+    properties.setProperty(ENTRY_STORE, "memory");
+    properties.setProperty(FEED_CACHE, "");
+    properties.setProperty(FEED_REPLAY, "false");
+    properties.putAll(settings);
+  }
+  
   @Override
   protected void configure() {
-    bind(EntryStoreFactory.class).to(InMemoryEntryStoreFactory.class);
+    if ("disk".equals(properties.getProperty(ENTRY_STORE))) {
+      bind(EntryStoreFactory.class).to(DiskEntryStoreFactory.class);
+    } else {
+      bind(EntryStoreFactory.class).to(InMemoryEntryStoreFactory.class);
+    }
+    bind(FeedProviderImpl.class).in(Scopes.SINGLETON);
+    if (properties.getProperty(FEED_CACHE).length() > 0) {
+      bind(FeedProvider.class).to(CachingFeedProvider.class);
+      bind(AttachmentDownloader.class).to(CachingAttachmentDownloader.class);
+    } else {
+      bind(FeedProvider.class).to(FeedProviderImpl.class);
+    }
     bind(AppendableFactory.class).to(BufferedWriterFactory.class);
+    Names.bindProperties(binder(), properties);
   }
-}
\ No newline at end of file
+}
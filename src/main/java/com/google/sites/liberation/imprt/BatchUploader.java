@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.inject.ImplementedBy;
+import com.google.sites.liberation.util.ProgressListener;
+
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Uploads the comments and list items of a page to a given feed URL in 
+ * batches.
+ * 
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+@ImplementedBy(BatchUploaderImpl.class)
+public interface BatchUploader {
+
+  /**
+   * Uploads the given comments and list items, whose parent is the last of 
+   * the given ancestors, to the given URL, using the given SitesService. As
+   * with {@link EntryUploader}, entries are updated if at all possible,
+   * otherwise they are inserted unless an identical entry already exists.
+   * Entries which can't be uploaded are reported to the given 
+   * ProgressListener.
+   * 
+   * @return the entries returned by the server, and the given entries which
+   *         weren't inserted because an identical entry already exists
+   */
+  List<BaseContentEntry<?>> uploadEntries(List<BaseContentEntry<?>> entries,
+      List<BasePageEntry<?>> ancestors, URL feedUrl, SitesService sitesService,
+      ProgressListener progressListener);
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.getType;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.Kind.AdaptorException;
+import com.google.gdata.data.batch.BatchId;
+import com.google.gdata.data.batch.BatchOperation;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.ContentFeed;
+import com.google.gdata.util.ServiceException;
+import com.google.inject.Inject;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.ProgressListener;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads a page's comments and list items to a given feed URL in GData 
+ * batch requests, rather than one request per entry.
+ * 
+ * <p>Entries with an id in the feed are first sent as batch updates. Those 
+ * the server can't find, and those without an id, are then compared with the
+ * page's existing comments and list items in the {@link RemoteIndex}, which 
+ * fetches them once for the whole page, and only the new ones are sent as 
+ * batch inserts. The status of
+ * each entry in a batch is checked separately, so that one bad entry 
+ * doesn't fail the rest. If a batch request fails as a whole, its entries 
+ * are uploaded one at a time with the {@link EntryUploader} instead.</p>
+ * 
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class BatchUploaderImpl implements BatchUploader {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      BatchUploaderImpl.class.getCanonicalName());
+  
+  /** Maximum number of entries sent in each batch request. */
+  static final int BATCH_SIZE = 100;
+  
+  private final EntryUploader entryUploader;
+  private final RemoteIndex remoteIndex;
+  
+  /**
+   * Creates a new BatchUploaderImpl with the given dependencies.
+   */
+  @Inject
+  BatchUploaderImpl(EntryUploader entryUploader, RemoteIndex remoteIndex) {
+    this.entryUploader = checkNotNull(entryUploader);
+    this.remoteIndex = checkNotNull(remoteIndex);
+  }
+  
+  @Override
+  public List<BaseContentEntry<?>> uploadEntries(
+      List<BaseContentEntry<?>> entries, List<BasePageEntry<?>> ancestors, 
+      URL feedUrl, SitesService sitesService, 
+      ProgressListener progressListener) {
+    checkNotNull(entries);
+    checkNotNull(ancestors);
+    checkArgument(!ancestors.isEmpty(), "No parent given.");
+    checkNotNull(feedUrl);
+    checkNotNull(sitesService);
+    checkNotNull(progressListener);
+    List<BaseContentEntry<?>> returnedEntries = Lists.newArrayList();
+    List<BaseContentEntry<?>> updates = Lists.newArrayList();
+    List<BaseContentEntry<?>> inserts = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : entries) {
+      if (entry.getId() != null 
+          && entry.getId().startsWith(feedUrl.toExternalForm() + "/")) {
+        updates.add(entry);
+      } else {
+        entry.setId(null);
+        inserts.add(entry);
+      }
+    }
+    for (BaseContentEntry<?> entry : batch(updates, BatchOperationType.UPDATE,
+        ancestors, feedUrl, sitesService, returnedEntries, progressListener)) {
+      entry.setId(null);
+      inserts.add(entry);
+    }
+    inserts = getNewEntries(inserts, feedUrl, sitesService, returnedEntries);
+    batch(inserts, BatchOperationType.INSERT, ancestors, feedUrl, 
+        sitesService, returnedEntries, progressListener);
+    return returnedEntries;
+  }
+  
+  /**
+   * Sends the given entries to the server with the given operation, in 
+   * batches of up to {@link #BATCH_SIZE}. The entries returned by the server
+   * are added to {@code returnedEntries}, and those which couldn't be 
+   * uploaded are reported. Returns the entries which the server couldn't 
+   * find to update.
+   */
+  @SuppressWarnings("unchecked")
+  private List<BaseContentEntry<?>> batch(List<BaseContentEntry<?>> entries, 
+      BatchOperationType type, List<BasePageEntry<?>> ancestors, URL feedUrl,
+      SitesService sitesService, List<BaseContentEntry<?>> returnedEntries,
+      ProgressListener progressListener) {
+    List<BaseContentEntry<?>> notFound = Lists.newArrayList();
+    for (int start = 0; start < entries.size(); start += BATCH_SIZE) {
+      List<BaseContentEntry<?>> batch = entries.subList(start, 
+          Math.min(entries.size(), start + BATCH_SIZE));
+      ContentFeed feed = new ContentFeed();
+      for (int i = 0; i < batch.size(); i++) {
+        BatchUtils.setBatchId(batch.get(i), Integer.toString(i));
+        BatchUtils.setBatchOperationType(batch.get(i), type);
+        feed.getEntries().add(batch.get(i));
+      }
+      ContentFeed result;
+      try {
+        result = sitesService.batch(getBatchUrl(feedUrl), feed);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Batch request failed.", e);
+        result = null;
+      } catch (ServiceException e) {
+        LOGGER.log(Level.WARNING, "Batch request failed.", e);
+        result = null;
+      } finally {
+        for (BaseContentEntry<?> entry : batch) {
+          entry.removeExtension(BatchId.class);
+          entry.removeExtension(BatchOperation.class);
+        }
+      }
+      if (result == null) {
+        uploadEntries(batch, ancestors, feedUrl, sitesService, 
+            returnedEntries, progressListener);
+        continue;
+      }
+      Map<String, BaseContentEntry<?>> unanswered = Maps.newHashMap();
+      for (int i = 0; i < batch.size(); i++) {
+        unanswered.put(Integer.toString(i), batch.get(i));
+      }
+      for (BaseContentEntry<?> returnedEntry : result.getEntries()) {
+        BaseContentEntry<?> entry = 
+            unanswered.remove(BatchUtils.getBatchId(returnedEntry));
+        if (entry == null) {
+          continue;
+        }
+        BatchStatus status = BatchUtils.getBatchStatus(returnedEntry);
+        if (BatchUtils.isSuccess(returnedEntry)) {
+          BaseContentEntry<?> adaptedEntry = getAdaptedEntry(returnedEntry);
+          remoteIndex.addEntry(adaptedEntry, null);
+          returnedEntries.add(adaptedEntry);
+        } else if (type == BatchOperationType.UPDATE && status != null 
+            && status.getCode() == 404) {
+          notFound.add(entry);
+        } else {
+          reportFailure(entry, (status == null) ? "unknown error" 
+              : status.getCode() + " " + status.getReason(), ancestors, 
+              progressListener);
+        }
+      }
+      for (BaseContentEntry<?> entry : unanswered.values()) {
+        reportFailure(entry, "no response from server", ancestors, 
+            progressListener);
+      }
+    }
+    return notFound;
+  }
+  
+  /**
+   * Uploads the given entries one at a time.
+   */
+  private void uploadEntries(List<BaseContentEntry<?>> entries, 
+      List<BasePageEntry<?>> ancestors, URL feedUrl, 
+      SitesService sitesService, List<BaseContentEntry<?>> returnedEntries,
+      ProgressListener progressListener) {
+    for (BaseContentEntry<?> entry : entries) {
+      BaseContentEntry<?> returnedEntry = entryUploader.uploadEntry(entry, 
+          ancestors, feedUrl, sitesService);
+      if (returnedEntry == null) {
+        reportFailure(entry, "see log", ancestors, progressListener);
+      } else {
+        returnedEntries.add(returnedEntry);
+      }
+    }
+  }
+  
+  /**
+   * Returns the given entries without those identical to a comment or list
+   * item their parent already has, or to one earlier in the list, which are
+   * added to {@code existingEntries} instead.
+   */
+  private List<BaseContentEntry<?>> getNewEntries(
+      List<BaseContentEntry<?>> entries, URL feedUrl, 
+      SitesService sitesService, List<BaseContentEntry<?>> existingEntries) {
+    Set<String> hashes = Sets.newHashSet();
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : entries) {
+      if (!remoteIndex.containsChild(entry, feedUrl, sitesService) 
+          && hashes.add(EntryUtils.getParentId(entry) + " " 
+              + RemoteIndex.getContentHash(entry))) {
+        newEntries.add(entry);
+      } else {
+        existingEntries.add(entry);
+      }
+    }
+    return newEntries;
+  }
+  
+  /**
+   * Logs and reports that the given entry couldn't be uploaded.
+   */
+  private void reportFailure(BaseContentEntry<?> entry, String reason,
+      List<BasePageEntry<?>> ancestors, ProgressListener progressListener) {
+    BasePageEntry<?> parent = ancestors.get(ancestors.size() - 1);
+    String message = "Unable to upload " + getType(entry) + " on page " 
+        + parent.getPageName().getValue() + ": " + reason;
+    LOGGER.log(Level.WARNING, message);
+    progressListener.setStatus(message);
+  }
+  
+  /**
+   * Returns the given entry adapted to its kind, if it can be.
+   */
+  private BaseContentEntry<?> getAdaptedEntry(BaseContentEntry<?> entry) {
+    try {
+      BaseContentEntry<?> adaptedEntry = 
+          (BaseContentEntry<?>) entry.getAdaptedEntry();
+      return (adaptedEntry == null) ? entry : adaptedEntry;
+    } catch (AdaptorException e) {
+      LOGGER.log(Level.WARNING, "Unable to adapt entry: " + entry, e);
+      return entry;
+    }
+  }
+  
+  private URL getBatchUrl(URL feedUrl) throws MalformedURLException {
+    return new URL(feedUrl.toExternalForm() + "/batch");
+  }
+}
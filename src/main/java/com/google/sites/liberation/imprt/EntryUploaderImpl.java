@@ -24,29 +24,17 @@ import static com.google.sites.liberation.util.EntryType.getType;
 import static com.google.sites.liberation.util.EntryType.isPage;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.collect.Maps;
 import com.google.gdata.client.sites.ContentQuery;
 import com.google.gdata.client.sites.SitesService;
-import com.google.gdata.data.ILink;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
-import com.google.gdata.data.sites.CommentEntry;
-import com.google.gdata.data.sites.ListItemEntry;
-import com.google.gdata.data.sites.SitesLink;
-import com.google.gdata.data.spreadsheet.Field;
 import com.google.gdata.util.ServiceException;
 import com.google.inject.Inject;
 import com.google.sites.liberation.util.EntryProvider;
-import com.google.sites.liberation.util.EntryUtils;
-
-import org.apache.commons.lang.StringEscapeUtils;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Uploads (updates if possible, otherwise inserts) an entry to a given feed URL.
@@ -55,22 +43,32 @@ import java.util.logging.Logger;
  */
 final class EntryUploaderImpl implements EntryUploader {
 
-  private static final Logger LOGGER = Logger.getLogger(
-      EntryUploaderImpl.class.getCanonicalName());
-  
   private final EntryInserter entryInserter;
   private final EntryProvider entryProvider;
   private final EntryUpdater entryUpdater;
+  private final RemoteIndex remoteIndex;
   
   /**
    * Creates a new EntryUploaderImpl with the given dependencies.
    */
-  @Inject
   EntryUploaderImpl(EntryInserter entryInserter, EntryProvider entryProvider, 
       EntryUpdater entryUpdater) {
+    this(entryInserter, entryProvider, entryUpdater, 
+        new RemoteIndex(entryProvider));
+  }
+  
+  /**
+   * Creates a new EntryUploaderImpl with the given dependencies, which
+   * answers whether entries exist from the given index whenever it is loaded
+   * for the feed being uploaded to.
+   */
+  @Inject
+  EntryUploaderImpl(EntryInserter entryInserter, EntryProvider entryProvider, 
+      EntryUpdater entryUpdater, RemoteIndex remoteIndex) {
     this.entryInserter = checkNotNull(entryInserter);
     this.entryProvider = checkNotNull(entryProvider);
     this.entryUpdater = checkNotNull(entryUpdater);
+    this.remoteIndex = checkNotNull(remoteIndex);
   }
   
   @Override
@@ -80,6 +78,9 @@ final class EntryUploaderImpl implements EntryUploader {
     checkNotNull(ancestors);
     checkNotNull(feedUrl);
     checkNotNull(sitesService);
+    if (remoteIndex.isLoaded(feedUrl)) {
+      return uploadEntryWithIndex(entry, ancestors, feedUrl, sitesService);
+    }
     BaseContentEntry<?> returnedEntry = null;
     if (entry.getId() != null) {
       if (entry.getId().startsWith(feedUrl.toExternalForm() + "/")) {
@@ -93,104 +94,67 @@ final class EntryUploaderImpl implements EntryUploader {
           getType(entry) == ATTACHMENT || 
           getType(entry) == WEB_ATTACHMENT) {
         returnedEntry = getEntryByPath(entry, ancestors, feedUrl, sitesService);
-      } else if (getType(entry) == COMMENT) {
-        // TODO(gk5885): remove extra cast for
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-        if (commentExists((CommentEntry) (BaseContentEntry) entry, feedUrl, sitesService)) {
-          return entry;
-        }
-      } else if (getType(entry) == LIST_ITEM) {
-        // TODO(gk5885): remove extra cast for
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-        if (listItemExists((ListItemEntry) (BaseContentEntry) entry, feedUrl, sitesService)) {
+      } else if (getType(entry) == COMMENT 
+          || getType(entry) == LIST_ITEM) {
+        if (remoteIndex.containsChild(entry, feedUrl, sitesService)) {
           return entry;
         }
       }
     }
     if (returnedEntry == null) {
-      return entryInserter.insertEntry(entry, feedUrl, sitesService);
+      BaseContentEntry<?> insertedEntry = 
+          entryInserter.insertEntry(entry, feedUrl, sitesService);
+      if (insertedEntry != null) {
+        remoteIndex.addEntry(insertedEntry, null);
+      }
+      return insertedEntry;
     } else {
       return entryUpdater.updateEntry(returnedEntry, entry, 
           sitesService);
     }
   }
-
+  
   /**
-   * Returns whether or not an identical comment to the one given exists at the 
-   * given feed URL.
+   * Uploads the given entry, looking up whether it already exists in the
+   * remote index rather than querying the server, and adds the returned
+   * entry to the index.
    */
-  private boolean commentExists(CommentEntry comment, URL feedUrl, 
+  private BaseContentEntry<?> uploadEntryWithIndex(BaseContentEntry<?> entry,
+      List<BasePageEntry<?>> ancestors, URL feedUrl, 
       SitesService sitesService) {
-    try {
-      String content = StringEscapeUtils.unescapeXml(
-          EntryUtils.getXhtmlContent(comment));
-      ContentQuery query = new ContentQuery(feedUrl);
-      String parentId = comment.getLink(SitesLink.Rel.PARENT, ILink.Type.ATOM)
-          .getHref();
-      query.setParent(parentId.substring(parentId.lastIndexOf('/') + 1));
-      query.setKind("comment");
-      List<BaseContentEntry<?>> entries = entryProvider
-          .getEntries(query, sitesService);
-      for (BaseContentEntry<?> entry : entries) {
-        String otherContent = entry.getTextContent().getContent().getPlainText();
-        if (otherContent.equals(content)) {
-          return true;
-        }
+    BaseContentEntry<?> returnedEntry = null;
+    String path = null;
+    if (entry.getId() != null) {
+      if (entry.getId().startsWith(feedUrl.toExternalForm() + "/")) {
+        returnedEntry = remoteIndex.getEntryById(entry.getId());
+      } else {
+        entry.setId(null);
       }
-      return false;
-    } catch(IOException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
-    } catch (ServiceException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
     }
-  }
-
-  /**
-   * Returns whether or not an identical list item to the one given exists at 
-   * the given feed URL.
-   */
-  private boolean listItemExists(ListItemEntry listItem, URL feedUrl, 
-      SitesService sitesService) {
-    try {
-      Map<String, String> values = Maps.newHashMap();
-      for (Field field : listItem.getFields()) {
-        values.put(field.getIndex(), field.getValue());
+    if (isPage(entry) || 
+        getType(entry) == ATTACHMENT || 
+        getType(entry) == WEB_ATTACHMENT) {
+      path = getPath(entry, ancestors);
+      if (returnedEntry == null) {
+        returnedEntry = remoteIndex.getEntryByPath(path);
       }
-      ContentQuery query = new ContentQuery(feedUrl);
-      String parentId = listItem.getLink(SitesLink.Rel.PARENT, ILink.Type.ATOM)
-          .getHref();
-      query.setParent(parentId.substring(parentId.lastIndexOf('/') + 1));
-      query.setKind("listitem");
-      List<BaseContentEntry<?>> entries = entryProvider
-          .getEntries(query, sitesService);
-      for (BaseContentEntry<?> entry : entries) {
-        // TODO(gk5885): remove extra cast for
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
-        ListItemEntry item = (ListItemEntry) (BaseContentEntry) entry;
-        if (item.getFields().size() == listItem.getFields().size()) {
-          boolean equal = true;
-          for (Field field : item.getFields()) {
-            if (!values.get(field.getIndex()).equals(field.getValue())) {
-              equal = false;
-            }
-          }
-          if (equal) { 
-            return true;
-          }
-        }
-      }
-      return false;
-    } catch (IOException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
-    } catch (ServiceException e) {
-      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
-      return false;
+    } else if (returnedEntry == null 
+        && remoteIndex.containsChild(entry, feedUrl, sitesService)) {
+      return entry;
     }
+    BaseContentEntry<?> uploadedEntry;
+    if (returnedEntry == null) {
+      uploadedEntry = entryInserter.insertEntry(entry, feedUrl, sitesService);
+    } else {
+      uploadedEntry = entryUpdater.updateEntry(returnedEntry, entry, 
+          sitesService);
+    }
+    if (uploadedEntry != null) {
+      remoteIndex.addEntry(uploadedEntry, path);
+    }
+    return uploadedEntry;
   }
-  
+
   /**
    * Returns the given entry's with the given id or null if it doesn't exist.
    */
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+import com.google.gdata.util.common.base.Nullable;
+import com.google.sites.liberation.util.HashUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Records what was uploaded from a page directory the last time it was
+ * imported, so that a later import can skip the page if neither it nor the
+ * page on the server has changed since.
+ *
+ * <p>The journal keeps the feed URL the page was imported to, the id of its
+ * parent, the id and revision number the server returned for it, whether its
+ * revisions were imported with it, and a hash of the files in the directory
+ * and its {@code _revisions} directory, which hold the page, its comments and
+ * list items, its attachments and its history. The journal is kept as a
+ * properties file in the page directory.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class ImportJournal {
+
+  /** Name of the journal file in a page directory. */
+  static final String FILE_NAME = ".imported";
+
+  private static final String FEED_URL = "feedUrl";
+  private static final String PARENT_ID = "parentId";
+  private static final String ID = "id";
+  private static final String REVISION = "revision";
+  private static final String HASH = "sha1";
+  private static final String REVISIONS = "revisions";
+  private static final String REVISIONS_DIRECTORY = "_revisions";
+
+  private final String feedUrl;
+  private final String parentId;
+  private final String id;
+  private final int revision;
+  private final String hash;
+  private final boolean revisions;
+
+  /**
+   * Creates a new ImportJournal recording that the page directory with the
+   * given hash was imported to the given feed URL, under the parent with the
+   * given id, as the page with the given id and revision number, along with
+   * its revisions if {@code revisions} is true.
+   */
+  ImportJournal(String feedUrl, @Nullable String parentId, String id,
+      int revision, String hash, boolean revisions) {
+    this.feedUrl = checkNotNull(feedUrl);
+    this.parentId = parentId;
+    this.id = checkNotNull(id);
+    this.revision = revision;
+    this.hash = checkNotNull(hash);
+    this.revisions = revisions;
+  }
+
+  /**
+   * Reads the journal stored in the given file.
+   *
+   * @throws IOException if the file can't be read or isn't a valid journal
+   */
+  static ImportJournal read(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    String feedUrl = properties.getProperty(FEED_URL);
+    String id = properties.getProperty(ID);
+    String revision = properties.getProperty(REVISION);
+    String hash = properties.getProperty(HASH);
+    if (feedUrl == null || id == null || revision == null || hash == null) {
+      throw new IOException("Invalid import journal: " + file);
+    }
+    try {
+      return new ImportJournal(feedUrl, properties.getProperty(PARENT_ID),
+          id, Integer.parseInt(revision), hash,
+          Boolean.parseBoolean(properties.getProperty(REVISIONS)));
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid import journal: " + file);
+    }
+  }
+
+  /**
+   * Writes this journal to the given file.
+   */
+  void write(File file) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(FEED_URL, feedUrl);
+    if (parentId != null) {
+      properties.setProperty(PARENT_ID, parentId);
+    }
+    properties.setProperty(ID, id);
+    properties.setProperty(REVISION, Integer.toString(revision));
+    properties.setProperty(HASH, hash);
+    properties.setProperty(REVISIONS, Boolean.toString(revisions));
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns the id of the page on the server.
+   */
+  String getId() {
+    return id;
+  }
+
+  /**
+   * Returns the revision number of the page on the server.
+   */
+  int getRevision() {
+    return revision;
+  }
+
+  /**
+   * Returns whether this journal records a page directory with the given
+   * hash imported to the given feed URL, under the parent with the given id.
+   * If {@code importRevisions} is true, the page's revisions must also have
+   * been imported with it.
+   */
+  boolean matches(String feedUrl, @Nullable String parentId, String hash,
+      boolean importRevisions) {
+    return this.feedUrl.equals(feedUrl)
+        && Objects.equal(this.parentId, parentId)
+        && this.hash.equals(hash)
+        && (revisions || !importRevisions);
+  }
+
+  /**
+   * Returns the hex encoded SHA-1 hash of the names and contents of the files
+   * in the given page directory and its {@code _revisions} directory, not
+   * including its other subdirectories or journal.
+   */
+  static String hash(File directory) throws IOException {
+    MessageDigest digest = HashUtils.newSha1Digest();
+    update(digest, directory, "");
+    File revisionsDirectory = new File(directory, REVISIONS_DIRECTORY);
+    if (revisionsDirectory.isDirectory()) {
+      update(digest, revisionsDirectory, REVISIONS_DIRECTORY + "/");
+    }
+    return HashUtils.toHex(digest);
+  }
+
+  /**
+   * Updates the given digest with the names, prefixed with the given prefix,
+   * and contents of the files in the given directory, other than the journal.
+   */
+  private static void update(MessageDigest digest, File directory,
+      String prefix) throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Unable to list directory: " + directory);
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      if (!file.isFile() || file.getName().equals(FILE_NAME)) {
+        continue;
+      }
+      digest.update((prefix + file.getName() + "\n" + file.length() + "\n")
+          .getBytes("UTF-8"));
+      HashUtils.update(digest, file);
+    }
+  }
+}
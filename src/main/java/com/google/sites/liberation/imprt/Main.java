@@ -27,6 +27,7 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
 import java.io.File;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,12 +63,28 @@ public class Main {
   @Option(name="-r", usage="import revisions")
   private boolean importRevisions = false;
   
+  @Option(name="-pt", usage="number of pages to import at once")
+  private Integer importThreads = null;
+  
+  @Option(name="-q", usage="maximum number of requests to make to the server "
+      + "per second")
+  private Double requestsPerSecond = null;
+  
+  @Option(name="-ri", usage="read the whole destination site before "
+      + "importing, rather than querying for each entry")
+  private boolean remoteIndex = false;
+  
+  @Option(name="-a", usage="import all pages, including those unchanged "
+      + "since they were last imported")
+  private boolean importAll = false;
+  
   private void doMain(String[] args) {
     CmdLineParser parser = new CmdLineParser(this);
-    Injector injector = Guice.createInjector(new SiteImporterModule());
-    SiteImporter siteImporter = injector.getInstance(SiteImporter.class);
     try {
       parser.parseArgument(args);
+      Injector injector = Guice.createInjector(
+          new SiteImporterModule(getSettings()));
+      SiteImporter siteImporter = injector.getInstance(SiteImporter.class);
       if (webspace == null) {
         throw new CmdLineException("Webspace of site not specified!");
       }
@@ -94,6 +111,28 @@ public class Main {
     }
   }
   
+  /**
+   * Returns the import settings that were given on the command line.
+   */
+  private Properties getSettings() {
+    Properties settings = new Properties();
+    if (importThreads != null) {
+      settings.setProperty(SiteImporterModule.IMPORT_THREADS, 
+          importThreads.toString());
+    }
+    if (requestsPerSecond != null) {
+      settings.setProperty(SiteImporterModule.REQUESTS_PER_SECOND, 
+          requestsPerSecond.toString());
+    }
+    if (remoteIndex) {
+      settings.setProperty(SiteImporterModule.REMOTE_INDEX, "true");
+    }
+    if (importAll) {
+      settings.setProperty(SiteImporterModule.SKIP_UNCHANGED, "false");
+    }
+    return settings;
+  }
+  
   /**
    * Imports a Site.
    */
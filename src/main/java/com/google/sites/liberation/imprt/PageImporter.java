@@ -19,6 +19,7 @@ package com.google.sites.liberation.imprt;
 import com.google.gdata.client.sites.SitesService;
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.inject.ImplementedBy;
+import com.google.sites.liberation.util.ProgressListener;
 
 import java.io.File;
 import java.net.URL;
@@ -42,9 +43,10 @@ public interface PageImporter {
    * @param feedUrl the feedUrl to upload the entries to
    * @param siteUrl the siteUrl the page will exist at
    * @param sitesService SitesService to use for uploading
+   * @param progressListener ProgressListener to report failed uploads to
    * @return the BasePageEntry returned by the server
    */
   BasePageEntry<?> importPage(File directory, boolean importRevisions,
       List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl, 
-      SitesService sitesService);
+      SitesService sitesService, ProgressListener progressListener);
 }
@@ -20,6 +20,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.sites.liberation.util.EntryType.getType;
 import static com.google.sites.liberation.util.EntryType.isPage;
 import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.COMMENT;
+import static com.google.sites.liberation.util.EntryType.LIST_ITEM;
 
 import com.google.common.collect.Lists;
 import com.google.gdata.client.sites.SitesService;
@@ -30,18 +32,29 @@ import com.google.gdata.data.media.MediaSource;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.gdata.data.sites.PageName;
+import com.google.gdata.util.ServiceException;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import com.google.sites.liberation.parsers.PageParser;
 import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.ProgressListener;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Parses a page and its children and uploads them to a feed.
+ * Parses a page and its children and uploads them to a feed. Comments and
+ * list items are uploaded in batches, and other children one at a time.
+ * 
+ * <p>Once a page and all of its children have been uploaded, an 
+ * {@link ImportJournal} is written to its directory. A later import skips 
+ * the page, and returns it as it is on the server, if the directory's files
+ * and the page's revision on the server are both as they were, and its 
+ * revisions were imported with it if they are being imported now.</p>
  * 
  * @author bsimon@google.com (Benjamin Simon)
  */
@@ -50,32 +63,43 @@ final class PageImporterImpl implements PageImporter {
   private static final Logger LOGGER = Logger.getLogger(
       PageImporterImpl.class.getCanonicalName());
   
+  private final BatchUploader batchUploader;
   private final EntryUpdater entryUpdater;
   private final EntryUploader entryUploader;
   private final PageParser pageParser;
   private final RelativeLinkConverter linkConverter;
   private final RevisionsImporter revisionsImporter;
+  private final RemoteIndex remoteIndex;
+  private final boolean skipUnchanged;
   
   /**
-   * Creates a new PageImporterImpl with the given dependencies.
+   * Creates a new PageImporterImpl with the given dependencies, which skips
+   * pages unchanged since they were last imported if {@code skipUnchanged}
+   * is true.
    */
   @Inject
-  PageImporterImpl(EntryUpdater entryUpdater,
+  PageImporterImpl(BatchUploader batchUploader,
+      EntryUpdater entryUpdater,
       EntryUploader entryUploader,
       PageParser pageParser,
       RelativeLinkConverter linkConverter,
-      RevisionsImporter revisionsImporter) {
+      RevisionsImporter revisionsImporter,
+      RemoteIndex remoteIndex,
+      @Named(SiteImporterModule.SKIP_UNCHANGED) boolean skipUnchanged) {
+    this.batchUploader = checkNotNull(batchUploader);
     this.entryUpdater = checkNotNull(entryUpdater);
     this.entryUploader = checkNotNull(entryUploader);
     this.pageParser = checkNotNull(pageParser);
     this.linkConverter = checkNotNull(linkConverter);
     this.revisionsImporter = checkNotNull(revisionsImporter);
+    this.remoteIndex = checkNotNull(remoteIndex);
+    this.skipUnchanged = skipUnchanged;
   }
   
   @Override
   public BasePageEntry<?> importPage(File directory, boolean importRevisions, 
       List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl, 
-      SitesService sitesService) {
+      SitesService sitesService, ProgressListener progressListener) {
     checkNotNull(directory);
     File file = new File(directory, "index.html");
     if (!file.isFile()) {
@@ -92,8 +116,20 @@ final class PageImporterImpl implements PageImporter {
     //TODO(jlueck): Remove the toLowerCase() call once Watercress release is in dogfood.
     page.setPageName(new PageName(directory.getName().toLowerCase()));
     linkConverter.convertLinks(page, ancestors, siteUrl, false);
+    String parentId = null;
     if (!ancestors.isEmpty()) {
       EntryUtils.setParent(page, ancestors.get(ancestors.size() - 1));
+      parentId = ancestors.get(ancestors.size() - 1).getId();
+    }
+    String hash = null;
+    if (skipUnchanged) {
+      hash = getHash(directory);
+      BasePageEntry<?> unchangedEntry = getUnchangedEntry(directory, page,
+          parentId, hash, importRevisions, feedUrl, sitesService);
+      if (unchangedEntry != null) {
+        LOGGER.log(Level.INFO, "Skipping unchanged page: " + directory);
+        return unchangedEntry;
+      }
     }
     BasePageEntry<?> returnedEntry = null;
     if (importRevisions && new File(directory, "_revisions").isDirectory()) {
@@ -110,6 +146,8 @@ final class PageImporterImpl implements PageImporter {
     
     List<BasePageEntry<?>> newAncestors = Lists.newLinkedList(ancestors);
     newAncestors.add(returnedEntry);
+    boolean complete = (returnedEntry != null);
+    List<BaseContentEntry<?>> batchedChildren = Lists.newArrayList();
     for (BaseContentEntry<?> child : getNonPageEntries(entries)) {
       if (getType(child) == ATTACHMENT) {
         if (child.getContent() != null) {
@@ -124,11 +162,95 @@ final class PageImporterImpl implements PageImporter {
         }
       }
       EntryUtils.setParent(child, returnedEntry);
-      entryUploader.uploadEntry(child, newAncestors, feedUrl, sitesService);
+      if (getType(child) == COMMENT || getType(child) == LIST_ITEM) {
+        batchedChildren.add(child);
+      } else if (entryUploader.uploadEntry(child, newAncestors, feedUrl, 
+          sitesService) == null) {
+        complete = false;
+      }
+    }
+    if (!batchedChildren.isEmpty()) {
+      List<BaseContentEntry<?>> returnedChildren = batchUploader
+          .uploadEntries(batchedChildren, newAncestors, feedUrl, 
+          sitesService, progressListener);
+      if (returnedChildren.size() < batchedChildren.size()) {
+        complete = false;
+      }
+    }
+    if (complete && hash != null && returnedEntry.getRevision() != null) {
+      writeJournal(directory, new ImportJournal(feedUrl.toExternalForm(), 
+          parentId, returnedEntry.getId(), 
+          returnedEntry.getRevision().getValue(), hash, importRevisions));
     }
     return returnedEntry;
   }
   
+  /**
+   * Returns the page on the server which the page in the given directory was
+   * last imported as, if neither has changed since and its revisions were
+   * imported with it if {@code importRevisions} is true, or {@code null} 
+   * otherwise.
+   */
+  private BasePageEntry<?> getUnchangedEntry(File directory, 
+      BasePageEntry<?> page, String parentId, String hash, 
+      boolean importRevisions, URL feedUrl, SitesService sitesService) {
+    File file = new File(directory, ImportJournal.FILE_NAME);
+    if (hash == null || !file.isFile()) {
+      return null;
+    }
+    ImportJournal journal;
+    try {
+      journal = ImportJournal.read(file);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read import journal: " + file, e);
+      return null;
+    }
+    if (!journal.matches(feedUrl.toExternalForm(), parentId, hash, 
+        importRevisions)) {
+      return null;
+    }
+    BaseContentEntry<?> entry;
+    if (remoteIndex.isLoaded(feedUrl)) {
+      entry = remoteIndex.getEntryById(journal.getId());
+    } else {
+      try {
+        entry = sitesService.getEntry(new URL(journal.getId()), 
+            page.getClass());
+      } catch (IOException e) {
+        return null;
+      } catch (ServiceException e) {
+        return null;
+      }
+    }
+    if (!isPage(entry) || entry.getRevision() == null 
+        || entry.getRevision().getValue() != journal.getRevision()) {
+      return null;
+    }
+    return (BasePageEntry<?>) entry;
+  }
+  
+  /**
+   * Returns the hash of the files in the given page directory, or 
+   * {@code null} if they can't be read.
+   */
+  private String getHash(File directory) {
+    try {
+      return ImportJournal.hash(directory);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to read directory: " + directory, e);
+      return null;
+    }
+  }
+  
+  private void writeJournal(File directory, ImportJournal journal) {
+    File file = new File(directory, ImportJournal.FILE_NAME);
+    try {
+      journal.write(file);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Unable to write import journal: " + file, e);
+    }
+  }
+  
   private BasePageEntry<?> getFirstPageEntry(List<BaseContentEntry<?>> entries) {
     for (BaseContentEntry<?> entry : entries) {
       if (isPage(entry)) {
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.gdata.client.AuthTokenFactory.AuthToken;
+import com.google.gdata.client.Query;
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.client.Service.GDataRequestFactory;
+import com.google.gdata.client.Service.GDataRequest.RequestType;
+import com.google.gdata.util.ContentType;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates a {@link GDataRequestFactory} so that requests are created no 
+ * more often than a given number of times per second, however many threads
+ * are making them. A thread creating a request too soon after the previous 
+ * one waits for its turn.
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class RateLimitedRequestFactory implements GDataRequestFactory {
+
+  private final GDataRequestFactory delegate;
+  private final long intervalNanos;
+  private long nextNanos;
+  
+  /**
+   * Creates a new RateLimitedRequestFactory which creates at most 
+   * {@code requestsPerSecond} requests per second with the given factory.
+   */
+  RateLimitedRequestFactory(GDataRequestFactory delegate, 
+      double requestsPerSecond) {
+    this.delegate = checkNotNull(delegate);
+    checkArgument(requestsPerSecond > 0);
+    intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    nextNanos = System.nanoTime();
+  }
+  
+  @Override
+  public GDataRequest getRequest(RequestType type, URL requestUrl,
+      ContentType contentType) throws IOException, ServiceException {
+    awaitTurn();
+    return delegate.getRequest(type, requestUrl, contentType);
+  }
+
+  @Override
+  public GDataRequest getRequest(Query query, ContentType contentType)
+      throws IOException, ServiceException {
+    awaitTurn();
+    return delegate.getRequest(query, contentType);
+  }
+
+  @Override
+  public void setAuthToken(AuthToken authToken) {
+    delegate.setAuthToken(authToken);
+  }
+
+  @Override
+  public void setHeader(String header, String value) {
+    delegate.setHeader(header, value);
+  }
+
+  @Override
+  public void setPrivateHeader(String header, String value) {
+    delegate.setPrivateHeader(header, value);
+  }
+  
+  /**
+   * Waits until the next request may be made, and reserves the following 
+   * interval for it.
+   */
+  private void awaitTurn() throws InterruptedIOException {
+    long waitNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      nextNanos = Math.max(nextNanos, now);
+      waitNanos = nextNanos - now;
+      nextNanos += intervalNanos;
+    }
+    if (waitNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting to make a "
+            + "request.");
+      }
+    }
+  }
+}
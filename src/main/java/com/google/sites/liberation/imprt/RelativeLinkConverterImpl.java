@@ -32,22 +32,88 @@ import java.util.List;
  */
 final class RelativeLinkConverterImpl implements RelativeLinkConverter {
 
+  private static final String LINK_PREFIX = "href=";
+  private static final String INDEX_SUFFIX = "/index.html";
+
   @Override
   public void convertLinks(BasePageEntry<?> entry, List<BasePageEntry<?>> ancestors, 
       URL siteUrl, boolean isRevision) {
-    convertLinks(entry, ancestors, siteUrl, isRevision, "href=\"", "\"");
-    convertLinks(entry, ancestors, siteUrl, isRevision, "href='", "'");
+    String content = EntryUtils.getXhtmlContent(entry);
+    String url = siteUrl.toExternalForm();
+    AncestorPaths ancestorPaths = new AncestorPaths(ancestors);
+    String converted = convertLinks(content, ancestorPaths, url, isRevision);
+    if (converted == null) {
+      converted = convertLinks(content, ancestorPaths, url, isRevision, 
+          "href=\"", "\"");
+      converted = convertLinks(converted, ancestorPaths, url, isRevision, 
+          "href='", "'");
+    }
+    XmlBlob blob = new XmlBlob();
+    blob.setBlob(converted);
+    TextConstruct textConstruct = new XhtmlTextConstruct(blob);
+    entry.setContent(textConstruct);
   }
   
   /**
-   * Converts the relative links in the content of the given entry, where a 
-   * link is defined by the given prefix and suffix. 
+   * Converts the relative links quoted either way in one pass over the given
+   * content, or returns {@code null} if a link contains a relative link quoted
+   * the other way, in which case the two quote styles must be converted one
+   * after the other to give the same result as before.
    */
-  private void convertLinks(BasePageEntry<?> entry, 
-      List<BasePageEntry<?>> ancestors, URL siteUrl, boolean isRevision,
-      String prefix, String suffix) {
-    String content = EntryUtils.getXhtmlContent(entry);
-    String url = siteUrl.toExternalForm();
+  private String convertLinks(String content, AncestorPaths ancestorPaths, 
+      String url, boolean isRevision) {
+    StringBuilder builder = null;
+    int copied = 0;
+    int index = content.indexOf(LINK_PREFIX);
+    while (index != -1) {
+      int startIndex = index + LINK_PREFIX.length() + 1;
+      if (startIndex <= content.length() 
+          && content.startsWith("../", startIndex)) {
+        char quote = content.charAt(startIndex - 1);
+        if (quote == '"' || quote == '\'') {
+          String other = LINK_PREFIX + (quote == '"' ? '\'' : '"') + "../";
+          int endIndex = content.indexOf(quote, startIndex);
+          while (endIndex != -1) {
+            int otherIndex = content.indexOf(other, startIndex);
+            if (otherIndex != -1 && otherIndex < endIndex) {
+              return null;
+            }
+            if (builder == null) {
+              builder = new StringBuilder(content.length() + 256);
+            }
+            builder.append(content, copied, startIndex).append(url).append('/');
+            appendLink(builder, content.substring(startIndex, endIndex), 
+                ancestorPaths, isRevision);
+            copied = endIndex;
+            // Removing "/index.html" may leave a link prefix which, with the
+            // closing quote, starts another link.
+            int prefixIndex = builder.length() - LINK_PREFIX.length();
+            if (prefixIndex < 0 
+                || builder.indexOf(LINK_PREFIX, prefixIndex) != prefixIndex
+                || !content.startsWith("../", endIndex + 1)) {
+              break;
+            }
+            startIndex = endIndex + 1;
+            endIndex = content.indexOf(quote, startIndex);
+          }
+          index = content.indexOf(LINK_PREFIX, Math.max(index + 1, copied));
+          continue;
+        }
+      }
+      index = content.indexOf(LINK_PREFIX, index + 1);
+    }
+    if (builder == null) {
+      return content;
+    }
+    return builder.append(content, copied, content.length()).toString();
+  }
+  
+  /**
+   * Converts the relative links in the given content, where a link is 
+   * defined by the given prefix and suffix. 
+   */
+  private String convertLinks(String content, AncestorPaths ancestorPaths, 
+      String url, boolean isRevision, String prefix, String suffix) {
     int index = content.indexOf(prefix + "../");
     while (index != -1) {
       int startIndex = index + prefix.length();
@@ -55,34 +121,73 @@ final class RelativeLinkConverterImpl implements RelativeLinkConverter {
       if (endIndex == -1) {
         break;
       }
-      String link = content.substring(startIndex, endIndex);
-      if (link.startsWith("../")) {
-        if (isRevision) {
-          link = link.substring(3);
-        }
-        int ancestorIndex = ancestors.size();
-        while (link.startsWith("../") && ancestorIndex >= 0) {
-          link = link.substring(3);
-          ancestorIndex--;
-        }
-        String str = "";
-        while (ancestorIndex >= 0 && ancestorIndex < ancestors.size()) {
-          str = ancestors.get(ancestorIndex).getPageName().getValue() + "/" + str;
-          ancestorIndex--;
-        }
-        link = str + link;
+      StringBuilder builder = new StringBuilder(content.length() + 256);
+      builder.append(content, 0, startIndex).append(url).append('/');
+      appendLink(builder, content.substring(startIndex, endIndex), 
+          ancestorPaths, isRevision);
+      content = builder.append(content, endIndex, content.length()).toString();
+      index = content.indexOf(prefix + "../");
+    }
+    return content;
+  }
+  
+  /**
+   * Appends the site relative path of the given link, which is relative to
+   * the page being imported.
+   */
+  private void appendLink(StringBuilder builder, String link, 
+      AncestorPaths ancestorPaths, boolean isRevision) {
+    int start = builder.length();
+    int linkIndex = 0;
+    if (link.startsWith("../")) {
+      if (isRevision) {
+        linkIndex = 3;
       }
-      if (link.endsWith("/index.html")) {
-        link = link.substring(0, link.lastIndexOf("/index.html"));
+      int ancestorIndex = ancestorPaths.size();
+      while (link.startsWith("../", linkIndex) && ancestorIndex >= 0) {
+        linkIndex += 3;
+        ancestorIndex--;
+      }
+      if (ancestorIndex >= 0 && ancestorIndex < ancestorPaths.size()) {
+        builder.append(ancestorPaths.get(ancestorIndex));
       }
-      String beforeLink = content.substring(0, startIndex);
-      String afterLink = content.substring(endIndex);
-      content = beforeLink + url + "/" + link + afterLink;
-      index = content.indexOf(prefix + "../");
     }
-    XmlBlob blob = new XmlBlob();
-    blob.setBlob(content);
-    TextConstruct textConstruct = new XhtmlTextConstruct(blob);
-    entry.setContent(textConstruct);
+    builder.append(link, linkIndex, link.length());
+    int end = builder.length() - INDEX_SUFFIX.length();
+    if (end >= start && builder.indexOf(INDEX_SUFFIX, end) == end) {
+      builder.setLength(end);
+    }
+  }
+  
+  /**
+   * The paths of a page's ancestors, each of which is worked out once, the
+   * first time it is needed.
+   */
+  private static final class AncestorPaths {
+    
+    private final List<BasePageEntry<?>> ancestors;
+    private final String[] paths;
+    
+    AncestorPaths(List<BasePageEntry<?>> ancestors) {
+      this.ancestors = ancestors;
+      paths = new String[ancestors.size()];
+    }
+    
+    int size() {
+      return paths.length;
+    }
+    
+    /**
+     * Returns the page names of the top level ancestor down to the ancestor
+     * at the given index, each followed by '/'.
+     */
+    String get(int index) {
+      if (paths[index] == null) {
+        String parentPath = (index == 0) ? "" : get(index - 1);
+        paths[index] = parentPath 
+            + ancestors.get(index).getPageName().getValue() + "/";
+      }
+      return paths[index];
+    }
   }
 }
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.COMMENT;
+import static com.google.sites.liberation.util.EntryType.LIST_ITEM;
+import static com.google.sites.liberation.util.EntryType.WEB_ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gdata.client.sites.ContentQuery;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.TextContent;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.spreadsheet.Field;
+import com.google.gdata.util.ServiceException;
+import com.google.inject.Inject;
+import com.google.sites.liberation.util.EntryProvider;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.HashUtils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps an index of the entries already in the site being imported to, so
+ * that whether an entry exists can be answered from memory rather than by
+ * querying the server for each entry.
+ *
+ * <p>The index can be loaded from the whole content feed of the site once,
+ * before the import starts, in which case pages and attachments are indexed
+ * by id and by path. Otherwise only comments and list items are indexed, and
+ * a page's comments and list items are fetched the first time one of them is
+ * looked up. Either way, comments and list items are indexed by parent and
+ * by a hash of their content, and entries are added to the index as they are
+ * uploaded. Only one site is indexed at a time, and an index is shared by
+ * everything created by the same injector.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+final class RemoteIndex {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      RemoteIndex.class.getCanonicalName());
+
+  /** Number of comments and list items asked for in each query. */
+  private static final int CHILDREN_PER_QUERY = 500;
+
+  private final EntryProvider entryProvider;
+  private final Map<String, BaseContentEntry<?>> entriesById;
+  private final Map<String, BaseContentEntry<?>> entriesByPath;
+  private final Map<String, Set<String>> childHashes;
+  private URL feedUrl;
+
+  /**
+   * Creates a new empty RemoteIndex, which fetches comments and list items
+   * with the given EntryProvider.
+   */
+  @Inject
+  RemoteIndex(EntryProvider entryProvider) {
+    this.entryProvider = checkNotNull(entryProvider);
+    entriesById = Maps.newHashMap();
+    entriesByPath = Maps.newHashMap();
+    childHashes = Maps.newHashMap();
+  }
+
+  /**
+   * Replaces the contents of this index with the given entries, which are
+   * all of the entries at the given feed URL.
+   */
+  synchronized void load(URL feedUrl,
+      Iterable<BaseContentEntry<?>> entries) {
+    clear();
+    Map<String, BasePageEntry<?>> pages = Maps.newHashMap();
+    List<BaseContentEntry<?>> others = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : entries) {
+      if (entry == null) {
+        continue;
+      }
+      entriesById.put(entry.getId(), entry);
+      if (isPage(entry)) {
+        pages.put(entry.getId(), (BasePageEntry<?>) entry);
+        childHashes.put(entry.getId(), Sets.<String>newHashSet());
+      } else {
+        others.add(entry);
+      }
+    }
+    for (BasePageEntry<?> page : pages.values()) {
+      String path = getPath(page, pages);
+      if (path != null) {
+        entriesByPath.put(path, page);
+      }
+    }
+    for (BaseContentEntry<?> entry : others) {
+      String parentPath = getPath(pages.get(EntryUtils.getParentId(entry)),
+          pages);
+      if (parentPath != null
+          && (getType(entry) == ATTACHMENT
+              || getType(entry) == WEB_ATTACHMENT)) {
+        entriesByPath.put(parentPath + "/" + getName(entry), entry);
+      }
+      addChild(entry);
+    }
+    this.feedUrl = checkNotNull(feedUrl);
+  }
+
+  /**
+   * Empties this index.
+   */
+  synchronized void clear() {
+    entriesById.clear();
+    entriesByPath.clear();
+    childHashes.clear();
+    feedUrl = null;
+  }
+
+  /**
+   * Returns whether this index holds the entries at the given feed URL.
+   */
+  synchronized boolean isLoaded(URL feedUrl) {
+    return feedUrl.equals(this.feedUrl);
+  }
+
+  /**
+   * Returns the entry with the given id, or {@code null} if there is none.
+   */
+  synchronized BaseContentEntry<?> getEntryById(String id) {
+    return entriesById.get(id);
+  }
+
+  /**
+   * Returns the page or attachment with the given site-relative path, or
+   * {@code null} if there is none.
+   */
+  synchronized BaseContentEntry<?> getEntryByPath(String path) {
+    return entriesByPath.get(path);
+  }
+
+  /**
+   * Returns whether a comment or list item identical to the given one already
+   * exists with the same parent at the given feed URL. The parent's comments
+   * and list items are fetched, once, if they aren't indexed yet. Returns
+   * {@code false} if they can't be fetched.
+   */
+  boolean containsChild(BaseContentEntry<?> entry, URL feedUrl,
+      SitesService sitesService) {
+    String parentId = EntryUtils.getParentId(entry);
+    if (parentId == null) {
+      return false;
+    }
+    synchronized (this) {
+      if (childHashes.containsKey(parentId)) {
+        return childHashes.get(parentId).contains(getContentHash(entry));
+      }
+    }
+    List<BaseContentEntry<?>> children = getChildren(parentId, feedUrl,
+        sitesService);
+    synchronized (this) {
+      if (children != null && !childHashes.containsKey(parentId)) {
+        childHashes.put(parentId, Sets.<String>newHashSet());
+        for (BaseContentEntry<?> child : children) {
+          addChild(child);
+        }
+      }
+      Set<String> hashes = childHashes.get(parentId);
+      return hashes != null && hashes.contains(getContentHash(entry));
+    }
+  }
+
+  /**
+   * Adds the given entry, as returned by the server, to this index. Pages
+   * and attachments are indexed under the given path, but only while the
+   * whole site is loaded, and comments and list items only once their
+   * parent's are indexed.
+   */
+  synchronized void addEntry(BaseContentEntry<?> entry, String path) {
+    if (getType(entry) == COMMENT || getType(entry) == LIST_ITEM) {
+      addChild(entry);
+    } else if (feedUrl != null) {
+      entriesById.put(entry.getId(), entry);
+      if (path != null) {
+        entriesByPath.put(path, entry);
+      }
+      if (isPage(entry) && !childHashes.containsKey(entry.getId())) {
+        // A page not already in the loaded site is new, so has no children.
+        childHashes.put(entry.getId(), Sets.<String>newHashSet());
+      }
+    }
+  }
+
+  private void addChild(BaseContentEntry<?> entry) {
+    if (getType(entry) == COMMENT || getType(entry) == LIST_ITEM) {
+      Set<String> hashes = childHashes.get(EntryUtils.getParentId(entry));
+      if (hashes != null) {
+        hashes.add(getContentHash(entry));
+      }
+    }
+  }
+
+  /**
+   * Returns the comments and list items of the parent with the given id, or
+   * {@code null} if they can't be fetched.
+   */
+  private List<BaseContentEntry<?>> getChildren(String parentId,
+      URL feedUrl, SitesService sitesService) {
+    List<BaseContentEntry<?>> children = Lists.newArrayList();
+    try {
+      List<BaseContentEntry<?>> entries;
+      do {
+        ContentQuery query = new ContentQuery(feedUrl);
+        query.setParent(parentId.substring(parentId.lastIndexOf('/') + 1));
+        query.setKind(COMMENT + "," + LIST_ITEM);
+        query.setStartIndex(children.size() + 1);
+        query.setMaxResults(CHILDREN_PER_QUERY);
+        entries = entryProvider.getEntries(query, sitesService);
+        children.addAll(entries);
+      } while (!entries.isEmpty());
+      return children;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
+      return null;
+    } catch (ServiceException e) {
+      LOGGER.log(Level.WARNING, "Error communicating with the server.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns a hash which is equal for identical comments or list items,
+   * whether read from an exported page or returned by the server. A comment
+   * is hashed by its plain text content, with whitespace collapsed, and a
+   * list item by its field values, sorted by column.
+   */
+  static String getContentHash(BaseContentEntry<?> entry) {
+    StringBuilder key = new StringBuilder();
+    if (getType(entry) == COMMENT) {
+      if (entry.getContent() instanceof TextContent) {
+        key.append(entry.getTextContent().getContent().getPlainText()
+            .replaceAll("\\s+", " ").trim());
+      }
+    } else if (getType(entry) == LIST_ITEM) {
+      SortedMap<String, String> values = Maps.newTreeMap();
+      // TODO(gk5885): remove extra cast for
+      // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+      for (Field field : ((ListItemEntry) (BaseContentEntry) entry)
+          .getFields()) {
+        values.put(field.getIndex(),
+            (field.getValue() == null) ? "" : field.getValue());
+      }
+      for (Map.Entry<String, String> value : values.entrySet()) {
+        key.append(value.getKey().length()).append(':')
+            .append(value.getKey()).append(value.getValue().length())
+            .append(':').append(value.getValue());
+      }
+    } else {
+      key.append(entry.getId());
+    }
+    return getType(entry) + ":" + HashUtils.sha1(key.toString());
+  }
+
+  /**
+   * Returns the site-relative path of the given page, in the form
+   * {@link EntryUploaderImpl} queries for, or {@code null} if the page or
+   * one of its ancestors isn't in the given map.
+   */
+  private String getPath(BasePageEntry<?> page,
+      Map<String, BasePageEntry<?>> pages) {
+    String path = "";
+    Set<String> seen = Sets.newHashSet();
+    while (page != null && seen.add(page.getId())) {
+      path = "/" + getName(page) + path;
+      String parentId = EntryUtils.getParentId(page);
+      if (parentId == null) {
+        return path;
+      }
+      page = pages.get(parentId);
+    }
+    return null;
+  }
+
+  private String getName(BaseContentEntry<?> entry) {
+    if (isPage(entry)) {
+      return ((BasePageEntry<?>) entry).getPageName().getValue();
+    }
+    return entry.getTitle().getPlainText().replaceAll(" ", "%20");
+  }
+}
@@ -1,75 +1,186 @@
 package com.google.sites.liberation.imprt;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.collect.Lists;
+import com.google.gdata.client.Service.GDataRequestFactory;
 import com.google.gdata.client.sites.SitesService;
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.gdata.util.common.base.Nullable;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.sites.liberation.export.FeedProvider;
+import com.google.sites.liberation.util.DaemonThreadFactory;
 import com.google.sites.liberation.util.ProgressListener;
+import com.google.sites.liberation.util.SynchronizedProgressListener;
 import com.google.sites.liberation.util.UrlUtils;
 
 import java.io.File;
 import java.net.URL;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Implements {@link SiteImporter} to import an entire site.
  *
+ * <p>Pages are imported on a pool of threads. A page can only be imported 
+ * once its parent has been, so each page's subpages are queued for import as
+ * soon as the page itself has been uploaded. The pool takes pages in the 
+ * order they were queued, so the site is imported roughly a level at a time,
+ * with sibling subtrees imported at once. The number of requests made to the
+ * server per second can also be limited, and the site being imported to can
+ * be read into a {@link RemoteIndex} up front, so that whether each entry 
+ * already exists is looked up in memory rather than queried.</p>
+ *
  * @author bsimon@google.com (Benjamin Simon)
  */
 final class SiteImporterImpl implements SiteImporter {
 
+  private static final Logger LOGGER = Logger.getLogger(
+      SiteImporterImpl.class.getCanonicalName());
+  
   private final PageImporter pageImporter;
+  private final FeedProvider feedProvider;
+  private final RemoteIndex remoteIndex;
+  private final int importThreads;
+  private final double requestsPerSecond;
+  private final boolean useRemoteIndex;
 
   /**
-   * Creates a new SiteImporterImpl with the given dependencies.
+   * Creates a new SiteImporterImpl with the given dependencies, which imports
+   * {@code importThreads} pages at once, and makes at most 
+   * {@code requestsPerSecond} requests per second if that is positive. If
+   * {@code useRemoteIndex} is true, the site being imported to is read into
+   * the given index before the import starts.
    */
   @Inject
-  SiteImporterImpl(PageImporter pageImporter) {
+  SiteImporterImpl(PageImporter pageImporter, FeedProvider feedProvider,
+      RemoteIndex remoteIndex,
+      @Named(SiteImporterModule.IMPORT_THREADS) int importThreads,
+      @Named(SiteImporterModule.REQUESTS_PER_SECOND) 
+          double requestsPerSecond,
+      @Named(SiteImporterModule.REMOTE_INDEX) boolean useRemoteIndex) {
     this.pageImporter = checkNotNull(pageImporter);
+    this.feedProvider = checkNotNull(feedProvider);
+    this.remoteIndex = checkNotNull(remoteIndex);
+    this.useRemoteIndex = useRemoteIndex;
+    checkArgument(importThreads > 0);
+    this.importThreads = importThreads;
+    checkArgument(requestsPerSecond >= 0);
+    this.requestsPerSecond = requestsPerSecond;
   }
 
   public void importSite(String host, @Nullable String domain, String webspace, 
       boolean importRevisions, SitesService sitesService, File rootDirectory,
-      ProgressListener progressListener) {
+      ProgressListener listener) {
     URL feedUrl = UrlUtils.getFeedUrl(host, domain, webspace);
     URL siteUrl = UrlUtils.getSiteUrl(host, domain, webspace);
+    SynchronizedProgressListener progressListener = 
+        new SynchronizedProgressListener(listener);
 
     progressListener.setStatus("Scanning directory.");
-    int numPages = getNumPages(rootDirectory);
-    List<BasePageEntry<?>> ancestors = Lists.newLinkedList();
-    for (File subDirectory : rootDirectory.listFiles()) {
-      if (subDirectory.isDirectory()
-          && !subDirectory.getName().startsWith("_")) {
-        importPage(subDirectory, importRevisions, ancestors, feedUrl, siteUrl,
-            sitesService, progressListener, numPages);
+    progressListener.setTotal(getNumPages(rootDirectory));
+    GDataRequestFactory requestFactory = sitesService.getRequestFactory();
+    if (requestsPerSecond > 0) {
+      sitesService.setRequestFactory(new RateLimitedRequestFactory(
+          requestFactory, requestsPerSecond));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(importThreads,
+        new DaemonThreadFactory("page-importer"));
+    Queue<Future<?>> futures = new ConcurrentLinkedQueue<Future<?>>();
+    try {
+      if (useRemoteIndex) {
+        progressListener.setStatus("Indexing destination site.");
+        remoteIndex.load(feedUrl, feedProvider.getEntries(feedUrl, 
+            sitesService, progressListener));
       }
+      List<BasePageEntry<?>> ancestors = Lists.newLinkedList();
+      importSubPages(rootDirectory, importRevisions, ancestors, feedUrl, 
+          siteUrl, sitesService, progressListener, executor, futures);
+      awaitCompletion(futures);
+    } finally {
+      executor.shutdownNow();
+      sitesService.setRequestFactory(requestFactory);
+      remoteIndex.clear();
     }
     progressListener.setProgress(1.0);
     progressListener.setStatus("Import complete.");
   }
 
+  /**
+   * Queues the pages in the subdirectories of the given directory for import
+   * on the given executor, adding each one's future to the given queue.
+   */
+  private void importSubPages(File directory, final boolean importRevisions,
+      final List<BasePageEntry<?>> ancestors, final URL feedUrl, 
+      final URL siteUrl, final SitesService sitesService, 
+      final SynchronizedProgressListener progressListener, 
+      final ExecutorService executor, final Queue<Future<?>> futures) {
+    for (final File subDirectory : directory.listFiles()) {
+      if (subDirectory.isDirectory()
+          && !subDirectory.getName().startsWith("_")
+          && new File(subDirectory, "index.html").isFile()) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            importPage(subDirectory, importRevisions, ancestors, feedUrl,
+                siteUrl, sitesService, progressListener, executor, futures);
+          }
+        }));
+      }
+    }
+  }
+
+  /**
+   * Imports the page in the given directory, and then queues its subpages 
+   * for import.
+   */
   private void importPage(File pageDirectory, boolean importRevisions,
       List<BasePageEntry<?>> ancestors, URL feedUrl, URL siteUrl,
-      SitesService sitesService, ProgressListener progressListener, int numPages) {
-    File file = new File(pageDirectory, "index.html");
-    if (file.isFile()) {
-      progressListener.setStatus("Importing page: " + pageDirectory.getName());
-      BasePageEntry<?> page = pageImporter.importPage(pageDirectory,
-          importRevisions, ancestors, feedUrl, siteUrl, sitesService);
-      progressListener.setProgress(progressListener.getProgress() + 1.0/numPages);
-      if (page != null) {
-        List<BasePageEntry<?>> newAncestors = Lists.newLinkedList(ancestors);
-        newAncestors.add(page);
-        for (File subDirectory : pageDirectory.listFiles()) {
-          if (subDirectory.isDirectory()
-              && !subDirectory.getName().startsWith("_")) {
-            importPage(subDirectory, importRevisions, newAncestors, feedUrl,
-                siteUrl, sitesService, progressListener, numPages);
-          }
-        }
+      SitesService sitesService, 
+      SynchronizedProgressListener progressListener, ExecutorService executor,
+      Queue<Future<?>> futures) {
+    progressListener.setStatus("Importing page: " + pageDirectory.getName());
+    BasePageEntry<?> page = null;
+    try {
+      page = pageImporter.importPage(pageDirectory, importRevisions, 
+          ancestors, feedUrl, siteUrl, sitesService, progressListener);
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.SEVERE, "Error importing page: " + pageDirectory, e);
+    }
+    progressListener.completeOne();
+    if (page != null) {
+      List<BasePageEntry<?>> newAncestors = Lists.newLinkedList(ancestors);
+      newAncestors.add(page);
+      importSubPages(pageDirectory, importRevisions, newAncestors, feedUrl,
+          siteUrl, sitesService, progressListener, executor, futures);
+    }
+  }
+  
+  /**
+   * Waits for every page in the given queue to be imported. Since a page 
+   * queues its subpages before it completes, the queue is only empty once 
+   * the whole site has been imported.
+   */
+  private void awaitCompletion(Queue<Future<?>> futures) {
+    Future<?> future;
+    while ((future = futures.poll()) != null) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        LOGGER.log(Level.SEVERE, "Error importing page.", e.getCause());
+      } catch (InterruptedException e) {
+        LOGGER.log(Level.WARNING, "Interrupted while importing pages.");
+        Thread.currentThread().interrupt();
+        return;
       }
     }
   }
@@ -16,15 +16,72 @@
 
 package com.google.sites.liberation.imprt;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.inject.AbstractModule;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+import com.google.sites.liberation.export.SiteExporterModule;
+
+import java.util.Properties;
 
 /**
  * GUICE module defining default bindings.
+ * 
+ * <p>Import settings are bound as named constants. Any of the defaults can be
+ * overridden by passing properties with the same names to the constructor.
+ * </p>
  */
 public class SiteImporterModule extends AbstractModule {
 
+  /** Number of pages imported at once. */
+  public static final String IMPORT_THREADS = "import.importThreads";
+  
+  /** 
+   * Maximum number of requests made to the server per second, or 0 for no 
+   * limit. 
+   */
+  public static final String REQUESTS_PER_SECOND = "import.requestsPerSecond";
+  
+  /** 
+   * Whether to read the whole site being imported to before the import, so 
+   * that whether each entry exists already needn't be queried separately.
+   */
+  public static final String REMOTE_INDEX = "import.remoteIndex";
+  
+  /**
+   * Whether to skip pages which haven't changed, locally or on the server,
+   * since they were last imported.
+   */
+  public static final String SKIP_UNCHANGED = "import.skipUnchanged";
+  
+  private final Properties properties;
+  
+  /**
+   * Creates a new SiteImporterModule using the default import settings.
+   */
+  public SiteImporterModule() {
+    this(new Properties());
+  }
+  
+  /**
+   * Creates a new SiteImporterModule using the given import settings in place
+   * of the defaults.
+   */
+  public SiteImporterModule(Properties settings) {
+    checkNotNull(settings);
+    properties = new Properties();
+    properties.setProperty(IMPORT_THREADS, "4");
+    properties.setProperty(REQUESTS_PER_SECOND, "0");
+    properties.setProperty(REMOTE_INDEX, "false");
+    properties.setProperty(SKIP_UNCHANGED, "true");
+    properties.setProperty(SiteExporterModule.FEED_THREADS, "4");
+    properties.putAll(settings);
+  }
+
   @Override
   protected void configure() {
-    //Currently nothing to configure.
+    Names.bindProperties(binder(), properties);
+    bind(RemoteIndex.class).in(Scopes.SINGLETON);
   }
-}
\ No newline at end of file
+}
@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -31,9 +32,10 @@ import java.util.List;
 public interface AncestorLinksRenderer {
 
   /** 
-   * Returns an XmlElement containing links to an entry's ancestors. The
-   * given list of ancestors should have the entry's parent as the last item,
+   * Writes links to an entry's ancestors to the given XmlWriter. The given
+   * list of ancestors should have the entry's parent as the last item,
    * parent's parent as the second to last item, and so on.
    */
-  XmlElement renderAncestorLinks(List<BasePageEntry<?>> ancestors);
+  void renderAncestorLinks(List<BasePageEntry<?>> ancestors, XmlWriter out)
+      throws IOException;
 }
@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -30,19 +31,19 @@ import java.util.List;
 final class AncestorLinksRendererImpl implements AncestorLinksRenderer {
 
   @Override
-  public XmlElement renderAncestorLinks(List<BasePageEntry<?>> ancestors) {
-    XmlElement div = new XmlElement("div");
+  public void renderAncestorLinks(List<BasePageEntry<?>> ancestors, 
+      XmlWriter out) throws IOException {
+    out.startElement("div");
     for (int i = 0; i < ancestors.size(); i++) {
       BaseContentEntry<?> ancestor = ancestors.get(i);
       String path = "";
       for (int j = 0; j < ancestors.size() - i; j++) {
         path += "../";
       }
-      XmlElement link = RendererUtils.getHyperLink(path + "index.html", 
-          ancestor.getTitle().getPlainText());
-      div.addElement(link);
-      div.addText(" > ");
+      RendererUtils.writeHyperLink(path + "index.html", 
+          ancestor.getTitle().getPlainText(), out);
+      out.addText(" > ");
     }
-    return div;
+    out.endElement();
   }
 }
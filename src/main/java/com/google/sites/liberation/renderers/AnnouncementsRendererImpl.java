@@ -17,8 +17,9 @@
 package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.AnnouncementEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -29,30 +30,24 @@ import java.util.List;
 final class AnnouncementsRendererImpl implements AnnouncementsRenderer {
 
   @Override
-  public XmlElement renderAnnouncements(
-      List<AnnouncementEntry> announcements) {
-    XmlElement div = new XmlElement("div");
+  public void renderAnnouncements(List<AnnouncementEntry> announcements,
+      XmlWriter out) throws IOException {
+    out.startElement("div");
     for (AnnouncementEntry announcement : announcements) {
-      div.addElement(new XmlElement("hr"));
-      XmlElement announceDiv = RendererUtils.getEntryElement(announcement, 
-          "blockquote");
-      XmlElement title = new XmlElement("b");
+      out.emptyElement("hr");
+      RendererUtils.startEntryElement(announcement, "blockquote", out);
       String href = announcement.getPageName().getValue() + "/index.html";
-      XmlElement titleLink = new XmlElement("a").addElement(
-          RendererUtils.getTitleElement(announcement));
-      titleLink.setAttribute("href", href);
-      title.addElement(titleLink);
-      announceDiv.addElement(title).addElement(new XmlElement("br"));
-      XmlElement info = new XmlElement("small");
-      XmlElement author = RendererUtils.getAuthorElement(announcement);
-      info.addText("posted by ").addElement(author);
-      XmlElement updated = RendererUtils.getUpdatedElement(announcement);
-      info.addText(" on ").addElement(updated);
-      announceDiv.addElement(info).addElement(new XmlElement("br"));
-      XmlElement mainHtml = RendererUtils.getXhtmlContentElement(announcement);
-      announceDiv.addElement(mainHtml);
-      div.addElement(announceDiv);
+      out.startElement("b").startElement("a").setAttribute("href", href);
+      RendererUtils.writeTitleElement(announcement, out);
+      out.endElement().endElement().emptyElement("br");
+      out.startElement("small").addText("posted by ");
+      RendererUtils.writeAuthorElement(announcement, out);
+      out.addText(" on ");
+      RendererUtils.writeUpdatedElement(announcement, out);
+      out.endElement().emptyElement("br");
+      RendererUtils.writeXhtmlContentElement(announcement, out);
+      out.endElement();
     }
-    return div;
+    out.endElement();
   }
 }
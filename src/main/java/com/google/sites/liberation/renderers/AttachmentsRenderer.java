@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -31,8 +32,9 @@ import java.util.List;
 public interface AttachmentsRenderer {
 
   /**
-   * Returns an XmlElement containing the given attachments, in the same order 
+   * Writes the given attachments to the given XmlWriter, in the same order 
    * as they appear in the list.
    */
-  XmlElement renderAttachments(List<BaseContentEntry<?>> attachments);
+  void renderAttachments(List<BaseContentEntry<?>> attachments, XmlWriter out)
+      throws IOException;
 }
@@ -22,8 +22,9 @@ import static com.google.sites.liberation.util.EntryType.WEB_ATTACHMENT;
 
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.sites.liberation.util.EntryType;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,28 +40,29 @@ final class AttachmentsRendererImpl implements AttachmentsRenderer {
         AttachmentsRendererImpl.class.getCanonicalName());
   
   @Override
-  public XmlElement renderAttachments(List<BaseContentEntry<?>> attachments) {
-    XmlElement div = new XmlElement("div");
-    XmlElement bold = new XmlElement("b");
-    bold.addText("Attachments (" + attachments.size() + ")");
-    div.addElement(bold).addElement(new XmlElement("br"));
+  public void renderAttachments(List<BaseContentEntry<?>> attachments,
+      XmlWriter out) throws IOException {
+    out.startElement("div");
+    out.startElement("b");
+    out.addText("Attachments (" + attachments.size() + ")");
+    out.endElement().emptyElement("br");
     for (BaseContentEntry<?> attachment : attachments) {
       EntryType type = getType(attachment);
       if (type == ATTACHMENT || type == WEB_ATTACHMENT) {
-        XmlElement attachmentDiv = RendererUtils.getEntryElement(attachment, 
-            "div");
-        XmlElement link = RendererUtils.getOutOfLineContentElement(attachment);
-        XmlElement updated = RendererUtils.getUpdatedElement(attachment);
-        XmlElement author = RendererUtils.getAuthorElement(attachment);
-        XmlElement revision = RendererUtils.getRevisionElement(attachment);
-        attachmentDiv.addElement(link).addText(" - on ").addElement(updated)
-            .addText(" by ").addElement(author).addText(" (Version ")
-            .addElement(revision).addText(")");
-        div.addElement(new XmlElement("br")).addElement(attachmentDiv);
+        out.emptyElement("br");
+        RendererUtils.startEntryElement(attachment, "div", out);
+        RendererUtils.writeOutOfLineContentElement(attachment, out);
+        out.addText(" - on ");
+        RendererUtils.writeUpdatedElement(attachment, out);
+        out.addText(" by ");
+        RendererUtils.writeAuthorElement(attachment, out);
+        out.addText(" (Version ");
+        RendererUtils.writeRevisionElement(attachment, out);
+        out.addText(")").endElement();
       } else {
         LOGGER.log(Level.WARNING, "Invalid Attachment Type!");
       }
     }
-    return div;
+    out.endElement();
   }
 }
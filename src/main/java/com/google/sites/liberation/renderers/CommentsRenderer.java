@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.CommentEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -31,8 +32,9 @@ import java.util.List;
 public interface CommentsRenderer {
 
   /**
-   * Returns an XmlElement containing the given comments, in the same order as
+   * Writes the given comments to the given XmlWriter, in the same order as
    * they appear in the list.
    */
-  XmlElement renderComments(List<CommentEntry> comments);
+  void renderComments(List<CommentEntry> comments, XmlWriter out)
+      throws IOException;
 }
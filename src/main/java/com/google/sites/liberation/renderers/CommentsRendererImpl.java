@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.CommentEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -29,22 +30,24 @@ import java.util.List;
  */
 final class CommentsRendererImpl implements CommentsRenderer {
 
-  public XmlElement renderComments(List<CommentEntry> comments) {
-    XmlElement div = new XmlElement("div");
-    XmlElement bold = new XmlElement("b");
-    bold.addText("Comments (" + comments.size() + ")");
-    div.addElement(bold).addElement(new XmlElement("br"));
+  public void renderComments(List<CommentEntry> comments, XmlWriter out)
+      throws IOException {
+    out.startElement("div");
+    out.startElement("b");
+    out.addText("Comments (" + comments.size() + ")");
+    out.endElement().emptyElement("br");
     for (BaseContentEntry<?> comment : comments) {
-      XmlElement commentDiv = RendererUtils.getEntryElement(comment, "div");
-      XmlElement author = RendererUtils.getAuthorElement(comment);
-      XmlElement updated = RendererUtils.getUpdatedElement(comment);
-      XmlElement revision = RendererUtils.getRevisionElement(comment);
-      XmlElement content = RendererUtils.getXhtmlContentElement(comment);
-      commentDiv.addElement(author).addText(" - ").addElement(updated);
-      commentDiv.addText(" (Version ").addElement(revision).addText(")");
-      commentDiv.addElement(new XmlElement("br")).addElement(content);
-      div.addElement(new XmlElement("br")).addElement(commentDiv);
+      out.emptyElement("br");
+      RendererUtils.startEntryElement(comment, "div", out);
+      RendererUtils.writeAuthorElement(comment, out);
+      out.addText(" - ");
+      RendererUtils.writeUpdatedElement(comment, out);
+      out.addText(" (Version ");
+      RendererUtils.writeRevisionElement(comment, out);
+      out.addText(")").emptyElement("br");
+      RendererUtils.writeXhtmlContentElement(comment, out);
+      out.endElement();
     }
-    return div;
+    out.endElement();
   }
 }
@@ -18,7 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
+
+import java.io.IOException;
 
 /**
  * Renders a page's main content.
@@ -29,7 +31,8 @@ import com.google.sites.liberation.util.XmlElement;
 public interface ContentRenderer {
 
   /**
-   * Returns an XmlElement containing the given entry's xhtml content.
+   * Writes the given entry's xhtml content to the given XmlWriter.
    */
-  XmlElement renderContent(BasePageEntry<?> entry, boolean revisionsExported);
+  void renderContent(BasePageEntry<?> entry, XmlWriter out, 
+      boolean revisionsExported) throws IOException;
 }
@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -31,7 +32,8 @@ import java.util.List;
 public interface FileCabinetRenderer {
 
   /**
-   * Returns an XmlElement containing the given attachments as a file cabinet.
+   * Writes the given attachments to the given XmlWriter as a file cabinet.
    */
-  XmlElement renderFileCabinet(List<BaseContentEntry<?>> attachments);
+  void renderFileCabinet(List<BaseContentEntry<?>> attachments, XmlWriter out)
+      throws IOException;
 }
@@ -17,8 +17,9 @@
 package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BaseContentEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -29,24 +30,24 @@ import java.util.List;
 final class FileCabinetRendererImpl implements FileCabinetRenderer {
 
   @Override
-  public XmlElement renderFileCabinet( 
-      List<BaseContentEntry<?>> attachments) {
-    XmlElement table = new XmlElement("table");
+  public void renderFileCabinet(List<BaseContentEntry<?>> attachments,
+      XmlWriter out) throws IOException {
+    out.startElement("table");
     for (BaseContentEntry<?> attachment : attachments) {
-      XmlElement row = RendererUtils.getEntryElement(attachment, "tr");
-      XmlElement link = RendererUtils.getOutOfLineContentElement(attachment);
-      row.addElement(new XmlElement("td").addElement(link));
-      XmlElement summary = RendererUtils.getSummaryElement(attachment);
-      row.addElement(new XmlElement("td").addElement(summary));
-      XmlElement updated = RendererUtils.getUpdatedElement(attachment);
-      row.addElement(new XmlElement("td").addElement(updated));
-      XmlElement author = RendererUtils.getAuthorElement(attachment);
-      row.addElement(new XmlElement("td").addElement(author));
-      XmlElement revision = RendererUtils.getRevisionElement(attachment);
-      row.addElement(new XmlElement("td").addText("(Version ")
-          .addElement(revision).addText(")"));
-      table.addElement(row);
+      RendererUtils.startEntryElement(attachment, "tr", out);
+      out.startElement("td");
+      RendererUtils.writeOutOfLineContentElement(attachment, out);
+      out.endElement().startElement("td");
+      RendererUtils.writeSummaryElement(attachment, out);
+      out.endElement().startElement("td");
+      RendererUtils.writeUpdatedElement(attachment, out);
+      out.endElement().startElement("td");
+      RendererUtils.writeAuthorElement(attachment, out);
+      out.endElement().startElement("td").addText("(Version ");
+      RendererUtils.writeRevisionElement(attachment, out);
+      out.addText(")").endElement();
+      out.endElement();
     }
-    return table;
+    out.endElement();
   }
 }
@@ -28,17 +28,18 @@ import com.google.gdata.data.Person;
 import com.google.gdata.data.TextConstruct;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.sites.liberation.util.EntryUtils;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.DateTimeFormatterBuilder;
 
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Provides utility methods to construct various XmlElement's.
+ * Provides utility methods to write various elements to an XmlWriter.
  * 
  * @author bsimon@google.com (Benjamin Simon)
  */
@@ -56,55 +57,58 @@ final class RendererUtils {
       .toFormatter();
   
   /**
-   * Creates a new hCard element for the given entry.
+   * Writes a new hCard element for the given entry.
    */
-  static XmlElement getAuthorElement(BaseContentEntry<?> entry) {
+  static void writeAuthorElement(BaseContentEntry<?> entry, XmlWriter out)
+      throws IOException {
     checkNotNull(entry);
-    XmlElement element = new XmlElement("span");
-    element.setAttribute("class", "author");
-    XmlElement vcard = new XmlElement("span");
-    vcard.setAttribute("class", "vcard");
+    out.startElement("span");
+    out.setAttribute("class", "author");
+    out.startElement("span");
+    out.setAttribute("class", "vcard");
     Person author = entry.getAuthors().get(0);
     String name = author.getName();
     String email = author.getEmail();
+    out.startElement("a");
+    out.setAttribute("href", "mailto:" + email);
     if (name == null) {
-      XmlElement link = getHyperLink("mailto:" + email, email);
-      link.setAttribute("class", "email");
-      vcard.addElement(link);
+      out.setAttribute("class", "email");
+      out.addText(email);
     } else {
-      XmlElement link = getHyperLink("mailto:" + email, name);
-      link.setAttribute("class", "fn");
-      vcard.addElement(link);
+      out.setAttribute("class", "fn");
+      out.addText(name);
     }
-    return element.addElement(vcard);
+    out.endElement().endElement().endElement();
   }
   
   /**
-   * Creates a new hAtom "entry-content" div containing the given entry's
+   * Writes a new hAtom "entry-content" div containing the given entry's
    * xhtml content.
    */
-  static XmlElement getXhtmlContentElement(BaseContentEntry<?> entry) {
+  static void writeXhtmlContentElement(BaseContentEntry<?> entry, 
+      XmlWriter out) throws IOException {
     checkNotNull(entry);
-    XmlElement element = new XmlElement("div");
-    element.setAttribute("class", "entry-content");
+    out.startElement("div");
+    out.setAttribute("class", "entry-content");
     if (isPage(entry) || getType(entry) == COMMENT) {
       String xhtmlContent = EntryUtils.getXhtmlContent(entry);
-      element.addXml(xhtmlContent);
+      out.addXml(xhtmlContent);
     } else {
       LOGGER.log(Level.WARNING, "Only pages and comments have xhtml content!");
     }
-    return element;
+    out.endElement();
   }
   
   /**
-   * Creates a new hAtom "entry-content entry-title" anchor, containing the 
+   * Writes a new hAtom "entry-content entry-title" anchor, containing the 
    * given entry's out of line content link in the href attribute, and title as
    * its text.
    */
-  static XmlElement getOutOfLineContentElement(BaseContentEntry<?> entry) {
+  static void writeOutOfLineContentElement(BaseContentEntry<?> entry, 
+      XmlWriter out) throws IOException {
     checkNotNull(entry);
-    XmlElement element = new XmlElement("a");
-    element.setAttribute("class", "entry-content entry-title");
+    out.startElement("a");
+    out.setAttribute("class", "entry-content entry-title");
     String title = entry.getTitle().getPlainText();
     String href;
     if (getType(entry) == ATTACHMENT) {
@@ -115,92 +119,100 @@ final class RendererUtils {
       LOGGER.log(Level.WARNING, "Only attachments have out of line content!");
       href = "";
     }
-    element.setAttribute("href", href);
-    element.addText(title);
-    return element;
+    out.setAttribute("href", href);
+    out.addText(title);
+    out.endElement();
   }
   
   /**
-   * Creates a new hAtom "hentry" element of the given type for the given entry.
+   * Starts a new hAtom "hentry" element of the given type for the given entry.
+   * The caller is responsible for ending the element.
    */
-  static XmlElement getEntryElement(BaseContentEntry<?> entry, String elementType) {
+  static void startEntryElement(BaseContentEntry<?> entry, String elementType,
+      XmlWriter out) throws IOException {
     checkNotNull(entry, "entry");
     checkNotNull(elementType, "elementType");
-    XmlElement element = new XmlElement(elementType);
-    element.setAttribute("id", entry.getId());
-    element.setAttribute("class", "hentry " + getType(entry).toString());
-    return element;
+    out.startElement(elementType);
+    out.setAttribute("id", entry.getId());
+    out.setAttribute("class", "hentry " + getType(entry).toString());
   }
 
   /**
-   * Creates a new HyperLink with the given href and display text.
+   * Writes a new HyperLink with the given href and display text.
    */
-  static XmlElement getHyperLink(String href, String text) {
+  static void writeHyperLink(String href, String text, XmlWriter out) 
+      throws IOException {
     checkNotNull(href, "href");
     checkNotNull(text, "text");
-    XmlElement element = new XmlElement("a");
-    element.setAttribute("href", href);
-    element.addText(text);
-    return element;
+    out.startElement("a");
+    out.setAttribute("href", href);
+    out.addText(text);
+    out.endElement();
   }
 
   /**
-   * Creates a new "sites:revision" for the given entry.
+   * Writes a new "sites:revision" for the given entry.
    */
-  static XmlElement getRevisionElement(BaseContentEntry<?> entry) {
+  static void writeRevisionElement(BaseContentEntry<?> entry, XmlWriter out)
+      throws IOException {
     checkNotNull(entry);
-    XmlElement element = new XmlElement("span");
-    element.setAttribute("class", "sites:revision");
+    out.startElement("span");
+    out.setAttribute("class", "sites:revision");
     if (entry.getRevision() == null) {
-      element.addText("1");
+      out.addText("1");
     } else {
-      element.addText(entry.getRevision().getValue().toString());
+      out.addText(entry.getRevision().getValue().toString());
     }
-    return element;
+    out.endElement();
   }
 
   /**
-   * Creates a new hAtom "entry-summary" element for the given entry.
+   * Writes a new hAtom "entry-summary" element for the given entry.
    */
-  static XmlElement getSummaryElement(BaseContentEntry<?> entry) {
+  static void writeSummaryElement(BaseContentEntry<?> entry, XmlWriter out)
+      throws IOException {
     checkNotNull(entry);
-    XmlElement element = new XmlElement("span");
-    element.setAttribute("class", "entry-summary");
+    out.startElement("span");
+    out.setAttribute("class", "entry-summary");
     TextConstruct summary = entry.getSummary();
     if (summary == null) {
-      element.addText("");
+      out.addText("");
     } else {
-      element.addText(entry.getSummary().getPlainText());
+      out.addText(entry.getSummary().getPlainText());
     }
-    return element;
+    out.endElement();
   }
 
   /**
-   * Creates a new hAtom "entry-title" element for the given entry.
+   * Writes a new hAtom "entry-title" element for the given entry.
    */
-  static XmlElement getTitleElement(BaseContentEntry<?> entry) {
+  static void writeTitleElement(BaseContentEntry<?> entry, XmlWriter out)
+      throws IOException {
     checkNotNull(entry);
     String title = entry.getTitle().getPlainText();
     if (getType(entry) == ATTACHMENT) {
-      return getHyperLink(title, title).setAttribute("class", "entry-title");
+      out.startElement("a").setAttribute("href", title);
     } else if (getType(entry) == WEB_ATTACHMENT) {
       String href = ((OutOfLineContent) entry.getContent()).getUri();
-      return getHyperLink(href, title).setAttribute("class", "entry-title");
+      checkNotNull(href, "href");
+      out.startElement("a").setAttribute("href", href);
+    } else {
+      out.startElement("span");
     }
-    return new XmlElement("span").setAttribute("class", "entry-title")
-        .addText(title);
+    out.setAttribute("class", "entry-title").addText(title).endElement();
   }
 
   /**
-   * Creates a new hAtom "updated" element for the given entry.
+   * Writes a new hAtom "updated" element for the given entry.
    */
-  static XmlElement getUpdatedElement(BaseContentEntry<?> entry) {
+  static void writeUpdatedElement(BaseContentEntry<?> entry, XmlWriter out)
+      throws IOException {
     checkNotNull(entry);
-    XmlElement element = new XmlElement("abbr");
-    element.setAttribute("class", "updated");
-    element.setAttribute("title", entry.getUpdated().toString());
+    out.startElement("abbr");
+    out.setAttribute("class", "updated");
+    out.setAttribute("title", entry.getUpdated().toString());
     DateTime jodaTime = new DateTime(entry.getUpdated().getValue());
-    element.addText(jodaTime.toString(formatter));
-    return element;
+    out.addText(jodaTime.toString(formatter));
+    out.endElement();
   }
 }
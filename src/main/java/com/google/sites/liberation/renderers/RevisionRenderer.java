@@ -18,7 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
+
+import java.io.IOException;
 
 /**
  * Renders a revision's main content.
@@ -29,7 +31,7 @@ import com.google.sites.liberation.util.XmlElement;
 public interface RevisionRenderer {
 
   /**
-   * Returns an XmlElement containing the given revision's xhtml content.
+   * Writes the given revision's xhtml content to the given XmlWriter.
    */
-  XmlElement renderRevision(BasePageEntry<?> entry);
+  void renderRevision(BasePageEntry<?> entry, XmlWriter out) throws IOException;
 }
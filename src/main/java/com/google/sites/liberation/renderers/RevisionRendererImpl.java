@@ -17,7 +17,9 @@
 package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
+
+import java.io.IOException;
 
 /**
  * Renders a page's main content.
@@ -27,22 +29,23 @@ import com.google.sites.liberation.util.XmlElement;
 final class RevisionRendererImpl implements RevisionRenderer {
 
   @Override
-  public XmlElement renderRevision(BasePageEntry<?> entry) {
-    XmlElement div = new XmlElement("div");
-    div.addElement(RendererUtils.getXhtmlContentElement(entry));
-    div.addElement(new XmlElement("br"));
-    XmlElement info = new XmlElement("small");
-    info.addText("Updated on ");
-    info.addElement(RendererUtils.getUpdatedElement(entry));
-    info.addText(" by ");
-    info.addElement(RendererUtils.getAuthorElement(entry));
-    info.addText(" (");
-    XmlElement historyLink = new XmlElement("a");
-    historyLink.addXml("Version " + RendererUtils.getRevisionElement(entry));
-    historyLink.setAttribute("href", "../history.html");
-    info.addElement(historyLink).addText(")");
-    div.addElement(info);
-    div.addElement(new XmlElement("br"));
-    return div;
+  public void renderRevision(BasePageEntry<?> entry, XmlWriter out) 
+      throws IOException {
+    out.startElement("div");
+    RendererUtils.writeXhtmlContentElement(entry, out);
+    out.emptyElement("br");
+    out.startElement("small");
+    out.addText("Updated on ");
+    RendererUtils.writeUpdatedElement(entry, out);
+    out.addText(" by ");
+    RendererUtils.writeAuthorElement(entry, out);
+    out.addText(" (");
+    out.startElement("a").setAttribute("href", "../history.html");
+    out.addText("Version ");
+    RendererUtils.writeRevisionElement(entry, out);
+    out.endElement().addText(")");
+    out.endElement();
+    out.emptyElement("br");
+    out.endElement();
   }
 }
@@ -18,8 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -31,8 +32,9 @@ import java.util.List;
 public interface SubpageLinksRenderer {
 
   /**
-   * Returns an XmlElement containing links to the given subpages, appearing
+   * Writes links to the given subpages to the given XmlWriter, appearing
    * in the order in which they appear in the list.
    */
-  XmlElement renderSubpageLinks(List<BasePageEntry<?>> subpages);
+  void renderSubpageLinks(List<BasePageEntry<?>> subpages, XmlWriter out)
+      throws IOException;
 }
@@ -17,8 +17,9 @@
 package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -29,15 +30,16 @@ import java.util.List;
 final class SubpageLinksRendererImpl implements SubpageLinksRenderer {
 
   @Override
-  public XmlElement renderSubpageLinks(List<BasePageEntry<?>> subpages) {
-    XmlElement div = new XmlElement("div");
-    div.addText("Subpages (" + subpages.size() + "):");
+  public void renderSubpageLinks(List<BasePageEntry<?>> subpages, 
+      XmlWriter out) throws IOException {
+    out.startElement("div");
+    out.addText("Subpages (" + subpages.size() + "):");
     for (BasePageEntry<?> subpage : subpages) {
       String href = subpage.getPageName().getValue() + "/index.html";
-      div.addText(" ");
-      div.addElement(RendererUtils.getHyperLink(href, 
-          subpage.getTitle().getPlainText()));
+      out.addText(" ");
+      RendererUtils.writeHyperLink(href, subpage.getTitle().getPlainText(), 
+          out);
     }
-    return div;
+    out.endElement();
   }
 }
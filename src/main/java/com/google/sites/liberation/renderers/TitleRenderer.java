@@ -18,7 +18,9 @@ package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
 import com.google.inject.ImplementedBy;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
+
+import java.io.IOException;
 
 /**
  * Renders the links to a page's ancestors.
@@ -28,5 +30,5 @@ import com.google.sites.liberation.util.XmlElement;
 @ImplementedBy(TitleRendererImpl.class)
 public interface TitleRenderer {
 
-  XmlElement renderTitle(BasePageEntry<?> entry);
+  void renderTitle(BasePageEntry<?> entry, XmlWriter out) throws IOException;
 }
@@ -17,7 +17,9 @@
 package com.google.sites.liberation.renderers;
 
 import com.google.gdata.data.sites.BasePageEntry;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
+
+import java.io.IOException;
 
 /**
  * Renders the links to a page's ancestors.
@@ -27,9 +29,10 @@ import com.google.sites.liberation.util.XmlElement;
 final class TitleRendererImpl implements TitleRenderer {
   
   @Override
-  public XmlElement renderTitle(BasePageEntry<?> entry) {
-    XmlElement title = new XmlElement("h3").addElement(
-        RendererUtils.getTitleElement(entry));
-    return title;
+  public void renderTitle(BasePageEntry<?> entry, XmlWriter out) 
+      throws IOException {
+    out.startElement("h3");
+    RendererUtils.writeTitleElement(entry, out);
+    out.endElement();
   }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code ThreadFactory} that creates named daemon threads, so that worker
+ * pools never keep the JVM alive after an import or export has finished.
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+
+  private final String namePrefix;
+  private final AtomicInteger count;
+
+  /**
+   * Creates a new DaemonThreadFactory whose threads are named with the given
+   * prefix followed by a sequence number.
+   */
+  public DaemonThreadFactory(String namePrefix) {
+    this.namePrefix = checkNotNull(namePrefix);
+    count = new AtomicInteger();
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable,
+        namePrefix + "-" + count.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
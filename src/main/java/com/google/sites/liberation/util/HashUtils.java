@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Provides utility methods for computing hex encoded SHA-1 hashes.
+ * 
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class HashUtils {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  
+  /**
+   * Returns the hex encoded SHA-1 hash of the given string, encoded as UTF-8.
+   */
+  public static String sha1(String string) {
+    MessageDigest digest = newSha1Digest();
+    try {
+      digest.update(string.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+    return toHex(digest);
+  }
+  
+  /**
+   * Returns the hex encoded SHA-1 hash of the contents of the given file.
+   */
+  public static String sha1(File file) throws IOException {
+    MessageDigest digest = newSha1Digest();
+    update(digest, file);
+    return toHex(digest);
+  }
+  
+  /**
+   * Returns a new SHA-1 message digest.
+   */
+  public static MessageDigest newSha1Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+  
+  /**
+   * Updates the given digest with the contents of the given file.
+   */
+  public static void update(MessageDigest digest, File file) 
+      throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+  }
+  
+  /**
+   * Completes the given digest and returns the hash as lower case hex.
+   */
+  public static String toHex(MessageDigest digest) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+    return hex.toString();
+  }
+}
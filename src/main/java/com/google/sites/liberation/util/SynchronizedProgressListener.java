@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Wraps a {@link ProgressListener} so that it can be safely used from several
+ * threads at once. In addition to the {@code ProgressListener} methods, it
+ * can count completed units of work towards a fixed total. Units completed
+ * before the total is known are counted, and reported once it is set.
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public final class SynchronizedProgressListener implements ProgressListener {
+
+  private final ProgressListener delegate;
+  private int completed;
+  private int total;
+
+  /**
+   * Creates a new SynchronizedProgressListener wrapping the given listener.
+   */
+  public SynchronizedProgressListener(ProgressListener delegate) {
+    this.delegate = checkNotNull(delegate);
+  }
+
+  /**
+   * Sets the number of units of work that make up the whole operation.
+   */
+  public synchronized void setTotal(int total) {
+    this.total = Math.max(1, total);
+    if (completed > 0) {
+      delegate.setProgress(((double) completed) / this.total);
+    }
+  }
+
+  /**
+   * Records that one more unit of work has been completed, and updates the
+   * progress of the wrapped listener accordingly.
+   */
+  public synchronized void completeOne() {
+    completed++;
+    if (total > 0) {
+      delegate.setProgress(((double) completed) / total);
+    }
+  }
+
+  @Override
+  public synchronized String getStatus() {
+    return delegate.getStatus();
+  }
+
+  @Override
+  public synchronized double getProgress() {
+    return delegate.getProgress();
+  }
+
+  @Override
+  public synchronized void setStatus(String status) {
+    delegate.setStatus(status);
+  }
+
+  @Override
+  public synchronized void setProgress(double progress) {
+    delegate.setProgress(progress);
+  }
+}
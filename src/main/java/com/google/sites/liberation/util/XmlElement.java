@@ -16,120 +16,151 @@
 
 package com.google.sites.liberation.util;
 
-import com.google.gdata.util.common.base.Pair;
 import com.google.gdata.util.common.base.Preconditions;
 
-import org.apache.commons.lang.StringEscapeUtils;
-
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * A very simple implementation of an xml element to aid
  * in generating well formed xhtml pages.
- * 
+ *
+ * <p>Children and attributes are kept in small arrays, and text is only
+ * escaped when the element is appended.</p>
+ *
  * @author bsimon@google.com (Benjamin Simon)
  */
 public class XmlElement {
-	
+
+  private static final byte ELEMENT = 0;
+  private static final byte TEXT = 1;
+  private static final byte XML = 2;
+
+  private static final String[] NO_ATTRIBUTES = new String[0];
+  private static final Object[] NO_CHILDREN = new Object[0];
+  private static final byte[] NO_CHILD_TYPES = new byte[0];
+
   private final String elementType;
-  private final List<Pair<Object, ChildType>> children;
-  private final Map<String, String> attributes;
+  /** Alternating names and unescaped values, sorted by name. */
+  private String[] attributes;
+  private int attributeCount;
+  private Object[] children;
+  private byte[] childTypes;
+  private int childCount;
 
-  private static enum ChildType { ELEMENT, TEXT, XML }
-  
   /**
    * Creates a new {@code XmlElement} of the given type.
-   * 
+   *
    * @param elementType tag name of this element
    */
   public XmlElement(String elementType) {
     Preconditions.checkNotNull(elementType);
     this.elementType = elementType;
-    children = new LinkedList<Pair<Object, ChildType>>();
-    attributes = new TreeMap<String, String>();
+    attributes = NO_ATTRIBUTES;
+    children = NO_CHILDREN;
+    childTypes = NO_CHILD_TYPES;
   }
-	
+
   /**
    * Adds a child XmlElement to this one.
-   * 
+   *
    * <p>Children appear in the order in which they are added in the xml output.
    * </p>
    */
   public XmlElement addElement(XmlElement child) {
     Preconditions.checkNotNull(child);
-    children.add(new Pair<Object, ChildType>(child, ChildType.ELEMENT));
+    addChild(child, ELEMENT);
     return this;
   }
-  
+
   /**
    * Adds a plain text child to this element. The String given is
    * automatically converted to xml-safe characters.
-   * 
+   *
    * <p>Children appear in the order in which they are added in the xml output.
    * </p>
    */
   public XmlElement addText(String text) {
     Preconditions.checkNotNull(text);
-    children.add(new Pair<Object, ChildType>(StringEscapeUtils.escapeXml(text),
-        ChildType.TEXT));
+    addChild(text, TEXT);
     return this;
   }
-  
+
   /**
-   * Adds a string of xml as a child to this element. 
-   * 
-   * <p>Unlike addText(String), the string provided will not be escaped. If the 
+   * Adds a string of xml as a child to this element.
+   *
+   * <p>Unlike addText(String), the string provided will not be escaped. If the
    * given String is not well formed, then this element may not be well formed.
    * </p>
    */
   public XmlElement addXml(String xml) {
     Preconditions.checkNotNull(xml);
-    children.add(new Pair<Object, ChildType>(xml, ChildType.XML));
+    addChild(xml, XML);
     return this;
   }
-  
+
   /**
    * Sets the attribute with the given name to the given value.
-   * 
+   *
    * <p>Attributes appear alphabetically by name in the xml output.</p>
    */
   public XmlElement setAttribute(String name, String value) {
     Preconditions.checkNotNull(name, "name");
     Preconditions.checkNotNull(value, "value");
-    attributes.put(name, StringEscapeUtils.escapeXml(value));
+    int index = 0;
+    while (index < attributeCount) {
+      int comparison = name.compareTo(attributes[2 * index]);
+      if (comparison == 0) {
+        attributes[2 * index + 1] = value;
+        return this;
+      }
+      if (comparison < 0) {
+        break;
+      }
+      index++;
+    }
+    if (2 * attributeCount == attributes.length) {
+      String[] newAttributes = new String[Math.max(4, 2 * attributes.length)];
+      System.arraycopy(attributes, 0, newAttributes, 0, 2 * attributeCount);
+      attributes = newAttributes;
+    }
+    System.arraycopy(attributes, 2 * index, attributes, 2 * index + 2,
+        2 * (attributeCount - index));
+    attributes[2 * index] = name;
+    attributes[2 * index + 1] = value;
+    attributeCount++;
     return this;
   }
-  
+
   /**
    * Appends this XmlElement (and any children) to an Appendable.
    */
   public void appendTo(Appendable a) throws IOException {
     a.append('<').append(elementType);
-    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-      a.append(' ').append(attribute.getKey()).append("=\"")
-          .append(attribute.getValue()).append("\"");
+    for (int i = 0; i < attributeCount; i++) {
+      a.append(' ').append(attributes[2 * i]).append("=\"");
+      appendEscaped(attributes[2 * i + 1], a);
+      a.append('"');
     }
-    if (children.isEmpty()) {
+    if (childCount == 0) {
       a.append(" />");
     } else {
-      a.append(">");
-      for (Pair<Object, ChildType> pair : children) {
-        Object child = pair.getFirst();
-        ChildType type = pair.getSecond();
-        if (type == ChildType.ELEMENT) {
-          ((XmlElement)child).appendTo(a);
-        } else {
-          a.append((String)child);
+      a.append('>');
+      for (int i = 0; i < childCount; i++) {
+        switch (childTypes[i]) {
+          case ELEMENT:
+            ((XmlElement) children[i]).appendTo(a);
+            break;
+          case TEXT:
+            appendEscaped((String) children[i], a);
+            break;
+          default:
+            a.append((String) children[i]);
         }
       }
       a.append("</").append(elementType).append('>');
     }
   }
-  
+
   /**
    * Returns the String of xml corresponding to this XmlElement.
    */
@@ -143,12 +174,131 @@ public class XmlElement {
     }
     return builder.toString();
   }
-  
+
+  /**
+   * Returns whether the given object is an XmlElement built from the same
+   * type, attributes and children as this one, which implies the same xml
+   * output. Elements with the same output built from different children,
+   * such as text added in two parts rather than one, are not equal.
+   */
   @Override
   public boolean equals(Object other) {
     if (other instanceof XmlElement) {
-      return toString().equals(other.toString());
+      return sameStructure((XmlElement) other);
     }
     return false;
   }
+
+  /**
+   * Returns a hash of the type, attributes and children of this element,
+   * without generating its xml.
+   */
+  @Override
+  public int hashCode() {
+    int hash = elementType.hashCode();
+    for (int i = 0; i < 2 * attributeCount; i++) {
+      hash = 31 * hash + attributes[i].hashCode();
+    }
+    for (int i = 0; i < childCount; i++) {
+      hash = 31 * hash + childTypes[i];
+      hash = 31 * hash + children[i].hashCode();
+    }
+    return hash;
+  }
+
+  /**
+   * Appends the given text to an Appendable, escaped in the same way as
+   * {@code StringEscapeUtils.escapeXml}.
+   */
+  static void appendEscaped(String text, Appendable a) throws IOException {
+    int length = text.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      String entity;
+      switch (c) {
+        case '"':
+          entity = "&quot;";
+          break;
+        case '&':
+          entity = "&amp;";
+          break;
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        case '\'':
+          entity = "&apos;";
+          break;
+        default:
+          if (c <= 0x7f) {
+            continue;
+          }
+          entity = null;
+      }
+      a.append(text, start, i);
+      if (entity == null) {
+        a.append("&#").append(Integer.toString(c)).append(';');
+      } else {
+        a.append(entity);
+      }
+      start = i + 1;
+    }
+    if (start == 0) {
+      a.append(text);
+    } else {
+      a.append(text, start, length);
+    }
+  }
+
+  private void addChild(Object child, byte type) {
+    if (childCount == children.length) {
+      int capacity = Math.max(4, 2 * childCount);
+      Object[] newChildren = new Object[capacity];
+      byte[] newChildTypes = new byte[capacity];
+      System.arraycopy(children, 0, newChildren, 0, childCount);
+      System.arraycopy(childTypes, 0, newChildTypes, 0, childCount);
+      children = newChildren;
+      childTypes = newChildTypes;
+    }
+    children[childCount] = child;
+    childTypes[childCount] = type;
+    childCount++;
+  }
+
+  /**
+   * Returns whether the given element was built from the same type,
+   * attributes and children as this one, which implies the same xml output.
+   */
+  private boolean sameStructure(XmlElement other) {
+    if (this == other) {
+      return true;
+    }
+    if (!elementType.equals(other.elementType)
+        || attributeCount != other.attributeCount
+        || childCount != other.childCount) {
+      return false;
+    }
+    for (int i = 0; i < 2 * attributeCount; i++) {
+      if (!attributes[i].equals(other.attributes[i])) {
+        return false;
+      }
+    }
+    for (int i = 0; i < childCount; i++) {
+      if (childTypes[i] != other.childTypes[i]) {
+        return false;
+      }
+      if (childTypes[i] == ELEMENT) {
+        if (!((XmlElement) children[i]).sameStructure(
+            (XmlElement) other.children[i])) {
+          return false;
+        }
+      } else if (!children[i].equals(other.children[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
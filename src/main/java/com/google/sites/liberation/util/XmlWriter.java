@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import com.google.gdata.util.common.base.Preconditions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes xml straight to an {@code Appendable}, producing the same output as
+ * building the equivalent {@link XmlElement} and appending it, without keeping
+ * the elements in memory.
+ *
+ * <p>Attributes may be set on the most recently started element until its
+ * first child is written, and appear alphabetically by name in the xml
+ * output.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public final class XmlWriter {
+
+  private final Appendable out;
+  private final List<String> elementTypes;
+  private final List<String> attributeNames;
+  private final List<String> attributeValues;
+  private boolean startTagOpen;
+
+  /**
+   * Creates a new XmlWriter which writes to the given Appendable.
+   */
+  public XmlWriter(Appendable out) {
+    this.out = Preconditions.checkNotNull(out);
+    elementTypes = new ArrayList<String>();
+    attributeNames = new ArrayList<String>();
+    attributeValues = new ArrayList<String>();
+  }
+
+  /**
+   * Starts a new element of the given type, as a child of the current
+   * element if there is one.
+   */
+  public XmlWriter startElement(String elementType) throws IOException {
+    Preconditions.checkNotNull(elementType);
+    closeStartTag();
+    out.append('<').append(elementType);
+    elementTypes.add(elementType);
+    startTagOpen = true;
+    return this;
+  }
+
+  /**
+   * Sets the attribute with the given name to the given value on the current
+   * element.
+   *
+   * @throws IllegalStateException if the current element already has children
+   */
+  public XmlWriter setAttribute(String name, String value) {
+    Preconditions.checkNotNull(name, "name");
+    Preconditions.checkNotNull(value, "value");
+    if (!startTagOpen) {
+      throw new IllegalStateException(
+          "Attributes must be set before any children are written.");
+    }
+    int index = attributeNames.indexOf(name);
+    if (index == -1) {
+      attributeNames.add(name);
+      attributeValues.add(value);
+    } else {
+      attributeValues.set(index, value);
+    }
+    return this;
+  }
+
+  /**
+   * Writes plain text as a child of the current element. The String given is
+   * automatically converted to xml-safe characters.
+   */
+  public XmlWriter addText(String text) throws IOException {
+    Preconditions.checkNotNull(text);
+    closeStartTag();
+    XmlElement.appendEscaped(text, out);
+    return this;
+  }
+
+  /**
+   * Writes a string of xml as a child of the current element.
+   *
+   * <p>Unlike addText(String), the string provided will not be escaped. If the
+   * given String is not well formed, then the output may not be well formed.
+   * </p>
+   */
+  public XmlWriter addXml(CharSequence xml) throws IOException {
+    Preconditions.checkNotNull(xml);
+    return addXml(xml, 0, xml.length());
+  }
+
+  /**
+   * Writes the given part of a string of xml as a child of the current
+   * element, without escaping it.
+   */
+  public XmlWriter addXml(CharSequence xml, int start, int end)
+      throws IOException {
+    Preconditions.checkNotNull(xml);
+    closeStartTag();
+    out.append(xml, start, end);
+    return this;
+  }
+
+  /**
+   * Writes the given XmlElement (and any children) as a child of the current
+   * element.
+   */
+  public XmlWriter addElement(XmlElement element) throws IOException {
+    Preconditions.checkNotNull(element);
+    closeStartTag();
+    element.appendTo(out);
+    return this;
+  }
+
+  /**
+   * Ends the current element.
+   *
+   * @throws IllegalStateException if there is no current element
+   */
+  public XmlWriter endElement() throws IOException {
+    if (elementTypes.isEmpty()) {
+      throw new IllegalStateException("No element to end.");
+    }
+    String elementType = elementTypes.remove(elementTypes.size() - 1);
+    if (startTagOpen) {
+      appendAttributes();
+      out.append(" />");
+      startTagOpen = false;
+    } else {
+      out.append("</").append(elementType).append('>');
+    }
+    return this;
+  }
+
+  /**
+   * Writes an element of the given type with no attributes or children.
+   */
+  public XmlWriter emptyElement(String elementType) throws IOException {
+    return startElement(elementType).endElement();
+  }
+
+  private void closeStartTag() throws IOException {
+    if (startTagOpen) {
+      appendAttributes();
+      out.append('>');
+      startTagOpen = false;
+    }
+  }
+
+  private void appendAttributes() throws IOException {
+    int size = attributeNames.size();
+    for (int i = 0; i < size; i++) {
+      int first = i;
+      for (int j = i + 1; j < size; j++) {
+        if (attributeNames.get(j).compareTo(attributeNames.get(first)) < 0) {
+          first = j;
+        }
+      }
+      out.append(' ').append(attributeNames.get(first)).append("=\"");
+      XmlElement.appendEscaped(attributeValues.get(first), out);
+      out.append('"');
+      if (first != i) {
+        attributeNames.set(first, attributeNames.get(i));
+        attributeValues.set(first, attributeValues.get(i));
+      }
+    }
+    attributeNames.clear();
+    attributeValues.clear();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class AbsoluteLinkConverterImplTest {
+
+  private AbsoluteLinkConverter linkConverter;
+  private EntryStore entryStore;
+  private BasePageEntry<?> entry;
+  private URL siteUrl;
+
+  @Before
+  public void before() throws MalformedURLException {
+    linkConverter = new AbsoluteLinkConverterImpl();
+    entryStore = new InMemoryEntryStore();
+    BasePageEntry<?> parent = getNewPage("parent", null);
+    entry = getNewPage("entry", "parent");
+    entryStore.addEntry(parent);
+    entryStore.addEntry(entry);
+    siteUrl = new URL("http://sites.google.com/site/test");
+  }
+
+  @Test
+  public void testNoLinks() {
+    assertEquals("<p>nothing <a href=\"http://other\">here</a></p>",
+        convert("<p>nothing <a href=\"http://other\">here</a></p>", false));
+  }
+
+  @Test
+  public void testBothQuoteStyles() {
+    assertEquals("<a href=\"../../parent/entry/index.html\">a</a>"
+        + "<a href='../../other/index.html'>b</a>"
+        + "<a href=\"../../parent/index.html\">c</a>",
+        convert("<a href=\"http://sites.google.com/site/test/parent/entry\">a"
+            + "</a><a href='http://sites.google.com/site/test/other'>b</a>"
+            + "<a href=\"http://sites.google.com/site/test/parent\">c</a>",
+            false));
+  }
+
+  @Test
+  public void testRevision() {
+    assertEquals("<a href='../../../parent/index.html'>a</a>",
+        convert("<a href='http://sites.google.com/site/test/parent'>a</a>",
+            true));
+  }
+
+  @Test
+  public void testNestedQuotes() {
+    assertEquals("<a href='../../a href=\"../../b/index.html\"/index.html'>",
+        convert("<a href='http://sites.google.com/site/test/a "
+            + "href=\"http://sites.google.com/site/test/b\"'>", false));
+  }
+
+  private String convert(String content, boolean isRevision) {
+    EntryUtils.setContent(entry, content);
+    linkConverter.convertLinks(entry, entryStore, siteUrl, isRevision);
+    return EntryUtils.getXhtmlContent(entry);
+  }
+
+  private BasePageEntry<?> getNewPage(String id, String parentId) {
+    WebPageEntry page = new WebPageEntry();
+    page.setId(id);
+    page.setTitle(new PlainTextConstruct(id));
+    page.setPageName(new PageName(id));
+    if (parentId != null) {
+      EntryUtils.setParentId(page, parentId);
+    }
+    return page;
+  }
+}
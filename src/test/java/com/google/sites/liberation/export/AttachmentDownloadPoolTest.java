@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class AttachmentDownloadPoolTest {
+
+  @Test
+  public void testBusyHostDoesNotBlockOtherHosts() 
+      throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger slowRunning = new AtomicInteger();
+    final AtomicInteger maxSlowRunning = new AtomicInteger();
+    AttachmentDownloader downloader = new AttachmentDownloader() {
+      @Override
+      public long download(AttachmentEntry attachment, File file, 
+          SitesService sitesService) {
+        if (file.getName().startsWith("slow")) {
+          int running = slowRunning.incrementAndGet();
+          synchronized (maxSlowRunning) {
+            maxSlowRunning.set(Math.max(running, maxSlowRunning.get()));
+          }
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          slowRunning.decrementAndGet();
+        }
+        return 1;
+      }
+    };
+    AttachmentDownloadPool pool = 
+        new AttachmentDownloadPool(downloader, 2, 1);
+    final CountDownLatch slowDone = new CountDownLatch(4);
+    final CountDownLatch fastDone = new CountDownLatch(1);
+    for (int i = 0; i < 4; i++) {
+      pool.download(getAttachment("http://slow/" + i), new File("slow" + i), 
+          null, new AttachmentDownloadPool.Callback() {
+            @Override
+            public void downloaded(AttachmentEntry attachment, long bytes, 
+                long elapsedMillis) {
+              slowDone.countDown();
+            }
+          });
+    }
+    pool.download(getAttachment("http://fast/0"), new File("fast0"), null, 
+        new AttachmentDownloadPool.Callback() {
+          @Override
+          public void downloaded(AttachmentEntry attachment, long bytes, 
+              long elapsedMillis) {
+            fastDone.countDown();
+          }
+        });
+    assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+    assertEquals(4, slowDone.getCount());
+    release.countDown();
+    pool.awaitCompletion();
+    assertEquals(0, slowDone.getCount());
+    assertEquals(1, maxSlowRunning.get());
+  }
+
+  private AttachmentEntry getAttachment(String uri) {
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setTitle(new PlainTextConstruct(uri));
+    OutOfLineContent content = new OutOfLineContent();
+    content.setUri(uri);
+    attachment.setContent(content);
+    return attachment;
+  }
+}
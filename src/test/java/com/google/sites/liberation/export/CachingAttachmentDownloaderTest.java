@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.Revision;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class CachingAttachmentDownloaderTest {
+
+  private File directory;
+  private File cacheDirectory;
+  private int downloads;
+
+  @Before
+  public void before() throws IOException {
+    directory = File.createTempFile("attachments", "");
+    directory.delete();
+    directory.mkdir();
+    cacheDirectory = new File(directory, "cache");
+    downloads = 0;
+  }
+
+  @After
+  public void after() {
+    delete(directory);
+  }
+
+  @Test
+  public void testRecordAndReplay() throws IOException {
+    AttachmentEntry attachment = getAttachment("http://host/file", 1);
+    File file = new File(directory, "file");
+    assertEquals(8, new CachingAttachmentDownloader(new FakeDownloader(),
+        cacheDirectory, false).download(attachment, file, null));
+    assertEquals(1, downloads);
+    file.delete();
+    CachingAttachmentDownloader replay = new CachingAttachmentDownloader(
+        new FakeDownloader(), cacheDirectory, true);
+    assertEquals(8, replay.download(attachment, file, null));
+    assertEquals("contents", read(file));
+    assertEquals(1, downloads);
+    assertEquals(-1, replay.download(getAttachment("http://host/file", 2),
+        new File(directory, "file2"), null));
+    assertEquals(-1, replay.download(getAttachment("http://host/other", 1),
+        new File(directory, "other"), null));
+    assertFalse(new File(directory, "other").exists());
+    assertEquals(1, downloads);
+  }
+
+  @Test
+  public void testFailedDownload() {
+    AttachmentEntry attachment = getAttachment("http://host/fail", 1);
+    assertEquals(-1, new CachingAttachmentDownloader(new FakeDownloader(),
+        cacheDirectory, false).download(attachment, 
+        new File(directory, "fail"), null));
+    assertEquals(-1, new CachingAttachmentDownloader(new FakeDownloader(),
+        cacheDirectory, true).download(attachment, 
+        new File(directory, "fail"), null));
+  }
+
+  private AttachmentEntry getAttachment(String uri, int revision) {
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setTitle(new PlainTextConstruct(uri));
+    attachment.setRevision(new Revision(revision));
+    OutOfLineContent content = new OutOfLineContent();
+    content.setUri(uri);
+    attachment.setContent(content);
+    return attachment;
+  }
+
+  private String read(File file) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    Reader in = new FileReader(file);
+    try {
+      int c;
+      while ((c = in.read()) != -1) {
+        builder.append((char) c);
+      }
+    } finally {
+      in.close();
+    }
+    return builder.toString();
+  }
+
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Writes "contents" to the file, unless the attachment's URL ends with
+   * "fail".
+   */
+  private class FakeDownloader implements AttachmentDownloader {
+
+    @Override
+    public long download(AttachmentEntry attachment, File file, 
+        SitesService sitesService) {
+      downloads++;
+      if (((OutOfLineContent) attachment.getContent()).getUri()
+          .endsWith("fail")) {
+        return -1;
+      }
+      try {
+        Writer out = new FileWriter(file);
+        try {
+          out.write("contents");
+        } finally {
+          out.close();
+        }
+      } catch (IOException e) {
+        return -1;
+      }
+      return 8;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JUnit4Mockery;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class CachingFeedProviderTest {
+
+  private Mockery context;
+  private FeedProvider feedProvider;
+  private SitesService sitesService;
+  private URL feedUrl;
+  private File cacheDirectory;
+
+  @Before
+  public void before() throws IOException {
+    context = new JUnit4Mockery();
+    feedProvider = context.mock(FeedProvider.class);
+    sitesService = new SitesService("");
+    feedUrl = new URL("http://sites.google.com/feeds/content/site/webspace");
+    cacheDirectory = File.createTempFile("feeds", "");
+    cacheDirectory.delete();
+    cacheDirectory.mkdir();
+  }
+
+  @After
+  public void after() {
+    delete(cacheDirectory);
+  }
+
+  @Test
+  public void testRecordAndReplay() {
+    final List<BaseContentEntry<?>> entries = getNewEntries(250);
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(feedUrl, sitesService, null);
+          will(returnValue(entries));
+    }});
+    List<BaseContentEntry<?>> recorded = Lists.newArrayList(
+        new CachingFeedProvider(feedProvider, cacheDirectory, false)
+        .getEntries(feedUrl, sitesService));
+    assertEquals(entries, recorded);
+    File[] directories = cacheDirectory.listFiles();
+    assertEquals(1, directories.length);
+    assertTrue(new File(directories[0], "1.xml").isFile());
+    assertTrue(new File(directories[0], "101.xml").isFile());
+    assertTrue(new File(directories[0], "201.xml").isFile());
+    assertEquals(3, directories[0].listFiles().length);
+    List<BaseContentEntry<?>> replayed = Lists.newArrayList(
+        new CachingFeedProvider(feedProvider, cacheDirectory, true)
+        .getEntries(feedUrl, sitesService));
+    assertEquals(entries.size(), replayed.size());
+    for (int i = 0; i < entries.size(); i++) {
+      assertEquals(entries.get(i).getId(), replayed.get(i).getId());
+      assertEquals(EntryType.getType(entries.get(i)),
+          EntryType.getType(replayed.get(i)));
+      assertEquals(entries.get(i).getTitle().getPlainText(),
+          replayed.get(i).getTitle().getPlainText());
+    }
+  }
+
+  @Test
+  public void testUpdatedMin() {
+    final List<BaseContentEntry<?>> entries = getNewEntries(250);
+    final DateTime updatedMin = entries.get(200).getUpdated();
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(feedUrl, sitesService, null);
+          will(returnValue(entries));
+    }});
+    List<BaseContentEntry<?>> recorded = Lists.newArrayList(
+        new CachingFeedProvider(feedProvider, cacheDirectory, false)
+        .getEntries(feedUrl, sitesService, updatedMin, null));
+    assertEquals(entries.subList(200, 250), recorded);
+    CachingFeedProvider replay = 
+        new CachingFeedProvider(feedProvider, cacheDirectory, true);
+    assertEquals(250, Lists.newArrayList(
+        replay.getEntries(feedUrl, sitesService)).size());
+    List<BaseContentEntry<?>> replayed = Lists.newArrayList(
+        replay.getEntries(feedUrl, sitesService, 
+        entries.get(100).getUpdated(), null));
+    assertEquals(150, replayed.size());
+    assertEquals(entries.get(100).getId(), replayed.get(0).getId());
+  }
+
+  @Test
+  public void testNullEntries() {
+    final List<BaseContentEntry<?>> entries = getNewEntries(250);
+    entries.set(10, null);
+    entries.set(150, null);
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(feedUrl, sitesService, null);
+          will(returnValue(entries));
+    }});
+    List<BaseContentEntry<?>> recorded = Lists.newArrayList(
+        new CachingFeedProvider(feedProvider, cacheDirectory, false)
+        .getEntries(feedUrl, sitesService));
+    assertEquals(entries, recorded);
+    List<BaseContentEntry<?>> replayed = Lists.newArrayList(
+        new CachingFeedProvider(feedProvider, cacheDirectory, true)
+        .getEntries(feedUrl, sitesService));
+    assertEquals(248, replayed.size());
+    assertFalse(replayed.contains(null));
+    assertEquals(entries.get(249).getId(), replayed.get(247).getId());
+  }
+
+  @Test(expected=IllegalStateException.class)
+  public void testIncompleteFeed() {
+    final List<BaseContentEntry<?>> entries = getNewEntries(250);
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(feedUrl, sitesService, null);
+          will(returnValue(entries));
+    }});
+    Iterator<BaseContentEntry<?>> itr =
+        new CachingFeedProvider(feedProvider, cacheDirectory, false)
+        .getEntries(feedUrl, sitesService).iterator();
+    for (int i = 0; i < 150; i++) {
+      itr.next();
+    }
+    new CachingFeedProvider(feedProvider, cacheDirectory, true)
+        .getEntries(feedUrl, sitesService);
+  }
+
+  @Test(expected=IllegalStateException.class)
+  public void testReplayMissingFeed() {
+    new CachingFeedProvider(feedProvider, cacheDirectory, true)
+        .getEntries(feedUrl, sitesService);
+  }
+
+  private List<BaseContentEntry<?>> getNewEntries(int number) {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    for (int i = 0; i < number; i++) {
+      BaseContentEntry<?> entry;
+      switch (i % 3) {
+        case 0: entry = new WebPageEntry(); break;
+        case 1: entry = new AttachmentEntry(); break;
+        default: entry = new CommentEntry();
+      }
+      entry.setId("http://sites.google.com/feeds/content/site/webspace/" + i);
+      entry.setTitle(new PlainTextConstruct("Entry <" + i + ">"));
+      entry.setUpdated(new DateTime(1000000000000L + i * 1000L, 0));
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
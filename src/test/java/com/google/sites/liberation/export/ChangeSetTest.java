@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Sets;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class ChangeSetTest {
+
+  private ExportManifest previous;
+  private EntryStore entryStore;
+  private BasePageEntry<?> root;
+  private BasePageEntry<?> other;
+  private BasePageEntry<?> parent;
+  private BasePageEntry<?> sibling;
+  private BasePageEntry<?> grandchild;
+  private AttachmentEntry attachment;
+
+  /**
+   * Builds the site root, other, root/parent, root/sibling and
+   * root/parent/grandchild, with an attachment on grandchild.
+   */
+  @Before
+  public void before() {
+    previous = new ExportManifest(DateTime.now());
+    entryStore = new InMemoryEntryStore();
+    root = getNewPage("root", null);
+    other = getNewPage("other", null);
+    parent = getNewPage("parent", "root");
+    sibling = getNewPage("sibling", "root");
+    grandchild = getNewPage("grandchild", "parent");
+    attachment = new AttachmentEntry();
+    attachment.setId("attachment");
+    EntryUtils.setParentId(attachment, "grandchild");
+    for (BaseContentEntry<?> entry : new BaseContentEntry<?>[] {
+        root, other, parent, sibling, grandchild, attachment}) {
+      entryStore.addEntry(entry);
+      previous.addEntry(entry);
+    }
+  }
+
+  @Test
+  public void testNoChanges() {
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    assertTrue(changeSet.getPageIds().isEmpty());
+    assertTrue(changeSet.getChangedPageIds().isEmpty());
+    assertTrue(changeSet.getAttachmentIds().isEmpty());
+  }
+
+  @Test
+  public void testChangedPage() {
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(parent);
+    assertEquals(Sets.newHashSet("root", "parent", "sibling", "grandchild"),
+        changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("parent"), changeSet.getChangedPageIds());
+    assertTrue(changeSet.getAttachmentIds().isEmpty());
+  }
+
+  @Test
+  public void testChangedTopLevelPage() {
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(other);
+    assertEquals(Sets.newHashSet("root", "other"), changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("other"), changeSet.getChangedPageIds());
+  }
+
+  @Test
+  public void testChangedAttachment() {
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(attachment);
+    assertEquals(Sets.newHashSet("grandchild"), changeSet.getPageIds());
+    assertTrue(changeSet.getChangedPageIds().isEmpty());
+    assertEquals(Sets.newHashSet("attachment"), changeSet.getAttachmentIds());
+  }
+
+  @Test
+  public void testMovedPage() {
+    BasePageEntry<?> renamed = getNewPage("parent", "root");
+    renamed.setPageName(new PageName("renamed"));
+    previous.addEntry(renamed);
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(parent);
+    assertEquals(Sets.newHashSet("root", "parent", "sibling", "grandchild"),
+        changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("parent", "grandchild"),
+        changeSet.getChangedPageIds());
+    assertEquals(Sets.newHashSet("attachment"), changeSet.getAttachmentIds());
+    assertEquals(Sets.newHashSet("root/renamed"), changeSet.getMovedPaths());
+  }
+
+  @Test
+  public void testMovedPageOldParent() {
+    BasePageEntry<?> cousin = getNewPage("cousin", "sibling");
+    entryStore.addEntry(cousin);
+    previous.addEntry(cousin);
+    previous.addEntry(getNewPage("grandchild", "sibling"));
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(grandchild);
+    assertEquals(Sets.newHashSet("parent", "grandchild", "sibling", "cousin"),
+        changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("grandchild"), changeSet.getChangedPageIds());
+    assertEquals(Sets.newHashSet("attachment"), changeSet.getAttachmentIds());
+    assertEquals(Sets.newHashSet("root/sibling/grandchild"),
+        changeSet.getMovedPaths());
+  }
+
+  @Test
+  public void testRetitledPage() {
+    BasePageEntry<?> greatGrandchild =
+        getNewPage("greatgrandchild", "grandchild");
+    entryStore.addEntry(greatGrandchild);
+    previous.addEntry(greatGrandchild);
+    BasePageEntry<?> retitled = getNewPage("parent", "root");
+    retitled.setTitle(new PlainTextConstruct("old title"));
+    previous.addEntry(retitled);
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(parent);
+    assertEquals(Sets.newHashSet("root", "parent", "sibling", "grandchild",
+        "greatgrandchild"), changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("parent"), changeSet.getChangedPageIds());
+    assertTrue(changeSet.getAttachmentIds().isEmpty());
+    assertTrue(changeSet.getMovedPaths().isEmpty());
+  }
+
+  @Test
+  public void testRetitledTopLevelPage() {
+    BasePageEntry<?> retitled = getNewPage("other", null);
+    retitled.setTitle(new PlainTextConstruct("old title"));
+    previous.addEntry(retitled);
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(other);
+    assertEquals(Sets.newHashSet("root", "other", "parent", "sibling",
+        "grandchild"), changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("other"), changeSet.getChangedPageIds());
+    assertTrue(changeSet.getAttachmentIds().isEmpty());
+  }
+
+  @Test
+  public void testNewTopLevelPage() {
+    BasePageEntry<?> added = getNewPage("added", null);
+    entryStore.addEntry(added);
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(added);
+    assertEquals(Sets.newHashSet("root", "other", "parent", "sibling",
+        "grandchild", "added"), changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("added"), changeSet.getChangedPageIds());
+    assertTrue(changeSet.getMovedPaths().isEmpty());
+  }
+
+  @Test
+  public void testMovedTopLevelPage() {
+    previous.addEntry(getNewPage("sibling", null));
+    ChangeSet changeSet = new ChangeSet(previous, entryStore);
+    changeSet.addChangedEntry(sibling);
+    assertEquals(Sets.newHashSet("root", "other", "parent", "sibling",
+        "grandchild"), changeSet.getPageIds());
+    assertEquals(Sets.newHashSet("sibling"), changeSet.getChangedPageIds());
+    assertEquals(Sets.newHashSet("sibling"), changeSet.getMovedPaths());
+  }
+
+  private BasePageEntry<?> getNewPage(String id, String parentId) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(id);
+    entry.setTitle(new PlainTextConstruct(id));
+    entry.setPageName(new PageName(id));
+    if (parentId != null) {
+      EntryUtils.setParentId(entry, parentId);
+    }
+    return entry;
+  }
+}
@@ -21,11 +21,13 @@ import static org.junit.Assert.*;
 import com.google.common.collect.Lists;
 import com.google.gdata.client.Query;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.WebPageEntry;
 import com.google.gdata.util.ServiceException;
 import com.google.sites.liberation.util.EntryProvider;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -34,6 +36,9 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author bsimon@google.com (Ben Simon)
@@ -42,6 +47,7 @@ public class ContinuousContentFeedTest {
   
   private URL url;
   private SitesService sitesService;
+  private ExecutorService executor;
   private final BaseContentEntry<?> serviceExceptionEntry = new WebPageEntry();
   private final BaseContentEntry<?> ioExceptionEntry = new WebPageEntry();
   
@@ -49,6 +55,12 @@ public class ContinuousContentFeedTest {
   public void initUrl() throws MalformedURLException {
     url = new URL("http://test.com");
     sitesService = new SitesService("");
+    executor = Executors.newFixedThreadPool(3);
+  }
+  
+  @After
+  public void shutdownExecutor() {
+    executor.shutdownNow();
   }
   
   @Test
@@ -150,6 +162,90 @@ public class ContinuousContentFeedTest {
     assertEquals(entries, newEntries);
   }
   
+  @Test
+  public void testPrefetchEmptyFeed() {
+    EntryProvider entryProvider = new FakeEntryDownloader(
+        new ArrayList<BaseContentEntry<?>>(), 5);
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, 3, executor, 3);
+    for(BaseContentEntry<?> entry : feed) {
+      fail("There should be no entries!");
+    }
+  }
+  
+  @Test
+  public void testPrefetchServerLimitsNumPerRequest() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 45);
+    EntryProvider entryProvider = new FakeEntryDownloader(entries, 5);
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, 7, executor, 3);
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList(feed);
+    assertEquals(entries, newEntries);
+  }
+  
+  @Test
+  public void testPrefetchWithExceptions() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 8);
+    addIoExceptions(entries, 1);
+    addServiceExceptions(entries, 2);
+    addNormalEntries(entries, 16);
+    addIoExceptions(entries, 3);
+    addServiceExceptions(entries, 1);
+    addNormalEntries(entries, 20);
+    EntryProvider entryProvider = new FakeEntryDownloader(entries, 5);
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, 8, executor, 4);
+    List<BaseContentEntry<?>> newEntries = Lists.newArrayList(feed);
+    while(entries.remove(serviceExceptionEntry)) {}
+    while(entries.remove(ioExceptionEntry)) {}
+    assertEquals(entries, newEntries);
+  }
+  
+  @Test
+  public void testPrefetchSmallFeed() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 3);
+    FakeEntryDownloader entryProvider = new FakeEntryDownloader(entries, 5);
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, 5, executor, 4);
+    assertEquals(entries, Lists.newArrayList(feed));
+    assertEquals(2, entryProvider.requests.get());
+  }
+  
+  @Test
+  public void testPrefetchRampsUp() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    addNormalEntries(entries, 100);
+    FakeEntryDownloader entryProvider = new FakeEntryDownloader(entries, 5);
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, 5, executor, 4);
+    assertEquals(entries, Lists.newArrayList(feed));
+    assertTrue(entryProvider.requests.get() >= 21);
+    assertTrue(entryProvider.requests.get() <= 24);
+  }
+  
+  @Test
+  public void testUpdatedMin() {
+    final DateTime updatedMin = DateTime.parseDateTime("2009-07-30T15:48:23Z");
+    final List<Query> queries = Lists.newArrayList();
+    EntryProvider entryProvider = new EntryProvider() {
+      public List<BaseContentEntry<?>> getEntries(Query query, 
+          SitesService sitesService) {
+        queries.add(query);
+        return new ArrayList<BaseContentEntry<?>>();
+      }
+    };
+    ContinuousContentFeed feed = new ContinuousContentFeed(url, entryProvider, 
+        sitesService, updatedMin, PageSizeController.fixed(5), null, 1, null);
+    for(BaseContentEntry<?> entry : feed) {
+      fail("There should be no entries!");
+    }
+    assertEquals(1, queries.size());
+    assertEquals(updatedMin, queries.get(0).getUpdatedMin());
+  }
+  
   private void addNormalEntries(List<BaseContentEntry<?>> entries, int num) {
     for(int i = 0; i < num; i++) {
       entries.add(new WebPageEntry());
@@ -172,6 +268,7 @@ public class ContinuousContentFeedTest {
     
     private final int maxResultsPerRequest;
     private final List<BaseContentEntry<?>> entries;
+    final AtomicInteger requests = new AtomicInteger();
     
     FakeEntryDownloader(List<BaseContentEntry<?>> entries, int maxResultsPerRequest) {
       this.maxResultsPerRequest = maxResultsPerRequest;
@@ -180,6 +277,7 @@ public class ContinuousContentFeedTest {
     
     public List<BaseContentEntry<?>> getEntries(Query query, SitesService sitesService) 
         throws ServiceException, IOException {
+      requests.incrementAndGet();
       int fromIndex = query.getStartIndex() - 1;
       int max = Math.min(maxResultsPerRequest, query.getMaxResults());
       int toIndex = Math.min(fromIndex + max, entries.size());
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.XhtmlTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.util.XmlBlob;
+import com.google.sites.liberation.util.EntryType;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class DiskEntryStoreTest {
+
+  private static final String ID =
+      "http://sites.google.com/feeds/content/site/";
+
+  private File file;
+  private DiskEntryStore entryStore;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("entries", ".segment");
+    entryStore = new DiskEntryStore(file,
+        new SitesService("").getExtensionProfile());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    entryStore.close();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void testGetEntry() {
+    assertNull(entryStore.getEntry(ID + "entry1"));
+    entryStore.addEntry(getNewEntry("entry1", null));
+    entryStore.addEntry(getNewEntry("entry2", "entry1"));
+    for (int i = 3; i < 200; i++) {
+      entryStore.addEntry(getNewEntry("entry" + i, "entry" + (i - 1)));
+    }
+    for (int i = 199; i > 0; i--) {
+      BaseContentEntry<?> entry = entryStore.getEntry(ID + "entry" + i);
+      assertTrue(entry instanceof WebPageEntry);
+      assertEquals(ID + "entry" + i, entry.getId());
+      assertEquals("Title entry" + i, entry.getTitle().getPlainText());
+      assertEquals("entry" + i,
+          ((WebPageEntry) entry).getPageName().getValue());
+      assertEquals("content of entry" + i,
+          EntryUtils.getXhtmlContent(entry));
+    }
+    assertNull(entryStore.getEntry(ID + "entry200"));
+  }
+
+  @Test
+  public void testGetChildren() {
+    assertTrue(entryStore.getChildren(ID + "entry1").isEmpty());
+    entryStore.addEntry(getNewEntry("entry1", null));
+    entryStore.addEntry(getNewEntry("entry2", "entry1"));
+    entryStore.addEntry(getNewEntry("entry3", "entry1"));
+    entryStore.addEntry(getNewEntry("entry4", "entry2"));
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setId(ID + "attachment");
+    attachment.setTitle(new PlainTextConstruct("file.txt"));
+    EntryUtils.setParentId(attachment, ID + "entry2");
+    entryStore.addEntry(attachment);
+    Collection<BaseContentEntry<?>> children1 =
+        entryStore.getChildren(ID + "entry1");
+    assertEquals(2, children1.size());
+    Collection<BaseContentEntry<?>> children2 =
+        entryStore.getChildren(ID + "entry2");
+    assertEquals(2, children2.size());
+    for (BaseContentEntry<?> child : children2) {
+      assertEquals(ID + "entry2", EntryUtils.getParentId(child));
+    }
+    assertTrue(entryStore.getChildren(ID + "entry3").isEmpty());
+    assertTrue(entryStore.getChildren(ID + "entry4").isEmpty());
+  }
+
+  @Test
+  public void testGetParent() {
+    entryStore.addEntry(getNewEntry("entry1", null));
+    entryStore.addEntry(getNewEntry("entry2", "entry1"));
+    assertNull(entryStore.getParent(ID + "entry1"));
+    assertEquals(ID + "entry1", entryStore.getParent(ID + "entry2").getId());
+    assertNull(entryStore.getParent(ID + "entry3"));
+  }
+
+  @Test
+  public void testGetTopLevelEntries() {
+    entryStore.addEntry(getNewEntry("entry1", null));
+    entryStore.addEntry(getNewEntry("entry2", "entry1"));
+    entryStore.addEntry(getNewEntry("entry3", null));
+    assertEquals(2, entryStore.getTopLevelEntries().size());
+  }
+
+  @Test
+  public void testIndex() {
+    entryStore.addEntry(getNewEntry("entry1", null));
+    assertEquals("Title entry1", entryStore.getTitle(ID + "entry1"));
+    assertEquals("entry1", entryStore.getPageName(ID + "entry1"));
+    assertEquals(EntryType.WEB_PAGE, entryStore.getEntryType(ID + "entry1"));
+    assertNull(entryStore.getTitle(ID + "entry2"));
+  }
+
+  @Test
+  public void testUpdateEntry() {
+    entryStore.addEntry(getNewEntry("entry1", null));
+    BaseContentEntry<?> entry = entryStore.getEntry(ID + "entry1");
+    EntryUtils.setContent(entry, "new content");
+    entryStore.updateEntry(entry);
+    for (int i = 2; i < 200; i++) {
+      entryStore.addEntry(getNewEntry("entry" + i, "entry1"));
+      entryStore.getEntry(ID + "entry" + i);
+    }
+    assertEquals("new content",
+        EntryUtils.getXhtmlContent(entryStore.getEntry(ID + "entry1")));
+    assertEquals(198, entryStore.getChildren(ID + "entry1").size());
+    entryStore.updateEntry(getNewEntry("entry200", null));
+    assertNull(entryStore.getEntry(ID + "entry200"));
+  }
+
+  @Test
+  public void testReplaceEntry() {
+    entryStore.addEntry(getNewEntry("entry1", null));
+    entryStore.addEntry(getNewEntry("entry2", null));
+    entryStore.addEntry(getNewEntry("entry3", "entry1"));
+    entryStore.addEntry(getNewEntry("entry4", "entry3"));
+    assertEquals("entry1/entry3/entry4", entryStore.getPath(ID + "entry4"));
+    BaseContentEntry<?> moved = getNewEntry("moved", "entry2");
+    moved.setId(ID + "entry3");
+    entryStore.replaceEntry(moved);
+    assertTrue(entryStore.getChildren(ID + "entry1").isEmpty());
+    assertEquals(1, entryStore.getChildren(ID + "entry2").size());
+    assertEquals("entry2/moved/entry4", entryStore.getPath(ID + "entry4"));
+    entryStore.replaceEntry(getNewEntry("entry3", null));
+    assertEquals(3, entryStore.getTopLevelEntries().size());
+    assertEquals("entry3/entry4", entryStore.getPath(ID + "entry4"));
+    entryStore.replaceEntry(getNewEntry("entry5", "entry4"));
+    assertEquals(ID + "entry4", entryStore.getParent(ID + "entry5").getId());
+  }
+
+  @Test
+  public void testSavedEntries() throws IOException {
+    File savedFile = File.createTempFile("entries", ".segment");
+    File indexFile = new File(savedFile.getPath() + ".index");
+    try {
+      DiskEntryStore saved = newSavedEntryStore(savedFile, indexFile);
+      saved.addEntry(getNewEntry("entry1", null));
+      saved.addEntry(getNewEntry("entry2", "entry1"));
+      saved.addEntry(getNewEntry("entry3", "entry1"));
+      BaseContentEntry<?> entry = saved.getEntry(ID + "entry2");
+      EntryUtils.setContent(entry, "converted content");
+      saved.updateEntry(entry);
+      saved.replaceEntry(getNewEntry("entry3", "entry2"));
+      saved.close();
+      assertTrue(savedFile.exists());
+      assertTrue(indexFile.exists());
+
+      saved = newSavedEntryStore(savedFile, indexFile);
+      assertEquals("content of entry2",
+          EntryUtils.getXhtmlContent(saved.getEntry(ID + "entry2")));
+      assertEquals(1, saved.getTopLevelEntries().size());
+      assertEquals(1, saved.getChildren(ID + "entry1").size());
+      assertEquals("entry1/entry2/entry3", saved.getPath(ID + "entry3"));
+      assertEquals("Title entry3", saved.getTitle(ID + "entry3"));
+      saved.addEntry(getNewEntry("entry4", "entry3"));
+      saved.close();
+
+      saved = newSavedEntryStore(savedFile, indexFile);
+      assertEquals(ID + "entry3", saved.getParent(ID + "entry4").getId());
+      saved.close();
+    } finally {
+      savedFile.delete();
+      indexFile.delete();
+    }
+  }
+
+  @Test
+  public void testSavedEntriesCompacted() throws IOException {
+    File savedFile = File.createTempFile("entries", ".segment");
+    File indexFile = new File(savedFile.getPath() + ".index");
+    try {
+      DiskEntryStore saved = newSavedEntryStore(savedFile, indexFile);
+      saved.addEntry(getNewEntry("entry1", null));
+      saved.close();
+      long length = savedFile.length();
+      for (int i = 0; i < 3; i++) {
+        saved = newSavedEntryStore(savedFile, indexFile);
+        saved.replaceEntry(getNewEntry("entry1", null));
+        saved.close();
+      }
+      assertTrue(savedFile.length() < 3 * length);
+      saved = newSavedEntryStore(savedFile, indexFile);
+      assertEquals("content of entry1",
+          EntryUtils.getXhtmlContent(saved.getEntry(ID + "entry1")));
+      saved.close();
+    } finally {
+      savedFile.delete();
+      indexFile.delete();
+    }
+  }
+
+  @Test(expected=IOException.class)
+  public void testSavedEntriesTruncated() throws IOException {
+    File savedFile = File.createTempFile("entries", ".segment");
+    File indexFile = new File(savedFile.getPath() + ".index");
+    try {
+      DiskEntryStore saved = newSavedEntryStore(savedFile, indexFile);
+      saved.addEntry(getNewEntry("entry1", null));
+      saved.close();
+      RandomAccessFile truncated = new RandomAccessFile(savedFile, "rw");
+      truncated.setLength(truncated.length() / 2);
+      truncated.close();
+      newSavedEntryStore(savedFile, indexFile);
+    } finally {
+      savedFile.delete();
+      indexFile.delete();
+    }
+  }
+
+  @Test
+  public void testConcurrentGetEntry() throws InterruptedException {
+    entryStore.addEntry(getNewEntry("entry0", null));
+    for (int i = 1; i < 200; i++) {
+      entryStore.addEntry(getNewEntry("entry" + i, "entry0"));
+    }
+    final List<Throwable> errors =
+        Collections.synchronizedList(Lists.<Throwable>newArrayList());
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 199; i > 0; i--) {
+              BaseContentEntry<?> entry = entryStore.getEntry(ID + "entry" + i);
+              assertEquals("content of entry" + i,
+                  EntryUtils.getXhtmlContent(entry));
+              assertEquals(ID + "entry0",
+                  entryStore.getParent(entry.getId()).getId());
+            }
+            assertEquals(199, entryStore.getChildren(ID + "entry0").size());
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+  }
+
+  private DiskEntryStore newSavedEntryStore(File savedFile, File indexFile)
+      throws IOException {
+    return new DiskEntryStore(savedFile, indexFile,
+        new SitesService("").getExtensionProfile());
+  }
+
+  private BaseContentEntry<?> getNewEntry(String name, String parentName) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(ID + name);
+    entry.setTitle(new PlainTextConstruct("Title " + name));
+    entry.setPageName(new PageName(name));
+    XmlBlob blob = new XmlBlob();
+    blob.setBlob("content of " + name);
+    entry.setContent(new XhtmlTextConstruct(blob));
+    if (parentName != null) {
+      EntryUtils.setParentId(entry, ID + parentName);
+    }
+    return entry;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class ExportManifestTest {
+
+  private static final String ID = 
+      "http://sites.google.com/feeds/content/site/";
+  
+  private static final DateTime FETCHED =
+      DateTime.parseDateTime("2009-07-30T15:48:23.975Z");
+
+  private File file;
+
+  @Before
+  public void before() throws IOException {
+    file = File.createTempFile("manifest", "");
+  }
+
+  @After
+  public void after() {
+    file.delete();
+  }
+
+  @Test
+  public void testIsChanged() {
+    ExportManifest manifest = new ExportManifest(FETCHED);
+    WebPageEntry page = getNewPage("page", null, 1);
+    assertTrue(manifest.isChanged(page));
+    manifest.addEntry(page);
+    assertFalse(manifest.isChanged(page));
+    assertFalse(manifest.isChanged(getNewPage("page", null, 1)));
+    assertTrue(manifest.isChanged(getNewPage("page", null, 2)));
+    WebPageEntry updated = getNewPage("page", null, 1);
+    updated.setUpdated(DateTime.parseDateTime("2009-08-30T15:48:23.975Z"));
+    assertTrue(manifest.isChanged(updated));
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+    ExportManifest manifest = new ExportManifest(FETCHED);
+    manifest.addEntry(getNewPage("parent", null, 3));
+    manifest.addEntry(getNewPage("child", "parent", 1));
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setId(ID + "attachment");
+    attachment.setTitle(new PlainTextConstruct("file.txt"));
+    OutOfLineContent content = new OutOfLineContent();
+    content.setUri("http://host/file.txt");
+    attachment.setContent(content);
+    EntryUtils.setParentId(attachment, ID + "child");
+    manifest.addEntry(attachment);
+    manifest.write(file);
+
+    ExportManifest read = ExportManifest.read(file);
+    assertEquals(FETCHED, read.getFetched());
+    assertEquals(3, read.getRecords().size());
+    assertFalse(read.isChanged(getNewPage("parent", null, 3)));
+    assertFalse(read.isChanged(getNewPage("child", "parent", 1)));
+    assertFalse(read.isChanged(attachment));
+    assertTrue(read.isChanged(getNewPage("child", "parent", 2)));
+    ExportManifest.Record child = read.getRecord(ID + "child");
+    assertEquals(ID + "parent", child.getParentId());
+    assertEquals("child", child.getPageName());
+    assertEquals("child", child.getTitle());
+    ExportManifest.Record readAttachment = read.getRecord(ID + "attachment");
+    assertEquals(ID + "child", readAttachment.getParentId());
+    assertNull(readAttachment.getPageName());
+    assertEquals("file.txt", readAttachment.getTitle());
+  }
+
+  @Test(expected=IOException.class)
+  public void testReadInvalid() throws IOException {
+    Writer out = new FileWriter(file);
+    try {
+      out.write("entries=1\n0.id=" + ID + "page\n");
+    } finally {
+      out.close();
+    }
+    ExportManifest.read(file);
+  }
+
+  private WebPageEntry getNewPage(String name, String parentName, 
+      int revision) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(ID + name);
+    entry.setTitle(new PlainTextConstruct(name));
+    entry.setPageName(new PageName(name));
+    entry.setUpdated(FETCHED);
+    entry.setRevision(new Revision(revision));
+    if (parentName != null) {
+      EntryUtils.setParentId(entry, ID + parentName);
+    }
+    return entry;
+  }
+}
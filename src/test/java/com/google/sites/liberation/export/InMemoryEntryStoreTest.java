@@ -79,6 +79,26 @@ public class InMemoryEntryStoreTest {
     assertTrue(entryStore.getChildren("entry4").isEmpty());
   }
   
+  @Test
+  public void testUpdateEntry() {
+    BaseContentEntry<?> entry1 = getNewEntry("entry1");
+    BaseContentEntry<?> entry2 = getNewEntry("entry2", "entry1");
+    entryStore.addEntry(entry1);
+    entryStore.addEntry(entry2);
+    BaseContentEntry<?> newEntry1 = getNewEntry("entry1", null, "new");
+    BaseContentEntry<?> newEntry2 = getNewEntry("entry2", "entry1", "new");
+    entryStore.updateEntry(newEntry1);
+    entryStore.updateEntry(newEntry2);
+    assertSame(newEntry1, entryStore.getEntry("entry1"));
+    assertSame(newEntry2, entryStore.getEntry("entry2"));
+    assertSame(newEntry1, entryStore.getTopLevelEntries().iterator().next());
+    assertEquals(1, entryStore.getTopLevelEntries().size());
+    assertSame(newEntry2, entryStore.getChildren("entry1").iterator().next());
+    assertEquals(1, entryStore.getChildren("entry1").size());
+    entryStore.updateEntry(getNewEntry("entry3"));
+    assertNull(entryStore.getEntry("entry3"));
+  }
+  
   private BaseContentEntry<?> getNewEntry(String id) {
     return getNewEntry(id, null, "");
   }
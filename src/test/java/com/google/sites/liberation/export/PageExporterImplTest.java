@@ -31,7 +31,7 @@ import com.google.gdata.data.sites.ListPageEntry;
 import com.google.gdata.data.sites.PageName;
 import com.google.gdata.data.sites.WebPageEntry;
 import com.google.sites.liberation.util.EntryUtils;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 import com.google.sites.liberation.renderers.AncestorLinksRenderer;
 import com.google.sites.liberation.renderers.AnnouncementsRenderer;
 import com.google.sites.liberation.renderers.AttachmentsRenderer;
@@ -160,18 +160,17 @@ public class PageExporterImplTest {
     
     context.checking(new Expectations() {{
       oneOf (ancestorLinksRenderer).renderAncestorLinks(
-          with(equal(ancestors))); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (titleRenderer).renderTitle(entry); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (contentRenderer).renderContent(entry, false); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (subpageLinksRenderer).renderSubpageLinks(with(equal(subpages))); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (attachmentsRenderer).renderAttachments(with(equal(attachments))); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (commentsRenderer).renderComments(with(equal(comments))); 
-        will(returnValue(new XmlElement("div")));
+          with(equal(ancestors)), with(any(XmlWriter.class)));
+      oneOf (titleRenderer).renderTitle(with(equal(entry)), 
+          with(any(XmlWriter.class)));
+      oneOf (contentRenderer).renderContent(with(equal(entry)), 
+          with(any(XmlWriter.class)), with(equal(false)));
+      oneOf (subpageLinksRenderer).renderSubpageLinks(with(equal(subpages)), 
+          with(any(XmlWriter.class)));
+      oneOf (attachmentsRenderer).renderAttachments(with(equal(attachments)), 
+          with(any(XmlWriter.class)));
+      oneOf (commentsRenderer).renderComments(with(equal(comments)), 
+          with(any(XmlWriter.class)));
     }});
     
     exporter.exportPage(entry, entryStore, out, false);
@@ -200,12 +199,12 @@ public class PageExporterImplTest {
     listItems.add(listItem1);
     
     context.checking(new Expectations() {{
-      oneOf (titleRenderer).renderTitle(entry); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (contentRenderer).renderContent(entry, true); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (listRenderer).renderList(with(entry), with(equal(listItems))); 
-        will(returnValue(new XmlElement("div")));
+      oneOf (titleRenderer).renderTitle(with(equal(entry)), 
+          with(any(XmlWriter.class)));
+      oneOf (contentRenderer).renderContent(with(equal(entry)), 
+          with(any(XmlWriter.class)), with(equal(true)));
+      oneOf (listRenderer).renderList(with(entry), with(equal(listItems)), 
+          with(any(XmlWriter.class)));
     }});
     
     exporter.exportPage(entry, entryStore, out, true);
@@ -234,12 +233,12 @@ public class PageExporterImplTest {
     attachments.add(attachment1);
     
     context.checking(new Expectations() {{
-      oneOf (titleRenderer).renderTitle(entry); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (contentRenderer).renderContent(entry, false); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (fileCabinetRenderer).renderFileCabinet(with(equal(attachments))); 
-        will(returnValue(new XmlElement("div")));
+      oneOf (titleRenderer).renderTitle(with(equal(entry)), 
+          with(any(XmlWriter.class)));
+      oneOf (contentRenderer).renderContent(with(equal(entry)), 
+          with(any(XmlWriter.class)), with(equal(false)));
+      oneOf (fileCabinetRenderer).renderFileCabinet(with(equal(attachments)), 
+          with(any(XmlWriter.class)));
     }});
     
     exporter.exportPage(entry, entryStore, out, false);
@@ -268,13 +267,12 @@ public class PageExporterImplTest {
     announcements.add(announcement1);
     
     context.checking(new Expectations() {{
-      oneOf (titleRenderer).renderTitle(entry); 
-        will(returnValue(new XmlElement("div")));
-      oneOf (contentRenderer).renderContent(entry, true); 
-        will(returnValue(new XmlElement("div")));
+      oneOf (titleRenderer).renderTitle(with(equal(entry)), 
+          with(any(XmlWriter.class)));
+      oneOf (contentRenderer).renderContent(with(equal(entry)), 
+          with(any(XmlWriter.class)), with(equal(true)));
       oneOf (announcementsRenderer).renderAnnouncements(
-          with(equal(announcements))); 
-        will(returnValue(new XmlElement("div")));
+          with(equal(announcements)), with(any(XmlWriter.class)));
     }});
     
     exporter.exportPage(entry, entryStore, out, true);
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class PageSizeControllerTest {
+
+  @Test
+  public void testFixed() {
+    PageSizeController pageSize = PageSizeController.fixed(20);
+    pageSize.recordSuccess(20, 10);
+    pageSize.recordSuccess(20, 10);
+    assertEquals(20, pageSize.getPageSize());
+    pageSize.recordFailure();
+    assertEquals(20, pageSize.getPageSize());
+  }
+  
+  @Test
+  public void testGrowsWhileFast() {
+    PageSizeController pageSize = new PageSizeController(20, 5, 100);
+    pageSize.recordSuccess(20, 200);
+    assertEquals(20, pageSize.getPageSize());
+    pageSize.recordSuccess(20, 200);
+    assertEquals(30, pageSize.getPageSize());
+    pageSize.recordSuccess(30, 300);
+    assertEquals(45, pageSize.getPageSize());
+    for (int i = 0; i < 10; i++) {
+      pageSize.recordSuccess(pageSize.getPageSize(), 100);
+    }
+    assertEquals(100, pageSize.getPageSize());
+  }
+  
+  @Test
+  public void testDoesNotGrowWhenSlow() {
+    PageSizeController pageSize = new PageSizeController(20, 5, 100);
+    pageSize.recordSuccess(20, PageSizeController.TARGET_MILLIS);
+    pageSize.recordSuccess(20, PageSizeController.TARGET_MILLIS);
+    assertEquals(20, pageSize.getPageSize());
+  }
+  
+  @Test
+  public void testShrinksOnLatencySpike() {
+    PageSizeController pageSize = new PageSizeController(40, 5, 100);
+    pageSize.recordSuccess(40, 400);
+    pageSize.recordSuccess(40, 1000);
+    assertEquals(20, pageSize.getPageSize());
+  }
+  
+  @Test
+  public void testShrinksOnFailure() {
+    PageSizeController pageSize = new PageSizeController(40, 5, 100);
+    pageSize.recordFailure();
+    assertEquals(20, pageSize.getPageSize());
+    pageSize.recordFailure();
+    pageSize.recordFailure();
+    pageSize.recordFailure();
+    assertEquals(5, pageSize.getPageSize());
+  }
+}
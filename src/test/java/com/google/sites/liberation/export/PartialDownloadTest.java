@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.sites.AttachmentEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class PartialDownloadTest {
+
+  private File data;
+  private File part;
+  private AttachmentEntry attachment;
+
+  @Before
+  public void before() throws IOException {
+    data = File.createTempFile("attachment", ".tmp");
+    part = new File(data.getPath() + ".part");
+    FileOutputStream out = new FileOutputStream(data);
+    out.write(new byte[100]);
+    out.close();
+    attachment = new AttachmentEntry();
+    attachment.setEtag("\"etag\"");
+    attachment.setUpdated(DateTime.parseDateTime("2009-07-30T15:48:23.975Z"));
+  }
+
+  @After
+  public void after() {
+    data.delete();
+    part.delete();
+  }
+
+  @Test
+  public void testNoSidecar() {
+    PartialDownload partial = new PartialDownload(part, attachment);
+    assertEquals(0, partial.getResumableBytes(data));
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    new PartialDownload(part, attachment).save(60);
+    PartialDownload partial = new PartialDownload(part, attachment);
+    assertEquals(60, partial.getResumableBytes(data));
+    partial.delete();
+    assertFalse(part.exists());
+    assertEquals(0, partial.getResumableBytes(data));
+  }
+
+  @Test
+  public void testResumeNeverPastData() throws IOException {
+    PartialDownload partial = new PartialDownload(part, attachment);
+    partial.save(500);
+    assertEquals(100, partial.getResumableBytes(data));
+  }
+
+  @Test
+  public void testChangedAttachment() throws IOException {
+    new PartialDownload(part, attachment).save(60);
+    attachment.setEtag("\"changed\"");
+    assertEquals(0, new PartialDownload(part, attachment)
+        .getResumableBytes(data));
+    attachment.setEtag("\"etag\"");
+    attachment.setUpdated(DateTime.parseDateTime("2009-08-30T15:48:23.975Z"));
+    assertEquals(0, new PartialDownload(part, attachment)
+        .getResumableBytes(data));
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class PathIndexTest {
+
+  private PathIndex pathIndex;
+
+  @Before
+  public void before() {
+    pathIndex = new PathIndex();
+    pathIndex.addPage("1", null, "one");
+    pathIndex.addPage("2", "1", "two");
+    pathIndex.addPage("3", "2", "three");
+  }
+
+  @Test
+  public void testTopLevelPage() {
+    assertEquals(0, pathIndex.getDepth("1"));
+    assertTrue(pathIndex.getAncestorIds("1").isEmpty());
+    assertEquals("one", pathIndex.getPath("1"));
+    assertEquals("../", pathIndex.getPathToRoot("1"));
+  }
+
+  @Test
+  public void testNestedPage() {
+    assertEquals(2, pathIndex.getDepth("3"));
+    assertEquals(ImmutableList.of("1", "2"), pathIndex.getAncestorIds("3"));
+    assertEquals("one/two/three", pathIndex.getPath("3"));
+    assertEquals("../../../", pathIndex.getPathToRoot("3"));
+  }
+
+  @Test
+  public void testMissingAncestor() {
+    pathIndex.addPage("5", "4", "five");
+    pathIndex.addPage("6", "5", "six");
+    assertEquals(1, pathIndex.getDepth("6"));
+    assertEquals(ImmutableList.of("5"), pathIndex.getAncestorIds("6"));
+    assertNull(pathIndex.getPath("6"));
+    assertEquals("../../", pathIndex.getPathToRoot("6"));
+  }
+
+  @Test
+  public void testAddPageAfterLookup() {
+    pathIndex.addPage("6", "5", "six");
+    assertNull(pathIndex.getPath("6"));
+    assertEquals(0, pathIndex.getDepth("6"));
+    pathIndex.addPage("5", "3", "five");
+    assertEquals("one/two/three/five/six", pathIndex.getPath("6"));
+    assertEquals(4, pathIndex.getDepth("6"));
+    assertEquals("../../../../../", pathIndex.getPathToRoot("6"));
+  }
+
+  @Test
+  public void testLookupBeforeAdd() {
+    assertNull(pathIndex.getPath("4"));
+    assertTrue(pathIndex.getAncestorIds("4").isEmpty());
+    pathIndex.addPage("4", "3", "four");
+    assertEquals("one/two/three/four", pathIndex.getPath("4"));
+    assertEquals(ImmutableList.of("1", "2", "3"), 
+        pathIndex.getAncestorIds("4"));
+  }
+
+  @Test
+  public void testMovedPage() {
+    assertEquals("one/two/three", pathIndex.getPath("3"));
+    pathIndex.addPage("2", null, "two");
+    assertEquals("two/three", pathIndex.getPath("3"));
+    assertEquals(ImmutableList.of("2"), pathIndex.getAncestorIds("3"));
+    pathIndex.addPage("2", null, "renamed");
+    assertEquals("renamed/three", pathIndex.getPath("3"));
+  }
+
+  @Test
+  public void testNewPageKeepsLookups() {
+    assertEquals("one/two/three", pathIndex.getPath("3"));
+    List<String> ancestors = pathIndex.getAncestorIds("3");
+    pathIndex.addPage("4", "3", "four");
+    pathIndex.addPage("2", "1", "two");
+    assertSame(ancestors, pathIndex.getAncestorIds("3"));
+    assertEquals("one/two/three/four", pathIndex.getPath("4"));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class PendingAttachmentsTest {
+
+  private EntryStore entryStore;
+  private PendingAttachments pendingAttachments;
+
+  @Before
+  public void setUp() {
+    entryStore = new InMemoryEntryStore();
+    pendingAttachments = new PendingAttachments(entryStore);
+  }
+
+  @Test
+  public void testParentFirst() {
+    assertTrue(add(getNewPage("parent", null)).isEmpty());
+    List<AttachmentEntry> ready = add(getNewAttachment("file", "parent"));
+    assertEquals(1, ready.size());
+    assertEquals("file", ready.get(0).getId());
+    assertTrue(pendingAttachments.getWaitingIds().isEmpty());
+  }
+
+  @Test
+  public void testAttachmentFirst() {
+    assertTrue(add(getNewAttachment("file", "child")).isEmpty());
+    assertTrue(add(getNewPage("child", "parent")).isEmpty());
+    assertTrue(add(getNewAttachment("other", "parent")).isEmpty());
+    assertTrue(add(new CommentEntry(), "comment", "child").isEmpty());
+    assertEquals(2, pendingAttachments.getWaitingIds().size());
+    List<AttachmentEntry> ready = add(getNewPage("parent", null));
+    assertEquals(2, ready.size());
+    assertEquals("other", ready.get(0).getId());
+    assertEquals("file", ready.get(1).getId());
+    assertTrue(pendingAttachments.getWaitingIds().isEmpty());
+  }
+
+  @Test
+  public void testNeverResolved() {
+    assertTrue(add(getNewAttachment("orphan", null)).isEmpty());
+    assertTrue(add(getNewAttachment("file", "missing")).isEmpty());
+    WebPageEntry unnamed = getNewPage("unnamed", null);
+    unnamed.setPageName(null);
+    assertTrue(add(unnamed).isEmpty());
+    assertTrue(add(getNewAttachment("other", "unnamed")).isEmpty());
+    assertEquals(3, pendingAttachments.getWaitingIds().size());
+  }
+
+  private List<AttachmentEntry> add(BaseContentEntry<?> entry) {
+    entryStore.addEntry(entry);
+    return pendingAttachments.addEntry(entry);
+  }
+
+  private List<AttachmentEntry> add(BaseContentEntry<?> entry, String id,
+      String parentId) {
+    entry.setId(id);
+    EntryUtils.setParentId(entry, parentId);
+    return add(entry);
+  }
+
+  private WebPageEntry getNewPage(String id, String parentId) {
+    WebPageEntry page = new WebPageEntry();
+    page.setId(id);
+    page.setTitle(new PlainTextConstruct(id));
+    page.setPageName(new PageName(id));
+    if (parentId != null) {
+      EntryUtils.setParentId(page, parentId);
+    }
+    return page;
+  }
+
+  private AttachmentEntry getNewAttachment(String id, String parentId) {
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setId(id);
+    attachment.setTitle(new PlainTextConstruct(id));
+    if (parentId != null) {
+      EntryUtils.setParentId(attachment, parentId);
+    }
+    return attachment;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class ReadOnlyEntryStoreTest {
+
+  private InMemoryEntryStore entryStore;
+  private ReadOnlyEntryStore view;
+
+  @Before
+  public void setUp() {
+    entryStore = new InMemoryEntryStore();
+    entryStore.addEntry(getNewPage("parent", null));
+    entryStore.addEntry(getNewPage("child", "parent"));
+    view = new ReadOnlyEntryStore(entryStore);
+  }
+
+  @Test
+  public void testReads() {
+    assertSame(entryStore.getEntry("child"), view.getEntry("child"));
+    assertEquals("parent", view.getParent("child").getId());
+    assertEquals(1, view.getChildren("parent").size());
+    assertEquals(1, view.getTopLevelEntries().size());
+    assertEquals(1, view.getAncestors("child").size());
+    assertEquals(1, view.getDepth("child"));
+    assertEquals("parent/child", view.getPath("child"));
+    assertEquals("../../", view.getPathToRoot("child"));
+  }
+
+  @Test
+  public void testWrites() {
+    try {
+      view.addEntry(getNewPage("other", null));
+      fail("Should not accept new entries!");
+    } catch (UnsupportedOperationException e) {}
+    try {
+      view.updateEntry(getNewPage("parent", null));
+      fail("Should not accept updated entries!");
+    } catch (UnsupportedOperationException e) {}
+    try {
+      view.getChildren("parent").clear();
+      fail("Should not allow children to be removed!");
+    } catch (UnsupportedOperationException e) {}
+    try {
+      view.getTopLevelEntries().clear();
+      fail("Should not allow top level entries to be removed!");
+    } catch (UnsupportedOperationException e) {}
+    assertNull(entryStore.getEntry("other"));
+    assertEquals(1, entryStore.getChildren("parent").size());
+    assertEquals(1, entryStore.getTopLevelEntries().size());
+  }
+
+  private WebPageEntry getNewPage(String id, String parentId) {
+    WebPageEntry page = new WebPageEntry();
+    page.setId(id);
+    page.setTitle(new PlainTextConstruct(id));
+    page.setPageName(new PageName(id));
+    if (parentId != null) {
+      EntryUtils.setParentId(page, parentId);
+    }
+    return page;
+  }
+}
@@ -25,7 +25,7 @@ import com.google.gdata.data.sites.WebPageEntry;
 import com.google.sites.liberation.renderers.ListRenderer;
 import com.google.sites.liberation.renderers.RevisionRenderer;
 import com.google.sites.liberation.renderers.TitleRenderer;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -69,10 +69,10 @@ public class RevisionExporterImplTest {
     revision.setId("http://revision");
     
     context.checking(new Expectations() {{
-      oneOf (revisionRenderer).renderRevision(revision); 
-          will(returnValue(new XmlElement("div")));
-      oneOf (titleRenderer).renderTitle(revision);
-          will(returnValue(new XmlElement("div")));
+      oneOf (revisionRenderer).renderRevision(with(equal(revision)), 
+          with(any(XmlWriter.class)));
+      oneOf (titleRenderer).renderTitle(with(equal(revision)), 
+          with(any(XmlWriter.class)));
     }});
     
     revisionExporter.exportRevision(revision, out);
@@ -86,12 +86,13 @@ public class RevisionExporterImplTest {
     revision.setId("http://revision");
     
     context.checking(new Expectations() {{
-      oneOf (revisionRenderer).renderRevision(revision); 
-          will(returnValue(new XmlElement("div")));
-      oneOf (titleRenderer).renderTitle(revision);
-          will(returnValue(new XmlElement("div")));
-      oneOf (listRenderer).renderList(revision, new ArrayList<ListItemEntry>());
-          will(returnValue(new XmlElement("div")));
+      oneOf (revisionRenderer).renderRevision(with(equal(revision)), 
+          with(any(XmlWriter.class)));
+      oneOf (titleRenderer).renderTitle(with(equal(revision)), 
+          with(any(XmlWriter.class)));
+      oneOf (listRenderer).renderList(with(equal(revision)), 
+          with(equal(new ArrayList<ListItemEntry>())), 
+          with(any(XmlWriter.class)));
     }});
     
     revisionExporter.exportRevision(revision, out);
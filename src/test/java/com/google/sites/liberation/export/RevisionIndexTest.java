@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.Person;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class RevisionIndexTest {
+
+  private File indexFile;
+  private File revisionFile;
+
+  @Before
+  public void before() throws IOException {
+    indexFile = File.createTempFile("revisions", "");
+    revisionFile = File.createTempFile("revision", ".html");
+    write(revisionFile, "revision");
+  }
+
+  @After
+  public void after() {
+    indexFile.delete();
+    revisionFile.delete();
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+    RevisionIndex index = new RevisionIndex();
+    index.setRevisions(Arrays.<BaseContentEntry<?>>asList(
+        getNewRevision(2, "Latest"), getNewRevision(1, null)));
+    index.setFile(1, revisionFile);
+    index.write(indexFile);
+    RevisionIndex read = RevisionIndex.read(indexFile);
+    List<BaseContentEntry<?>> revisions = read.getRevisions();
+    assertEquals(2, revisions.size());
+    assertEquals(2, revisions.get(0).getRevision().getValue().intValue());
+    assertEquals("Latest", revisions.get(0).getTitle().getPlainText());
+    assertEquals(new DateTime(2000L, 0), revisions.get(0).getUpdated());
+    assertEquals("Author", revisions.get(0).getAuthors().get(0).getName());
+    assertEquals("author@example.com",
+        revisions.get(0).getAuthors().get(0).getEmail());
+    assertEquals(1, revisions.get(1).getRevision().getValue().intValue());
+    assertNull(revisions.get(1).getTitle());
+    assertTrue(read.isVerified(1, revisionFile));
+    assertFalse(read.isVerified(2, revisionFile));
+  }
+
+  @Test
+  public void testChangedFile() throws IOException {
+    revisionFile.setLastModified(1000000000000L);
+    RevisionIndex index = new RevisionIndex();
+    index.setFile(1, revisionFile);
+    write(revisionFile, "Revision");
+    revisionFile.setLastModified(1000000001000L);
+    assertFalse(index.isVerified(1, revisionFile));
+    write(revisionFile, "rev");
+    assertFalse(index.isVerified(1, revisionFile));
+    write(revisionFile, "revision");
+    revisionFile.setLastModified(1000000002000L);
+    assertTrue(index.isVerified(1, revisionFile));
+  }
+
+  @Test
+  public void testUnmodifiedFileNotHashed() throws IOException {
+    revisionFile.setLastModified(1000000000000L);
+    RevisionIndex index = new RevisionIndex();
+    index.setRevisions(Arrays.<BaseContentEntry<?>>asList(
+        getNewRevision(1, null)));
+    index.setFile(1, revisionFile);
+    index.write(indexFile);
+    write(revisionFile, "Revision");
+    revisionFile.setLastModified(1000000000000L);
+    assertTrue(RevisionIndex.read(indexFile).isVerified(1, revisionFile));
+  }
+
+  @Test
+  public void testIndexWithoutModifiedTime() throws IOException {
+    write(indexFile, "revisions=1\n1.size=8\n"
+        + "1.sha1=cc6d2a8fb8ce3b6e6e6b1e5b5dba3e6bbc5c7b4f\n");
+    RevisionIndex index = RevisionIndex.read(indexFile);
+    assertFalse(index.isVerified(1, revisionFile));
+    RevisionIndex written = new RevisionIndex();
+    written.setRevisions(Arrays.<BaseContentEntry<?>>asList(
+        getNewRevision(1, null)));
+    written.setFile(1, revisionFile);
+    written.write(indexFile);
+    write(indexFile, read(indexFile).replaceAll("1\\.modified=\\d+\\n", 
+        ""));
+    index = RevisionIndex.read(indexFile);
+    assertTrue(index.isVerified(1, revisionFile));
+  }
+
+  @Test
+  public void testInvalidIndex() throws IOException {
+    write(indexFile, "other=value");
+    try {
+      RevisionIndex.read(indexFile);
+      fail("Should not read an index with no revisions!");
+    } catch (IOException e) {}
+    write(indexFile, "revisions=1,two");
+    try {
+      RevisionIndex.read(indexFile);
+      fail("Should not read an index with an invalid revision!");
+    } catch (IOException e) {}
+  }
+
+  private WebPageEntry getNewRevision(int number, String title) {
+    WebPageEntry revision = new WebPageEntry();
+    revision.setRevision(new Revision(number));
+    revision.setUpdated(new DateTime(number * 1000L, 0));
+    if (title != null) {
+      revision.setTitle(new PlainTextConstruct(title));
+    }
+    revision.getAuthors().add(
+        new Person("Author", null, "author@example.com"));
+    return revision;
+  }
+
+  private String read(File file) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    Reader in = new FileReader(file);
+    try {
+      int c;
+      while ((c = in.read()) != -1) {
+        builder.append((char) c);
+      }
+    } finally {
+      in.close();
+    }
+    return builder.toString();
+  }
+
+  private void write(File file, String contents) throws IOException {
+    FileWriter writer = new FileWriter(file);
+    writer.write(contents);
+    writer.close();
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JUnit4Mockery;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class RevisionsExporterImplTest {
+
+  private Mockery context;
+  private AbsoluteLinkConverter linkConverter;
+  private FeedProvider feedProvider;
+  private HistoryExporter historyExporter;
+  private RevisionExporter revisionExporter;
+  private RevisionsExporter revisionsExporter;
+  private EntryStore entryStore;
+  private SitesService sitesService;
+  private URL siteUrl;
+  private File directory;
+
+  @Before
+  public void before() throws IOException {
+    context = new JUnit4Mockery();
+    linkConverter = context.mock(AbsoluteLinkConverter.class);
+    feedProvider = context.mock(FeedProvider.class);
+    historyExporter = context.mock(HistoryExporter.class);
+    revisionExporter = context.mock(RevisionExporter.class);
+    revisionsExporter = new RevisionsExporterImpl(linkConverter,
+        new BufferedWriterFactory(), feedProvider, historyExporter,
+        revisionExporter);
+    entryStore = new InMemoryEntryStore();
+    sitesService = new SitesService("");
+    siteUrl = new URL("http://sites.google.com/site/webspace");
+    directory = File.createTempFile("revisions", "");
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @After
+  public void after() {
+    File revisionsDirectory = new File(directory, "_revisions");
+    File[] files = revisionsDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    revisionsDirectory.delete();
+    new File(directory, "history.html").delete();
+    directory.delete();
+  }
+
+  @Test
+  public void testExportRevisions() throws IOException {
+    final BasePageEntry<?> page = getNewPage(2);
+    final BasePageEntry<?> revision = getNewPage(1);
+    final List<BaseContentEntry<?>> revisions =
+        Collections.<BaseContentEntry<?>>singletonList(revision);
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(
+          new URL("http://sites.google.com/feeds/revision/site/webspace/1"),
+          sitesService);
+          will(returnValue(revisions));
+      oneOf (linkConverter).convertLinks(revision, entryStore, siteUrl, true);
+      oneOf (revisionExporter).exportRevision(with(equal(revision)),
+          with(any(Appendable.class)));
+      oneOf (historyExporter).exportHistory(with(equal(revisions)),
+          with(any(Appendable.class)));
+    }});
+    revisionsExporter.exportRevisions(page, entryStore, directory,
+        sitesService, siteUrl);
+    assertTrue(new File(directory, "_revisions/1.html").isFile());
+    assertTrue(new File(directory, "history.html").isFile());
+    assertTrue(new File(directory, "_revisions/.revisions").isFile());
+  }
+
+  @Test
+  public void testSkipExported() throws IOException {
+    exportRevisions(2);
+    revisionsExporter.exportRevisions(getNewPage(2), entryStore, directory,
+        sitesService, siteUrl);
+  }
+
+  @Test
+  public void testMissingHistory() throws IOException {
+    exportRevisions(2);
+    new File(directory, "history.html").delete();
+    context.checking(new Expectations() {{
+      oneOf (historyExporter).exportHistory(with(revisionsNumbered(2, 1)),
+          with(any(Appendable.class)));
+    }});
+    revisionsExporter.exportRevisions(getNewPage(2), entryStore, directory,
+        sitesService, siteUrl);
+  }
+
+  @Test
+  public void testChangedRevision() throws IOException {
+    exportRevisions(2);
+    FileWriter writer = 
+        new FileWriter(new File(directory, "_revisions/1.html"));
+    writer.write("changed");
+    writer.close();
+    exportRevisions(2);
+  }
+
+  @Test
+  public void testNewRevision() throws IOException {
+    new File(directory, "history.html").createNewFile();
+    final BasePageEntry<?> page = getNewPage(2);
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(
+          new URL("http://sites.google.com/feeds/revision/site/webspace/1"),
+          sitesService);
+          will(returnValue(Collections.emptyList()));
+      oneOf (historyExporter).exportHistory(
+          with(equal(Collections.<BaseContentEntry<?>>emptyList())),
+          with(any(Appendable.class)));
+    }});
+    revisionsExporter.exportRevisions(page, entryStore, directory,
+        sitesService, siteUrl);
+  }
+
+  @Test
+  public void testFetchNewerRevisions() throws IOException {
+    exportRevisions(2);
+    final BasePageEntry<?> revision = getNewPage(2);
+    final List<BaseContentEntry<?>> revisions =
+        Arrays.<BaseContentEntry<?>>asList(getNewPage(3), revision);
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(
+          new URL("http://sites.google.com/feeds/revision/site/webspace/1"),
+          sitesService, getNewPage(1).getUpdated(), null);
+          will(returnValue(revisions));
+      oneOf (linkConverter).convertLinks(revision, entryStore, siteUrl, true);
+      oneOf (revisionExporter).exportRevision(with(equal(revision)),
+          with(any(Appendable.class)));
+      oneOf (historyExporter).exportHistory(with(revisionsNumbered(3, 2, 1)),
+          with(any(Appendable.class)));
+    }});
+    revisionsExporter.exportRevisions(getNewPage(3), entryStore, directory,
+        sitesService, siteUrl);
+    assertTrue(new File(directory, "_revisions/2.html").isFile());
+  }
+
+  /**
+   * Exports the revisions of a page at the given revision, with the revisions
+   * feed returning every revision up to it, newest first.
+   */
+  private void exportRevisions(int current) throws IOException {
+    final List<BaseContentEntry<?>> revisions = Lists.newArrayList();
+    for (int i = current; i > 0; i--) {
+      revisions.add(getNewPage(i));
+    }
+    context.checking(new Expectations() {{
+      oneOf (feedProvider).getEntries(
+          new URL("http://sites.google.com/feeds/revision/site/webspace/1"),
+          sitesService);
+          will(returnValue(revisions));
+      allowing (linkConverter).convertLinks(with(any(BasePageEntry.class)),
+          with(equal(entryStore)), with(equal(siteUrl)), with(equal(true)));
+      exactly(revisions.size() - 1).of (revisionExporter).exportRevision(
+          with(any(BasePageEntry.class)), with(any(Appendable.class)));
+      oneOf (historyExporter).exportHistory(with(equal(revisions)),
+          with(any(Appendable.class)));
+    }});
+    revisionsExporter.exportRevisions(getNewPage(current), entryStore,
+        directory, sitesService, siteUrl);
+  }
+
+  private static Matcher<List<BaseContentEntry<?>>> revisionsNumbered(
+      final int... numbers) {
+    return new BaseMatcher<List<BaseContentEntry<?>>>() {
+      @Override
+      public boolean matches(Object item) {
+        if (!(item instanceof List<?>)
+            || ((List<?>) item).size() != numbers.length) {
+          return false;
+        }
+        for (int i = 0; i < numbers.length; i++) {
+          BaseContentEntry<?> revision = 
+              (BaseContentEntry<?>) ((List<?>) item).get(i);
+          if (revision.getRevision().getValue() != numbers[i]) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public void describeTo(Description description) {
+        description.appendText("revisions numbered ")
+            .appendValue(Arrays.toString(numbers));
+      }
+    };
+  }
+
+  private BasePageEntry<?> getNewPage(int revision) {
+    BasePageEntry<?> page = new WebPageEntry();
+    page.setId("http://sites.google.com/feeds/content/site/webspace/1");
+    page.setTitle(new PlainTextConstruct("Title"));
+    page.setRevision(new Revision(revision));
+    page.setUpdated(new DateTime(revision * 1000L, 0));
+    return page;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.XmlWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class SideBarCacheTest {
+
+  private static final String HEADER =
+      "<tr><th align=\"left\">Navigation</th></tr>";
+
+  private SideBarCache sideBarCache;
+
+  @Before
+  public void before() {
+    EntryStore entryStore = new InMemoryEntryStore();
+    entryStore.addEntry(getNewPage("b", "B & co", null));
+    entryStore.addEntry(getNewPage("a", "A", null));
+    entryStore.addEntry(getNewPage("c", "C", "a"));
+    sideBarCache = new SideBarCache(entryStore);
+  }
+
+  @Test
+  public void testTopLevelPage() throws IOException {
+    assertEquals("<table>" + HEADER
+        + "<tr><td><small>A</small></td></tr>"
+        + "<tr><td><small><a href=\"../b/index.html\">B &amp; co</a>"
+        + "</small></td></tr></table>",
+        getSideBar("a", "../"));
+    assertEquals("<table>" + HEADER
+        + "<tr><td><small><a href=\"../a/index.html\">A</a></small></td></tr>"
+        + "<tr><td><small>B &amp; co</small></td></tr></table>",
+        getSideBar("b", "../"));
+  }
+
+  @Test
+  public void testSubpage() throws IOException {
+    assertEquals("<table>" + HEADER
+        + "<tr><td><small><a href=\"../../a/index.html\">A</a>"
+        + "</small></td></tr>"
+        + "<tr><td><small><a href=\"../../b/index.html\">B &amp; co</a>"
+        + "</small></td></tr></table>",
+        getSideBar("c", "../../"));
+  }
+
+  private String getSideBar(String id, String pathToRoot) 
+      throws IOException {
+    StringBuilder out = new StringBuilder();
+    sideBarCache.writeSideBar(id, pathToRoot, new XmlWriter(out));
+    return out.toString();
+  }
+
+  private BasePageEntry<?> getNewPage(String id, String title,
+      String parentId) {
+    WebPageEntry entry = new WebPageEntry();
+    entry.setId(id);
+    entry.setTitle(new PlainTextConstruct(title));
+    entry.setPageName(new PageName(id));
+    if (parentId != null) {
+      EntryUtils.setParentId(entry, parentId);
+    }
+    return entry;
+  }
+}
@@ -21,9 +21,13 @@ import static org.junit.Assert.*;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.ILink;
+import com.google.gdata.data.Person;
 import com.google.gdata.data.PlainTextConstruct;
 import com.google.gdata.data.XhtmlTextConstruct;
+import com.google.gdata.data.sites.AnnouncementEntry;
+import com.google.gdata.data.sites.AnnouncementsPageEntry;
 import com.google.gdata.data.sites.AttachmentEntry;
 import com.google.gdata.data.sites.BaseContentEntry;
 import com.google.gdata.data.sites.BasePageEntry;
@@ -33,8 +37,14 @@ import com.google.gdata.data.sites.PageName;
 import com.google.gdata.data.sites.SitesLink;
 import com.google.gdata.data.sites.WebPageEntry;
 import com.google.gdata.util.XmlBlob;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.sites.liberation.util.EntryUtils;
 import com.google.sites.liberation.util.ProgressListener;
 
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
 import org.junit.Before;
 import org.junit.Test;
 import org.jmock.Expectations;
@@ -43,10 +53,14 @@ import org.jmock.integration.junit4.JUnit4Mockery;
 import org.jmock.lib.legacy.ClassImposteriser;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -68,6 +82,7 @@ public class SiteExporterImplTest {
   private SitesService sitesService;
   private Collection<BaseContentEntry<?>> entries;
   private URL feedUrl;
+  private URL siteUrl;
   private Map<AttachmentEntry, File> downloaded;
   
   @Before
@@ -86,10 +101,11 @@ public class SiteExporterImplTest {
     revisionsExporter = context.mock(RevisionsExporter.class);
     siteExporter = new SiteExporterImpl(linkConverter, appendableFactory, 
         attachmentDownloader, entryStoreFactory, feedProvider, pageExporter, 
-        revisionsExporter);
+        revisionsExporter, 2, 1, 1, 0, false);
     sitesService = new SitesService("");
     entries = Sets.newHashSet();
     feedUrl = new URL("http://host/feeds/content/domain/webspace");
+    siteUrl = new URL("http://host/a/domain/webspace");
   }
   
   @Test
@@ -98,7 +114,8 @@ public class SiteExporterImplTest {
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
       allowing (progressListener).setStatus(with(any(String.class)));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(any(ProgressListener.class)));
           will(returnValue(entries));
     }});
     
@@ -120,22 +137,25 @@ public class SiteExporterImplTest {
     context.checking(new Expectations() {{
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(any(ProgressListener.class)));
           will(returnValue(entries));
       allowing (entryStore).getEntry("1"); will(returnValue(page));
       allowing (entryStore).getParent("1"); will(returnValue(null));
+      allowing (entryStore).getPath("1"); will(returnValue("Page-1"));
       allowing (progressListener).setStatus(with(any(String.class)));
       allowing (progressListener).setProgress(with(any(Double.class)));
       oneOf (entryStore).addEntry(page);
       oneOf (appendableFactory).getAppendable(
           new File("path/Page-1/index.html"));
           will(returnValue(out));
-      oneOf (linkConverter).convertLinks(page, entryStore, 
-          new URL("http://host/a/domain/webspace"), false);
-      oneOf (pageExporter).exportPage(page, entryStore, out, true);
-      oneOf (revisionsExporter).exportRevisions(page, entryStore, 
-          new File("path/Page-1"), sitesService, 
-          new URL("http://host/a/domain/webspace"));
+      oneOf (linkConverter).convertLinks(with(equal(page)), 
+          with(same(entryStore)), with(equal(siteUrl)), with(equal(false)));
+      oneOf (pageExporter).exportPage(with(equal(page)), 
+          with(viewOf(entryStore)), with(equal(out)), with(equal(true)));
+      oneOf (revisionsExporter).exportRevisions(with(equal(page)), 
+          with(viewOf(entryStore)), with(equal(new File("path/Page-1"))), 
+          with(equal(sitesService)), with(equal(siteUrl)));
     }});
     
     export(true);
@@ -161,10 +181,12 @@ public class SiteExporterImplTest {
     context.checking(new Expectations() {{
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(any(ProgressListener.class)));
           will(returnValue(entries));
       allowing (entryStore).getEntry("1"); will(returnValue(page));
       allowing (entryStore).getParent("1"); will(returnValue(null));
+      allowing (entryStore).getPath("1"); will(returnValue("Page-1"));
       allowing (entryStore).getEntry("2"); will(returnValue(attachment));
       allowing (entryStore).getParent("2"); will(returnValue(page));
       allowing (progressListener).setStatus(with(any(String.class)));
@@ -174,9 +196,10 @@ public class SiteExporterImplTest {
       oneOf (appendableFactory).getAppendable(
           new File("path/Page-1/index.html"));
           will(returnValue(out));
-      oneOf (linkConverter).convertLinks(page, entryStore, 
-          new URL("http://host/a/domain/webspace"), false);
-      oneOf (pageExporter).exportPage(page, entryStore, out, false);
+      oneOf (linkConverter).convertLinks(with(equal(page)), 
+          with(same(entryStore)), with(equal(siteUrl)), with(equal(false)));
+      oneOf (pageExporter).exportPage(with(equal(page)), 
+          with(viewOf(entryStore)), with(equal(out)), with(equal(false)));
     }});
     
     export(false);
@@ -224,7 +247,8 @@ public class SiteExporterImplTest {
     context.checking(new Expectations() {{
       allowing (entryStoreFactory).newEntryStore(); 
           will(returnValue(entryStore));
-      allowing (feedProvider).getEntries(feedUrl, sitesService);
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(any(ProgressListener.class)));
           will(returnValue(entries));
       allowing (entryStore).getEntry("1"); will(returnValue(page1));
       allowing (entryStore).getEntry("2"); will(returnValue(attachment1));
@@ -232,10 +256,12 @@ public class SiteExporterImplTest {
       allowing (entryStore).getEntry("4"); will(returnValue(attachment2));
       allowing (entryStore).getEntry("5"); will(returnValue(attachment3));
       allowing (entryStore).getParent("1"); will(returnValue(null));
+      allowing (entryStore).getPath("1"); will(returnValue("Page-1"));
       allowing (entryStore).getParent("2"); will(returnValue(page1));
       allowing (entryStore).getParent("3"); will(returnValue(page1));
       allowing (entryStore).getParent("4"); will(returnValue(page1));
       allowing (entryStore).getParent("5"); will(returnValue(page2));
+      allowing (entryStore).getPath("3"); will(returnValue("Page-1/Page-2"));
       allowing (progressListener).setStatus(with(any(String.class)));
       allowing (progressListener).setProgress(with(any(Double.class)));
       oneOf (entryStore).addEntry(page1);
@@ -249,18 +275,21 @@ public class SiteExporterImplTest {
       oneOf (appendableFactory).getAppendable(
           new File("path/Page-1/Page-2/index.html"));
           will(returnValue(out2));
-      oneOf (linkConverter).convertLinks(page1, entryStore, 
-          new URL("http://host/a/domain/webspace"), false);
-      oneOf (linkConverter).convertLinks(page2, entryStore, 
-          new URL("http://host/a/domain/webspace"), false);
-      oneOf (pageExporter).exportPage(page1, entryStore, out1, true);
-      oneOf (pageExporter).exportPage(page2, entryStore, out2, true);
-      oneOf (revisionsExporter).exportRevisions(page1, entryStore,
-          new File("path/Page-1"), sitesService, 
-          new URL("http://host/a/domain/webspace"));
-      oneOf (revisionsExporter).exportRevisions(page2, entryStore,
-          new File("path/Page-1/Page-2"), sitesService,
-          new URL("http://host/a/domain/webspace"));
+      oneOf (linkConverter).convertLinks(with(equal(page1)), 
+          with(same(entryStore)), with(equal(siteUrl)), with(equal(false)));
+      oneOf (linkConverter).convertLinks(with(equal(page2)), 
+          with(same(entryStore)), with(equal(siteUrl)), with(equal(false)));
+      oneOf (pageExporter).exportPage(with(equal(page1)), 
+          with(viewOf(entryStore)), with(equal(out1)), with(equal(true)));
+      oneOf (pageExporter).exportPage(with(equal(page2)), 
+          with(viewOf(entryStore)), with(equal(out2)), with(equal(true)));
+      oneOf (revisionsExporter).exportRevisions(with(equal(page1)), 
+          with(viewOf(entryStore)), with(equal(new File("path/Page-1"))), 
+          with(equal(sitesService)), with(equal(siteUrl)));
+      oneOf (revisionsExporter).exportRevisions(with(equal(page2)), 
+          with(viewOf(entryStore)), 
+          with(equal(new File("path/Page-1/Page-2"))), 
+          with(equal(sitesService)), with(equal(siteUrl)));
     }});
     
     export(true);
@@ -272,6 +301,121 @@ public class SiteExporterImplTest {
         new File("path/Page-1/Page-2/document.doc")));
   }
   
+  @Test
+  public void testAnnouncementLinksConvertedBeforeExport() 
+      throws IOException {
+    Injector injector = Guice.createInjector(new SiteExporterModule());
+    siteExporter = new SiteExporterImpl(
+        injector.getInstance(AbsoluteLinkConverter.class), 
+        injector.getInstance(AppendableFactory.class), attachmentDownloader, 
+        entryStoreFactory, feedProvider, 
+        injector.getInstance(PageExporter.class), revisionsExporter, 2, 1, 
+        4, 0, false);
+    final DiskEntryStore diskEntryStore = new DiskEntryStore(
+        File.createTempFile("entries", ".segment"), 
+        sitesService.getExtensionProfile());
+    BasePageEntry<?> page = new AnnouncementsPageEntry();
+    String id = "http://sites.google.com/feeds/content/site/";
+    page.setId(id + "news");
+    page.setTitle(new PlainTextConstruct("News"));
+    page.setPageName(new PageName("news"));
+    EntryUtils.setContent(page, "");
+    page.setUpdated(DateTime.now());
+    page.getAuthors().add(new Person("Author", null, "author@example.com"));
+    entries.add(page);
+    // More announcements than DiskEntryStore keeps in memory.
+    int count = 100;
+    for (int i = 0; i < count; i++) {
+      BasePageEntry<?> announcement = new AnnouncementEntry();
+      announcement.setId(id + "post" + i);
+      announcement.setTitle(new PlainTextConstruct("Post " + i));
+      announcement.setPageName(new PageName("post-" + i));
+      EntryUtils.setContent(announcement, "<a href=\"" + siteUrl 
+          + "/news/post-" + ((i + 1) % count) + "\">next</a>");
+      announcement.setUpdated(DateTime.now());
+      announcement.getAuthors().add(
+          new Person("Author", null, "author@example.com"));
+      EntryUtils.setParentId(announcement, id + "news");
+      entries.add(announcement);
+    }
+    File rootDirectory = File.createTempFile("export", "");
+    rootDirectory.delete();
+    
+    context.checking(new Expectations() {{
+      allowing (entryStoreFactory).newEntryStore(); 
+          will(returnValue(diskEntryStore));
+      allowing (feedProvider).getEntries(with(equal(feedUrl)), 
+          with(equal(sitesService)), with(any(ProgressListener.class)));
+          will(returnValue(entries));
+      allowing (progressListener).setStatus(with(any(String.class)));
+      allowing (progressListener).setProgress(with(any(Double.class)));
+    }});
+    
+    try {
+      siteExporter.exportSite("host", "domain", "webspace", false, 
+          sitesService, rootDirectory, progressListener);
+      assertLinksConverted(rootDirectory, count);
+    } finally {
+      delete(rootDirectory);
+    }
+  }
+  
+  private void assertLinksConverted(File rootDirectory, int count) 
+      throws IOException {
+    String news = read(new File(rootDirectory, "news/index.html"));
+    assertFalse(news.contains(siteUrl.toExternalForm()));
+    for (int i = 0; i < count; i++) {
+      assertTrue(news.contains("../../news/post-" + i + "/index.html"));
+      String post = read(new File(rootDirectory, 
+          "news/post-" + i + "/index.html"));
+      assertTrue(post.contains("../../news/post-" + ((i + 1) % count) 
+          + "/index.html"));
+    }
+  }
+  
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+  
+  private String read(File file) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+    try {
+      char[] buffer = new char[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        builder.append(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+    return builder.toString();
+  }
+  
+  /**
+   * Matches a {@link ReadOnlyEntryStore} view of the given entry store.
+   */
+  private static Matcher<EntryStore> viewOf(final EntryStore entryStore) {
+    return new BaseMatcher<EntryStore>() {
+      @Override
+      public boolean matches(Object item) {
+        return item instanceof ReadOnlyEntryStore
+            && ((ReadOnlyEntryStore) item).getEntryStore() == entryStore;
+      }
+
+      @Override
+      public void describeTo(Description description) {
+        description.appendText("a read-only view of ").appendValue(entryStore);
+      }
+    };
+  }
+  
   private void export(boolean exportRevisions) {
     siteExporter.exportSite("host", "domain", "webspace", exportRevisions, 
         sitesService, new File("path"), progressListener);
@@ -284,13 +428,15 @@ public class SiteExporterImplTest {
   private class FakeDownloader implements AttachmentDownloader {
     
     FakeDownloader() {
-      downloaded = Maps.newHashMap();
+      downloaded = Collections.synchronizedMap(
+          Maps.<AttachmentEntry, File>newHashMap());
     }
     
     @Override
-    public void download(AttachmentEntry attachment, File file, 
+    public long download(AttachmentEntry attachment, File file, 
         SitesService sitesService) {
       downloaded.put(attachment, file);
+      return 0;
     }
   }
 }
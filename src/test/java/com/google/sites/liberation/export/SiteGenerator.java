@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.sites.liberation.util.EntryType.ATTACHMENT;
+import static com.google.sites.liberation.util.EntryType.getType;
+import static com.google.sites.liberation.util.EntryType.isPage;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ILink;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.Person;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.sites.ListPageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.data.spreadsheet.Column;
+import com.google.gdata.data.spreadsheet.Data;
+import com.google.gdata.data.spreadsheet.Field;
+import com.google.gdata.util.ContentType;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.sites.liberation.util.EntryUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic sites of a given size and shape, for benchmarking the
+ * exporter and importer on the same data every time.
+ *
+ * <p>A site is a tree of pages, with no page having more than
+ * {@code fanOut} children, so that a fan out of 1 gives a single chain of
+ * pages as deep as the site is large. Every page has the given number of
+ * revisions, comments and attachments, and every {@code listPageInterval}th
+ * page is a list page with the given number of list items. Everything is
+ * derived from the seed and the position of each entry in the site, so the
+ * entries are generated as they are iterated over rather than all being kept
+ * in memory, and two generators with the same settings and seed generate the
+ * same site.</p>
+ *
+ * <p>A generated site can be added to an {@link EntryStore}, or written to a
+ * directory in the layout produced by the exporter and read by the importer,
+ * using the exporter's own renderers.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public final class SiteGenerator {
+
+  private static final long START_TIME = 1230768000000L;
+  private static final int MAX_REVISIONS = 1000;
+  private static final String[] COLUMNS = {"A", "B", "C"};
+
+  private final String webspace;
+  private final long seed;
+  private int pages;
+  private int fanOut;
+  private int revisionsPerPage;
+  private int commentsPerPage;
+  private int attachmentsPerPage;
+  private int attachmentSize;
+  private int listPageInterval;
+  private int listItemsPerListPage;
+  private int paragraphsPerPage;
+
+  /**
+   * Creates a new SiteGenerator for a site with the given webspace, which by
+   * default has 100 web pages, with up to 10 children each, one revision and
+   * one paragraph each, and nothing else.
+   */
+  public SiteGenerator(String webspace, long seed) {
+    this.webspace = checkNotNull(webspace);
+    this.seed = seed;
+    pages = 100;
+    fanOut = 10;
+    revisionsPerPage = 1;
+    attachmentSize = 1024;
+    paragraphsPerPage = 1;
+  }
+
+  /**
+   * Sets the number of pages in the site, and the most children any of them
+   * has.
+   */
+  public void setPages(int pages, int fanOut) {
+    checkArgument(pages >= 0 && fanOut > 0);
+    this.pages = pages;
+    this.fanOut = fanOut;
+  }
+
+  /**
+   * Sets the number of revisions of each page, including the current one.
+   */
+  public void setRevisionsPerPage(int revisionsPerPage) {
+    checkArgument(revisionsPerPage > 0 && revisionsPerPage < MAX_REVISIONS);
+    this.revisionsPerPage = revisionsPerPage;
+  }
+
+  /**
+   * Sets the number of comments on each page.
+   */
+  public void setCommentsPerPage(int commentsPerPage) {
+    checkArgument(commentsPerPage >= 0);
+    this.commentsPerPage = commentsPerPage;
+  }
+
+  /**
+   * Sets the number of attachments on each page, and their size in bytes.
+   */
+  public void setAttachmentsPerPage(int attachmentsPerPage,
+      int attachmentSize) {
+    checkArgument(attachmentsPerPage >= 0 && attachmentSize >= 0);
+    this.attachmentsPerPage = attachmentsPerPage;
+    this.attachmentSize = attachmentSize;
+  }
+
+  /**
+   * Makes every {@code listPageInterval}th page a list page with the given
+   * number of list items, or none if {@code listPageInterval} is 0.
+   */
+  public void setListPages(int listPageInterval, int listItemsPerListPage) {
+    checkArgument(listPageInterval >= 0 && listItemsPerListPage >= 0);
+    this.listPageInterval = listPageInterval;
+    this.listItemsPerListPage = listItemsPerListPage;
+  }
+
+  /**
+   * Sets the number of paragraphs of text on each page.
+   */
+  public void setParagraphsPerPage(int paragraphsPerPage) {
+    checkArgument(paragraphsPerPage >= 0);
+    this.paragraphsPerPage = paragraphsPerPage;
+  }
+
+  /**
+   * Returns the entries in the site, each page followed by its comments,
+   * attachments and list items, so that every entry comes after its parent.
+   * Each iterator generates new entries as it goes.
+   */
+  public Iterable<BaseContentEntry<?>> getEntries() {
+    return new Iterable<BaseContentEntry<?>>() {
+      @Override
+      public Iterator<BaseContentEntry<?>> iterator() {
+        return new EntryIterator();
+      }
+    };
+  }
+
+  /**
+   * Returns every revision of the given page generated by this generator,
+   * oldest first, ending with the page's current revision.
+   */
+  public List<BasePageEntry<?>> getRevisions(BasePageEntry<?> page) {
+    int index = getIndex(page.getId());
+    List<BasePageEntry<?>> revisions = Lists.newArrayList();
+    for (int revision = 1; revision <= revisionsPerPage; revision++) {
+      revisions.add(getPage(index, revision));
+    }
+    return revisions;
+  }
+
+  /**
+   * Returns the contents of the given attachment generated by this generator.
+   */
+  public byte[] getContents(AttachmentEntry attachment) {
+    byte[] contents = new byte[attachmentSize];
+    new Random(seed * 31 + attachment.getId().hashCode()).nextBytes(contents);
+    return contents;
+  }
+
+  /**
+   * Adds every entry in the site to the given entry store.
+   */
+  void addTo(EntryStore entryStore) {
+    for (BaseContentEntry<?> entry : getEntries()) {
+      entryStore.addEntry(entry);
+    }
+  }
+
+  /**
+   * Writes the site to the given directory, as the exporter would, with each
+   * page's history and revisions if {@code revisions} is {@code true}.
+   */
+  public void writeSite(File rootDirectory, boolean revisions)
+      throws IOException {
+    EntryStore entryStore = new InMemoryEntryStore();
+    addTo(entryStore);
+    writeSite(rootDirectory, revisions, entryStore);
+  }
+
+  /**
+   * Writes the site, which must already have been added to the given entry
+   * store, to the given directory.
+   */
+  void writeSite(File rootDirectory, boolean revisions, EntryStore entryStore)
+      throws IOException {
+    Injector injector = Guice.createInjector(new SiteExporterModule());
+    AppendableFactory appendableFactory =
+        injector.getInstance(AppendableFactory.class);
+    PageExporter pageExporter = injector.getInstance(PageExporter.class);
+    RevisionExporter revisionExporter =
+        injector.getInstance(RevisionExporter.class);
+    HistoryExporter historyExporter =
+        injector.getInstance(HistoryExporter.class);
+    for (BaseContentEntry<?> entry : getEntries()) {
+      String parentId = isPage(entry) ? entry.getId()
+          : EntryUtils.getParentId(entry);
+      File directory = new File(rootDirectory, entryStore.getPath(parentId));
+      if (isPage(entry)) {
+        BasePageEntry<?> page = (BasePageEntry<?>) entry;
+        directory.mkdirs();
+        Appendable out = appendableFactory.getAppendable(
+            new File(directory, "index.html"));
+        try {
+          pageExporter.exportPage(page, entryStore, out, revisions);
+        } finally {
+          close(out);
+        }
+        if (revisions) {
+          writeRevisions(page, directory, appendableFactory,
+              revisionExporter, historyExporter);
+        }
+      } else if (getType(entry) == ATTACHMENT) {
+        // TODO(gk5885): remove extra cast for
+        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6302214
+        AttachmentEntry attachment = (AttachmentEntry) (BaseContentEntry) entry;
+        OutputStream out = new FileOutputStream(new File(directory,
+            attachment.getTitle().getPlainText()));
+        try {
+          out.write(getContents(attachment));
+        } finally {
+          out.close();
+        }
+      }
+    }
+  }
+
+  private void writeRevisions(BasePageEntry<?> page, File directory,
+      AppendableFactory appendableFactory, RevisionExporter revisionExporter,
+      HistoryExporter historyExporter) throws IOException {
+    File revisionsDirectory = new File(directory, "_revisions");
+    revisionsDirectory.mkdir();
+    List<BaseContentEntry<?>> history = Lists.newLinkedList();
+    for (BasePageEntry<?> revision : getRevisions(page)) {
+      int number = revision.getRevision().getValue();
+      if (number < revisionsPerPage) {
+        Appendable out = appendableFactory.getAppendable(
+            new File(revisionsDirectory, number + ".html"));
+        try {
+          revisionExporter.exportRevision(revision, out);
+        } finally {
+          close(out);
+        }
+      }
+      history.add(0, revision);
+    }
+    Appendable out = appendableFactory.getAppendable(
+        new File(directory, "history.html"));
+    try {
+      historyExporter.exportHistory(history, out);
+    } finally {
+      close(out);
+    }
+  }
+
+  /**
+   * Iterates through the entries in the site, generating each page's
+   * children once the page itself has been returned.
+   */
+  private class EntryIterator extends AbstractIterator<BaseContentEntry<?>> {
+
+    final LinkedList<BaseContentEntry<?>> children;
+    int index;
+
+    EntryIterator() {
+      children = Lists.newLinkedList();
+    }
+
+    @Override
+    protected BaseContentEntry<?> computeNext() {
+      if (!children.isEmpty()) {
+        return children.removeFirst();
+      }
+      if (index >= pages) {
+        return endOfData();
+      }
+      BasePageEntry<?> page = getPage(index, revisionsPerPage);
+      addChildren(page, index);
+      index++;
+      return page;
+    }
+
+    /**
+     * Generates the comments, attachments and list items of the given page.
+     */
+    private void addChildren(BasePageEntry<?> page, int index) {
+      for (int i = 0; i < commentsPerPage; i++) {
+        CommentEntry comment = new CommentEntry();
+        comment.setId(getChildId("c", index, i));
+        EntryUtils.setContent(comment, "<div>Comment " + i + " on page "
+            + index + "</div>");
+        setCommon(comment, index, 1);
+        EntryUtils.setParent(comment, page);
+        children.add(comment);
+      }
+      for (int i = 0; i < attachmentsPerPage; i++) {
+        AttachmentEntry attachment = new AttachmentEntry();
+        attachment.setId(getChildId("a", index, i));
+        attachment.setTitle(new PlainTextConstruct("file-" + index + "-" + i));
+        OutOfLineContent content = new OutOfLineContent();
+        content.setUri("http://sites.google.com/feeds/media/" + webspace
+            + "/" + index + "-" + i);
+        content.setMimeType(new ContentType("application/octet-stream"));
+        attachment.setContent(content);
+        setCommon(attachment, index, 1);
+        EntryUtils.setParent(attachment, page);
+        children.add(attachment);
+      }
+      if (page instanceof ListPageEntry) {
+        for (int i = 0; i < listItemsPerListPage; i++) {
+          ListItemEntry listItem = new ListItemEntry();
+          listItem.setId(getChildId("l", index, i));
+          for (String column : COLUMNS) {
+            Field field = new Field();
+            field.setIndex(column);
+            field.setValue("Row " + i + " column " + column);
+            listItem.addField(field);
+          }
+          setCommon(listItem, index, 1);
+          EntryUtils.setParent(listItem, page);
+          children.add(listItem);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the given revision of the page at the given index.
+   */
+  private BasePageEntry<?> getPage(int index, int revision) {
+    BasePageEntry<?> page;
+    if (listPageInterval > 0 && index % listPageInterval == 0) {
+      ListPageEntry listPage = new ListPageEntry();
+      Data data = new Data();
+      data.setStartIndex(2);
+      for (String column : COLUMNS) {
+        Column col = new Column();
+        col.setIndex(column);
+        col.setName("Column " + column);
+        data.addColumn(col);
+      }
+      listPage.setData(data);
+      page = listPage;
+    } else {
+      page = new WebPageEntry();
+    }
+    page.setId(getPageId(index));
+    page.setTitle(new PlainTextConstruct("Page " + index));
+    page.setPageName(new PageName("page-" + index));
+    page.addLink(ILink.Rel.ALTERNATE, "text", getSiteUrl(page.getId()));
+    StringBuilder content = new StringBuilder("<div>");
+    Random random = new Random(seed * 31 + index * MAX_REVISIONS + revision);
+    for (int i = 0; i < paragraphsPerPage; i++) {
+      content.append("<p>Revision ").append(revision).append(" of page ")
+          .append(index).append(", paragraph ").append(i).append(':');
+      for (int j = 0; j < 40; j++) {
+        content.append(" word").append(random.nextInt(1000));
+      }
+      content.append("</p>");
+    }
+    content.append("</div>");
+    EntryUtils.setContent(page, content.toString());
+    setCommon(page, index, revision);
+    if (index >= fanOut) {
+      EntryUtils.setParentId(page, getPageId(index / fanOut - 1));
+    }
+    return page;
+  }
+
+  private void setCommon(BaseContentEntry<?> entry, int index, int revision) {
+    entry.setRevision(new Revision(revision));
+    entry.setUpdated(new DateTime(START_TIME
+        + (index * (long) MAX_REVISIONS + revision) * 1000, 0));
+    int user = new Random(seed + index).nextInt(10);
+    entry.getAuthors().add(new Person("User " + user, null,
+        "user" + user + "@example.com"));
+  }
+
+  private String getPageId(int index) {
+    return "http://sites.google.com/feeds/content/site/" + webspace + "/p"
+        + index;
+  }
+
+  private String getChildId(String kind, int index, int child) {
+    return "http://sites.google.com/feeds/content/site/" + webspace + "/"
+        + kind + index + "-" + child;
+  }
+
+  private String getSiteUrl(String pageId) {
+    return "http://sites.google.com/site/" + webspace + "/"
+        + pageId.substring(pageId.lastIndexOf('/') + 1);
+  }
+
+  private int getIndex(String pageId) {
+    return Integer.parseInt(pageId.substring(pageId.lastIndexOf("/p") + 2));
+  }
+
+  private static void close(Appendable out) throws IOException {
+    if (out instanceof Closeable) {
+      ((Closeable) out).close();
+    }
+  }
+}
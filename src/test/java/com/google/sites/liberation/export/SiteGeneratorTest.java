@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.export;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.sites.ListPageEntry;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class SiteGeneratorTest {
+
+  private SiteGenerator generator;
+
+  @Before
+  public void before() {
+    generator = getNewGenerator(0);
+  }
+
+  @Test
+  public void testEntries() {
+    int pages = 0, listPages = 0, comments = 0, attachments = 0, items = 0;
+    List<String> ids = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : generator.getEntries()) {
+      if (entry instanceof BasePageEntry<?>) {
+        pages++;
+        if (entry instanceof ListPageEntry) {
+          listPages++;
+        }
+        assertEquals(3, entry.getRevision().getValue().intValue());
+      } else {
+        if (entry instanceof CommentEntry) {
+          comments++;
+        } else if (entry instanceof AttachmentEntry) {
+          attachments++;
+        } else if (entry instanceof ListItemEntry) {
+          items++;
+        }
+      }
+      String parentId = EntryUtils.getParentId(entry);
+      assertTrue(parentId == null || ids.contains(parentId));
+      assertFalse(ids.contains(entry.getId()));
+      ids.add(entry.getId());
+    }
+    assertEquals(10, pages);
+    assertEquals(2, listPages);
+    assertEquals(20, comments);
+    assertEquals(10, attachments);
+    assertEquals(8, items);
+  }
+
+  @Test
+  public void testDeterministic() {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList(
+        generator.getEntries());
+    SiteGenerator other = getNewGenerator(0);
+    List<BaseContentEntry<?>> others = Lists.newArrayList(
+        other.getEntries());
+    assertEquals(entries.size(), others.size());
+    for (int i = 0; i < entries.size(); i++) {
+      assertEquals(entries.get(i).getId(), others.get(i).getId());
+      if (entries.get(i) instanceof BasePageEntry<?>
+          || entries.get(i) instanceof CommentEntry) {
+        assertEquals(EntryUtils.getXhtmlContent(entries.get(i)),
+            EntryUtils.getXhtmlContent(others.get(i)));
+      } else if (entries.get(i) instanceof AttachmentEntry) {
+        assertTrue(Arrays.equals(
+            generator.getContents((AttachmentEntry) entries.get(i)),
+            other.getContents((AttachmentEntry) others.get(i))));
+      }
+    }
+    other = getNewGenerator(1);
+    assertFalse(EntryUtils.getXhtmlContent(entries.get(0)).equals(
+        EntryUtils.getXhtmlContent(other.getEntries().iterator().next())));
+  }
+
+  @Test
+  public void testRevisions() {
+    EntryStore entryStore = new InMemoryEntryStore();
+    generator.addTo(entryStore);
+    WebPageEntry page = (WebPageEntry) entryStore.getEntry(
+        "http://sites.google.com/feeds/content/site/webspace/p4");
+    List<BasePageEntry<?>> revisions = generator.getRevisions(page);
+    assertEquals(3, revisions.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(page.getId(), revisions.get(i).getId());
+      assertEquals(i + 1, revisions.get(i).getRevision().getValue()
+          .intValue());
+    }
+    assertTrue(revisions.get(0).getUpdated().compareTo(
+        revisions.get(1).getUpdated()) < 0);
+    assertEquals(EntryUtils.getXhtmlContent(page),
+        EntryUtils.getXhtmlContent(revisions.get(2)));
+  }
+
+  @Test
+  public void testAddTo() {
+    EntryStore entryStore = new InMemoryEntryStore();
+    generator.addTo(entryStore);
+    String id = "http://sites.google.com/feeds/content/site/webspace/p";
+    assertEquals("page-0", trim(entryStore.getPath(id + 0)));
+    assertEquals("page-0/page-4", trim(entryStore.getPath(id + 4)));
+    assertEquals("page-2/page-9", trim(entryStore.getPath(id + 9)));
+    assertEquals(3, entryStore.getChildren(id + 9).size());
+  }
+
+  @Test
+  public void testWriteSite() throws IOException {
+    File directory = File.createTempFile("site", "");
+    directory.delete();
+    try {
+      generator.writeSite(directory, true);
+      File page = new File(directory, "page-0/page-4");
+      assertTrue(new File(page, "index.html").isFile());
+      assertEquals(100, new File(page, "file-4-0").length());
+      assertTrue(new File(page, "history.html").isFile());
+      assertTrue(new File(page, "_revisions/1.html").isFile());
+      assertTrue(new File(page, "_revisions/2.html").isFile());
+      assertFalse(new File(page, "_revisions/3.html").exists());
+    } finally {
+      delete(directory);
+    }
+  }
+
+  private SiteGenerator getNewGenerator(long seed) {
+    SiteGenerator generator = new SiteGenerator("webspace", seed);
+    generator.setPages(10, 3);
+    generator.setRevisionsPerPage(3);
+    generator.setCommentsPerPage(2);
+    generator.setAttachmentsPerPage(1, 100);
+    generator.setListPages(5, 4);
+    return generator;
+  }
+
+  private String trim(String path) {
+    return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+  }
+
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.sites.ListPageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.spreadsheet.Column;
+import com.google.gdata.data.spreadsheet.Data;
+import com.google.gdata.data.spreadsheet.Field;
+import com.google.sites.liberation.util.EntryProviderImpl;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.FakeSitesServer;
+import com.google.sites.liberation.util.ProgressListener;
+import com.google.sites.liberation.util.StdOutProgressListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class BatchUploaderImplTest {
+
+  private FakeSitesServer server;
+  private SitesService sitesService;
+  private BatchUploader batchUploader;
+  private ProgressListener progressListener;
+  private List<BasePageEntry<?>> ancestors;
+  private URL feedUrl;
+
+  @Before
+  public void before() throws IOException {
+    server = new FakeSitesServer("webspace", 0);
+    server.start();
+    sitesService = new SitesService("test");
+    EntryUploader entryUploader = new EntryUploaderImpl(
+        new EntryInserterImpl(), new EntryProviderImpl(),
+        new EntryUpdaterImpl());
+    batchUploader = new BatchUploaderImpl(entryUploader, 
+        new RemoteIndex(new EntryProviderImpl()));
+    progressListener = new StdOutProgressListener();
+    ListPageEntry page = new ListPageEntry();
+    page.setTitle(new PlainTextConstruct("List"));
+    page.setPageName(new PageName("list"));
+    Data data = new Data();
+    data.setStartIndex(2);
+    Column column = new Column();
+    column.setIndex("A");
+    column.setName("Column A");
+    data.addColumn(column);
+    page.setData(data);
+    ancestors = Lists.newArrayList();
+    ancestors.add((BasePageEntry<?>) server.addEntry(page, null));
+    feedUrl = server.getFeedUrl();
+  }
+
+  @After
+  public void after() {
+    server.stop();
+  }
+
+  @Test
+  public void testInsert() {
+    List<BaseContentEntry<?>> entries = getNewEntries(250, 3);
+    List<BaseContentEntry<?>> returned = batchUploader.uploadEntries(
+        entries, ancestors, feedUrl, sitesService, progressListener);
+    assertEquals(253, returned.size());
+    assertEquals(254, server.getEntries().size());
+    assertTrue(returned.get(0) instanceof ListItemEntry);
+    assertTrue(returned.get(0).getId().startsWith(feedUrl + "/"));
+    int batches = (253 + BatchUploaderImpl.BATCH_SIZE - 1)
+        / BatchUploaderImpl.BATCH_SIZE;
+    assertEquals(1 + batches, server.getRequestCount());
+  }
+
+  @Test
+  public void testSkipExisting() {
+    batchUploader.uploadEntries(getNewEntries(30, 2), ancestors, feedUrl,
+        sitesService, progressListener);
+    List<BaseContentEntry<?>> entries = getNewEntries(40, 2);
+    entries.addAll(getNewEntries(5, 0));
+    List<BaseContentEntry<?>> returned = batchUploader.uploadEntries(
+        entries, ancestors, feedUrl, sitesService, progressListener);
+    assertEquals(47, returned.size());
+    assertEquals(43, server.getEntries().size());
+  }
+
+  @Test
+  public void testUpdate() {
+    List<BaseContentEntry<?>> inserted = batchUploader.uploadEntries(
+        getNewEntries(2, 0), ancestors, feedUrl, sitesService,
+        progressListener);
+    List<BaseContentEntry<?>> entries = getNewEntries(3, 0);
+    entries.get(0).setId(inserted.get(0).getId());
+    entries.get(1).setId(feedUrl + "/missing");
+    setValue(entries.get(1), "changed");
+    List<BaseContentEntry<?>> returned = batchUploader.uploadEntries(
+        entries, ancestors, feedUrl, sitesService, progressListener);
+    assertEquals(3, returned.size());
+    assertEquals(inserted.get(0).getId(), returned.get(0).getId());
+    assertEquals(2, returned.get(0).getRevision().getValue().intValue());
+    assertFalse(returned.get(1).getId().equals(feedUrl + "/missing"));
+    assertEquals(5, server.getEntries().size());
+  }
+
+  @Test
+  public void testFailure() {
+    List<BaseContentEntry<?>> entries = getNewEntries(3, 0);
+    entries.get(1).getLinks().clear();
+    EntryUtils.setParentId(entries.get(1), feedUrl + "/missing");
+    List<BaseContentEntry<?>> returned = batchUploader.uploadEntries(
+        entries, ancestors, feedUrl, sitesService, progressListener);
+    assertEquals(2, returned.size());
+    assertTrue(progressListener.getStatus().startsWith(
+        "Unable to upload listitem on page list: 400"));
+  }
+
+  private List<BaseContentEntry<?>> getNewEntries(int listItems,
+      int comments) {
+    List<BaseContentEntry<?>> entries = Lists.newArrayList();
+    for (int i = 0; i < listItems; i++) {
+      ListItemEntry listItem = new ListItemEntry();
+      Field field = new Field();
+      field.setIndex("A");
+      field.setValue("Row " + i);
+      listItem.addField(field);
+      EntryUtils.setParent(listItem, ancestors.get(0));
+      entries.add(listItem);
+    }
+    for (int i = 0; i < comments; i++) {
+      CommentEntry comment = new CommentEntry();
+      EntryUtils.setContent(comment, "Comment " + i);
+      EntryUtils.setParent(comment, ancestors.get(0));
+      entries.add(comment);
+    }
+    return entries;
+  }
+
+  private void setValue(BaseContentEntry<?> listItem, String value) {
+    ((ListItemEntry) listItem).getFields().get(0).setValue(value);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class ImportJournalTest {
+
+  private File directory;
+
+  @Before
+  public void before() throws IOException {
+    directory = File.createTempFile("page", "");
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @After
+  public void after() {
+    delete(directory);
+  }
+
+  @Test
+  public void testReadAndWrite() throws IOException {
+    File file = new File(directory, ImportJournal.FILE_NAME);
+    new ImportJournal("http://feed", null, "http://feed/1", 3, "abc", false)
+        .write(file);
+    ImportJournal journal = ImportJournal.read(file);
+    assertEquals("http://feed/1", journal.getId());
+    assertEquals(3, journal.getRevision());
+    assertTrue(journal.matches("http://feed", null, "abc", false));
+    assertFalse(journal.matches("http://other", null, "abc", false));
+    assertFalse(journal.matches("http://feed", "http://feed/2", "abc",
+        false));
+    assertFalse(journal.matches("http://feed", null, "abd", false));
+    assertFalse(journal.matches("http://feed", null, "abc", true));
+    new ImportJournal("http://feed", "http://feed/2", "http://feed/1", 3,
+        "abc", true).write(file);
+    journal = ImportJournal.read(file);
+    assertTrue(journal.matches("http://feed", "http://feed/2", "abc", true));
+    assertTrue(journal.matches("http://feed", "http://feed/2", "abc",
+        false));
+  }
+
+  @Test
+  public void testReadWithoutRevisions() throws IOException {
+    File file = new File(directory, ImportJournal.FILE_NAME);
+    write(file, "feedUrl=http\\://feed\nid=http\\://feed/1\nrevision=3\n"
+        + "sha1=abc\n");
+    ImportJournal journal = ImportJournal.read(file);
+    assertTrue(journal.matches("http://feed", null, "abc", false));
+    assertFalse(journal.matches("http://feed", null, "abc", true));
+  }
+
+  @Test(expected=IOException.class)
+  public void testReadInvalid() throws IOException {
+    File file = new File(directory, ImportJournal.FILE_NAME);
+    write(file, "id=http://feed/1\n");
+    ImportJournal.read(file);
+  }
+
+  @Test
+  public void testHash() throws IOException {
+    write(new File(directory, "index.html"), "<html></html>");
+    write(new File(directory, "file"), "contents");
+    String hash = ImportJournal.hash(directory);
+    new ImportJournal("http://feed", null, "http://feed/1", 1, hash, false)
+        .write(new File(directory, ImportJournal.FILE_NAME));
+    File subDirectory = new File(directory, "subpage");
+    subDirectory.mkdir();
+    write(new File(subDirectory, "index.html"), "<html>sub</html>");
+    assertEquals(hash, ImportJournal.hash(directory));
+    write(new File(directory, "file"), "contents2");
+    assertFalse(hash.equals(ImportJournal.hash(directory)));
+    write(new File(directory, "file"), "contents");
+    assertEquals(hash, ImportJournal.hash(directory));
+    new File(directory, "file").renameTo(new File(directory, "file2"));
+    assertFalse(hash.equals(ImportJournal.hash(directory)));
+  }
+
+  @Test
+  public void testHashRevisions() throws IOException {
+    write(new File(directory, "index.html"), "<html></html>");
+    String hash = ImportJournal.hash(directory);
+    File revisionsDirectory = new File(directory, "_revisions");
+    revisionsDirectory.mkdir();
+    assertEquals(hash, ImportJournal.hash(directory));
+    write(new File(revisionsDirectory, "1.html"), "<html>1</html>");
+    String revisionsHash = ImportJournal.hash(directory);
+    assertFalse(hash.equals(revisionsHash));
+    write(new File(revisionsDirectory, "1.html"), "<html>one</html>");
+    assertFalse(revisionsHash.equals(ImportJournal.hash(directory)));
+  }
+
+  private void write(File file, String contents) throws IOException {
+    Writer out = new FileWriter(file);
+    try {
+      out.write(contents);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.sites.liberation.util.EntryUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class RelativeLinkConverterImplTest {
+
+  private RelativeLinkConverter linkConverter;
+  private List<BasePageEntry<?>> ancestors;
+  private BasePageEntry<?> entry;
+  private URL siteUrl;
+
+  @Before
+  public void before() throws MalformedURLException {
+    linkConverter = new RelativeLinkConverterImpl();
+    ancestors = Lists.newArrayList();
+    ancestors.add(getNewPage("grandparent"));
+    ancestors.add(getNewPage("parent"));
+    entry = getNewPage("entry");
+    siteUrl = new URL("http://sites.google.com/site/test");
+  }
+
+  @Test
+  public void testNoLinks() {
+    assertEquals("<a href=\"http://other/index.html\">a</a>",
+        convert("<a href=\"http://other/index.html\">a</a>", false));
+  }
+
+  @Test
+  public void testBothQuoteStyles() {
+    assertEquals(
+        "<a href=\"http://sites.google.com/site/test/grandparent/parent/sub\">"
+        + "a</a><a href='http://sites.google.com/site/test/other'>b</a>"
+        + "<a href=\"http://sites.google.com/site/test/grandparent\">c</a>",
+        convert("<a href=\"../sub/index.html\">a</a>"
+            + "<a href='../../../other/index.html'>b</a>"
+            + "<a href=\"../../index.html\">c</a>", false));
+  }
+
+  @Test
+  public void testRevision() {
+    assertEquals(
+        "<a href='http://sites.google.com/site/test/grandparent/sibling'>a</a>",
+        convert("<a href='../../../sibling/index.html'>a</a>", true));
+  }
+
+  @Test
+  public void testNestedQuotes() {
+    assertEquals("<a href='http://sites.google.com/site/test/grandparent/"
+        + "parent/a href=\"http://sites.google.com/site/test/grandparent/"
+        + "parent/b\"'>",
+        convert("<a href='../a href=\"../b/index.html\"'>", false));
+  }
+
+  private String convert(String content, boolean isRevision) {
+    EntryUtils.setContent(entry, content);
+    linkConverter.convertLinks(entry, ancestors, siteUrl, isRevision);
+    return EntryUtils.getXhtmlContent(entry);
+  }
+
+  private BasePageEntry<?> getNewPage(String name) {
+    WebPageEntry page = new WebPageEntry();
+    page.setPageName(new PageName(name));
+    return page;
+  }
+}
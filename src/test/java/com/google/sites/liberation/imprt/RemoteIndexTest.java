@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.TextContent;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ListItemEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.data.spreadsheet.Field;
+import com.google.sites.liberation.util.EntryProviderImpl;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.FakeSitesServer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class RemoteIndexTest {
+
+  private RemoteIndex remoteIndex;
+  private SitesService sitesService;
+  private URL feedUrl;
+  private List<BaseContentEntry<?>> entries;
+
+  @Before
+  public void before() throws Exception {
+    remoteIndex = new RemoteIndex(new EntryProviderImpl());
+    sitesService = new SitesService("test");
+    feedUrl = new URL("http://sites.google.com/feeds/content/site/webspace");
+    entries = Lists.newArrayList();
+    BasePageEntry<?> parent = getNewPage("1", "parent", null);
+    BasePageEntry<?> child = getNewPage("2", "child", parent);
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setId(feedUrl + "/3");
+    attachment.setTitle(new PlainTextConstruct("my file"));
+    EntryUtils.setParent(attachment, child);
+    CommentEntry comment = new CommentEntry();
+    comment.setId(feedUrl + "/4");
+    comment.setContent(new TextContent(new PlainTextConstruct("a < b")));
+    EntryUtils.setParentId(comment, child.getId());
+    entries.add(comment);
+    entries.add(attachment);
+    entries.add(child);
+    entries.add(parent);
+  }
+
+  @Test
+  public void testLoad() {
+    assertFalse(remoteIndex.isLoaded(feedUrl));
+    remoteIndex.load(feedUrl, entries);
+    assertTrue(remoteIndex.isLoaded(feedUrl));
+    assertSame(entries.get(2), remoteIndex.getEntryById(feedUrl + "/2"));
+    assertSame(entries.get(3), remoteIndex.getEntryByPath("/parent"));
+    assertSame(entries.get(2), remoteIndex.getEntryByPath("/parent/child"));
+    assertSame(entries.get(1), 
+        remoteIndex.getEntryByPath("/parent/child/my%20file"));
+    assertNull(remoteIndex.getEntryByPath("/child"));
+    remoteIndex.clear();
+    assertFalse(remoteIndex.isLoaded(feedUrl));
+    assertNull(remoteIndex.getEntryById(feedUrl + "/2"));
+  }
+
+  @Test
+  public void testContainsChild() {
+    remoteIndex.load(feedUrl, entries);
+    BasePageEntry<?> child = (BasePageEntry<?>) entries.get(2);
+    assertTrue(remoteIndex.containsChild(
+        getNewComment("<div>a &lt; b</div>", child), feedUrl, sitesService));
+    assertFalse(remoteIndex.containsChild(getNewComment("a", child), feedUrl,
+        sitesService));
+    assertFalse(remoteIndex.containsChild(getNewComment("a &lt; b", 
+        (BasePageEntry<?>) entries.get(3)), feedUrl, sitesService));
+  }
+
+  @Test
+  public void testAddEntry() {
+    remoteIndex.load(feedUrl, entries);
+    BasePageEntry<?> page = getNewPage("5", "other", null);
+    remoteIndex.addEntry(page, "/other");
+    assertSame(page, remoteIndex.getEntryByPath("/other"));
+    assertSame(page, remoteIndex.getEntryById(feedUrl + "/5"));
+    CommentEntry comment = new CommentEntry();
+    comment.setId(feedUrl + "/6");
+    comment.setContent(new TextContent(new PlainTextConstruct("new")));
+    EntryUtils.setParentId(comment, page.getId());
+    remoteIndex.addEntry(comment, null);
+    assertTrue(remoteIndex.containsChild(getNewComment("new", page), feedUrl,
+        sitesService));
+  }
+
+  @Test
+  public void testContentHash() {
+    CommentEntry comment = new CommentEntry();
+    comment.setContent(new TextContent(new PlainTextConstruct("a <  b")));
+    assertEquals(RemoteIndex.getContentHash(comment), 
+        RemoteIndex.getContentHash(getNewComment("<div>a &lt;\n b</div>", 
+        null)));
+    assertFalse(RemoteIndex.getContentHash(comment).equals(
+        RemoteIndex.getContentHash(getNewComment("a &lt; c", null))));
+    assertEquals(RemoteIndex.getContentHash(getNewListItem("A", "1", "B", "2")),
+        RemoteIndex.getContentHash(getNewListItem("B", "2", "A", "1")));
+    assertFalse(RemoteIndex.getContentHash(getNewListItem("A", "1", "B", "2"))
+        .equals(RemoteIndex.getContentHash(
+        getNewListItem("A", "12", "B", ""))));
+  }
+
+  @Test
+  public void testFetchChildren() throws IOException {
+    FakeSitesServer server = new FakeSitesServer("webspace", 0);
+    server.start();
+    try {
+      URL serverFeedUrl = server.getFeedUrl();
+      BasePageEntry<?> page = (BasePageEntry<?>) server.addEntry(
+          getNewPage("1", "page", null), null);
+      for (int i = 0; i < 30; i++) {
+        server.addEntry(getNewComment("Comment " + i, page), null);
+      }
+      assertTrue(remoteIndex.containsChild(getNewComment("Comment 29", page),
+          serverFeedUrl, sitesService));
+      int requests = server.getRequestCount();
+      assertFalse(remoteIndex.containsChild(getNewComment("Comment 30", page),
+          serverFeedUrl, sitesService));
+      CommentEntry comment = getNewComment("Comment 30", page);
+      comment.setId(serverFeedUrl + "/new");
+      remoteIndex.addEntry(comment, null);
+      assertTrue(remoteIndex.containsChild(getNewComment("Comment 30", page),
+          serverFeedUrl, sitesService));
+      assertEquals(requests, server.getRequestCount());
+      remoteIndex.clear();
+      assertTrue(remoteIndex.containsChild(getNewComment("Comment 0", page),
+          serverFeedUrl, sitesService));
+      assertTrue(server.getRequestCount() > requests);
+    } finally {
+      server.stop();
+    }
+  }
+
+  private BasePageEntry<?> getNewPage(String id, String name,
+      BasePageEntry<?> parent) {
+    WebPageEntry page = new WebPageEntry();
+    page.setId(feedUrl + "/" + id);
+    page.setTitle(new PlainTextConstruct(name));
+    page.setPageName(new PageName(name));
+    if (parent != null) {
+      EntryUtils.setParent(page, parent);
+    }
+    return page;
+  }
+
+  private CommentEntry getNewComment(String content, BasePageEntry<?> parent) {
+    CommentEntry comment = new CommentEntry();
+    EntryUtils.setContent(comment, content);
+    if (parent != null) {
+      EntryUtils.setParentId(comment, parent.getId());
+    }
+    return comment;
+  }
+
+  private ListItemEntry getNewListItem(String... values) {
+    ListItemEntry listItem = new ListItemEntry();
+    for (int i = 0; i < values.length; i += 2) {
+      Field field = new Field();
+      field.setIndex(values[i]);
+      field.setValue(values[i + 1]);
+      listItem.addField(field);
+    }
+    return listItem;
+  }
+}
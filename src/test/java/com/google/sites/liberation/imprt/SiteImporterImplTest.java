@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.imprt;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gdata.client.Service.GDataRequestFactory;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.inject.Guice;
+import com.google.sites.liberation.export.SiteGenerator;
+import com.google.sites.liberation.util.EntryUtils;
+import com.google.sites.liberation.util.FakeSitesServer;
+import com.google.sites.liberation.util.StdOutProgressListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class SiteImporterImplTest {
+
+  private FakeSitesServer server;
+  private SitesService sitesService;
+  private File directory;
+
+  @Before
+  public void before() throws IOException {
+    server = new FakeSitesServer("webspace", 0);
+    server.start();
+    sitesService = new SitesService("test");
+    directory = File.createTempFile("site", "");
+    directory.delete();
+  }
+
+  @After
+  public void after() {
+    server.stop();
+    delete(directory);
+  }
+
+  @Test
+  public void testImportSite() throws IOException {
+    SiteGenerator generator = new SiteGenerator("webspace", 0);
+    generator.setPages(30, 3);
+    generator.setCommentsPerPage(1);
+    generator.setAttachmentsPerPage(1, 100);
+    generator.setListPages(5, 2);
+    generator.writeSite(directory, false);
+    importSite("4", "0", false, false);
+    List<BaseContentEntry<?>> entries = server.getEntries();
+    assertEquals(Lists.newArrayList(generator.getEntries()).size(),
+        entries.size());
+    Map<String, BaseContentEntry<?>> entriesById = Maps.newHashMap();
+    for (BaseContentEntry<?> entry : entries) {
+      entriesById.put(entry.getId(), entry);
+    }
+    for (BaseContentEntry<?> entry : entries) {
+      if (entry instanceof BasePageEntry<?>) {
+        int index = Integer.parseInt(((BasePageEntry<?>) entry).getPageName()
+            .getValue().substring("page-".length()));
+        String parentId = EntryUtils.getParentId(entry);
+        if (index < 3) {
+          assertNull(parentId);
+        } else {
+          BasePageEntry<?> parent =
+              (BasePageEntry<?>) entriesById.get(parentId);
+          assertEquals("page-" + (index / 3 - 1),
+              parent.getPageName().getValue());
+        }
+      } else {
+        assertTrue(entriesById.get(EntryUtils.getParentId(entry))
+            instanceof BasePageEntry<?>);
+      }
+    }
+  }
+
+  @Test
+  public void testRequestsPerSecond() throws IOException {
+    SiteGenerator generator = new SiteGenerator("webspace", 0);
+    generator.setPages(5, 5);
+    generator.writeSite(directory, false);
+    GDataRequestFactory requestFactory = sitesService.getRequestFactory();
+    long start = System.currentTimeMillis();
+    importSite("4", "50", false, true);
+    long elapsed = System.currentTimeMillis() - start;
+    assertEquals(5, server.getEntries().size());
+    assertTrue(elapsed >= (server.getRequestCount() - 1) * 1000 / 50);
+    assertSame(requestFactory, sitesService.getRequestFactory());
+  }
+
+  @Test
+  public void testRemoteIndex() throws IOException {
+    SiteGenerator generator = new SiteGenerator("webspace", 0);
+    generator.setPages(20, 3);
+    generator.setCommentsPerPage(2);
+    generator.setAttachmentsPerPage(1, 100);
+    generator.setListPages(4, 3);
+    generator.writeSite(directory, false);
+    importSite("4", "0", false, false);
+    int numEntries = server.getEntries().size();
+    int requests = server.getRequestCount();
+    importSite("4", "0", false, false);
+    int withoutIndex = server.getRequestCount() - requests;
+    requests = server.getRequestCount();
+    importSite("4", "0", true, false);
+    int withIndex = server.getRequestCount() - requests;
+    assertEquals(numEntries, server.getEntries().size());
+    assertTrue(withIndex * 3 < withoutIndex * 2);
+  }
+
+  @Test
+  public void testSkipUnchanged() throws IOException {
+    SiteGenerator generator = new SiteGenerator("webspace", 0);
+    generator.setPages(10, 3);
+    generator.setCommentsPerPage(1);
+    generator.setAttachmentsPerPage(1, 100);
+    generator.writeSite(directory, false);
+    importSite("4", "0", false, true);
+    int numEntries = server.getEntries().size();
+    int requests = server.getRequestCount();
+    importSite("4", "0", false, true);
+    assertEquals(10, server.getRequestCount() - requests);
+    assertEquals(numEntries, server.getEntries().size());
+    FileWriter out = new FileWriter(new File(directory, 
+        "page-0/page-3/index.html"), true);
+    out.write("\n");
+    out.close();
+    BaseContentEntry<?> changed = getPage("page-5");
+    server.updateEntry(changed);
+    importSite("4", "0", false, true);
+    importSite("4", "0", true, true);
+    for (BaseContentEntry<?> entry : server.getEntries()) {
+      if (entry instanceof BasePageEntry<?>) {
+        String name = ((BasePageEntry<?>) entry).getPageName().getValue();
+        int revision = entry.getRevision().getValue();
+        if (name.equals("page-3")) {
+          assertEquals(2, revision);
+        } else if (name.equals("page-5")) {
+          assertEquals(3, revision);
+        } else {
+          assertEquals(1, revision);
+        }
+      }
+    }
+    assertEquals(numEntries, server.getEntries().size());
+  }
+
+  @Test
+  public void testSkipUnchangedWithRevisions() throws IOException {
+    SiteGenerator generator = new SiteGenerator("webspace", 0);
+    generator.setPages(5, 5);
+    generator.setRevisionsPerPage(3);
+    generator.writeSite(directory, true);
+    importSite("4", "0", false, true, false);
+    assertRevisions(1, 1);
+    importSite("4", "0", false, true, true);
+    assertRevisions(4, 4);
+    importSite("4", "0", false, true, true);
+    assertRevisions(4, 4);
+    FileWriter out = new FileWriter(new File(directory, 
+        "page-1/_revisions/1.html"), true);
+    out.write("\n");
+    out.close();
+    importSite("4", "0", false, true, true);
+    assertRevisions(4, 7);
+    assertEquals(5, server.getEntries().size());
+  }
+
+  /**
+   * Asserts that every page on the server other than page-1 is at the given
+   * revision, and page-1 at {@code page1Revision}.
+   */
+  private void assertRevisions(int revision, int page1Revision) {
+    for (BaseContentEntry<?> entry : server.getEntries()) {
+      String name = ((BasePageEntry<?>) entry).getPageName().getValue();
+      assertEquals(name, name.equals("page-1") ? page1Revision : revision, 
+          entry.getRevision().getValue().intValue());
+    }
+  }
+
+  private BaseContentEntry<?> getPage(String name) {
+    for (BaseContentEntry<?> entry : server.getEntries()) {
+      if (entry instanceof BasePageEntry<?> && name.equals(
+          ((BasePageEntry<?>) entry).getPageName().getValue())) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private void importSite(String importThreads, String requestsPerSecond,
+      boolean remoteIndex, boolean skipUnchanged) {
+    importSite(importThreads, requestsPerSecond, remoteIndex, skipUnchanged,
+        false);
+  }
+
+  private void importSite(String importThreads, String requestsPerSecond,
+      boolean remoteIndex, boolean skipUnchanged, boolean importRevisions) {
+    Properties settings = new Properties();
+    settings.setProperty(SiteImporterModule.SKIP_UNCHANGED, 
+        Boolean.toString(skipUnchanged));
+    settings.setProperty(SiteImporterModule.REMOTE_INDEX, 
+        Boolean.toString(remoteIndex));
+    settings.setProperty(SiteImporterModule.IMPORT_THREADS, importThreads);
+    settings.setProperty(SiteImporterModule.REQUESTS_PER_SECOND,
+        requestsPerSecond);
+    Guice.createInjector(new SiteImporterModule(settings))
+        .getInstance(SiteImporter.class).importSite(server.getHost(), null,
+        "webspace", importRevisions, sitesService, directory,
+        new StdOutProgressListener());
+  }
+
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -27,111 +27,130 @@ import com.google.gdata.data.Person;
 import com.google.gdata.data.PlainTextConstruct;
 import com.google.gdata.data.XhtmlTextConstruct;
 import com.google.gdata.util.XmlBlob;
-import com.google.sites.liberation.util.XmlElement;
+import com.google.sites.liberation.util.XmlWriter;
 
 import org.junit.Test;
 
+import java.io.IOException;
+
 public class RendererUtilsTest {
 
   @Test
-  public void testGetAuthorElement() {
+  public void testWriteAuthorElement() throws IOException {
     Person author = new Person();
     author.setName("Ben Simon");
     author.setEmail("me@company.com");
     BaseContentEntry<?> entry = new WebPageEntry();
     entry.getAuthors().add(author);
-    XmlElement element = RendererUtils.getAuthorElement(entry);
+    StringBuilder out = new StringBuilder();
+    RendererUtils.writeAuthorElement(entry, new XmlWriter(out));
     assertEquals("<span class=\"author\"><span class=\"vcard\"><a class=\"fn\" href=\"" +
-    		"mailto:me@company.com\">Ben Simon</a></span></span>", element.toString());
+    		"mailto:me@company.com\">Ben Simon</a></span></span>", out.toString());
   }
 
   @Test
-  public void testGetContentElement() {
+  public void testWriteContentElement() throws IOException {
     String xhtml = "<div><a href=\"http://whoa!\">whoa</a></div>";
     XmlBlob blob = new XmlBlob();
     blob.setBlob(xhtml);
     BaseContentEntry<?> entry = new WebPageEntry();
     entry.setContent(new XhtmlTextConstruct(blob));
-    XmlElement element = RendererUtils.getXhtmlContentElement(entry);
+    StringBuilder out = new StringBuilder();
+    RendererUtils.writeXhtmlContentElement(entry, new XmlWriter(out));
     assertEquals("<div class=\"entry-content\">" + xhtml + "</div>", 
-        element.toString());
+        out.toString());
     entry = new WebPageEntry();
-    element = RendererUtils.getXhtmlContentElement(entry);
-    assertEquals("<div class=\"entry-content\"></div>", element.toString());
+    out = new StringBuilder();
+    RendererUtils.writeXhtmlContentElement(entry, new XmlWriter(out));
+    assertEquals("<div class=\"entry-content\"></div>", out.toString());
   }
 
   @Test
-  public void testGetEntryElement() {
+  public void testStartEntryElement() throws IOException {
     BaseContentEntry<?> entry = new AnnouncementEntry();
     entry.setId("announce");
-    XmlElement element = RendererUtils.getEntryElement(entry, "div");
+    StringBuilder out = new StringBuilder();
+    XmlWriter writer = new XmlWriter(out);
+    RendererUtils.startEntryElement(entry, "div", writer);
+    writer.endElement();
     assertEquals("<div class=\"hentry announcement\" id=\"announce\" />",
-        element.toString());
+        out.toString());
   }
 
   @Test
-  public void testGetHyperLink() {
-    XmlElement link = RendererUtils.getHyperLink("http://test.html", "test");
-    assertEquals("<a href=\"http://test.html\">test</a>", link.toString());
+  public void testWriteHyperLink() throws IOException {
+    StringBuilder out = new StringBuilder();
+    RendererUtils.writeHyperLink("http://test.html", "test", 
+        new XmlWriter(out));
+    assertEquals("<a href=\"http://test.html\">test</a>", out.toString());
     
-    link = RendererUtils.getHyperLink("", "");
-    assertEquals("<a href=\"\"></a>", link.toString());
+    out = new StringBuilder();
+    RendererUtils.writeHyperLink("", "", new XmlWriter(out));
+    assertEquals("<a href=\"\"></a>", out.toString());
   }
 
   @Test
-  public void testGetRevisionElement() {
+  public void testWriteRevisionElement() throws IOException {
     BaseContentEntry<?> entry = new WebPageEntry();
     entry.setRevision(new Revision(25));
-    XmlElement element = RendererUtils.getRevisionElement(entry);
+    StringBuilder out = new StringBuilder();
+    RendererUtils.writeRevisionElement(entry, new XmlWriter(out));
     assertEquals("<span class=\"sites:revision\">25</span>",
-        element.toString());
+        out.toString());
     
-    element = RendererUtils.getRevisionElement(new WebPageEntry());
+    out = new StringBuilder();
+    RendererUtils.writeRevisionElement(new WebPageEntry(), new XmlWriter(out));
     assertEquals("<span class=\"sites:revision\">1</span>",
-        element.toString());
+        out.toString());
   }
 
   @Test
-  public void testGetSummaryElement() {
+  public void testWriteSummaryElement() throws IOException {
     BaseContentEntry<?> entry = new WebPageEntry();
     entry.setSummary(new PlainTextConstruct("summary 1"));
-    XmlElement element = RendererUtils.getSummaryElement(entry);
+    StringBuilder out = new StringBuilder();
+    RendererUtils.writeSummaryElement(entry, new XmlWriter(out));
     assertEquals("<span class=\"entry-summary\">summary 1</span>",
-        element.toString());
+        out.toString());
     
     entry.setSummary(new PlainTextConstruct("<summary 1>"));
-    element = RendererUtils.getSummaryElement(entry);
+    out = new StringBuilder();
+    RendererUtils.writeSummaryElement(entry, new XmlWriter(out));
     assertEquals("<span class=\"entry-summary\">&lt;summary 1&gt;</span>",
-        element.toString());
+        out.toString());
   }
 
   @Test
-  public void testGetTitleElement() {
+  public void testWriteTitleElement() throws IOException {
     BaseContentEntry<?> entry = new WebPageEntry();
     entry.setTitle(new PlainTextConstruct("title 1"));
-    XmlElement element = RendererUtils.getTitleElement(entry);
+    StringBuilder out = new StringBuilder();
+    RendererUtils.writeTitleElement(entry, new XmlWriter(out));
     assertEquals("<span class=\"entry-title\">title 1</span>",
-        element.toString());
+        out.toString());
     
     entry.setTitle(new PlainTextConstruct("<title 1>"));
-    element = RendererUtils.getTitleElement(entry);
+    out = new StringBuilder();
+    RendererUtils.writeTitleElement(entry, new XmlWriter(out));
     assertEquals("<span class=\"entry-title\">&lt;title 1&gt;</span>",
-        element.toString());
+        out.toString());
   }
 
   @Test
-  public void testGetUpdatedElement() {
+  public void testWriteUpdatedElement() throws IOException {
     String date = "2009-07-02T21:46:23.133Z";
     BaseContentEntry<?> entry = new WebPageEntry();
     entry.setUpdated(DateTime.parseDateTime(date));
-    XmlElement element = RendererUtils.getUpdatedElement(entry);
+    StringBuilder out = new StringBuilder();
+    RendererUtils.writeUpdatedElement(entry, new XmlWriter(out));
     assertEquals("<abbr class=\"updated\" title=\"" + date + 
-        "\">Jul 2, 2009</abbr>", element.toString());
+        "\">Jul 2, 2009</abbr>", out.toString());
     
     date = "2598-11-25T23:41:10.256Z";
     entry.setUpdated(DateTime.parseDateTime(date));
-    element = RendererUtils.getUpdatedElement(entry);
+    out = new StringBuilder();
+    RendererUtils.writeUpdatedElement(entry, new XmlWriter(out));
     assertEquals("<abbr class=\"updated\" title=\"" + date + 
-        "\">Nov 25, 2598</abbr>", element.toString());
+        "\">Nov 25, 2598</abbr>", out.toString());
   }
 }
@@ -0,0 +1,696 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.ILink;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.Person;
+import com.google.gdata.data.batch.BatchId;
+import com.google.gdata.data.batch.BatchOperation;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.ContentEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.ContentFeed;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.Revision;
+import com.google.gdata.data.sites.SitesLink;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.xml.XmlWriter;
+import com.google.sites.liberation.export.SiteGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.BodyPart;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+
+/**
+ * An embeddable stand-in for the Google Sites data API, serving the content
+ * and revision feeds of a single site, and the contents of its attachments,
+ * from memory over HTTP on a local port.
+ *
+ * <p>Entries can be added directly, or inserted and updated through a
+ * {@link SitesService} pointed at {@link #getHost}, in the same way as with
+ * the real server. Every insert and update makes a new revision of the entry,
+ * authored by a fake user unless it already has an author.
+ * Each request can be delayed by a fixed latency, and a given fraction of
+ * requests can be made to fail, using a seeded random number generator so
+ * that runs are reproducible. Sites made by a {@link SiteGenerator} can be
+ * added whole. Entries can only be added once the server has
+ * been started, since their ids include its port.</p>
+ *
+ * <p>Only what the exporter and importer use is supported: paging with
+ * {@code start-index} and {@code max-results}, filtering by
+ * {@code updated-min}, {@code path}, {@code kind} and {@code parent}, and
+ * batch inserts and updates.</p>
+ *
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public final class FakeSitesServer {
+
+  private static final int DEFAULT_MAX_RESULTS = 25;
+  private static final String ATOM_TYPE =
+      "application/atom+xml; charset=UTF-8";
+  private static final String USER_NAME = "Fake User";
+  private static final String USER_EMAIL = "user@example.com";
+
+  private final String webspace;
+  private final ExtensionProfile extensionProfile;
+  private final Map<String, BaseContentEntry<?>> entries;
+  private final Map<String, List<BaseContentEntry<?>>> revisions;
+  private final Map<String, byte[]> media;
+  private final Random random;
+  private final AtomicInteger requests;
+  private HttpServer server;
+  private ExecutorService executor;
+  private volatile int latency;
+  private volatile double errorRate;
+  private int nextId;
+  private long lastUpdated;
+
+  /**
+   * Creates a new FakeSitesServer for the site with the given webspace, using
+   * the given seed for the requests it fails.
+   */
+  public FakeSitesServer(String webspace, long seed) {
+    this.webspace = checkNotNull(webspace);
+    extensionProfile = new SitesService("fake-sites-server")
+        .getExtensionProfile();
+    entries = Maps.newLinkedHashMap();
+    revisions = Maps.newHashMap();
+    media = Maps.newHashMap();
+    random = new Random(seed);
+    requests = new AtomicInteger();
+    nextId = 1;
+  }
+
+  /**
+   * Starts serving on a free local port.
+   */
+  public void start() throws IOException {
+    checkState(server == null, "Already started!");
+    // Without this, small responses wait on delayed acknowledgements.
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    executor = Executors.newCachedThreadPool(
+        new DaemonThreadFactory("fake-sites-server"));
+    server.setExecutor(executor);
+    server.createContext("/", new Handler());
+    server.start();
+  }
+
+  /**
+   * Stops serving.
+   */
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      server = null;
+    }
+  }
+
+  /**
+   * Returns the host and port to use in place of sites.google.com.
+   */
+  public String getHost() {
+    checkState(server != null, "Not started!");
+    return "localhost:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Returns the URL of the content feed of this server's site.
+   */
+  public URL getFeedUrl() {
+    return UrlUtils.getFeedUrl(getHost(), null, webspace);
+  }
+
+  /**
+   * Sets the number of milliseconds by which every request is delayed.
+   */
+  public void setLatency(int latency) {
+    checkArgument(latency >= 0);
+    this.latency = latency;
+  }
+
+  /**
+   * Sets the fraction of requests that are answered with
+   * {@code 503 Service Unavailable}.
+   */
+  public void setErrorRate(double errorRate) {
+    checkArgument(errorRate >= 0 && errorRate <= 1);
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Returns the number of requests made to this server so far.
+   */
+  public int getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * Returns copies of all of the entries in this server's site, in the order
+   * in which they were added.
+   */
+  public synchronized List<BaseContentEntry<?>> getEntries() {
+    List<BaseContentEntry<?>> copies = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : entries.values()) {
+      copies.add(copy(entry));
+    }
+    return copies;
+  }
+
+  /**
+   * Adds a copy of the given entry to this server's site, as its first
+   * revision, and returns the copy. Its parent, if any, must already have
+   * been added. An attachment is given the given contents, or none if
+   * {@code contents} is {@code null}.
+   */
+  public synchronized BaseContentEntry<?> addEntry(BaseContentEntry<?> entry,
+      byte[] contents) {
+    BaseContentEntry<?> copy = copy(checkNotNull(entry));
+    String parentId = EntryUtils.getParentId(copy);
+    checkArgument(parentId == null || entries.containsKey(parentId),
+        "Unknown parent: " + parentId);
+    String id = getFeedUrl() + "/" + nextId++;
+    copy.setId(id);
+    copy.setRevision(new Revision(1));
+    copy.setUpdated(nextUpdated());
+    if (copy.getAuthors().isEmpty()) {
+      copy.getAuthors().add(new Person(USER_NAME, null, USER_EMAIL));
+    }
+    if (copy instanceof BasePageEntry<?>) {
+      copy.addLink(ILink.Rel.ALTERNATE, "text",
+          UrlUtils.getSiteUrl(getHost(), null, webspace) + getPath(copy));
+    }
+    if (contents != null) {
+      String uri = "http://" + getHost() + "/media/" + (nextId - 1);
+      media.put(uri, contents);
+      copy.setContent(new OutOfLineContent());
+      ((OutOfLineContent) copy.getContent()).setUri(uri);
+    }
+    entries.put(id, copy);
+    List<BaseContentEntry<?>> history = Lists.newArrayList();
+    history.add(copy(copy));
+    revisions.put(id, history);
+    return copy(copy);
+  }
+
+  /**
+   * Replaces the entry with the given entry's id by a copy of the given
+   * entry, as its next revision, and returns the copy.
+   */
+  public synchronized BaseContentEntry<?> updateEntry(
+      BaseContentEntry<?> entry) {
+    BaseContentEntry<?> old = entries.get(entry.getId());
+    checkArgument(old != null, "Unknown entry: " + entry.getId());
+    BaseContentEntry<?> copy = copy(entry);
+    copy.setRevision(new Revision(old.getRevision().getValue() + 1));
+    copy.setUpdated(nextUpdated());
+    if (copy.getAuthors().isEmpty()) {
+      copy.getAuthors().add(new Person(USER_NAME, null, USER_EMAIL));
+    }
+    if (copy.getContent() == null
+        || old.getContent() instanceof OutOfLineContent) {
+      copy.setContent(old.getContent());
+    }
+    if (copy instanceof BasePageEntry<?>
+        && copy.getLink(ILink.Rel.ALTERNATE, "text") == null) {
+      copy.getLinks().add(old.getLink(ILink.Rel.ALTERNATE, "text"));
+    }
+    entries.put(copy.getId(), copy);
+    revisions.get(copy.getId()).add(0, copy(copy));
+    return copy(copy);
+  }
+
+  /**
+   * Adds the site generated by the given generator, with every revision of
+   * each page and the contents of each attachment. The entries are given new
+   * ids, as if they had been inserted one by one.
+   */
+  public synchronized void addSite(SiteGenerator generator) {
+    Map<String, String> ids = Maps.newHashMap();
+    for (BaseContentEntry<?> entry : generator.getEntries()) {
+      BaseContentEntry<?> added;
+      if (entry instanceof BasePageEntry<?>) {
+        List<BasePageEntry<?>> history =
+            generator.getRevisions((BasePageEntry<?>) entry);
+        added = addEntry(setParentId(history.get(0), ids), null);
+        for (BasePageEntry<?> revision : history.subList(1, history.size())) {
+          revision.setId(added.getId());
+          added = updateEntry(setParentId(revision, ids));
+        }
+      } else if (entry instanceof AttachmentEntry) {
+        added = addEntry(setParentId(entry, ids),
+            generator.getContents((AttachmentEntry) entry));
+      } else {
+        added = addEntry(setParentId(entry, ids), null);
+      }
+      ids.put(entry.getId(), added.getId());
+    }
+  }
+
+  /**
+   * Replaces the parent id of the given entry by the one it was given when it
+   * was added, and returns the entry.
+   */
+  private <E extends BaseContentEntry<?>> E setParentId(E entry,
+      Map<String, String> ids) {
+    Link link = entry.getLink(SitesLink.Rel.PARENT, ILink.Type.ATOM);
+    if (link != null) {
+      link.setHref(ids.get(link.getHref()));
+      if (entry instanceof CommentEntry) {
+        ((CommentEntry) entry).getInReplyTo().setRef(link.getHref());
+      }
+    }
+    return entry;
+  }
+
+  private DateTime nextUpdated() {
+    lastUpdated = Math.max(System.currentTimeMillis(), lastUpdated + 1);
+    return new DateTime(lastUpdated, 0);
+  }
+
+  /**
+   * Returns the site-relative path of the given entry, in the form used by
+   * the {@code path} query parameter.
+   */
+  private String getPath(BaseContentEntry<?> entry) {
+    String name;
+    if (entry instanceof BasePageEntry<?>) {
+      PageName pageName = ((BasePageEntry<?>) entry).getPageName();
+      name = (pageName == null) ? "" : pageName.getValue();
+    } else if (entry.getTitle() == null) {
+      name = "";
+    } else {
+      name = entry.getTitle().getPlainText().replaceAll(" ", "%20");
+    }
+    String parentId = EntryUtils.getParentId(entry);
+    BaseContentEntry<?> parent =
+        (parentId == null) ? null : entries.get(parentId);
+    return (parent == null) ? "/" + name : getPath(parent) + "/" + name;
+  }
+
+  /**
+   * Returns the entries matching the given query parameters.
+   */
+  private synchronized List<BaseContentEntry<?>> query(
+      Map<String, String> parameters) {
+    String updatedMin = parameters.get("updated-min");
+    long min = (updatedMin == null) ? Long.MIN_VALUE
+        : DateTime.parseDateTime(updatedMin).getValue();
+    String path = parameters.get("path");
+    String kind = parameters.get("kind");
+    List<String> kinds = (kind == null) ? null
+        : Lists.newArrayList(kind.split(","));
+    String parent = parameters.get("parent");
+    List<BaseContentEntry<?>> matches = Lists.newArrayList();
+    for (BaseContentEntry<?> entry : entries.values()) {
+      if (entry.getUpdated().getValue() < min) {
+        continue;
+      }
+      if (path != null && !path.equals(getPath(entry))) {
+        continue;
+      }
+      if (kinds != null
+          && !kinds.contains(EntryType.getType(entry).toString())) {
+        continue;
+      }
+      if (parent != null) {
+        String parentId = EntryUtils.getParentId(entry);
+        if (parentId == null || !parentId.endsWith("/" + parent)) {
+          continue;
+        }
+      }
+      matches.add(entry);
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the revisions of the entry with the given id, newest first, or
+   * {@code null} if there is no such entry.
+   */
+  private synchronized List<BaseContentEntry<?>> getRevisions(String id) {
+    List<BaseContentEntry<?>> history = revisions.get(id);
+    return (history == null) ? null : Lists.newArrayList(history);
+  }
+
+  private synchronized BaseContentEntry<?> getEntry(String id) {
+    return entries.get(id);
+  }
+
+  private synchronized byte[] getMedia(String uri) {
+    return media.get(uri);
+  }
+
+  private BaseContentEntry<?> copy(BaseContentEntry<?> entry) {
+    try {
+      return parseEntry(new ByteArrayInputStream(
+          toAtom(entry).getBytes("UTF-8")));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } catch (ServiceException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private String toAtom(BaseContentEntry<?> entry) throws IOException {
+    StringWriter out = new StringWriter();
+    XmlWriter xmlWriter = new XmlWriter(out, "UTF-8");
+    entry.generateAtom(xmlWriter, extensionProfile);
+    xmlWriter.flush();
+    return out.toString();
+  }
+
+  private BaseContentEntry<?> parseEntry(InputStream in)
+      throws IOException, ServiceException {
+    ContentEntry entry = new ContentEntry();
+    entry.parseAtom(extensionProfile, in);
+    return adapt(entry);
+  }
+
+  private BaseContentEntry<?> adapt(BaseContentEntry<?> entry)
+      throws ServiceException {
+    BaseContentEntry<?> adaptedEntry =
+        (BaseContentEntry<?>) entry.getAdaptedEntry();
+    return (adaptedEntry == null) ? entry : adaptedEntry;
+  }
+
+  /**
+   * Handles every request made to this server.
+   */
+  private class Handler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        requests.incrementAndGet();
+        if (latency > 0) {
+          Thread.sleep(latency);
+        }
+        boolean fail;
+        synchronized (random) {
+          fail = random.nextDouble() < errorRate;
+        }
+        if (fail) {
+          send(exchange, 503, "text/plain", "Service Unavailable");
+        } else {
+          dispatch(exchange);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        send(exchange, 503, "text/plain", "Interrupted");
+      } catch (IllegalArgumentException e) {
+        send(exchange, 400, "text/plain", String.valueOf(e.getMessage()));
+      } catch (ServiceException e) {
+        send(exchange, 400, "text/plain", String.valueOf(e.getMessage()));
+      } catch (MessagingException e) {
+        send(exchange, 400, "text/plain", String.valueOf(e.getMessage()));
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private void dispatch(HttpExchange exchange)
+        throws IOException, ServiceException, MessagingException {
+      String method = exchange.getRequestMethod();
+      String override =
+          exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override");
+      if (override != null) {
+        method = override;
+      }
+      String path = exchange.getRequestURI().getPath();
+      Map<String, String> parameters =
+          getParameters(exchange.getRequestURI().getRawQuery());
+      String contentFeed = "/feeds/content/site/" + webspace;
+      String revisionFeed = "/feeds/revision/site/" + webspace + "/";
+      String id = "http://" + getHost() + path;
+      if (path.equals(contentFeed) && method.equals("GET")) {
+        sendFeed(exchange, query(parameters), parameters);
+      } else if (path.equals(contentFeed + "/batch")
+          && method.equals("POST")) {
+        sendBatch(exchange);
+      } else if (path.equals(contentFeed) && method.equals("POST")) {
+        sendEntry(exchange, 201, receiveEntry(exchange, true));
+      } else if (path.startsWith(contentFeed + "/") && method.equals("GET")) {
+        BaseContentEntry<?> entry = getEntry(id);
+        if (entry == null) {
+          send(exchange, 404, "text/plain", "Not Found");
+        } else {
+          sendEntry(exchange, 200, entry);
+        }
+      } else if (path.startsWith(contentFeed + "/") && method.equals("PUT")) {
+        if (getEntry(id) == null) {
+          send(exchange, 404, "text/plain", "Not Found");
+        } else {
+          BaseContentEntry<?> entry = receiveEntry(exchange, false);
+          entry.setId(id);
+          sendEntry(exchange, 200, updateEntry(entry));
+        }
+      } else if (path.startsWith(revisionFeed) && method.equals("GET")) {
+        List<BaseContentEntry<?>> history =
+            getRevisions(id.replace("/revision/", "/content/"));
+        if (history == null) {
+          send(exchange, 404, "text/plain", "Not Found");
+        } else {
+          sendFeed(exchange, history, parameters);
+        }
+      } else if (path.startsWith("/media/") && method.equals("GET")) {
+        byte[] contents = getMedia(id);
+        if (contents == null) {
+          send(exchange, 404, "text/plain", "Not Found");
+        } else {
+          sendMedia(exchange, contents);
+        }
+      } else {
+        send(exchange, 404, "text/plain", "Not Found");
+      }
+    }
+
+    /**
+     * Reads the entry in the body of the request, along with the contents of
+     * the attachment if the request is a multipart insert.
+     */
+    private BaseContentEntry<?> receiveEntry(HttpExchange exchange,
+        boolean insert) throws IOException, ServiceException,
+        MessagingException {
+      byte[] body = readFully(exchange.getRequestBody());
+      String contentType =
+          exchange.getRequestHeaders().getFirst("Content-Type");
+      if (contentType != null && contentType.startsWith("multipart/")) {
+        MimeMultipart multipart =
+            new MimeMultipart(new ByteArrayDataSource(body, contentType));
+        BaseContentEntry<?> entry =
+            parseEntry(multipart.getBodyPart(0).getInputStream());
+        BodyPart part = multipart.getBodyPart(1);
+        byte[] contents = readFully(part.getInputStream());
+        return insert ? addEntry(entry, contents) : entry;
+      }
+      BaseContentEntry<?> entry = parseEntry(new ByteArrayInputStream(body));
+      return insert ? addEntry(entry, null) : entry;
+    }
+
+    /**
+     * Applies each insert and update in the batch feed in the body of the
+     * request, and sends back a feed of the results, each with its status.
+     */
+    @SuppressWarnings("unchecked")
+    private void sendBatch(HttpExchange exchange)
+        throws IOException, ServiceException {
+      ContentFeed feed = new ContentFeed();
+      feed.parseAtom(extensionProfile,
+          new ByteArrayInputStream(readFully(exchange.getRequestBody())));
+      ContentFeed results = new ContentFeed();
+      for (BaseContentEntry<?> batchEntry : feed.getEntries()) {
+        BaseContentEntry<?> entry = adapt(batchEntry);
+        String batchId = BatchUtils.getBatchId(entry);
+        BatchOperationType type = BatchUtils.getBatchOperationType(entry);
+        entry.removeExtension(BatchId.class);
+        entry.removeExtension(BatchOperation.class);
+        BaseContentEntry<?> result = entry;
+        BatchStatus status;
+        try {
+          if (type == BatchOperationType.INSERT) {
+            result = addEntry(entry, null);
+            status = BatchStatus.createCreatedStatus();
+          } else if (type == BatchOperationType.UPDATE
+              && getEntry(entry.getId()) != null) {
+            result = updateEntry(entry);
+            status = BatchStatus.createSuccessStatus();
+          } else if (type == BatchOperationType.UPDATE) {
+            status = getStatus(404, "Not Found");
+          } else {
+            status = getStatus(400, "Unsupported operation: " + type);
+          }
+        } catch (IllegalArgumentException e) {
+          status = getStatus(400, String.valueOf(e.getMessage()));
+        }
+        BatchUtils.setBatchId(result, batchId);
+        BatchUtils.setBatchOperationType(result, type);
+        result.addExtension(status);
+        results.getEntries().add(result);
+      }
+      StringWriter out = new StringWriter();
+      XmlWriter xmlWriter = new XmlWriter(out, "UTF-8");
+      results.generateAtom(xmlWriter, extensionProfile);
+      xmlWriter.flush();
+      send(exchange, 200, ATOM_TYPE, out.toString());
+    }
+
+    private BatchStatus getStatus(int code, String reason) {
+      BatchStatus status = new BatchStatus();
+      status.setCode(code);
+      status.setReason(reason);
+      return status;
+    }
+
+    private void sendFeed(HttpExchange exchange,
+        List<BaseContentEntry<?>> matches, Map<String, String> parameters)
+        throws IOException {
+      int start = getInt(parameters, "start-index", 1);
+      int max = getInt(parameters, "max-results", DEFAULT_MAX_RESULTS);
+      List<BaseContentEntry<?>> window;
+      if (start > matches.size()) {
+        window = Collections.emptyList();
+      } else {
+        window = matches.subList(start - 1,
+            Math.min(matches.size(), start - 1 + max));
+      }
+      ContentFeed feed = new ContentFeed();
+      feed.getEntries().addAll(window);
+      feed.setTotalResults(matches.size());
+      feed.setStartIndex(start);
+      feed.setItemsPerPage(max);
+      StringWriter out = new StringWriter();
+      XmlWriter xmlWriter = new XmlWriter(out, "UTF-8");
+      synchronized (FakeSitesServer.this) {
+        feed.generateAtom(xmlWriter, extensionProfile);
+      }
+      xmlWriter.flush();
+      send(exchange, 200, ATOM_TYPE, out.toString());
+    }
+
+    private void sendEntry(HttpExchange exchange, int status,
+        BaseContentEntry<?> entry) throws IOException {
+      String atom;
+      synchronized (FakeSitesServer.this) {
+        atom = toAtom(entry);
+      }
+      send(exchange, status, ATOM_TYPE, atom);
+    }
+
+    private void sendMedia(HttpExchange exchange, byte[] contents)
+        throws IOException {
+      int offset = 0;
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+        offset = Math.min(contents.length,
+            Integer.parseInt(range.substring(6, range.length() - 1)));
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + offset
+            + "-" + (contents.length - 1) + "/" + contents.length);
+      }
+      exchange.getResponseHeaders().set("Content-Type",
+          "application/octet-stream");
+      int length = contents.length - offset;
+      exchange.sendResponseHeaders(offset > 0 ? 206 : 200,
+          length == 0 ? -1 : length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(contents, offset, length);
+      out.close();
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType,
+        String body) throws IOException {
+      byte[] bytes = body.getBytes("UTF-8");
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.sendResponseHeaders(status, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+    }
+  }
+
+  private static Map<String, String> getParameters(String query)
+      throws UnsupportedEncodingException {
+    Map<String, String> parameters = Maps.newHashMap();
+    if (query != null) {
+      for (String parameter : query.split("&")) {
+        int equals = parameter.indexOf('=');
+        if (equals > 0) {
+          parameters.put(URLDecoder.decode(parameter.substring(0, equals),
+              "UTF-8"), URLDecoder.decode(parameter.substring(equals + 1),
+              "UTF-8"));
+        }
+      }
+    }
+    return parameters;
+  }
+
+  private static int getInt(Map<String, String> parameters, String name,
+      int defaultValue) {
+    String value = parameters.get(name);
+    return (value == null) ? defaultValue : Integer.parseInt(value);
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static org.junit.Assert.*;
+
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.client.sites.ContentQuery;
+import com.google.gdata.client.sites.SitesService;
+import com.google.gdata.data.OutOfLineContent;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.media.MediaByteArraySource;
+import com.google.gdata.data.sites.AttachmentEntry;
+import com.google.gdata.data.sites.BaseContentEntry;
+import com.google.gdata.data.sites.BasePageEntry;
+import com.google.gdata.data.sites.CommentEntry;
+import com.google.gdata.data.sites.PageName;
+import com.google.gdata.data.sites.WebPageEntry;
+import com.google.gdata.util.ServiceException;
+import com.google.inject.Guice;
+import com.google.sites.liberation.export.SiteExporter;
+import com.google.sites.liberation.export.SiteGenerator;
+import com.google.sites.liberation.export.SiteExporterModule;
+import com.google.sites.liberation.imprt.SiteImporter;
+import com.google.sites.liberation.imprt.SiteImporterModule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class FakeSitesServerTest {
+
+  private FakeSitesServer server;
+  private SitesService sitesService;
+  private EntryProvider entryProvider;
+
+  @Before
+  public void before() throws IOException {
+    server = new FakeSitesServer("webspace", 0);
+    server.start();
+    sitesService = new SitesService("test");
+    entryProvider = new EntryProviderImpl();
+  }
+
+  @After
+  public void after() {
+    server.stop();
+  }
+
+  @Test
+  public void testPaging() throws IOException, ServiceException {
+    server.addSite(getNewSite(30, 5, 1, 0));
+    ContentQuery query = new ContentQuery(server.getFeedUrl());
+    query.setStartIndex(21);
+    query.setMaxResults(20);
+    List<BaseContentEntry<?>> entries =
+        entryProvider.getEntries(query, sitesService);
+    assertEquals(10, entries.size());
+    assertEquals("Page 20", entries.get(0).getTitle().getPlainText());
+    assertTrue(entries.get(0) instanceof WebPageEntry);
+  }
+
+  @Test
+  public void testQueries() throws IOException, ServiceException {
+    server.addSite(getNewSite(10, 3, 1, 1));
+    ContentQuery query = new ContentQuery(server.getFeedUrl());
+    query.setPath("/page-0/page-4/file-4-0");
+    List<BaseContentEntry<?>> entries =
+        entryProvider.getEntries(query, sitesService);
+    assertEquals(1, entries.size());
+    assertTrue(entries.get(0) instanceof AttachmentEntry);
+    query = new ContentQuery(server.getFeedUrl());
+    query.setPath("/page-0/page-4");
+    entries = entryProvider.getEntries(query, sitesService);
+    assertEquals(1, entries.size());
+    query = new ContentQuery(server.getFeedUrl());
+    query.setKind("attachment");
+    assertEquals(10, entryProvider.getEntries(query, sitesService).size());
+    String parentId = EntryUtils.getParentId(entries.get(0));
+    query = new ContentQuery(server.getFeedUrl());
+    query.setParent(parentId.substring(parentId.lastIndexOf('/') + 1));
+    assertEquals(4, entryProvider.getEntries(query, sitesService).size());
+  }
+
+  @Test
+  public void testInsertAndUpdate() throws IOException, ServiceException {
+    WebPageEntry page = new WebPageEntry();
+    page.setTitle(new PlainTextConstruct("Page"));
+    page.setPageName(new PageName("page"));
+    WebPageEntry inserted = sitesService.insert(server.getFeedUrl(), page);
+    assertTrue(inserted.getId().startsWith(server.getFeedUrl() + "/"));
+    assertEquals(1, inserted.getRevision().getValue().intValue());
+    CommentEntry comment = new CommentEntry();
+    EntryUtils.setContent(comment, "<div>Comment</div>");
+    EntryUtils.setParent(comment, inserted);
+    sitesService.insert(server.getFeedUrl(), comment);
+    inserted.setTitle(new PlainTextConstruct("New Title"));
+    WebPageEntry updated =
+        sitesService.update(new URL(inserted.getId()), inserted);
+    assertEquals(2, updated.getRevision().getValue().intValue());
+    List<BaseContentEntry<?>> revisions = entryProvider.getEntries(
+        new ContentQuery(new URL(inserted.getId().replace("content",
+        "revision"))), sitesService);
+    assertEquals(2, revisions.size());
+    assertEquals("New Title", revisions.get(0).getTitle().getPlainText());
+    assertEquals("Page", revisions.get(1).getTitle().getPlainText());
+    assertEquals(2, server.getEntries().size());
+  }
+
+  @Test
+  public void testAttachments() throws IOException, ServiceException {
+    BasePageEntry<?> page = (BasePageEntry<?>) server.addEntry(
+        getNewPage("page"), null);
+    AttachmentEntry attachment = new AttachmentEntry();
+    attachment.setTitle(new PlainTextConstruct("file"));
+    EntryUtils.setParent(attachment, page);
+    attachment.setMediaSource(new MediaByteArraySource(
+        "contents".getBytes("UTF-8"), "text/plain"));
+    AttachmentEntry inserted =
+        sitesService.insert(server.getFeedUrl(), attachment);
+    String uri = ((OutOfLineContent) inserted.getContent()).getUri();
+    assertEquals("contents", download(uri, null));
+    assertEquals("tents", download(uri, "bytes=3-"));
+  }
+
+  @Test
+  public void testErrors() throws IOException {
+    server.setErrorRate(1);
+    try {
+      entryProvider.getEntries(new ContentQuery(server.getFeedUrl()),
+          sitesService);
+      fail("Should fail every request!");
+    } catch (ServiceException e) {}
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void testExportAndImport() throws IOException {
+    server.addSite(getNewSite(10, 3, 2, 1));
+    File directory = File.createTempFile("site", "");
+    directory.delete();
+    try {
+      Guice.createInjector(new SiteExporterModule())
+          .getInstance(SiteExporter.class).exportSite(server.getHost(), null,
+          "webspace", true, sitesService, directory,
+          new StdOutProgressListener());
+      assertTrue(new File(directory, "page-0/page-4/file-4-0").isFile());
+      assertTrue(new File(directory, "page-0/page-4/history.html").isFile());
+      assertTrue(new File(directory, "page-0/page-4/_revisions/1.html")
+          .isFile());
+      FakeSitesServer target = new FakeSitesServer("webspace", 0);
+      target.start();
+      try {
+        Guice.createInjector(new SiteImporterModule())
+            .getInstance(SiteImporter.class).importSite(target.getHost(),
+            null, "webspace", false, sitesService, directory,
+            new StdOutProgressListener());
+        assertEquals(server.getEntries().size(), target.getEntries().size());
+      } finally {
+        target.stop();
+      }
+    } finally {
+      delete(directory);
+    }
+  }
+
+  private SiteGenerator getNewSite(int pages, int fanOut, int revisions,
+      int attachments) {
+    SiteGenerator generator = new SiteGenerator("webspace", 0);
+    generator.setPages(pages, fanOut);
+    generator.setRevisionsPerPage(revisions);
+    generator.setAttachmentsPerPage(attachments, 1024);
+    return generator;
+  }
+
+  private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private String download(String uri, String range)
+      throws IOException, ServiceException {
+    GDataRequest request = sitesService.createRequest(
+        GDataRequest.RequestType.QUERY, new URL(uri), null);
+    if (range != null) {
+      request.setHeader("Range", range);
+    }
+    request.execute();
+    InputStream in = request.getResponseStream();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1) {
+      out.write(b);
+    }
+    request.end();
+    return out.toString("UTF-8");
+  }
+
+  private WebPageEntry getNewPage(String name) {
+    WebPageEntry page = new WebPageEntry();
+    page.setTitle(new PlainTextConstruct(name));
+    page.setPageName(new PageName(name));
+    return page;
+  }
+}
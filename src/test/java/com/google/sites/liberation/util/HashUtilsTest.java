@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class HashUtilsTest {
+
+  @Test
+  public void testSha1String() {
+    assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", 
+        HashUtils.sha1(""));
+    assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", 
+        HashUtils.sha1("abc"));
+  }
+  
+  @Test
+  public void testSha1File() throws IOException {
+    File file = File.createTempFile("hash", ".txt");
+    try {
+      OutputStream out = new FileOutputStream(file);
+      try {
+        out.write("abc".getBytes("UTF-8"));
+      } finally {
+        out.close();
+      }
+      assertEquals(HashUtils.sha1("abc"), HashUtils.sha1(file));
+    } finally {
+      file.delete();
+    }
+  }
+}
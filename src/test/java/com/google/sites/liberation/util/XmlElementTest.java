@@ -18,6 +18,7 @@ package com.google.sites.liberation.util;
 
 import static org.junit.Assert.*;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.junit.Test;
 
 /**
@@ -111,4 +112,52 @@ public class XmlElementTest {
     div.setAttribute("href", "not#");
     assertEquals("<div class=\"main\" href=\"not#\" />", div.toString());
   }
+  
+  @Test
+  public void testEscaping() {
+    String text = "plain \"quoted\" & <tagged> 'single' \u00e9\u007f\u2713"
+        + "\ud83d\ude00\t\n";
+    String escaped = StringEscapeUtils.escapeXml(text);
+    assertEquals("<div>" + escaped + "</div>",
+        new XmlElement("div").addText(text).toString());
+    assertEquals("<div title=\"" + escaped + "\" />",
+        new XmlElement("div").setAttribute("title", text).toString());
+    assertEquals("<div>&amp;</div>", 
+        new XmlElement("div").addText("&").toString());
+    assertEquals("<div>no escaping needed</div>",
+        new XmlElement("div").addText("no escaping needed").toString());
+  }
+  
+  @Test
+  public void testEquals() {
+    XmlElement div = new XmlElement("div").setAttribute("class", "main")
+        .addElement(new XmlElement("span").addText("a & b"));
+    XmlElement same = new XmlElement("div").setAttribute("class", "main")
+        .addElement(new XmlElement("span").addText("a & b"));
+    XmlElement sameXml = new XmlElement("div").setAttribute("class", "main")
+        .addXml("<span>a &amp; ").addText("b")
+        .addXml("</span>");
+    XmlElement different = new XmlElement("div").setAttribute("class", "main")
+        .addElement(new XmlElement("span").addText("a and b"));
+    assertEquals(div, same);
+    assertEquals(div.hashCode(), same.hashCode());
+    assertEquals(div.toString(), sameXml.toString());
+    assertFalse(div.equals(sameXml));
+    assertFalse(div.equals(different));
+    assertFalse(div.hashCode() == different.hashCode());
+    assertFalse(div.equals(div.toString()));
+  }
+
+  @Test
+  public void testEqualsAttributeOrder() {
+    XmlElement div = new XmlElement("div").setAttribute("class", "main")
+        .setAttribute("id", "content").addText("text");
+    XmlElement same = new XmlElement("div").setAttribute("id", "content")
+        .setAttribute("class", "main").addText("text");
+    XmlElement text = new XmlElement("div").setAttribute("class", "main")
+        .setAttribute("id", "content").addXml("text");
+    assertEquals(div, same);
+    assertEquals(div.hashCode(), same.hashCode());
+    assertFalse(div.equals(text));
+  }
 }
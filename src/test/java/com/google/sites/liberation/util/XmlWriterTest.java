@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sites.liberation.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * @author bsimon@google.com (Benjamin Simon)
+ */
+public class XmlWriterTest {
+
+  private StringBuilder out;
+  private XmlWriter writer;
+
+  @Before
+  public void before() {
+    out = new StringBuilder();
+    writer = new XmlWriter(out);
+  }
+
+  @Test
+  public void testEmptyElement() throws IOException {
+    writer.startElement("div").endElement();
+    assertEquals("<div />", out.toString());
+  }
+
+  @Test
+  public void testChildren() throws IOException {
+    writer.startElement("div").emptyElement("span").startElement("span")
+        .emptyElement("hr").endElement().endElement();
+    assertEquals("<div><span /><span><hr /></span></div>", out.toString());
+  }
+
+  @Test
+  public void testAddText() throws IOException {
+    try {
+      writer.addText(null);
+      fail("Adding null text should throw exception");
+    } catch(NullPointerException e) {}
+    writer.startElement("div").addText("").endElement();
+    writer.startElement("div").addText("text <div />").endElement();
+    assertEquals("<div></div><div>text &lt;div /&gt;</div>", out.toString());
+  }
+
+  @Test
+  public void testAddXml() throws IOException {
+    writer.startElement("div").addXml("<span class=\"class\">text</span>")
+        .addXml("<hr /><br />", 6, 12).endElement();
+    assertEquals("<div><span class=\"class\">text</span><br /></div>",
+        out.toString());
+  }
+
+  @Test
+  public void testSetAttribute() throws IOException {
+    writer.startElement("div");
+    try {
+      writer.setAttribute(null, "value");
+      fail("Adding null name should throw exception");
+    } catch(NullPointerException e) {}
+    writer.setAttribute("href", "#").setAttribute("id", "a&b");
+    writer.setAttribute("class", "main").setAttribute("href", "not#");
+    writer.addText("text");
+    try {
+      writer.setAttribute("title", "late");
+      fail("Setting an attribute after a child should throw exception");
+    } catch(IllegalStateException e) {}
+    writer.endElement();
+    assertEquals("<div class=\"main\" href=\"not#\" id=\"a&amp;b\">text</div>",
+        out.toString());
+  }
+
+  @Test
+  public void testMatchesXmlElement() throws IOException {
+    XmlElement element = new XmlElement("td").setAttribute("width", "1")
+        .addElement(new XmlElement("a").setAttribute("href", "x").addText("y"));
+    writer.startElement("tr").addElement(element).endElement();
+    assertEquals("<tr>" + element + "</tr>", out.toString());
+    try {
+      writer.endElement();
+      fail("Ending an element which was not started should throw exception");
+    } catch(IllegalStateException e) {}
+  }
+}